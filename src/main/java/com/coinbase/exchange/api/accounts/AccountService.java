@@ -49,6 +49,11 @@ public class AccountService {
                 limit);
     }
 
+    public List<AccountHistory> getLatestAccountHistory(String accountId, Integer limit) {
+        String accountHistoryEndpoint = ACCOUNTS_ENDPOINT + "/" + accountId + "/ledger?limit=" + limit;
+        return exchange.getAsList(accountHistoryEndpoint, new ParameterizedTypeReference<AccountHistory[]>(){});
+    }
+
     public List<Hold> getHolds(String accountId) {
         String holdsEndpoint = ACCOUNTS_ENDPOINT + "/" + accountId + "/holds";
         return exchange.getAsList(holdsEndpoint, new ParameterizedTypeReference<Hold[]>(){});
@@ -12,6 +12,15 @@ public class Product {
     private Double base_min_size;
     private Double base_max_size;
     private Double quote_increment;
+    private Double base_increment;
+
+    public Double getBase_increment() {
+        return base_increment;
+    }
+
+    public void setBase_increment(Double base_increment) {
+        this.base_increment = base_increment;
+    }
 
     public Double getQuote_increment() {
         return quote_increment;
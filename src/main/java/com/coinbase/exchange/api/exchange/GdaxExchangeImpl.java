@@ -1,5 +1,8 @@
 package com.coinbase.exchange.api.exchange;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gamesbykevin.tradingbot.util.LogFile;
 import com.gamesbykevin.tradingbot.util.PropertyUtil;
 import com.google.gson.Gson;
@@ -9,75 +12,78 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.springframework.http.HttpMethod.GET;
-
 /**
  * Created by irufus on 2/25/15.
+ *
+ * Each request reuses a pooled keep-alive connection, is signed with a mac already keyed for the calling thread, and
+ * the response is decoded straight from the connection into our entity types. Debug output is only built when enabled
  */
 @Component
 public class GdaxExchangeImpl implements GdaxExchange {
 
     static Logger log = Logger.getLogger(GdaxExchangeImpl.class.getName());
 
+    /**
+     * How many idle connections to the exchange do we keep open for reuse
+     */
+    public static final int MAX_CONNECTIONS = 16;
+
+    /**
+     * How long (milliseconds) do we wait to connect / read before the request fails
+     */
+    public static int REST_TIMEOUT = 10000;
+
+    /**
+     * Do we write the raw response of each request to our json log (the response is read into memory to do so)
+     */
+    public static boolean LOG_RESPONSES = false;
+
+    //json the exchange expects in our request bodies
+    private static final Gson GSON = new Gson();
+
+    //decodes our responses, unknown fields are ignored like our previous rest template
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    static {
+
+        //keep enough idle connections for each product / agent thread, unless already configured
+        if (System.getProperty("http.maxConnections") == null)
+            System.setProperty("http.maxConnections", String.valueOf(MAX_CONNECTIONS));
+    }
+
     String publicKey;
     String passphrase;
     String baseUrl;
 
     Signature signature;
 
-    RestTemplate restTemplate;
-
     @Autowired
     public GdaxExchangeImpl(@Value("${gdax.key}") String publicKey,
                             @Value("${gdax.passphrase}") String passphrase,
                             @Value("${gdax.api.baseUrl}") String baseUrl,
-                            Signature signature,
-                            RestTemplate restTemplate) {
+                            Signature signature) {
         this.publicKey = publicKey;
         this.passphrase = passphrase;
         this.baseUrl = baseUrl;
         this.signature = signature;
-        this.restTemplate = restTemplate;
     }
 
     @Override
     public <T> T get(String resourcePath, ParameterizedTypeReference<T> responseType) {
-
-        try {
-
-            //display and write to log file
-            PropertyUtil.displayMessage("Endpoint:   " + resourcePath, LogFile.getPrintWriterJsonOrder());
-
-            ResponseEntity<T> responseEntity = restTemplate.exchange(getBaseUrl() + resourcePath,
-                    GET,
-                    securityHeaders(resourcePath,
-                    "GET",
-                     ""),
-                    responseType);
-
-            //display and write to log file
-            PropertyUtil.displayMessage("Response:   " + new Gson().toJson(responseEntity.getBody()), LogFile.getPrintWriterJsonOrder());
-
-            //return our response
-            return responseEntity.getBody();
-
-        } catch (HttpClientErrorException ex) {
-            log.error("GET request Failed for '" + resourcePath + "': " + ex.getResponseBodyAsString());
-
-            //display and write to log file
-            PropertyUtil.displayMessage("Exception:  " + ex.getResponseBodyAsString(), LogFile.getPrintWriterJsonOrder());
-        }
-        return null;
+        return request("GET", resourcePath, responseType, "");
     }
 
     @Override
@@ -109,62 +115,141 @@ public class GdaxExchangeImpl implements GdaxExchange {
 
     @Override
     public <T> T delete(String resourcePath, ParameterizedTypeReference<T> responseType) {
+        return request("DELETE", resourcePath, responseType, "");
+    }
+
+    @Override
+    public <T, R> T post(String resourcePath,  ParameterizedTypeReference<T> responseType, R jsonObj) {
+        return request("POST", resourcePath, responseType, GSON.toJson(jsonObj));
+    }
+
+    private <T> T request(String method, String resourcePath, ParameterizedTypeReference<T> responseType, String jsonBody) {
+
+        //display and write to log file
+        PropertyUtil.displayMessage("Endpoint:   " + resourcePath, LogFile.getPrintWriterJsonOrder());
+
+        if (!jsonBody.isEmpty())
+            PropertyUtil.displayMessage("Request:    " + jsonBody, LogFile.getPrintWriterJsonOrder());
+
+        HttpURLConnection connection = null;
+
         try {
 
-            //display and write to log file
-            PropertyUtil.displayMessage("Endpoint:   " + resourcePath, LogFile.getPrintWriterJsonOrder());
+            connection = (HttpURLConnection) new URL(getBaseUrl() + resourcePath).openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(REST_TIMEOUT);
+            connection.setReadTimeout(REST_TIMEOUT);
 
-            ResponseEntity<T> response = restTemplate.exchange(getBaseUrl() + resourcePath,
-                HttpMethod.DELETE,
-                securityHeaders(resourcePath, "DELETE", ""),
-                responseType);
+            //sign the request
+            final String timestamp = Instant.now().getEpochSecond() + "";
 
-            //display and write to log file
-            PropertyUtil.displayMessage("Response:   " + new Gson().toJson(response.getBody()), LogFile.getPrintWriterJsonOrder());
+            connection.setRequestProperty("accept", "application/json");
+            connection.setRequestProperty("content-type", "application/json");
+            connection.setRequestProperty("CB-ACCESS-KEY", publicKey);
+            connection.setRequestProperty("CB-ACCESS-SIGN", signature.generate(resourcePath, method, jsonBody, timestamp));
+            connection.setRequestProperty("CB-ACCESS-TIMESTAMP", timestamp);
+            connection.setRequestProperty("CB-ACCESS-PASSPHRASE", passphrase);
 
-            return response.getBody();
-        } catch (HttpClientErrorException ex) {
-            log.error("DELETE request Failed for '" + resourcePath + "': " + ex.getResponseBodyAsString());
+            if (log.isDebugEnabled())
+                log.debug(curlRequest(method, jsonBody, timestamp, resourcePath));
 
-            //display and write to log file
-            PropertyUtil.displayMessage("Exception:  " + ex.getResponseBodyAsString(), LogFile.getPrintWriterJsonOrder());
-        }
+            //write our body if we have one
+            if (!jsonBody.isEmpty()) {
 
-        return null;
+                final byte[] body = jsonBody.getBytes(StandardCharsets.UTF_8);
+
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+
+                try (OutputStream output = connection.getOutputStream()) {
+                    output.write(body);
+                }
+            }
+
+            final int code = connection.getResponseCode();
+
+            //a client error means the request was refused, the caller gets null
+            if (code >= 400 && code < 500) {
+
+                final String error = read(connection.getErrorStream());
+
+                log.error(method + " request Failed for '" + resourcePath + "': " + error);
+
+                //display and write to log file
+                PropertyUtil.displayMessage("Exception:  " + error, LogFile.getPrintWriterJsonOrder());
+                return null;
+            }
+
+            //anything else is an error we can't handle here
+            if (code >= 500)
+                throw new RuntimeException(method + " request Failed for '" + resourcePath + "': " + code + " " + read(connection.getErrorStream()));
+
+            //nothing to decode
+            if (code == HttpURLConnection.HTTP_NO_CONTENT) {
+                read(connection.getInputStream());
+                return null;
+            }
+
+            try (InputStream input = connection.getInputStream()) {
+                return decode(input, responseType);
+            }
+
+        } catch (IOException e) {
+
+            //the connection can't be reused
+            if (connection != null)
+                connection.disconnect();
+
+            throw new RuntimeException(method + " request Failed for '" + resourcePath + "'", e);
+        }
     }
 
-    @Override
-    public <T, R> T post(String resourcePath,  ParameterizedTypeReference<T> responseType, R jsonObj) {
-        Gson gson = new Gson();
-        String jsonBody = gson.toJson(jsonObj);
+    @SuppressWarnings("unchecked")
+    private <T> T decode(InputStream input, ParameterizedTypeReference<T> responseType) throws IOException {
 
-        //display and write to log file
-        PropertyUtil.displayMessage("Endpoint:   " + resourcePath, LogFile.getPrintWriterJsonOrder());
+        //some responses are plain text
+        if (responseType.getType() == String.class) {
 
-        //display and write to log file
-        PropertyUtil.displayMessage("Request:    " + jsonBody, LogFile.getPrintWriterJsonOrder());
+            final String text = read(input);
 
-        try {
-            ResponseEntity<T> response = restTemplate.exchange(
-            getBaseUrl() + resourcePath,
-                HttpMethod.POST,
-                securityHeaders(resourcePath, "POST", jsonBody),
-                responseType);
+            if (LOG_RESPONSES)
+                PropertyUtil.displayMessage("Response:   " + text, LogFile.getPrintWriterJsonOrder());
 
-            //display and write to log file
-            PropertyUtil.displayMessage("Response:   " + gson.toJson(response.getBody()), LogFile.getPrintWriterJsonOrder());
+            return (T) text;
+        }
+
+        final JavaType type = MAPPER.getTypeFactory().constructType(responseType.getType());
 
-            //return our response
-            return response.getBody();
+        //we need the raw text to log it
+        if (LOG_RESPONSES) {
 
-        } catch (HttpClientErrorException ex) {
-            log.error("POST request Failed for '" + resourcePath + "': " + ex.getResponseBodyAsString());
+            final String text = read(input);
 
-            //display and write to log file
-            PropertyUtil.displayMessage("Exception:  " + ex.getResponseBodyAsString(), LogFile.getPrintWriterJsonOrder());
+            PropertyUtil.displayMessage("Response:   " + text, LogFile.getPrintWriterJsonOrder());
+            return text.isEmpty() ? null : MAPPER.readValue(text, type);
         }
 
-        return null;
+        //decode as the response arrives
+        return MAPPER.readValue(input, type);
+    }
+
+    private static String read(InputStream input) throws IOException {
+
+        if (input == null)
+            return "";
+
+        try (InputStream stream = input) {
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+
+            while ((length = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
     }
 
     @Override
@@ -186,20 +271,21 @@ public class GdaxExchangeImpl implements GdaxExchange {
         headers.add("CB-ACCESS-TIMESTAMP", timestamp);
         headers.add("CB-ACCESS-PASSPHRASE", passphrase);
 
-        curlRequest(method, jsonBody, headers, resource);
+        if (log.isDebugEnabled())
+            log.debug(curlRequest(method, jsonBody, timestamp, resource));
 
         return new HttpEntity<>(jsonBody, headers);
     }
 
-    private void curlRequest(String method, String jsonBody, HttpHeaders headers, String resource) {
-        String curlTest = "curl ";
-        for (String key : headers.keySet()){
-            curlTest +=  "-H '" + key + ":" + headers.get(key).get(0) + "' ";
-        }
+    private String curlRequest(String method, String jsonBody, String timestamp, String resource) {
+        StringBuilder curlTest = new StringBuilder("curl ");
+        curlTest.append("-H 'accept:application/json' -H 'content-type:application/json' ");
+        curlTest.append("-H 'CB-ACCESS-KEY:").append(publicKey).append("' ");
+        curlTest.append("-H 'CB-ACCESS-TIMESTAMP:").append(timestamp).append("' ");
         if (!jsonBody.equals(""))
-            curlTest += "-d '" + jsonBody + "' ";
+            curlTest.append("-d '").append(jsonBody).append("' ");
 
-        curlTest += "-X " + method + " " + getBaseUrl() + resource;
-        log.debug(curlTest);
+        curlTest.append("-X ").append(method).append(" ").append(getBaseUrl()).append(resource);
+        return curlTest.toString();
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import org.springframework.stereotype.Component;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.management.RuntimeErrorException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.util.Base64;
 
@@ -17,13 +18,17 @@ import java.util.Base64;
 @Component
 public class Signature {
 
-    private String secretKey;
+    //the decoded secret, only decoded once
+    private SecretKeySpec keySpec;
+
+    //each thread keeps a mac already initialized with our secret
+    private ThreadLocal<Mac> macs;
 
     public Signature() { }
 
     @Autowired
     public Signature(@Value("${gdax.secret}") String secretKey) {
-        this.secretKey = secretKey;
+        setSecretKey(secretKey);
     }
 
     /**
@@ -39,13 +44,17 @@ public class Signature {
      * @return
      */
     public String generate(String requestPath, String method, String body, String timestamp) {
+        String prehash = timestamp + method.toUpperCase() + requestPath + body;
+
+        //doFinal resets the mac so it is ready for the next request on this thread
+        return Base64.getEncoder().encodeToString(macs.get().doFinal(prehash.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac createMac() {
         try {
-            String prehash = timestamp + method.toUpperCase() + requestPath + body;
-            byte[] secretDecoded = Base64.getDecoder().decode(secretKey);
-            SecretKeySpec keyspec = new SecretKeySpec(secretDecoded, "HmacSHA256");
             Mac sha256 = (Mac) GdaxConstants.SHARED_MAC.clone();
-            sha256.init(keyspec);
-            return Base64.getEncoder().encodeToString(sha256.doFinal(prehash.getBytes()));
+            sha256.init(keySpec);
+            return sha256;
         } catch (CloneNotSupportedException | InvalidKeyException e) {
             e.printStackTrace();
             throw new RuntimeErrorException(new Error("Cannot set up authentication headers."));
@@ -53,6 +62,9 @@ public class Signature {
     }
 
     public void setSecretKey(String secretKey) {
-        this.secretKey = secretKey;
+        this.keySpec = new SecretKeySpec(Base64.getDecoder().decode(secretKey), "HmacSHA256");
+
+        //a new key needs new macs
+        this.macs = ThreadLocal.withInitial(this::createMac);
     }
 }
@@ -57,4 +57,17 @@ public class OrderService {
         String fillsEndpoint = "/fills";
         return exchange.getAsList(fillsEndpoint, new ParameterizedTypeReference<Fill[]>(){});
     }
+
+    public List<Fill> getPagedFills(String productId,
+                                    String beforeOrAfter,
+                                    Integer pageNumber,
+                                    Integer limit) {
+        String fillsEndpoint = "/fills?product_id=" + productId + "&limit=" + limit;
+
+        //without a cursor we get the most recent fills
+        if (pageNumber != null)
+            fillsEndpoint += "&" + beforeOrAfter + "=" + pageNumber;
+
+        return exchange.getAsList(fillsEndpoint, new ParameterizedTypeReference<Fill[]>(){});
+    }
 }
\ No newline at end of file
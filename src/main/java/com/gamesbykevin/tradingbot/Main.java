@@ -1,17 +1,22 @@
 package com.gamesbykevin.tradingbot;
 
 import com.coinbase.exchange.api.GdaxApiApplication;
+import com.coinbase.exchange.api.accounts.AccountService;
 import com.coinbase.exchange.api.entity.Product;
 import com.coinbase.exchange.api.exchange.Signature;
 import com.coinbase.exchange.api.orders.OrderService;
 import com.coinbase.exchange.api.products.ProductService;
 import com.coinbase.exchange.api.websocketfeed.message.Subscribe;
 import com.gamesbykevin.tradingbot.agent.AgentManager;
+import com.gamesbykevin.tradingbot.calculator.CalculatorHelper;
+import com.gamesbykevin.tradingbot.feed.MarketFeed;
 import com.gamesbykevin.tradingbot.product.Ticker;
+import com.gamesbykevin.tradingbot.simulator.Simulator;
 import com.gamesbykevin.tradingbot.util.GSon;
 import com.gamesbykevin.tradingbot.util.HistoryTracker;
 import com.gamesbykevin.tradingbot.util.LogFile;
 import com.gamesbykevin.tradingbot.util.PropertyUtil;
+import com.gamesbykevin.tradingbot.wallet.ReconcileService;
 import com.gamesbykevin.tradingbot.websocket.MyWebsocketFeed;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -24,8 +29,8 @@ import java.util.HashMap;
 import java.util.List;
 
 import static com.gamesbykevin.tradingbot.MainHelper.displayNextStatusUpdateDesc;
+import static com.gamesbykevin.tradingbot.calculator.Calculator.MY_TRADING_STRATEGIES;
 import static com.gamesbykevin.tradingbot.MainHelper.manageStatusUpdate;
-import static com.gamesbykevin.tradingbot.calculator.Calculator.ENDPOINT_TICKER;
 import static com.gamesbykevin.tradingbot.trade.TradeHelper.getDurationDesc;
 import static com.gamesbykevin.tradingbot.util.Email.sendEmail;
 import static com.gamesbykevin.tradingbot.util.JSon.getJsonResponse;
@@ -41,6 +46,7 @@ public class Main implements Runnable {
 
     //used to retrieve gdax products
     private ProductService productService;
+    private AccountService accountService;
 
     //web socket feed (unstable as it gives old price information sometimes)
     private MyWebsocketFeed websocketFeed;
@@ -104,6 +110,17 @@ public class Main implements Runnable {
             //load the properties from our application.properties
             PropertyUtil.loadProperties();
 
+            //simulate our products instead of trading, we don't need to connect
+            if (Simulator.SIMULATE != null) {
+
+                CalculatorHelper.populateStrategies();
+
+                PrintWriter writer = LogFile.getPrintWriter(LogFile.getFilenameSimulator(), LogFile.getLogDirectory());
+                Simulator.simulate(getTradingCurrencies(), MY_TRADING_STRATEGIES, AgentManager.TRADING_CANDLE, writer);
+                displayMessage("Simulation complete", writer);
+                return;
+            }
+
             SpringApplicationBuilder springApp = new SpringApplicationBuilder().properties(PropertyUtil.getProperties());
             springApp.sources(GdaxApiApplication.class);
             springApp.web(false);
@@ -136,6 +153,7 @@ public class Main implements Runnable {
         ConfigurableListableBeanFactory factory = context.getBeanFactory();
         ORDER_SERVICE = factory.getBean(OrderService.class);
         this.productService = factory.getBean(ProductService.class);
+        this.accountService = factory.getBean(AccountService.class);
 
         //display message of bot starting
         if (PAPER_TRADING) {
@@ -218,6 +236,10 @@ public class Main implements Runnable {
         //initialize
         init();
 
+        //check our wallets against the exchange when using real money
+        if (!PAPER_TRADING)
+            ReconcileService.getService().start(ORDER_SERVICE, accountService, getAgentManagers());
+
         //only need to create subscription once
         Subscribe subscribe = new Subscribe(getTradingCurrencies());
 
@@ -273,11 +295,8 @@ public class Main implements Runnable {
                                 //get the agent manager of the coin we want to trade
                                 AgentManager agentManager = getAgentManagers().get(getTradingCurrencies()[i]);
 
-                                //get json response from ticker
-                                final String json = getJsonResponse(String.format(ENDPOINT_TICKER, agentManager.getProductId()));
-
-                                //convert to pojo
-                                Ticker ticker = GSon.getGson().fromJson(json, Ticker.class);
+                                //get the latest ticker, from the market feed if another process is polling the exchange
+                                Ticker ticker = MarketFeed.getTicker(agentManager.getProductId());
 
                                 /*
                                 //get json response from order book
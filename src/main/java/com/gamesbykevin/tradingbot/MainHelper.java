@@ -1,13 +1,22 @@
 package com.gamesbykevin.tradingbot;
 
+import com.gamesbykevin.tradingbot.agent.AgentManager;
 import com.gamesbykevin.tradingbot.agent.AgentManagerHelper;
-import com.gamesbykevin.tradingbot.calculator.Calculator;
+import com.gamesbykevin.tradingbot.agent.EquityCurve;
+import com.gamesbykevin.tradingbot.agent.StatusService;
+import com.gamesbykevin.tradingbot.calculator.CalculatorSnapshot;
 import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
+import com.gamesbykevin.tradingbot.order.OrderNetting;
 import com.gamesbykevin.tradingbot.trade.TradeHelper;
+import com.gamesbykevin.tradingbot.util.Notifier;
+import com.gamesbykevin.tradingbot.wallet.ReconcileService;
+
+import java.util.List;
 
 import static com.gamesbykevin.tradingbot.Main.FUNDS;
 import static com.gamesbykevin.tradingbot.Main.NOTIFICATION_DELAY;
+import static com.gamesbykevin.tradingbot.Main.PAPER_TRADING;
 import static com.gamesbykevin.tradingbot.Main.getTradingCurrencies;
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.round;
 import static com.gamesbykevin.tradingbot.calculator.Calculation.getRecent;
@@ -29,50 +38,13 @@ public class MainHelper {
     //how long has the bot been running
     protected static final long START = System.currentTimeMillis();
 
-    //keep a list of our totals and desc
-    private static double[] TOTALS;
-    private static String[] DESC;
-
     protected static void manageStatusUpdate(Main main) {
 
-        //text of our notification message
-        String subject = "", text = "";
-
-        //how much did we start with
-        text = "Started with $" + FUNDS + NEW_LINE;
-
-        //how long has the bot been running
-        text += "Bot Running: " + TradeHelper.getDurationDesc(System.currentTimeMillis() - START) + NEW_LINE;
-
-        //show the sma summary so we are aware of our progress
-        if (PERIODS_SMA > 0)
-            text += getSmaSummary(main) + NEW_LINE + NEW_LINE;
-
-        double total = 0;
-
-        //print the summary of each agent manager
-        for (int i = 0; i < getTradingCurrencies().length; i++) {
-
-            //get the total assets for the current product
-            final double assets = main.getAgentManagers().get(getTradingCurrencies()[i]).getTotalAssets();
-
-            //add to our total
-            total += assets;
-
-            //add to our details
-            text += main.getAgentManagers().get(getTradingCurrencies()[i]).getProductId() + " - $" + round(assets) + NEW_LINE;
-
-            //display each agent's funds as well
-            text += AgentManagerHelper.getAgentDetails(main.getAgentManagers().get(getTradingCurrencies()[i]));
-
-            //add line break in the end
-            text += NEW_LINE;
-        }
-
-        text = text + NEW_LINE;
+        //our totals are kept up to date as each agent is updated
+        final double total = StatusService.getService().getTotal();
 
         //format our message
-        subject = "Total assets $" + round(total);
+        final String subject = "Total assets $" + round(total);
 
         if (total != TOTAL_PREVIOUS) {
 
@@ -92,10 +64,10 @@ public class MainHelper {
         //if enough time has passed send ourselves a notification
         if (System.currentTimeMillis() - PREVIOUS_TIME >= NOTIFICATION_DELAY) {
 
-            String desc = getProgressSummary(main) + NEW_LINE + NEW_LINE + NEW_LINE + text;
+            String desc = getProgressSummary(main) + NEW_LINE + NEW_LINE + NEW_LINE + getStatusDetails(main);
 
             //send our total assets in an email
-            sendEmail(subject, desc);
+            sendEmail(Notifier.Topic.Status, subject, desc);
 
             //write summary to log
             displayMessage(desc, main.getWriter());
@@ -105,6 +77,59 @@ public class MainHelper {
         }
     }
 
+    /**
+     * Details of each product and agent, only built when we send a notification
+     * @param main
+     * @return
+     */
+    private static String getStatusDetails(Main main) {
+
+        //how much did we start with
+        String text = "Started with $" + FUNDS + NEW_LINE;
+
+        //how long has the bot been running
+        text += "Bot Running: " + TradeHelper.getDurationDesc(System.currentTimeMillis() - START) + NEW_LINE;
+
+        //are our notifications keeping up
+        text += Notifier.getNotifier().getDesc() + NEW_LINE;
+
+        //how many exchange orders did we save
+        if (OrderNetting.ORDER_NETTING)
+            text += OrderNetting.getDesc() + NEW_LINE;
+
+        //are our wallets in line with the exchange
+        if (!PAPER_TRADING)
+            text += ReconcileService.getService().getDesc() + NEW_LINE;
+
+        //show the sma summary so we are aware of our progress
+        if (PERIODS_SMA > 0)
+            text += getSmaSummary(main) + NEW_LINE + NEW_LINE;
+
+        //the products ranked by most $ first
+        final List<String> products = StatusService.getService().getProducts();
+
+        //print the summary of each agent manager
+        for (int i = 0; i < products.size(); i++) {
+
+            final AgentManager manager = main.getAgentManagers().get(products.get(i));
+
+            //skip products we aren't trading
+            if (manager == null)
+                continue;
+
+            //add to our details
+            text += manager.getProductId() + " - $" + round(StatusService.getService().getTotal(products.get(i))) + NEW_LINE;
+
+            //display each agent's funds as well
+            text += AgentManagerHelper.getAgentDetails(manager);
+
+            //add line break in the end
+            text += NEW_LINE;
+        }
+
+        return text + NEW_LINE;
+    }
+
     /**
      * In this method we will display all the 200 period smas for each coin
      * @param main
@@ -116,7 +141,7 @@ public class MainHelper {
 
         for (int i = 0; i < getTradingCurrencies().length; i++) {
 
-            Calculator calc = main.getAgentManagers().get(getTradingCurrencies()[i]).getCalculator();
+            CalculatorSnapshot calc = main.getAgentManagers().get(getTradingCurrencies()[i]).getCalculator().getSnapshot();
 
             //get the recent values
             final double close = getRecent(calc.getHistory(), Fields.Close);
@@ -145,66 +170,29 @@ public class MainHelper {
         if (MY_TRADING_STRATEGIES == null)
             return result;
 
-        if (DESC == null || TOTALS == null) {
-
-            DESC = new String[MY_TRADING_STRATEGIES.length];
-            TOTALS = new double[MY_TRADING_STRATEGIES.length];
-
-        } else {
-
-            for (int i = 0; i < DESC.length; i++) {
-                DESC[i] = "";
-                TOTALS[i] = 0;
-            }
-        }
-
-        int index = 0;
+        //the strategies ranked by most $ first
+        final List<Strategy.Key> keys = StatusService.getService().getStrategies();
 
-        for (int i = 0; i < MY_TRADING_STRATEGIES.length; i++) {
+        for (int i = 0; i < keys.size(); i++) {
 
             //get the current strategy
-            final Strategy.Key key = MY_TRADING_STRATEGIES[i];
+            final Strategy.Key key = keys.get(i);
 
-            double total = 0;
+            //the equity statistics of the strategy across every product
+            EquityCurve.Stats stats = null;
 
-            for (int m = 0; m < main.getProducts().size(); m++) {
-                total += main.getAgentManagers().get(main.getProducts().get(m).getId()).getTotalAssets(key);
-            }
+            for (int m = 0; m < Main.getProducts().size(); m++) {
 
-            //assign our data
-            DESC[index] = key.toString() + " $" + round(total) + NEW_LINE;
-            TOTALS[index] = total;
-
-            //increase index
-            index++;
-        }
-
-        //sort by most $ first
-        for (int i = 0; i < TOTALS.length; i++) {
-
-            for (int j = i + 1; j < TOTALS.length; j++) {
-
-                //order if next is greater
-                if (TOTALS[j] > TOTALS[i]) {
-
-                    double tmp1 = TOTALS[i];
-                    double tmp2 = TOTALS[j];
-
-                    String desc1 = DESC[i];
-                    String desc2 = DESC[j];
-
-                    TOTALS[i] = tmp2;
-                    TOTALS[j] = tmp1;
-
-                    DESC[i] = desc2;
-                    DESC[j] = desc1;
+                final AgentManager manager = main.getAgentManagers().get(Main.getProducts().get(m).getId());
 
+                if (stats == null) {
+                    stats = manager.getEquityStats(key);
+                } else {
+                    stats.merge(manager.getEquityStats(key));
                 }
             }
-        }
 
-        for (int i = 0; i < DESC.length; i++) {
-            result += DESC[i];
+            result += key.toString() + " $" + round(StatusService.getService().getTotal(key)) + ((stats != null) ? ", " + stats.getDesc() : "") + NEW_LINE;
         }
 
         return result;
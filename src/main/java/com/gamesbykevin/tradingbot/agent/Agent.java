@@ -3,7 +3,6 @@ package com.gamesbykevin.tradingbot.agent;
 import com.coinbase.exchange.api.entity.Product;
 import com.coinbase.exchange.api.orders.Order;
 import com.gamesbykevin.tradingbot.Main;
-import com.gamesbykevin.tradingbot.calculator.Calculator;
 import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
 import com.gamesbykevin.tradingbot.calculator.Period;
 import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
@@ -11,15 +10,20 @@ import com.gamesbykevin.tradingbot.order.BasicOrderHelper.Action;
 import com.gamesbykevin.tradingbot.order.BasicOrderHelper.Status;
 import com.gamesbykevin.tradingbot.trade.Trade;
 import com.gamesbykevin.tradingbot.trade.TradeHelper;
+import com.gamesbykevin.tradingbot.trade.TradeStats;
 import com.gamesbykevin.tradingbot.util.LogFile;
+import com.gamesbykevin.tradingbot.wallet.ReconcileService;
 import com.gamesbykevin.tradingbot.wallet.Wallet;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import static com.gamesbykevin.tradingbot.Main.PAPER_TRADING_FEES;
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.*;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.parse;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toUnits;
 import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
 import static com.gamesbykevin.tradingbot.agent.AgentMessageHelper.*;
 import static com.gamesbykevin.tradingbot.calculator.Calculation.getRecent;
@@ -55,14 +59,44 @@ public class Agent {
     //the candle time of the order
     private long orderTime;
 
+    //the price of our order (fixed point units), parsed once instead of every update
+    private long orderPrice;
+
+    //our order while it is being created
+    private Future<Order> orderPending;
+
+    //the candle time of the order being created
+    private long orderPendingTime;
+
     //the candle duration we are trading
     private Candle candle;
 
+    //the strategy instance we last checked, so we can carry its state to the next snapshot
+    private Strategy strategy;
+
+    //what we displayed during our update, printed once every agent is done
+    private final StringBuffer output;
+
+    //the totals of our trades
+    private final TradeStats stats;
+
+    //our equity over time
+    private final EquityCurve equity;
+
     protected Agent(double funds, String productId, Strategy.Key strategyKey, Candle candle) {
 
         //create new list of transactions
         this.trades = new ArrayList<>();
 
+        //what we display while being updated
+        this.output = new StringBuffer();
+
+        //the totals of our completed trades
+        this.stats = new TradeStats();
+
+        //track our equity at the end of each candle
+        this.equity = new EquityCurve(candle);
+
         //store the product reference
         this.productId = productId;
 
@@ -82,25 +116,62 @@ public class Agent {
         setCandle(candle);
     }
 
-    public synchronized void update(Calculator calculator, Product product, double price, final boolean aboveSMA) {
+    /**
+     * Check the agent against the latest price.<br>
+     * The agent manager makes sure only one thread updates an agent at a time, so no lock is needed
+     * @param context The data shared by all agents for this price update
+     */
+    public void update(TickContext context) {
 
         //skip if we aren't allowed to trade
         if (hasStop())
             return;
 
+        //the product we are trading
+        final Product product = context.getProduct();
+
+        //the current price
+        final double price = context.getPrice();
+
+        //are we above the sma?
+        final boolean aboveSMA = context.isAboveSMA();
+
         //do we cancel the order?
         boolean cancel = false;
 
+        //apply any correction found when reconciling with the exchange
+        if (!Main.PAPER_TRADING)
+            ReconcileService.getService().apply(this);
+
+        //track our equity at the current price
+        getEquity().update(context.getPeriod().time, getWallet().getFunds() + (getWallet().getQuantity() * price), getWallet().getQuantityUnits() > 0);
+
         //locate our historical list
-        List<Period> history = calculator.getHistory();
+        List<Period> history = context.getSnapshot().getHistory();
 
         //locate the strategy
-        Strategy strategy = calculator.getStrategy(getStrategyKey());
+        Strategy strategy = context.getSnapshot().getStrategy(getStrategyKey());
+
+        //if this is a new snapshot carry forward the state of the previous strategy
+        if (this.strategy != null && this.strategy != strategy)
+            strategy.inherit(this.strategy);
+
+        //remember the strategy we are using
+        this.strategy = strategy;
+
+        //wait until our order is created, the other agents keep trading in the meantime
+        if (getOrderPending() != null) {
+
+            checkOrderPending();
+
+            if (getOrderPending() != null)
+                return;
+        }
 
         if (getOrder() != null) {
 
             //if the latest period does not match the order period a new period has started, cancel our order
-            if (history.get(history.size() - 1).time != getOrderTime())
+            if (context.getPeriod().time != getOrderTime())
                 cancel = true;
         }
 
@@ -120,9 +191,11 @@ public class Agent {
 
             }
 
-            //if an order was created track the create time
-            if (getOrder() != null)
-                setOrderTime(history.get(history.size() - 1).time);
+            //if an order was submitted track the create time, paper orders are created right away
+            if (getOrderPending() != null) {
+                this.orderPendingTime = context.getPeriod().time;
+                checkOrderPending();
+            }
 
         } else {
 
@@ -135,8 +208,8 @@ public class Agent {
             //what is the status of our order?
             Status status;
 
-            //what is the price of the order
-            final double orderPrice = Double.parseDouble(getOrder().getPrice());
+            //the current price in the same units as our order
+            final long priceUnits = toUnits(price);
 
             //display our pending order
             displayMessageOrderPending(this, price);
@@ -175,13 +248,13 @@ public class Agent {
                     if (selling) {
 
                         //the limit order will fill when the price goes at or above the order price
-                        if (price > orderPrice)
+                        if (priceUnits > orderPrice)
                             status = Status.Filled;
 
                     } else {
 
                         //the limit order will fill when the price goes at or below the order price
-                        if (price < orderPrice)
+                        if (priceUnits < orderPrice)
                             status = Status.Filled;
 
                     }
@@ -221,6 +294,10 @@ public class Agent {
                     //update the agent and trade status
                     trade.update(this);
 
+                    //record what we booked so it can be checked against the exchange fills
+                    if (!Main.PAPER_TRADING)
+                        ReconcileService.getService().book(this, getOrder().getId(), selling ? trade.getQuantitySellUnits() : trade.getQuantityBuyUnits(), selling ? trade.getFeeSellUnits() : trade.getFeeBuyUnits());
+
                     //display the trade summary AFTER we update the trade
                     displayTradeSummary(this, trade);
 
@@ -233,7 +310,10 @@ public class Agent {
                         //check the standing of our agent now that we have sold successfully
                         checkStanding(this);
 
-                        //set to null so next trade will create a new log file
+                        //close so next trade will create a new log file
+                        if (this.writer != null)
+                            this.writer.close();
+
                         this.writer = null;
                     }
 
@@ -287,7 +367,8 @@ public class Agent {
 
     protected double getAssets() {
 
-        if (getTrades().isEmpty())
+        //without any quantity we only have our funds, and a new trade doesn't have a price yet
+        if (getTrades().isEmpty() || getWallet().getQuantityUnits() == 0)
             return getWallet().getFunds();
 
         return (getWallet().getQuantity() * getTrade().getCurrentPrice()) + getWallet().getFunds();
@@ -301,18 +382,70 @@ public class Agent {
         return this.writer;
     }
 
+    public StringBuffer getOutput() {
+        return this.output;
+    }
+
+    /**
+     * Move what we displayed to the console text and flush our log file
+     * @param console Where we add our messages
+     */
+    public void flushOutput(StringBuilder console) {
+
+        synchronized (this.output) {
+            console.append(this.output);
+            this.output.setLength(0);
+        }
+
+        if (this.writer != null)
+            this.writer.flush();
+    }
+
     public String getProductId() {
         return this.productId;
     }
 
     public void setOrder(final Order order) {
         this.order = order;
+        this.orderPrice = (order == null || order.getPrice() == null) ? 0 : parse(order.getPrice());
     }
 
     public Order getOrder() {
         return this.order;
     }
 
+    public void setOrderPending(final Future<Order> orderPending) {
+        this.orderPending = orderPending;
+    }
+
+    public Future<Order> getOrderPending() {
+        return this.orderPending;
+    }
+
+    private void checkOrderPending() {
+
+        //the order is still being created
+        if (!getOrderPending().isDone())
+            return;
+
+        try {
+
+            //the order is done so this won't wait
+            setOrder(getOrderPending().get());
+
+        } catch (Exception e) {
+
+            displayMessage(e, getWriter());
+            setOrder(null);
+        }
+
+        setOrderPending(null);
+
+        //track the candle time of when we created the order
+        if (getOrder() != null)
+            setOrderTime(this.orderPendingTime);
+    }
+
     public Wallet getWallet() {
         return this.wallet;
     }
@@ -333,6 +466,14 @@ public class Agent {
         return getTrades().get(getTrades().size() - 1);
     }
 
+    public TradeStats getStats() {
+        return this.stats;
+    }
+
+    public EquityCurve getEquity() {
+        return this.equity;
+    }
+
     public long getOrderTime() {
         return this.orderTime;
     }
@@ -82,10 +82,10 @@ public class AgentHelper {
         }
 
         //if our money has gone up, increase the stop trading limit
-        if (agent.getWallet().getFunds() > agent.getWallet().getFundsBeforeTrade()) {
+        if (agent.getWallet().getFundsUnits() > agent.getWallet().getFundsBeforeTradeUnits()) {
 
             final double oldLimit = (STOP_TRADING_RATIO * agent.getWallet().getFundsBeforeTrade());
-            agent.getWallet().setFundsBeforeTrade(agent.getWallet().getFunds());
+            agent.getWallet().setFundsBeforeTrade(agent.getWallet().getFundsUnits());
             final double newLimit = (STOP_TRADING_RATIO * agent.getWallet().getFundsBeforeTrade());
             displayMessageLimitIncrease(agent, oldLimit, newLimit);
         }
@@ -118,19 +118,6 @@ public class AgentHelper {
         return "Owned Stock: " + round(agent.getWallet().getQuantity());
     }
 
-    protected static boolean hasDecline(double[] price) {
-
-        for (int i = 0; i < price.length - 1; i++) {
-
-            //if the next price is more than the current or 0, we can't confirm decline yet
-            if (price[i] < price[i + 1] || price[i] <= 0 || price[i + 1] <= 0)
-                return false;
-        }
-
-        //every value continued to go down, so we have a decline
-        return true;
-    }
-
     protected static void checkBuy(Agent agent, Strategy strategy, List<Period> history, Product product, double price, final boolean aboveSMA) {
 
         //if we need to wait for the next candle period we won't continue
@@ -142,10 +129,11 @@ public class AgentHelper {
         }
 
         //check for a buy signal
-        boolean buy = strategy.hasBuySignal(agent, history, price);
+        boolean buy = strategy.checkBuySignal(agent, history, price);
 
-        //display our data
-        strategy.displayData(agent, buy);
+        //display our data when it is written with our buy
+        if (buy)
+            strategy.displayData(agent, true);
 
         //we will buy if there is a reason
         if (buy) {
@@ -186,7 +174,7 @@ public class AgentHelper {
             displayMessage(agent, "Current Price $" + price + ", Hard stop $" + round(trade.getHardStopPrice()) + ", Hard sell $" + round(trade.getHardSellPrice()), true);
 
             //create and assign our limit order
-            agent.setOrder(createLimitOrder(agent, Action.Buy, product, price, aboveSMA));
+            agent.setOrderPending(createLimitOrder(agent, Action.Buy, product, price, aboveSMA));
 
         } else {
 
@@ -210,7 +198,7 @@ public class AgentHelper {
         trade.setReasonSell(null);
 
         //check our strategy for a sell signal, and check the child as well
-        if (strategy.hasSellSignal(agent, history, price))
+        if (strategy.checkSellSignal(agent, history, price))
             trade.setReasonSell(ReasonSell.Reason_Strategy);
 
         //if we are above the sma and the price is less, let's wait for it to turn around
@@ -218,7 +206,7 @@ public class AgentHelper {
         //    trade.setReasonSell(null);
 
         //if $ declines we sell, else we update the $ history
-        if (hasDecline(trade.getPriceHistory())) {
+        if (trade.getExit().hasDecline()) {
             trade.setReasonSell(ReasonSell.Reason_PriceDecline);
         } else {
             trade.updatePriceHistory(price);
@@ -257,13 +245,23 @@ public class AgentHelper {
                 //adjust our hard stop $ in case we have a better price
                 trade.goShort(agent, price - increase);
             }
+
+            //move our hard stop up with our trailing stop / take profit ladder
+            final double stop = trade.getExit().getStop(trade, price, history.get(history.size() - 1).time);
+
+            if (stop > 0)
+                trade.goShort(agent, stop);
         }
 
-        //display our data
-        strategy.displayData(agent, trade.getReasonSell() != null);
+        //if we held the trade too long, sell
+        if (trade.getReasonSell() == null && trade.getExit().hasTimeStop(trade, history.get(history.size() - 1).time))
+            trade.setReasonSell(ReasonSell.Reason_TimeStop);
 
-        //display recent stock prices
-        displayMessagePriceDecline(agent);
+        //display our data and recent stock prices when they are written with our sell
+        if (trade.getReasonSell() != null) {
+            strategy.displayData(agent, true);
+            displayMessagePriceDecline(agent);
+        }
 
         //if there is a reason to sell then we will sell
         if (trade.getReasonSell() != null) {
@@ -275,7 +273,7 @@ public class AgentHelper {
             trade.setAttempts(0);
 
             //create and assign our limit order at the current $
-            agent.setOrder(createLimitOrder(agent, Action.Sell, product, price, aboveSMA));
+            agent.setOrderPending(createLimitOrder(agent, Action.Sell, product, price, aboveSMA));
 
             //we want to wait until the next candle period before we check to buy stock again after this sells
             strategy.setWait(true);
@@ -3,15 +3,18 @@ package com.gamesbykevin.tradingbot.agent;
 import com.coinbase.exchange.api.entity.Product;
 import com.gamesbykevin.tradingbot.calculator.Calculator;
 import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.CalculatorSnapshot;
 import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
 import com.gamesbykevin.tradingbot.util.Email;
 import com.gamesbykevin.tradingbot.util.LogFile;
+import com.gamesbykevin.tradingbot.util.Notifier;
 import com.sun.org.apache.bcel.internal.generic.NEW;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.round;
 import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.*;
@@ -32,7 +35,10 @@ public class AgentManager {
     private Calculator calculator;
 
     //are we updating the agent?
-    private boolean working = false;
+    private final AtomicBoolean working = new AtomicBoolean(false);
+
+    //is there a price we haven't evaluated yet?
+    private final AtomicBoolean pending = new AtomicBoolean(false);
 
     //the product we are trading
     private final Product product;
@@ -44,7 +50,7 @@ public class AgentManager {
     private final double funds;
 
     //current product price
-    private double price;
+    private volatile double price;
 
     //which candle we want to start trading
     public static Candle TRADING_CANDLE;
@@ -78,45 +84,52 @@ public class AgentManager {
             //add agent to the list
             getAgents().add(agent);
         }
+
+        //add our agents to the status rankings
+        StatusService.getService().update(this);
+
+        //candle data is refreshed in the background so our price updates never wait on a rest call
+        getCalculator().start(this);
     }
 
-    public synchronized void update(final double price) {
+    public void update(final double price) {
 
         //if all agents have stopped trading don't continue
         if (hasStoppedTrading())
             return;
 
-        //don't continue if we are currently working
-        if (working)
-            return;
-
-        //store our object references
+        //store the latest price, if we are currently working it will be evaluated when done
         this.price = price;
+        this.pending.set(true);
+
+        //keep going as long as there is a new price and no one else is working
+        while (pending.get() && working.compareAndSet(false, true)) {
 
-        //flag that this agent is working
-        working = true;
+            try {
 
-        try {
+                //we are evaluating the latest price
+                pending.set(false);
 
-            //update our calculator, etc...
-            updateCalculators(this);
+                //update our agents
+                updateAgents(this);
 
-            //update our agents
-            updateAgents(this);
+                //apply the change of each agent's assets to our totals / rankings
+                StatusService.getService().update(this);
 
-            //track if we go below / above sma
-            checkSMA();
+                //track if we go below / above sma
+                checkSMA();
 
-        } catch (Exception ex) {
+            } catch (Exception ex) {
 
-            //print stack trace and write exception to log file
-            ex.printStackTrace();
-            displayMessage(ex, getWriter());
+                //print stack trace and write exception to log file
+                ex.printStackTrace();
+                displayMessage(ex, getWriter());
 
-        } finally {
+            } finally {
 
-            //last step is to make that we are done working
-            working = false;
+                //last step is to make that we are done working
+                working.set(false);
+            }
         }
     }
 
@@ -125,15 +138,18 @@ public class AgentManager {
      */
     private void checkSMA() {
 
-        if (PERIODS_SMA < 1 || getCalculator().getObjSMA().getSma().isEmpty())
+        //get the latest calculated data
+        final CalculatorSnapshot snapshot = getCalculator().getSnapshot();
+
+        if (PERIODS_SMA < 1 || snapshot.getObjSMA().getSma().isEmpty())
             return;
 
         //info for our message
         String subject = null, text = "";
 
         //get the recent values
-        final double close = getRecent(getCalculator().getHistory(), Fields.Close);
-        final double sma = getRecent(getCalculator().getObjSMA().getSma());
+        final double close = getRecent(snapshot.getHistory(), Fields.Close);
+        final double sma = getRecent(snapshot.getObjSMA().getSma());
 
         //if there is a significant change in  SMA notify the user
         if (!initialize || (belowSMA && close > sma) || (!belowSMA && close < sma)) {
@@ -161,19 +177,19 @@ public class AgentManager {
             for (int index = 1; index <= 5; index++) {
 
                 //skip if out of bounds
-                if (index > getCalculator().getHistory().size())
+                if (index > snapshot.getHistory().size())
                     break;
-                if (index > getCalculator().getObjSMA().getSma().size())
+                if (index > snapshot.getObjSMA().getSma().size())
                     break;
 
-                text += "Index: " + index + ", Close $" + getRecent(getCalculator().getHistory(), Fields.Close, index) +
-                        ", SMA $" + round(getRecent(getCalculator().getObjSMA().getSma(), index)) + NEW_LINE;
+                text += "Index: " + index + ", Close $" + getRecent(snapshot.getHistory(), Fields.Close, index) +
+                        ", SMA $" + round(getRecent(snapshot.getObjSMA().getSma(), index)) + NEW_LINE;
             }
 
             //notify
             displayMessage(subject, getWriter());
             displayMessage(text, getWriter());
-            Email.sendEmail(subject, text);
+            Email.sendEmail(Notifier.Topic.Sma, subject, text);
         }
     }
 
@@ -218,6 +234,34 @@ public class AgentManager {
         return agent.getAssets();
     }
 
+    /**
+     * Get the equity statistics of every agent trading this product combined
+     * @return The combined statistics
+     */
+    public EquityCurve.Stats getEquityStats() {
+        return getEquityStats(null);
+    }
+
+    /**
+     * Get the equity statistics of the agents using the strategy combined
+     * @param key The strategy, null for every agent
+     * @return The combined statistics
+     */
+    public EquityCurve.Stats getEquityStats(Strategy.Key key) {
+
+        final EquityCurve.Stats stats = new EquityCurve.Stats(TRADING_CANDLE == null ? 1 : EquityCurve.getPeriodsPerYear(TRADING_CANDLE));
+
+        for (int i = 0; i < getAgents().size(); i++) {
+
+            Agent agent = getAgents().get(i);
+
+            if (key == null || agent.getStrategyKey() == key)
+                stats.merge(agent.getEquity().getStats());
+        }
+
+        return stats;
+    }
+
     public PrintWriter getWriter() {
 
         //create our object to write to a text file
@@ -1,89 +1,140 @@
 package com.gamesbykevin.tradingbot.agent;
 
-import com.gamesbykevin.tradingbot.calculator.Calculator;
+import com.gamesbykevin.tradingbot.Main;
+import com.gamesbykevin.tradingbot.calculator.CalculatorSnapshot;
 import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
+import com.gamesbykevin.tradingbot.order.OrderNetting;
 import com.gamesbykevin.tradingbot.util.PropertyUtil;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.gamesbykevin.tradingbot.calculator.Calculation.getRecent;
 import static com.gamesbykevin.tradingbot.calculator.Calculator.HISTORICAL_PERIODS_MINIMUM;
 import static com.gamesbykevin.tradingbot.calculator.Calculator.PERIODS_SMA;
 import static com.gamesbykevin.tradingbot.trade.TradeHelper.NEW_LINE;
+import static com.gamesbykevin.tradingbot.util.Email.getTextDateDesc;
 
 public class AgentManagerHelper {
 
-    protected static void updateCalculators(AgentManager manager) {
+    /**
+     * How many threads are used to update the agents, shared by every product
+     */
+    public static int AGENT_THREADS = Runtime.getRuntime().availableProcessors();
 
-        //update each calculator
-        manager.getCalculator().update(manager);
+    //pool used to update our agents in parallel
+    private static ForkJoinPool POOL;
+
+    private static synchronized ForkJoinPool getPool() {
+
+        //create the pool if it does not exist
+        if (POOL == null)
+            POOL = new ForkJoinPool(AGENT_THREADS);
+
+        return POOL;
     }
 
-    protected static void updateAgents(AgentManager manager) {
+    protected static void updateAgents(AgentManager manager) throws InterruptedException {
+
+        //every agent will look at the same snapshot
+        final CalculatorSnapshot snapshot = manager.getCalculator().getSnapshot();
+
+        //make sure we have enough data before we start trading
+        if (snapshot.getHistory().size() < HISTORICAL_PERIODS_MINIMUM) {
+
+            //we are not ready to trade yet
+            displayMessage(manager.getProductId() + ": Not enough periods to trade yet (" + snapshot.getCandle().description + ")- " + snapshot.getHistory().size() + " < " + HISTORICAL_PERIODS_MINIMUM, null);
+            return;
+        }
+
+        //everything the agents share is calculated once
+        final TickContext context = new TickContext(snapshot, manager.getProduct(), manager.getPrice(), isAboveSMA(snapshot));
+
+        //each agent is updated in its own task
+        List<Callable<Void>> tasks = new ArrayList<>(manager.getAgents().size());
 
-        //update each agent
         for (int i = 0; i < manager.getAgents().size(); i++) {
 
-            try {
+            //get our agent
+            final Agent agent = manager.getAgents().get(i);
 
-                //get our agent
-                Agent agent = manager.getAgents().get(i);
+            //no need to check agents that stopped trading
+            if (agent.hasStop())
+                continue;
 
-                //get the calculator for the candle the agent is assigned
-                Calculator calculator = manager.getCalculator();
+            tasks.add(() -> {
 
-                //make sure we have enough data before we start trading
-                if (calculator.getHistory().size() < HISTORICAL_PERIODS_MINIMUM) {
+                try {
 
-                    //we are not ready to trade yet
-                    displayMessage(manager.getProductId() + ": Not enough periods to trade yet (" + calculator.getCandle().description + ")- " + calculator.getHistory().size() + " < " + HISTORICAL_PERIODS_MINIMUM, null);
+                    //update the agent
+                    agent.update(context);
 
-                } else {
+                } catch (Exception ex1) {
 
-                    //are we above our sma?
-                    boolean aboveSMA = true;
+                    //if there is an exception we don't want to impact all agents
+                    ex1.printStackTrace();
+                    displayMessage(ex1, manager.getWriter());
+                }
 
-                    //only check if we have data to compare
-                    if (PERIODS_SMA > 0) {
+                return null;
+            });
+        }
 
-                        final int confirm = 3;
+        //wait until all agents are done
+        getPool().invokeAll(tasks);
 
-                        //if we have more than x periods, let's confirm we are above the sma
-                        if (PERIODS_SMA >= confirm) {
+        //now that no agent is waiting, print what they displayed
+        displayOutput(manager);
 
-                            for (int index = 1; index <= confirm; index++) {
+        //send the combined orders of our agents
+        if (!Main.PAPER_TRADING && OrderNetting.ORDER_NETTING)
+            OrderNetting.getNetting(manager.getProductId()).flush();
+    }
 
-                                double close = calculator.getHistory().get(calculator.getHistory().size() - index).close;
-                                double sma = getRecent(calculator.getObjSMA(), index);
+    /**
+     * Are we above our sma? the recent closes are checked to confirm
+     * @param snapshot The latest calculated data
+     * @return true if we are above the sma (or we aren't using one), false otherwise
+     */
+    private static boolean isAboveSMA(CalculatorSnapshot snapshot) {
 
-                                if (close < sma) {
-                                    aboveSMA = false;
-                                    break;
-                                }
-                            }
+        //are we above our sma?
+        boolean aboveSMA = true;
 
-                        } else {
+        //only check if we have data to compare
+        if (PERIODS_SMA > 0) {
 
-                            //get the $ for comparison
-                            final double close = calculator.getHistory().get(calculator.getHistory().size() - 1).close;
-                            final double sma = getRecent(calculator.getObjSMA().getSma());
+            final int confirm = 3;
 
-                            //are we above?
-                            aboveSMA = (close > sma);
-                        }
-                    }
+            //if we have more than x periods, let's confirm we are above the sma
+            if (PERIODS_SMA >= confirm) {
 
-                    //update the agent
-                    agent.update(manager.getCalculator(), manager.getProduct(), manager.getPrice(), aboveSMA);
+                for (int index = 1; index <= confirm; index++) {
+
+                    double close = snapshot.getHistory().get(snapshot.getHistory().size() - index).close;
+                    double sma = getRecent(snapshot.getObjSMA(), index);
+
+                    if (close < sma) {
+                        aboveSMA = false;
+                        break;
+                    }
                 }
 
-            } catch (Exception ex1) {
+            } else {
 
-                //if there is an exception we don't want to impact all agents
-                ex1.printStackTrace();
-                displayMessage(ex1, manager.getWriter());
+                //get the $ for comparison
+                final double close = snapshot.getHistory().get(snapshot.getHistory().size() - 1).close;
+                final double sma = getRecent(snapshot.getObjSMA().getSma());
+
+                //are we above?
+                aboveSMA = (close > sma);
             }
         }
+
+        return aboveSMA;
     }
 
     protected static void displayMessage(String message, PrintWriter writer) {
@@ -94,48 +145,58 @@ public class AgentManagerHelper {
         PropertyUtil.displayMessage(e, writer);
     }
 
+    /**
+     * Display the agent's message. Agents are updated in parallel, so the message is kept by the agent and printed
+     * once every agent is done, rather than each agent waiting on our console and log files
+     * @param agent The agent
+     * @param message The message
+     * @param write Do we also write the message to the agent's log file
+     */
     public static void displayMessage(Agent agent, String message, boolean write) {
-        displayMessage(agent.getProductId() + "-" + agent.getStrategyKey() + " " + message, write ? agent.getWriter() : null);
+
+        final String text = agent.getProductId() + "-" + agent.getStrategyKey() + " " + message;
+
+        agent.getOutput().append(text).append(NEW_LINE);
+
+        //the agent's log file is buffered and flushed with our output
+        if (write)
+            agent.getWriter().println(getTextDateDesc() + ":  " + text);
     }
 
-    public static String getAgentDetails(AgentManager manager) {
+    /**
+     * Print the messages of every agent to our console at once, and flush their log files
+     * @param manager The agent manager of the product
+     */
+    protected static void displayOutput(AgentManager manager) {
 
-        String result = NEW_LINE;
+        final StringBuilder console = new StringBuilder();
 
-        //sort the agents to show which are most profitable
         for (int i = 0; i < manager.getAgents().size(); i++) {
-            for (int j = i; j < manager.getAgents().size(); j++) {
-
-                //don't check the same agent
-                if (i == j)
-                    continue;
+            manager.getAgents().get(i).flushOutput(console);
+        }
 
-                Agent agent1 = manager.getAgents().get(i);
-                Agent agent2 = manager.getAgents().get(j);
+        //remove the last new line since our console adds one
+        if (console.length() > 0)
+            PropertyUtil.printConsole(console.substring(0, console.length() - NEW_LINE.length()));
+    }
 
-                double assets1 = agent1.getAssets();
-                double assets2 = agent2.getAssets();
+    public static String getAgentDetails(AgentManager manager) {
 
-                //if the next agent has more funds, switch
-                if (assets2 > assets1) {
+        String result = NEW_LINE;
 
-                    //switch positions of our agents
-                    manager.getAgents().set(i, agent2);
-                    manager.getAgents().set(j, agent1);
-                }
-            }
-        }
+        //the agents ranked by most profitable
+        final List<Agent> agents = StatusService.getService().getAgents(manager.getProductId());
 
         //message with all agent totals
-        for (int i = 0; i < manager.getAgents().size(); i++) {
+        for (int i = 0; i < agents.size(); i++) {
 
-            Agent agent = manager.getAgents().get(i);
+            Agent agent = agents.get(i);
 
             //start with product, strategy, candle description
             result += manager.getProductId() + " : " + agent.getStrategyKey() + " (" + agent.getCandle().description + ")";
 
             //how much $ does the agent currently have
-            result += " - $" + AgentHelper.round(agent.getAssets());
+            result += " - $" + AgentHelper.round(StatusService.getService().getAssets(agent));
 
             if (agent.hasStop()) {
                 //if this agent has stopped trading, include it in the message
@@ -145,6 +206,9 @@ public class AgentManagerHelper {
                 result += ", (Pending)";
             }
 
+            //how is the equity of the agent doing
+            result += NEW_LINE + "    " + agent.getEquity().getStats().getDesc();
+
             //make new line
             result += NEW_LINE;
         }
@@ -4,6 +4,7 @@ import com.gamesbykevin.tradingbot.trade.Trade;
 import com.gamesbykevin.tradingbot.trade.Trade.Result;
 import com.gamesbykevin.tradingbot.trade.TradeHelper;
 import com.gamesbykevin.tradingbot.util.Email;
+import com.gamesbykevin.tradingbot.util.Notifier;
 
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.round;
 import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
@@ -41,7 +42,7 @@ public class AgentMessageHelper {
         message += TradeHelper.getDescLost(agent) + NEW_LINE;
 
         //send email notification
-        Email.sendEmail(subject + " (" + agent.getProductId() + "-" + agent.getStrategyKey() + ")", message);
+        Email.sendEmail(Notifier.Topic.Transaction, subject + " (" + agent.getProductId() + "-" + agent.getStrategyKey() + ")", message);
     }
 
     protected static void displayMessageAllTradesSummary(Agent agent) {
@@ -56,6 +57,9 @@ public class AgentMessageHelper {
         //display average transaction time
         displayMessage(agent, TradeHelper.getAverageDurationDesc(agent), true);
 
+        //display how the strategy is doing across all agents
+        displayMessage(agent, TradeHelper.getDescStrategy(agent), true);
+
         //display the total $ amount invested in stocks
         displayMessage(agent, AgentHelper.getStockInvestmentDesc(agent), true);
 
@@ -0,0 +1,297 @@
+package com.gamesbykevin.tradingbot.agent;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+
+/**
+ * The equity (funds + stock at the current price) of an agent over time.<br>
+ * The equity at the end of each candle is kept in a ring buffer, and the drawdown, return, exposure and turnover
+ * statistics are updated as each value arrives, so the cost of a sample never grows with how long the agent runs
+ */
+public class EquityCurve {
+
+    /**
+     * How many candles of equity do we keep
+     */
+    public static int EQUITY_SAMPLES = 1024;
+
+    //seconds in a year, used to annualize our ratios
+    private static final double SECONDS_PER_YEAR = 365d * 24 * 60 * 60;
+
+    //the equity at the end of each candle
+    private final float[] samples;
+
+    //how many samples have been added
+    private long count;
+
+    //the candle time and equity of the latest sample
+    private long time;
+    private double last;
+
+    //the equity of the current candle, added once the candle ends
+    private double pending;
+    private long pendingTime;
+    private boolean pendingHolding;
+
+    //our statistics
+    private final Stats stats;
+
+    public EquityCurve(Candle candle) {
+        this.samples = new float[EQUITY_SAMPLES];
+        this.stats = new Stats(getPeriodsPerYear(candle));
+    }
+
+    /**
+     * How many candles are in a year
+     * @param candle The candle
+     * @return The number of candles, used to annualize our ratios
+     */
+    public static double getPeriodsPerYear(Candle candle) {
+        return SECONDS_PER_YEAR / candle.duration;
+    }
+
+    /**
+     * Update the equity with the current price
+     * @param time The candle time (seconds)
+     * @param equity Our funds + stock at the current price
+     * @param holding Do we currently hold stock
+     */
+    public void update(final long time, final double equity, final boolean holding) {
+
+        //the drawdown includes every price, not only the end of each candle
+        stats.addEquity(equity);
+
+        //a new candle has started, add the equity the previous candle ended with
+        if (pendingTime != 0 && time != pendingTime)
+            add(pendingTime, pending, pendingHolding);
+
+        this.pending = equity;
+        this.pendingTime = time;
+        this.pendingHolding = holding;
+    }
+
+    private void add(final long time, final double equity, final boolean holding) {
+
+        samples[(int)(count % samples.length)] = (float)equity;
+        count++;
+
+        stats.addSample(this.last, equity, holding);
+
+        this.time = time;
+        this.last = equity;
+    }
+
+    /**
+     * Track the $ of a buy / sell that filled
+     * @param amount The $ of the order
+     */
+    public void addTraded(final double amount) {
+        stats.addTraded(amount);
+    }
+
+    /**
+     * Get the equity at the end of the latest candle
+     * @return The equity, 0 if no candle has ended
+     */
+    public double getLatest() {
+        return this.last;
+    }
+
+    /**
+     * Get our equity curve
+     * @return The equity at the end of each candle, oldest to newest
+     */
+    public double[] toArray() {
+
+        final int size = (int)Math.min(count, samples.length);
+        final double[] result = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            result[i] = samples[(int)((count - size + i) % samples.length)];
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the candle time of the latest sample
+     * @return Epoch time (seconds), 0 if no candle has ended
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    public Stats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Statistics of an equity curve, each can be combined with others to summarize a product or strategy
+     */
+    public static class Stats {
+
+        //how many of the return samples are in a year
+        private final double periodsPerYear;
+
+        //the highest equity, the current and the largest drawdown (ratio)
+        private double peak, drawdown, drawdownMax;
+
+        //how many returns do we have, the mean and sum of squared differences (Welford)
+        private long returns;
+        private double mean, m2;
+
+        //sum of the squared negative returns
+        private double downside;
+
+        //how many samples did we hold stock
+        private long samples, holding;
+
+        //the average equity of our samples
+        private double equityMean;
+
+        //the total $ bought and sold
+        private double traded;
+
+        public Stats(double periodsPerYear) {
+            this.periodsPerYear = periodsPerYear;
+        }
+
+        private synchronized void addEquity(double equity) {
+
+            if (equity > peak)
+                peak = equity;
+
+            drawdown = (peak <= 0) ? 0 : (peak - equity) / peak;
+
+            if (drawdown > drawdownMax)
+                drawdownMax = drawdown;
+        }
+
+        private synchronized void addSample(double previous, double equity, boolean holding) {
+
+            samples++;
+
+            if (holding)
+                this.holding++;
+
+            equityMean += (equity - equityMean) / samples;
+
+            //we need a previous sample to have a return
+            if (previous <= 0)
+                return;
+
+            final double value = (equity / previous) - 1;
+
+            returns++;
+
+            final double delta = value - mean;
+            mean += delta / returns;
+            m2 += delta * (value - mean);
+
+            if (value < 0)
+                downside += value * value;
+        }
+
+        private synchronized void addTraded(double amount) {
+            traded += amount;
+        }
+
+        /**
+         * Add the statistics of another curve to ours, the curves should use the same candle
+         * @param other The statistics we are adding
+         */
+        public synchronized void merge(Stats other) {
+
+            synchronized (other) {
+
+                //combine the mean / variance of both (Chan et al)
+                if (other.returns > 0) {
+
+                    final long total = returns + other.returns;
+                    final double delta = other.mean - mean;
+
+                    m2 += other.m2 + (delta * delta * returns * other.returns / total);
+                    mean += delta * other.returns / total;
+                    returns = total;
+                }
+
+                downside += other.downside;
+
+                if (samples + other.samples > 0)
+                    equityMean = ((equityMean * samples) + (other.equityMean * other.samples)) / (samples + other.samples);
+
+                samples += other.samples;
+                holding += other.holding;
+                traded += other.traded;
+
+                //the worst of both
+                drawdown = Math.max(drawdown, other.drawdown);
+                drawdownMax = Math.max(drawdownMax, other.drawdownMax);
+            }
+        }
+
+        /**
+         * The current drawdown
+         * @return How far (ratio) we are below our highest equity
+         */
+        public synchronized double getDrawdown() {
+            return this.drawdown;
+        }
+
+        /**
+         * The largest drawdown
+         * @return The largest (ratio) we have been below our highest equity
+         */
+        public synchronized double getDrawdownMax() {
+            return this.drawdownMax;
+        }
+
+        /**
+         * The annualized sharpe ratio, without a risk free rate
+         * @return The sharpe ratio, 0 if we don't have enough returns
+         */
+        public synchronized double getSharpe() {
+
+            if (returns < 2 || m2 <= 0)
+                return 0;
+
+            return (mean / Math.sqrt(m2 / (returns - 1))) * Math.sqrt(periodsPerYear);
+        }
+
+        /**
+         * The annualized sortino ratio, only the negative returns count as risk
+         * @return The sortino ratio, 0 if we don't have enough returns
+         */
+        public synchronized double getSortino() {
+
+            if (returns < 2 || downside <= 0)
+                return 0;
+
+            return (mean / Math.sqrt(downside / returns)) * Math.sqrt(periodsPerYear);
+        }
+
+        /**
+         * How much of the time did we hold stock
+         * @return The ratio of candles we held stock
+         */
+        public synchronized double getTimeInMarket() {
+            return (samples == 0) ? 0 : (double)holding / samples;
+        }
+
+        /**
+         * How many times did we trade our equity
+         * @return The $ bought and sold compared to our average equity
+         */
+        public synchronized double getTurnover() {
+            return (equityMean <= 0) ? 0 : traded / equityMean;
+        }
+
+        /**
+         * Description of our statistics
+         * @return Drawdown, sharpe, sortino, time in market and turnover
+         */
+        public synchronized String getDesc() {
+            return String.format("DD %.2f%% (max %.2f%%), Sharpe %.2f, Sortino %.2f, In market %.1f%%, Turnover %.2f",
+                getDrawdown() * 100, getDrawdownMax() * 100, getSharpe(), getSortino(), getTimeInMarket() * 100, getTurnover());
+        }
+    }
+}
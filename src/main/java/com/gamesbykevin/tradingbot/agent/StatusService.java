@@ -0,0 +1,165 @@
+package com.gamesbykevin.tradingbot.agent;
+
+import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the total assets of our portfolio and the rankings of every agent, product and strategy.<br>
+ * Each agent's assets are recorded after every price, the totals are added up and the rankings sorted from the recorded
+ * assets only when a report is actually needed, so rounding errors never build up over time
+ */
+public class StatusService {
+
+    //our service for this process
+    private static StatusService SERVICE;
+
+    //the assets of each agent when we last checked
+    private final HashMap<Agent, Double> assets;
+
+    private StatusService() {
+        this.assets = new HashMap<>();
+    }
+
+    public static synchronized StatusService getService() {
+
+        //create the service if it does not exist
+        if (SERVICE == null)
+            SERVICE = new StatusService();
+
+        return SERVICE;
+    }
+
+    /**
+     * Update the assets of every agent of the product
+     * @param manager The agent manager of the product
+     */
+    public void update(AgentManager manager) {
+
+        for (int i = 0; i < manager.getAgents().size(); i++) {
+            update(manager.getAgents().get(i));
+        }
+    }
+
+    /**
+     * Update the assets of the agent
+     * @param agent The agent
+     */
+    public synchronized void update(Agent agent) {
+        assets.put(agent, agent.getAssets());
+    }
+
+    /**
+     * Get the total assets of our portfolio
+     * @return The total $
+     */
+    public synchronized double getTotal() {
+
+        double total = 0;
+
+        for (Double value : assets.values()) {
+            total += value;
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the total assets of the product
+     * @param productId The product
+     * @return The total $
+     */
+    public synchronized double getTotal(String productId) {
+        return getProductTotals().getOrDefault(productId, 0d);
+    }
+
+    /**
+     * Get the total assets of the strategy across all products
+     * @param key The strategy
+     * @return The total $
+     */
+    public synchronized double getTotal(Strategy.Key key) {
+        return getStrategyTotals().getOrDefault(key, 0d);
+    }
+
+    /**
+     * Get the assets of the agent when we last checked
+     * @param agent The agent
+     * @return The total $
+     */
+    public synchronized double getAssets(Agent agent) {
+        final Double result = assets.get(agent);
+        return (result == null) ? 0 : result;
+    }
+
+    /**
+     * Get the agents of the product ranked by assets
+     * @param productId The product
+     * @return The agents, most assets first
+     */
+    public synchronized List<Agent> getAgents(String productId) {
+
+        HashMap<Agent, Double> result = new HashMap<>();
+
+        for (Map.Entry<Agent, Double> entry : assets.entrySet()) {
+
+            if (entry.getKey().getProductId().equals(productId))
+                result.put(entry.getKey(), entry.getValue());
+        }
+
+        return getRanking(result);
+    }
+
+    /**
+     * Get our products ranked by assets
+     * @return The product ids, most assets first
+     */
+    public synchronized List<String> getProducts() {
+        return getRanking(getProductTotals());
+    }
+
+    /**
+     * Get our strategies ranked by assets across all products
+     * @return The strategies, most assets first
+     */
+    public synchronized List<Strategy.Key> getStrategies() {
+        return getRanking(getStrategyTotals());
+    }
+
+    //add up the assets of our agents for each product
+    private HashMap<String, Double> getProductTotals() {
+
+        HashMap<String, Double> totals = new HashMap<>();
+
+        for (Map.Entry<Agent, Double> entry : assets.entrySet()) {
+            totals.merge(entry.getKey().getProductId(), entry.getValue(), Double::sum);
+        }
+
+        return totals;
+    }
+
+    //add up the assets of our agents for each strategy
+    private HashMap<Strategy.Key, Double> getStrategyTotals() {
+
+        HashMap<Strategy.Key, Double> totals = new HashMap<>();
+
+        for (Map.Entry<Agent, Double> entry : assets.entrySet()) {
+            totals.merge(entry.getKey().getStrategyKey(), entry.getValue(), Double::sum);
+        }
+
+        return totals;
+    }
+
+    private static <K> List<K> getRanking(Map<K, Double> values) {
+
+        List<K> result = new ArrayList<>(values.keySet());
+
+        //most assets first
+        result.sort((a, b) -> Double.compare(values.get(b), values.get(a)));
+
+        return result;
+    }
+}
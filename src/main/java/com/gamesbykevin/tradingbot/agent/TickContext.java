@@ -0,0 +1,55 @@
+package com.gamesbykevin.tradingbot.agent;
+
+import com.coinbase.exchange.api.entity.Product;
+import com.gamesbykevin.tradingbot.calculator.CalculatorSnapshot;
+import com.gamesbykevin.tradingbot.calculator.Period;
+
+/**
+ * Everything the agents of a product share for a single price update.<br>
+ * It is created once per tick so each agent doesn't have to repeat the same work
+ */
+public class TickContext {
+
+    //the latest calculated data
+    private final CalculatorSnapshot snapshot;
+
+    //the product we are trading
+    private final Product product;
+
+    //the current price
+    private final double price;
+
+    //is the price above our sma?
+    private final boolean aboveSMA;
+
+    protected TickContext(CalculatorSnapshot snapshot, Product product, double price, boolean aboveSMA) {
+        this.snapshot = snapshot;
+        this.product = product;
+        this.price = price;
+        this.aboveSMA = aboveSMA;
+    }
+
+    public CalculatorSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    public Product getProduct() {
+        return this.product;
+    }
+
+    public double getPrice() {
+        return this.price;
+    }
+
+    public boolean isAboveSMA() {
+        return this.aboveSMA;
+    }
+
+    /**
+     * Get the most recent candle
+     * @return The latest period in our history
+     */
+    public Period getPeriod() {
+        return getSnapshot().getHistory().get(getSnapshot().getHistory().size() - 1);
+    }
+}
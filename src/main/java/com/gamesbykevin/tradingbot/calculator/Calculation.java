@@ -7,21 +7,138 @@ import com.gamesbykevin.tradingbot.calculator.indicator.trend.EMA;
 import com.gamesbykevin.tradingbot.calculator.indicator.trend.SMA;
 import com.gamesbykevin.tradingbot.calculator.indicator.trend.SMMA;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
 import static com.gamesbykevin.tradingbot.calculator.strategy.StrategyHelper.getValue;
 
-public abstract class Calculation {
+public abstract class Calculation implements Cloneable {
 
     /**
      * When displaying data how many periods do we print/write to the console/log
      */
     public static final int RECENT_PERIODS = 5;
 
+    //the fields of each class we copy, so we only look them up once
+    private static final ConcurrentHashMap<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
     public abstract void cleanup();
 
+    /**
+     * Copy this calculation so the copy can continue to be calculated without changing this one.<br>
+     * Our lists, maps, arrays and the calculations we depend on are copied, everything else is shared
+     * @return A copy of our calculated values
+     */
+    public Calculation copy() {
+
+        try {
+
+            final Calculation copy = (Calculation)super.clone();
+
+            for (Field field : getFields(getClass())) {
+
+                final Object value = field.get(this);
+                final Object tmp = copyValue(value);
+
+                //only replace the values we copied
+                if (tmp != value)
+                    field.set(copy, tmp);
+            }
+
+            return copy;
+
+        } catch (CloneNotSupportedException | IllegalAccessException e) {
+            throw new RuntimeException("Unable to copy " + getClass().getSimpleName(), e);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+
+        if (value instanceof Calculation)
+            return ((Calculation)value).copy();
+
+        if (value instanceof List) {
+
+            final List<?> list = (List<?>)value;
+            final List<Object> copy = new ArrayList<>(list.size());
+
+            for (int i = 0; i < list.size(); i++) {
+                copy.add(copyValue(list.get(i)));
+            }
+
+            return copy;
+        }
+
+        if (value instanceof Map) {
+
+            final Map<?, ?> map = (Map<?, ?>)value;
+            final Map<Object, Object> copy = (value instanceof LinkedHashMap) ? new LinkedHashMap<>() : new HashMap<>();
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+
+            return copy;
+        }
+
+        if (value != null && value.getClass().isArray()) {
+
+            final int length = Array.getLength(value);
+            final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+
+            if (value.getClass().getComponentType().isPrimitive()) {
+
+                System.arraycopy(value, 0, copy, 0, length);
+
+            } else {
+
+                for (int i = 0; i < length; i++) {
+                    Array.set(copy, i, copyValue(Array.get(value, i)));
+                }
+            }
+
+            return copy;
+        }
+
+        //numbers, periods, keys and anything else we don't calculate are shared
+        return value;
+    }
+
+    private static List<Field> getFields(Class<?> type) {
+
+        List<Field> fields = FIELDS.get(type);
+
+        if (fields == null) {
+
+            fields = new ArrayList<>();
+
+            //every instance field of our class and the classes we extend
+            for (Class<?> tmp = type; tmp != Object.class; tmp = tmp.getSuperclass()) {
+
+                for (Field field : tmp.getDeclaredFields()) {
+
+                    if (Modifier.isStatic(field.getModifiers()))
+                        continue;
+
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+
+            FIELDS.put(type, fields);
+        }
+
+        return fields;
+    }
+
     protected void cleanup(List<Double> list) {
 
         //remove the first values until we are at the desired size
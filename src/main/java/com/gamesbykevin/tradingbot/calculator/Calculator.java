@@ -4,9 +4,10 @@ import com.gamesbykevin.tradingbot.agent.AgentManager;
 import com.gamesbykevin.tradingbot.calculator.indicator.trend.SMA;
 import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.strategy.*;
+import com.gamesbykevin.tradingbot.feed.MarketFeed;
 import com.gamesbykevin.tradingbot.util.Email;
-import com.gamesbykevin.tradingbot.util.GSon;
 import com.gamesbykevin.tradingbot.util.History;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -17,7 +18,6 @@ import static com.gamesbykevin.tradingbot.agent.AgentHelper.round;
 import static com.gamesbykevin.tradingbot.calculator.Calculation.getRecent;
 import static com.gamesbykevin.tradingbot.calculator.CalculatorHelper.*;
 import static com.gamesbykevin.tradingbot.trade.TradeHelper.NEW_LINE;
-import static com.gamesbykevin.tradingbot.util.JSon.getJsonResponse;
 import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
 
 public class Calculator {
@@ -28,12 +28,6 @@ public class Calculator {
     //list of periods for when we want to create custom candles
     private List<Period> historyTmp;
 
-    //all of the strategies we are trading
-    private List<Strategy> strategies;
-
-    //how long do we pause after our service call, this is to help prevent 429 errors (rate limit exceeded)
-    private static final long DELAY = 500L;
-
     /**
      * How many historical periods do we need in order to start trading
      */
@@ -58,36 +52,32 @@ public class Calculator {
 
     public enum Candle {
 
-        OneMinute(60, "one_minute", 6, null),                       //check every    10 seconds
-        FiveMinutes(300, "five_minutes", 10, null),                 //check every    30 seconds
-        TenMinutes(600, "ten_minutes", 12, FiveMinutes),            //check every    50 seconds
-        FifteenMinutes(900, "fifteen_minutes", 10, null),           //check every    90 seconds (1 minute 30 seconds)
-        ThirtyMinutes(1800, "thirty_minutes", 15, FifteenMinutes),  //check every   120 seconds (2 minutes)
-        OneHour(3600, "one_hour", 24, null),                        //check every   150 seconds (2 minutes 30 seconds)
-        TwoHours(7200, "two_hours", 36, OneHour),                   //check every   200 seconds (3 minutes 20 seconds)
-        FourHours(14400, "four_hours", 48, OneHour),                //check every   300 seconds (5 minutes)
-        SixHours(21600, "six_hours", 60, null),                     //check every   360 seconds (6 minutes)
-        TwentyFourHours(86400, "one_day", 120, null),               //check every   720 seconds (12 minutes)
-        FiveDays(432000, "five_days", 480, TwentyFourHours),        //check every   900 seconds (15 minutes)
-        OneWeek(604800, "one_week", 480, TwentyFourHours),          //check every 1,260 seconds (21 minutes)
+        OneMinute(60, "one_minute", null),
+        FiveMinutes(300, "five_minutes", null),
+        TenMinutes(600, "ten_minutes", FiveMinutes),
+        FifteenMinutes(900, "fifteen_minutes", null),
+        ThirtyMinutes(1800, "thirty_minutes", FifteenMinutes),
+        OneHour(3600, "one_hour", null),
+        TwoHours(7200, "two_hours", OneHour),
+        FourHours(14400, "four_hours", OneHour),
+        SixHours(21600, "six_hours", null),
+        TwentyFourHours(86400, "one_day", null),
+        FiveDays(432000, "five_days", TwentyFourHours),
+        OneWeek(604800, "one_week", TwentyFourHours),
         ;
 
         //how long (in seconds)
         public final long duration;
 
-        //how often we check
-        public final int frequency;
-
         //text description of this candle
         public final String description;
 
         //is this candle dependent on another? this is for creating a custom candle?
         public final Candle dependency;
 
-        Candle(long duration, String description, int frequency, Candle dependency) {
+        Candle(long duration, String description, Candle dependency) {
             this.duration = duration;
             this.description = description;
-            this.frequency = frequency;
             this.dependency = dependency;
         }
     }
@@ -95,15 +85,19 @@ public class Calculator {
     //which candle duration is this calculator for?
     private final Candle candle;
 
-    //when was the last time we updated our data
-    private long timestamp = 0;
-
-    //object for calculating sma
-    private SMA objSMA;
-
     //our sma will be 200 periods typically
     public static int PERIODS_SMA;
 
+    //how many periods do we keep so our strategies are warmed up when re-calculated
+    private final int periodsWarmup;
+
+    //the latest calculated state, read by the agents
+    private volatile CalculatorSnapshot snapshot;
+
+    //our strategies and sma, only calculated here and copied into each snapshot
+    private final List<Strategy> strategies;
+    private final SMA objSMA;
+
     public Calculator(Candle candle, String productId, PrintWriter writer) {
 
         //save the candle for this calculator
@@ -115,141 +109,162 @@ public class Calculator {
         //the product this calculator is for
         this.productId = productId;
 
-        //populate the list based on existing file data
-        History.load(getHistory(), productId, candle, writer, false);
+        //create all strategies and our sma
+        this.strategies = createStrategies();
+        this.objSMA = new SMA(PERIODS_SMA);
+
+        //we only need enough history to warm up our strategies
+        this.periodsWarmup = getPeriodsWarmup(getStrategies());
+        History.loadRecent(getHistory(), productId, candle, getPeriodsWarmup(), writer);
 
         //merge periods if this is a custom candle
         if (candle.dependency != null)
             merge(getHistory(), candle);
 
-        //update the previous run time, so it runs immediately since we don't have data yet
-        this.timestamp = System.currentTimeMillis() - (candle.duration * 1000);
-
-        //create all strategies and add to our list
-        for (int i = 0; i < MY_TRADING_STRATEGIES.length; i++) {
-
-            //add the strategy to the list
-            getStrategies().add(createStrategy(MY_TRADING_STRATEGIES[i]));
-
-            //let's calculate the strategies so we can cleanup the data asap
-            calculate(writer, getStrategies().get(getStrategies().size() - 1), 0);
-        }
+        //calculate our strategies and publish the first snapshot
+        calculate(writer, 0);
+        publish();
+    }
 
-        //create our sma and do the first calculation
-        this.objSMA = new SMA(PERIODS_SMA);
-        getObjSMA().calculate(getHistory(), 0);
+    /**
+     * Start checking for new candle data in the background.<br>
+     * When there is a new candle the strategies are re-calculated and a new snapshot is published
+     * @param manager The manager of the product we are calculating
+     */
+    public void start(final AgentManager manager) {
 
-        //cleanup the history list
-        cleanupHistory(writer);
+        //the scheduler will check right after each candle closes
+        CandleScheduler.getScheduler().register(this, manager);
     }
 
-    public SMA getObjSMA() {
-        return this.objSMA;
+    /**
+     * Get the latest calculated state
+     * @return The most recent snapshot published
+     */
+    public CalculatorSnapshot getSnapshot() {
+        return this.snapshot;
     }
 
-    public synchronized boolean update(AgentManager manager) {
+    /**
+     * How many periods do we need so our strategies are warmed up
+     * @return The minimum history plus the longest look back of our indicators
+     */
+    private int getPeriodsWarmup() {
+        return this.periodsWarmup;
+    }
 
-        //were we successful
-        boolean result = false;
+    private static int getPeriodsWarmup(List<Strategy> strategies) {
 
-        try {
+        //the sma look back
+        int lookback = PERIODS_SMA;
 
-            //how much time has passed
-            long lapsed = System.currentTimeMillis() - this.timestamp;
+        //check each strategy for the longest look back
+        for (int i = 0; i < strategies.size(); i++) {
 
-            //time required to pass
-            long minimum = (getCandle().duration / getCandle().frequency) * 1000L;
+            if (strategies.get(i).getPeriodsMax() > lookback)
+                lookback = strategies.get(i).getPeriodsMax();
+        }
 
-            //has enough time passed to retrieve more candle data
-            if (lapsed >= minimum) {
+        return HISTORICAL_PERIODS_MINIMUM + lookback;
+    }
 
-                //display message as sometimes the call is not successful
-                displayMessage("Making rest call to retrieve history " + productId + " (" + getCandle().description + ")", null);
+    private static List<Strategy> createStrategies() {
 
-                //our json response
-                final String json;
+        List<Strategy> strategies = new ArrayList<>();
 
-                //make our rest call and get the json response
-                if (getCandle().dependency == null) {
-                    json = getJsonResponse(String.format(ENDPOINT_HISTORIC, productId, getCandle().duration));
-                } else {
-                    json = getJsonResponse(String.format(ENDPOINT_HISTORIC, productId, getCandle().dependency.duration));
-                }
+        //create all strategies and add to our list
+        for (int i = 0; i < MY_TRADING_STRATEGIES.length; i++) {
+            strategies.add(createStrategy(MY_TRADING_STRATEGIES[i]));
+        }
 
-                //convert json text to multi array
-                double[][] data = GSon.getGson().fromJson(json, double[][].class);
+        return strategies;
+    }
 
-                //make sure we have data before we update
-                if (data != null && data.length > 0) {
+    /**
+     * Request the recent candle data, this is only called from the candle scheduler thread
+     * @param manager The manager of the product we are calculating
+     * @return The recent candle data, null if the rest call isn't successful
+     */
+    public double[][] fetch(AgentManager manager) {
 
-                    //store the size
-                    final int size = getHistory().size();
+        //display message as sometimes the call is not successful
+        displayMessage("Making rest call to retrieve history " + productId + " (" + getCandle().description + ")", null);
 
-                    //if there are no dependencies update as usual
-                    if (getCandle().dependency == null) {
+        //get the recent candles, from the market feed if another process already requested them
+        double[][] data = MarketFeed.getCandles(productId, (getCandle().dependency == null) ? getCandle().duration : getCandle().dependency.duration);
 
-                        //update our history list with potential new data
-                        updateHistory(getHistory(), data);
+        //make sure we have data before we update
+        if (data == null || data.length < 1) {
 
-                    } else {
+            //rest call isn't successful
+            displayMessage("Rest call is NOT successful.", manager.getWriter());
+            return null;
+        }
 
-                        //else we will need to store the periods separately until we have enough to create our own custom candle(s);
-                        updateHistory(getHistory(), getHistoryTmp(), getCandle(), data);
-                    }
+        return data;
+    }
 
-                    //sort the history
-                    sortHistory(getHistory());
+    /**
+     * Add the candle data to our history, this is only called from the candle scheduler's compute threads and never
+     * for the same calculator at the same time.<br>
+     * The history and strategies are only changed here, everyone else reads the published snapshot
+     * @param manager The manager of the product we are calculating
+     * @param data The recent candle data from {@link #fetch(AgentManager)}
+     * @return true if we received a new candle, false otherwise
+     */
+    public boolean update(AgentManager manager, double[][] data) {
 
-                    //let's see if the size changed
-                    final int change = getHistory().size();
+        //store the size
+        final int size = getHistory().size();
+        final int sizeTmp = getHistoryTmp().size();
 
-                    //if a new candle has been added re-calculate our strategies
-                    if (size != change)
-                        calculate(manager, size > change ? size - change : change - size);
+        //if there are no dependencies update as usual
+        if (getCandle().dependency == null) {
 
-                    //rest call is successful
-                    displayMessage("Rest call successful. History size: " + change, (change != size) ? manager.getWriter() : null);
+            //update our history list with potential new data
+            updateHistory(getHistory(), data);
 
-                    //we are successful
-                    result = true;
+        } else {
 
-                    //update the last successful run
-                    this.timestamp = System.currentTimeMillis();
+            //else we will need to store the periods separately until we have enough to create our own custom candle(s);
+            updateHistory(getHistory(), getHistoryTmp(), getCandle(), data);
+        }
 
-                } else {
+        //sort the history
+        sortHistory(getHistory());
 
-                    //flag our result false
-                    result = false;
+        //let's see if the size changed
+        final int change = getHistory().size();
 
-                    //rest call isn't successful
-                    displayMessage("Rest call is NOT successful.", manager.getWriter());
-                }
+        //rest call is successful
+        displayMessage("Rest call successful. History size: " + change, (change != size) ? manager.getWriter() : null);
 
-                //we want to prevent too many request errors
-                Thread.sleep(DELAY);
-            }
+        //if a new candle has been added re-calculate our strategies
+        if (size != change) {
 
-        } catch (Exception e) {
+            //the most recent candle is still in progress, so only the candles before it are complete
+            CorrelationEngine.getEngine(getCandle()).update(productId, getHistory(), getHistory().get(change - 1).time);
 
-            //display our message and write to the log file
-            displayMessage(e, manager.getWriter());
+            //only the new candles need to be calculated
+            calculate(manager.getWriter(), change - size);
+            publish();
         }
 
-        //return our result
-        return result;
+        //custom candles are queued until we have enough, so a new queued candle counts as well
+        return (size != change || sizeTmp != getHistoryTmp().size());
     }
 
-    private synchronized void calculate(PrintWriter writer, Strategy strategy, int newPeriods) {
+    private void calculate(PrintWriter writer, Strategy strategy, int newPeriods) {
 
         //display info
         displayMessage("Calculating " + getCandle().description + " " + strategy.getKey() + "...", writer);
 
-        //if there are new periods we are no longer waiting to calculate
-        strategy.setWait(false);
-
         //if there is no history we can't calculate anything, so we need to make sure we have enough
         if (!getHistory().isEmpty() && getHistory().size() >= HISTORICAL_PERIODS_MINIMUM) {
 
+            //read the materialized indicators if the strategy can
+            strategy.attach(IndicatorStore.getStore(productId, getCandle()));
+
             //calculate indicator values based on the current strategy
             strategy.calculate(getHistory(), newPeriods);
 
@@ -261,21 +276,54 @@ public class Calculator {
         displayMessage("Calculating " + getCandle().description + " " + strategy.getKey() + " done", writer);
     }
 
-    public synchronized void calculate(AgentManager manager, int newPeriods) {
+    /**
+     * Calculate our strategies and sma for the new candles, the values already calculated are kept
+     * @param writer Where we write our log
+     * @param newPeriods How many new candles were added to our history, 0 will calculate everything
+     */
+    private void calculate(PrintWriter writer, int newPeriods) {
 
         //calculate all strategies
         for (int i = 0; i < getStrategies().size(); i++) {
-
-            //calculate the current strategy
-            calculate(manager.getWriter(), getStrategies().get(i), newPeriods);
+            calculate(writer, getStrategies().get(i), newPeriods);
         }
 
-        //calculate our values
-        if (PERIODS_SMA > 0)
+        //calculate our sma
+        if (PERIODS_SMA > 0) {
             getObjSMA().calculate(getHistory(), newPeriods);
+            getObjSMA().cleanup();
+        }
 
         //cleanup the history list
-        cleanupHistory(manager.getWriter());
+        cleanupHistory(writer);
+    }
+
+    /**
+     * Publish a copy of our strategies and sma in a new snapshot, the agents read the copy while we continue to
+     * calculate the next candles
+     */
+    private void publish() {
+
+        //copy all strategies
+        List<Strategy> copy = new ArrayList<>(getStrategies().size());
+
+        for (int i = 0; i < getStrategies().size(); i++) {
+            copy.add((Strategy)getStrategies().get(i).copy());
+        }
+
+        //the version of our new snapshot
+        final long version = (getSnapshot() == null) ? 1 : getSnapshot().getVersion() + 1;
+
+        //publish so the agents can start using it
+        this.snapshot = new CalculatorSnapshot(version, getCandle(), getHistory(), copy, (SMA)getObjSMA().copy());
+    }
+
+    private List<Strategy> getStrategies() {
+        return this.strategies;
+    }
+
+    private SMA getObjSMA() {
+        return this.objSMA;
     }
 
     private void cleanupHistory(PrintWriter writer) {
@@ -283,14 +331,11 @@ public class Calculator {
         //size before cleanup
         displayMessage("Cleaning up history: " + getHistory().size(), writer);
 
-        //let's keep our historical list at a manageable size
-        while (getHistory().size() > Calculator.HISTORICAL_PERIODS_MINIMUM) {
+        //our indicators only keep the minimum periods, so our history has to match
+        while (getHistory().size() > HISTORICAL_PERIODS_MINIMUM) {
             getHistory().remove(0);
         }
 
-        //keep object at a decent size
-        getObjSMA().cleanup();
-
         //size after cleanup
         displayMessage("Cleaned: " + getHistory().size(), writer);
     }
@@ -313,29 +358,7 @@ public class Calculator {
         return this.history;
     }
 
-    private List<Strategy> getStrategies() {
-
-        //instantiate if null
-        if (this.strategies == null)
-            this.strategies = new ArrayList<>();
-
-        return this.strategies;
-    }
-
-    public Strategy getStrategy(Strategy.Key key) {
-
-        for (int i = 0; i < getStrategies().size(); i++) {
-
-            //return if the key matches
-            if (getStrategies().get(i).getKey() == key)
-                return getStrategies().get(i);
-        }
-
-        //return null if nothing matched (this shouldn't happen)
-        return null;
-    }
-
     public Candle getCandle() {
         return this.candle;
     }
-}
\ No newline at end of file
+}
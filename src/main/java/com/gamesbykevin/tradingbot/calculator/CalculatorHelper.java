@@ -167,6 +167,10 @@ public class CalculatorHelper {
                 strategy = new REMA();
                 break;
 
+            case RULE:
+                strategy = new RULE();
+                break;
+
             case SEMAS:
                 strategy = new SEMAS();
                 break;
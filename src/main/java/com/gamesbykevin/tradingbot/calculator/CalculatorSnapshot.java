@@ -0,0 +1,89 @@
+package com.gamesbykevin.tradingbot.calculator;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.indicator.trend.SMA;
+import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The calculated state of a calculator at a point in time.<br>
+ * A new snapshot is published every time a new candle is calculated, once published the history, strategies
+ * and sma are never recalculated so the agents can read them without waiting on the rest calls
+ */
+public class CalculatorSnapshot {
+
+    //increases with every snapshot published
+    private final long version;
+
+    //which candle duration is this snapshot for?
+    private final Candle candle;
+
+    //our historical periods sorted oldest to newest
+    private final List<Period> history;
+
+    //all of the strategies calculated for this snapshot
+    private final List<Strategy> strategies;
+
+    //object for calculating sma
+    private final SMA objSMA;
+
+    protected CalculatorSnapshot(long version, Candle candle, List<Period> history, List<Strategy> strategies, SMA objSMA) {
+
+        this.version = version;
+        this.candle = candle;
+
+        //copy each period since the calculator can update existing periods
+        List<Period> copy = new ArrayList<>(history.size());
+
+        for (int index = 0; index < history.size(); index++) {
+
+            Period period = history.get(index);
+
+            Period tmp = new Period();
+            tmp.time = period.time;
+            tmp.low = period.low;
+            tmp.high = period.high;
+            tmp.open = period.open;
+            tmp.close = period.close;
+            tmp.volume = period.volume;
+
+            copy.add(tmp);
+        }
+
+        this.history = Collections.unmodifiableList(copy);
+        this.strategies = Collections.unmodifiableList(new ArrayList<>(strategies));
+        this.objSMA = objSMA;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public Candle getCandle() {
+        return this.candle;
+    }
+
+    public List<Period> getHistory() {
+        return this.history;
+    }
+
+    public SMA getObjSMA() {
+        return this.objSMA;
+    }
+
+    public Strategy getStrategy(Strategy.Key key) {
+
+        for (int i = 0; i < strategies.size(); i++) {
+
+            //return if the key matches
+            if (strategies.get(i).getKey() == key)
+                return strategies.get(i);
+        }
+
+        //return null if nothing matched (this shouldn't happen)
+        return null;
+    }
+}
@@ -0,0 +1,254 @@
+package com.gamesbykevin.tradingbot.calculator;
+
+import com.gamesbykevin.tradingbot.agent.AgentManager;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Schedules the candle rest calls for every calculator.<br>
+ * Instead of polling on an interval, each calculator is checked right after its candle closes and then retried until
+ * the new candle is available. All calls are made from a single thread so they can be spaced out to respect the rate limit,
+ * the strategies are then calculated on our compute threads so a slow calculation never delays the next rest call.<br>
+ * A calculator is only added back to our schedule once its calculation is done, so it is never updated twice at once
+ */
+public class CandleScheduler implements Runnable {
+
+    /**
+     * How long do we wait after a candle closes before we request it (in milliseconds)
+     */
+    public static long SETTLE_DELAY = 1000L;
+
+    /**
+     * The minimum time between rest calls, this is to help prevent 429 errors (rate limit exceeded)
+     */
+    public static long REQUEST_SPACING = 350L;
+
+    /**
+     * How many threads calculate the strategies of the calculators, shared by every product
+     */
+    public static int COMPUTE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    //how long do we wait before trying again when the new candle isn't available yet (in milliseconds)
+    private static final long[] RETRY_DELAYS = {1000L, 2000L, 4000L, 8000L, 15000L, 30000L};
+
+    //our single instance
+    private static CandleScheduler SCHEDULER;
+
+    //the calculators waiting for their next rest call, ordered by when they are due
+    private final DelayQueue<Task> queue;
+
+    //when was our last rest call
+    private long timeRequest = 0;
+
+    //the thread making our rest calls
+    private Thread thread;
+
+    //the threads calculating our strategies once we have the candle data
+    private ExecutorService executor;
+
+    private CandleScheduler() {
+        this.queue = new DelayQueue<>();
+    }
+
+    public static synchronized CandleScheduler getScheduler() {
+
+        //create the scheduler if it does not exist
+        if (SCHEDULER == null)
+            SCHEDULER = new CandleScheduler();
+
+        return SCHEDULER;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+
+        //create the compute threads if they do not exist
+        if (executor == null) {
+
+            executor = Executors.newFixedThreadPool(Math.max(1, COMPUTE_THREADS), runnable -> {
+                Thread thread = new Thread(runnable, "Candle Compute");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Add the calculator to our schedule, it will be checked right away and then after every candle closes
+     * @param calculator The calculator we want to update
+     * @param manager The manager of the product we are calculating
+     */
+    public synchronized void register(Calculator calculator, AgentManager manager) {
+
+        //check right away since we could be missing recent candles
+        Task task = new Task(calculator, manager, System.currentTimeMillis());
+
+        //this is only to catch up, so we don't retry if there is nothing new
+        task.attempts = RETRY_DELAYS.length;
+
+        queue.add(task);
+
+        //start our thread if it isn't running
+        if (thread == null) {
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.setName("Candle Scheduler");
+            thread.start();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while (true) {
+
+            try {
+
+                //wait for the next calculator that is due
+                Task task = queue.take();
+
+                //space out our rest calls
+                final long wait = (timeRequest + REQUEST_SPACING) - System.currentTimeMillis();
+
+                if (wait > 0)
+                    Thread.sleep(wait);
+
+                //keep track of when we made the call
+                timeRequest = System.currentTimeMillis();
+
+                //the candle data from our rest call
+                double[][] data = null;
+
+                try {
+
+                    //make the rest call
+                    data = task.calculator.fetch(task.manager);
+
+                } catch (Exception e) {
+
+                    //we don't want to stop checking the other calculators
+                    displayMessage(e, task.manager.getWriter());
+                }
+
+                if (data == null) {
+
+                    //nothing to calculate, try again
+                    schedule(task, false);
+
+                } else {
+
+                    //calculate on another thread so we can continue with the next rest call
+                    final double[][] candles = data;
+                    getExecutor().execute(() -> compute(task, candles));
+                }
+
+            } catch (InterruptedException e) {
+
+                //we were asked to stop
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add the candle data to the calculator and add it back to our schedule, this runs on our compute threads
+     * @param task The calculator we requested the candle data for
+     * @param data The candle data from our rest call
+     */
+    private void compute(Task task, double[][] data) {
+
+        //did we receive a new candle
+        boolean result = false;
+
+        try {
+
+            //update our history and calculate the strategies
+            result = task.calculator.update(task.manager, data);
+
+        } catch (Exception e) {
+
+            //we don't want to stop checking this calculator
+            displayMessage(e, task.manager.getWriter());
+        }
+
+        //add back to our schedule
+        schedule(task, result);
+    }
+
+    /**
+     * Add the calculator back to our schedule
+     * @param task The calculator we want to check again
+     * @param result Did we receive a new candle
+     */
+    private void schedule(Task task, boolean result) {
+
+        if (result || task.attempts >= RETRY_DELAYS.length) {
+
+            //we have the candle (or gave up on it), wait for the next candle to close
+            task.attempts = 0;
+            task.time = getTimeBoundary(task.calculator.getCandle(), System.currentTimeMillis()) + SETTLE_DELAY;
+
+        } else {
+
+            //the candle isn't available yet, try again shortly
+            task.time = System.currentTimeMillis() + RETRY_DELAYS[task.attempts];
+            task.attempts++;
+        }
+
+        //add back to our schedule
+        queue.add(task);
+    }
+
+    /**
+     * Get when the current candle will close, custom candles are built from their dependency so we use that instead
+     * @param candle The candle duration
+     * @param time The current time (in milliseconds)
+     * @return The time (in milliseconds) of the next candle boundary
+     */
+    protected static long getTimeBoundary(Calculator.Candle candle, long time) {
+
+        //candle duration in milliseconds
+        final long duration = ((candle.dependency != null) ? candle.dependency.duration : candle.duration) * 1000L;
+
+        return ((time / duration) + 1) * duration;
+    }
+
+    /**
+     * A calculator waiting for its next rest call
+     */
+    private static class Task implements Delayed {
+
+        private final Calculator calculator;
+
+        private final AgentManager manager;
+
+        //when is the task due (in milliseconds)
+        private long time;
+
+        //how many times have we tried for the current candle
+        private int attempts = 0;
+
+        private Task(Calculator calculator, AgentManager manager, long time) {
+            this.calculator = calculator;
+            this.manager = manager;
+            this.time = time;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed delayed) {
+            return Long.compare(time, ((Task)delayed).time);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.gamesbykevin.tradingbot.calculator;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.util.History;
+import com.gamesbykevin.tradingbot.util.HistoryListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.gamesbykevin.tradingbot.calculator.CorrelationMatrix.getIndex;
+
+/**
+ * Keeps a rolling covariance / correlation matrix of the candle returns of every product we track.<br>
+ * The sums of the returns (and of each pair of returns) are kept for the window, so each candle only adds the new
+ * returns and removes the oldest, O(products²), instead of calculating the window again
+ */
+public class CorrelationEngine {
+
+    /**
+     * How many candles are in our rolling window
+     */
+    public static int WINDOW = 240;
+
+    /**
+     * Do we reduce the size of a buy when we already hold products that are correlated?
+     */
+    public static boolean CORRELATION_SIZING = false;
+
+    /**
+     * How many candles do we wait for every product to report before we add the candle without them
+     */
+    public static final int PENDING_LIMIT = 5;
+
+    //our engines for each candle duration
+    private static HashMap<Candle, CorrelationEngine> ENGINES;
+
+    //adds the candles to our engine when they are stored
+    private static final HistoryListener LISTENER = (productId, candle, history, timeLimit, count) -> {
+
+        if (count > 0)
+            getEngine(candle).update(productId, history, timeLimit);
+    };
+
+    //how many agents are holding each product
+    private static final HashMap<String, Integer> HOLDINGS = new HashMap<>();
+
+    //which candle duration are we tracking
+    private final Candle candle;
+
+    //the index of each product
+    private final Map<String, Integer> products;
+
+    //the most recent close and time of each product
+    private double[] closes;
+    private long[] times;
+
+    //the returns of each candle not added yet, waiting for the other products
+    private final TreeMap<Long, double[]> pending;
+
+    //the returns of each candle in our window
+    private double[][] window;
+
+    //where the next candle goes in our window
+    private int head = 0;
+
+    //how many candles are in our window
+    private int count = 0;
+
+    //the time of the most recent candle added
+    private long timeCommitted = 0;
+
+    //how many candles were added since we last re-calculated our sums
+    private int added = 0;
+
+    //sum of the returns of each product
+    private double[] sums;
+
+    //sum of the returns multiplied for each pair of products (upper triangle)
+    private double[] products2;
+
+    //the latest published matrix
+    private volatile CorrelationMatrix matrix;
+
+    private CorrelationEngine(Candle candle) {
+
+        this.candle = candle;
+        this.products = new HashMap<>();
+        this.pending = new TreeMap<>();
+        this.closes = new double[0];
+        this.times = new long[0];
+        this.sums = new double[0];
+        this.products2 = new double[0];
+        this.window = new double[WINDOW][0];
+        this.matrix = new CorrelationMatrix(products, new double[0], new double[0], 0, 0);
+    }
+
+    public static synchronized CorrelationEngine getEngine(Candle candle) {
+
+        //create our map if it does not exist
+        if (ENGINES == null) {
+            ENGINES = new HashMap<>();
+
+            //keep our correlations up to date with every product whose candles are stored
+            History.subscribe(LISTENER);
+        }
+
+        //create the engine if it does not exist
+        if (ENGINES.get(candle) == null)
+            ENGINES.put(candle, new CorrelationEngine(candle));
+
+        return ENGINES.get(candle);
+    }
+
+    /**
+     * Get the latest matrix, this does not lock so it can be read from any thread
+     * @return The covariance / correlation of our window
+     */
+    public CorrelationMatrix getMatrix() {
+        return this.matrix;
+    }
+
+    /**
+     * Add the completed candles of the product
+     * @param productId The product
+     * @param history The periods sorted oldest to newest
+     * @param timeLimit Periods with a time at or above this aren't complete and are skipped
+     */
+    public synchronized void update(String productId, List<Period> history, long timeLimit) {
+
+        final int index = getProduct(productId);
+
+        //find the first period we haven't seen yet
+        int start = history.size();
+
+        while (start > 0 && history.get(start - 1).time > times[index]) {
+            start--;
+        }
+
+        for (int i = start; i < history.size(); i++) {
+
+            Period period = history.get(i);
+
+            //the candle isn't complete yet
+            if (period.time >= timeLimit)
+                break;
+
+            //we can only calculate the return once we have a previous close, and the candle wasn't already added without us
+            if (times[index] != 0 && closes[index] > 0 && period.time > timeCommitted) {
+
+                double[] returns = pending.get(period.time);
+
+                //make room for products added after the candle started
+                if (returns == null || returns.length < products.size()) {
+
+                    double[] tmp = new double[products.size()];
+
+                    if (returns != null)
+                        System.arraycopy(returns, 0, tmp, 0, returns.length);
+
+                    returns = tmp;
+                    pending.put(period.time, returns);
+                }
+
+                returns[index] = (period.close / closes[index]) - 1;
+            }
+
+            closes[index] = period.close;
+            times[index] = period.time;
+        }
+
+        //add the candles that are ready
+        commit();
+    }
+
+    private void commit() {
+
+        //the most recent time of our slowest product and the most recent time of any product
+        long timeMin = Long.MAX_VALUE, timeMax = 0;
+
+        for (int i = 0; i < times.length; i++) {
+
+            if (times[i] < timeMin)
+                timeMin = times[i];
+            if (times[i] > timeMax)
+                timeMax = times[i];
+        }
+
+        boolean change = false;
+
+        while (!pending.isEmpty()) {
+
+            final long time = pending.firstKey();
+
+            //wait until every product has reported, unless the slowest product is too far behind
+            if (time > timeMin && time > timeMax - (PENDING_LIMIT * candle.duration))
+                break;
+
+            add(pending.remove(time));
+            timeCommitted = time;
+            change = true;
+        }
+
+        //publish a new matrix
+        if (change)
+            publish();
+    }
+
+    private void add(double[] returns) {
+
+        //the returns of products added after this candle started are 0
+        final double[] row = new double[products.size()];
+        System.arraycopy(returns, 0, row, 0, returns.length);
+
+        //remove the oldest candle if our window is full
+        if (count == WINDOW) {
+
+            apply(window[head], -1);
+
+        } else {
+
+            count++;
+        }
+
+        //add the new candle
+        window[head] = row;
+        apply(row, 1);
+        head = (head + 1) % WINDOW;
+
+        //every so often re-calculate our sums so we don't drift from adding and removing
+        if (++added >= WINDOW) {
+
+            added = 0;
+
+            sums = new double[sums.length];
+            products2 = new double[products2.length];
+
+            for (int i = 0; i < count; i++) {
+                apply(window[i], 1);
+            }
+        }
+    }
+
+    private void apply(double[] row, int sign) {
+
+        for (int i = 0; i < row.length; i++) {
+
+            if (row[i] == 0)
+                continue;
+
+            sums[i] += sign * row[i];
+
+            //only the upper triangle, the pairs with a 0 return don't change
+            for (int j = 0; j <= i; j++) {
+
+                if (row[j] != 0)
+                    products2[getIndex(j, i)] += sign * row[i] * row[j];
+            }
+        }
+    }
+
+    private void publish() {
+
+        final int size = products.size();
+
+        double[] covariance = new double[products2.length];
+        double[] correlation = new double[products2.length];
+
+        if (count >= 2) {
+
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j <= i; j++) {
+                    covariance[getIndex(j, i)] = (products2[getIndex(j, i)] - (sums[i] * sums[j] / count)) / (count - 1);
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+
+                for (int j = 0; j <= i; j++) {
+
+                    final double deviation = Math.sqrt(covariance[getIndex(i, i)] * covariance[getIndex(j, j)]);
+
+                    correlation[getIndex(j, i)] = (deviation > 0) ? Math.max(-1, Math.min(1, covariance[getIndex(j, i)] / deviation)) : 0;
+                }
+            }
+        }
+
+        this.matrix = new CorrelationMatrix(products, covariance, correlation, count, timeCommitted);
+    }
+
+    private int getProduct(String productId) {
+
+        Integer index = products.get(productId);
+
+        if (index != null)
+            return index;
+
+        //add the product to the end so the existing values don't move
+        index = products.size();
+        products.put(productId, index);
+
+        final int size = products.size();
+
+        double[] closes = new double[size];
+        System.arraycopy(this.closes, 0, closes, 0, this.closes.length);
+        this.closes = closes;
+
+        long[] times = new long[size];
+        System.arraycopy(this.times, 0, times, 0, this.times.length);
+        this.times = times;
+
+        double[] sums = new double[size];
+        System.arraycopy(this.sums, 0, sums, 0, this.sums.length);
+        this.sums = sums;
+
+        double[] products2 = new double[size * (size + 1) / 2];
+        System.arraycopy(this.products2, 0, products2, 0, this.products2.length);
+        this.products2 = products2;
+
+        return index;
+    }
+
+    /**
+     * Track that an agent is now holding the product
+     * @param productId The product
+     */
+    public static void addHolding(String productId) {
+
+        synchronized (HOLDINGS) {
+            HOLDINGS.put(productId, getHolding(productId) + 1);
+        }
+    }
+
+    /**
+     * Track that an agent is no longer holding the product
+     * @param productId The product
+     */
+    public static void removeHolding(String productId) {
+
+        synchronized (HOLDINGS) {
+            HOLDINGS.put(productId, Math.max(0, getHolding(productId) - 1));
+        }
+    }
+
+    private static int getHolding(String productId) {
+        return (HOLDINGS.get(productId) == null) ? 0 : HOLDINGS.get(productId);
+    }
+
+    /**
+     * How much of our normal size should we buy, the more we already hold products moving with this one the less we buy
+     * @param candle The candle duration we trade
+     * @param productId The product we want to buy
+     * @return The ratio of our normal size (0.0 - 1.0)
+     */
+    public static double getSizeRatio(Candle candle, String productId) {
+
+        CorrelationMatrix matrix = getEngine(candle).getMatrix();
+
+        //the products we currently hold
+        List<String> held = new ArrayList<>();
+
+        synchronized (HOLDINGS) {
+
+            for (String tmp : HOLDINGS.keySet()) {
+
+                if (!tmp.equals(productId) && getHolding(tmp) > 0)
+                    held.add(tmp);
+            }
+        }
+
+        //add up the positive correlations with what we hold
+        double total = 0;
+
+        for (int i = 0; i < held.size(); i++) {
+            total += Math.max(0, matrix.getCorrelation(productId, held.get(i)));
+        }
+
+        return 1.0 / (1.0 + total);
+    }
+}
@@ -0,0 +1,112 @@
+package com.gamesbykevin.tradingbot.calculator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The covariance / correlation of the candle returns of every product at a point in time.<br>
+ * A new matrix is published by the {@link CorrelationEngine} every time a candle is added, once published it never
+ * changes so it can be read without locking
+ */
+public class CorrelationMatrix {
+
+    //the index of each product
+    private final Map<String, Integer> products;
+
+    //the upper triangle of our matrices (row by row)
+    private final double[] covariance;
+    private final double[] correlation;
+
+    //how many candles are in the window
+    private final int count;
+
+    //the time of the most recent candle
+    private final long time;
+
+    protected CorrelationMatrix(Map<String, Integer> products, double[] covariance, double[] correlation, int count, long time) {
+        this.products = Collections.unmodifiableMap(new HashMap<>(products));
+        this.covariance = covariance;
+        this.correlation = correlation;
+        this.count = count;
+        this.time = time;
+    }
+
+    /**
+     * Get the correlation of the returns
+     * @param productId1 The first product
+     * @param productId2 The second product
+     * @return The correlation (-1.0 - 1.0), 0 if we don't have enough data
+     */
+    public double getCorrelation(String productId1, String productId2) {
+
+        final int index = getIndex(productId1, productId2);
+
+        return (index < 0) ? 0 : correlation[index];
+    }
+
+    /**
+     * Get the covariance of the returns
+     * @param productId1 The first product
+     * @param productId2 The second product
+     * @return The covariance, 0 if we don't have enough data
+     */
+    public double getCovariance(String productId1, String productId2) {
+
+        final int index = getIndex(productId1, productId2);
+
+        return (index < 0) ? 0 : covariance[index];
+    }
+
+    /**
+     * Get the variance of the returns
+     * @param productId The product
+     * @return The variance, 0 if we don't have enough data
+     */
+    public double getVariance(String productId) {
+        return getCovariance(productId, productId);
+    }
+
+    /**
+     * How many candles are the values calculated from
+     * @return The number of candles in our window
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    public long getTime() {
+        return this.time;
+    }
+
+    public boolean hasProduct(String productId) {
+        return products.containsKey(productId);
+    }
+
+    private int getIndex(String productId1, String productId2) {
+
+        final Integer index1 = products.get(productId1);
+        final Integer index2 = products.get(productId2);
+
+        //we don't track the product, or there isn't enough data
+        if (index1 == null || index2 == null || count < 2)
+            return -1;
+
+        return getIndex(index1, index2);
+    }
+
+    /**
+     * Get the position in the upper triangle
+     * @param index1 The index of the first product
+     * @param index2 The index of the second product
+     * @return The position
+     */
+    protected static int getIndex(int index1, int index2) {
+
+        //the matrix is symmetric so we only store the upper triangle
+        final int row = Math.min(index1, index2);
+        final int column = Math.max(index1, index2);
+
+        return (column * (column + 1) / 2) + row;
+    }
+}
@@ -3,6 +3,7 @@ package com.gamesbykevin.tradingbot.calculator.indicator;
 import com.gamesbykevin.tradingbot.calculator.Calculation;
 import com.gamesbykevin.tradingbot.calculator.Calculator;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.List;
 
@@ -49,6 +50,15 @@ public abstract class Indicator extends Calculation {
         return this.key;
     }
 
+    /**
+     * Attach the materialized indicators of the product / candle we are calculating.<br>
+     * By default we calculate in memory, indicators that can read from the store will override this
+     * @param store The indicator store, null if there isn't one
+     */
+    public void attach(IndicatorStore store) {
+        //nothing to attach by default
+    }
+
     //any common elements here that all indicators have that isn't part of Strategy?
     public abstract void calculate(List<Period> history, int newPeriods);
 }
\ No newline at end of file
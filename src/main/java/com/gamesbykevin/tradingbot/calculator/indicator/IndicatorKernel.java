@@ -0,0 +1,393 @@
+package com.gamesbykevin.tradingbot.calculator.indicator;
+
+import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
+
+import java.util.List;
+
+/**
+ * Batch kernels used when an indicator calculates its whole series at once (warming up, back testing, sweeps).<br>
+ * The history is copied into primitive arrays once and each kernel is a plain loop over them, so nothing is boxed and
+ * the JIT is free to unroll / vectorize the loops. The results match the point by point calculations of each indicator
+ */
+public final class IndicatorKernel {
+
+    private IndicatorKernel() {
+        //we don't create instances
+    }
+
+    /**
+     * Get the values of the field for each period
+     * @param history Our trading data
+     * @param field The field we want
+     * @return The values, oldest to newest
+     */
+    public static double[] getValues(List<Period> history, Fields field) {
+
+        final double[] values = new double[history.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(history.get(i), field);
+        }
+
+        return values;
+    }
+
+    /**
+     * Get the average of the fields for each period
+     * @param history Our trading data
+     * @param fields The fields we want to average
+     * @return The values, oldest to newest
+     */
+    public static double[] getValues(List<Period> history, List<Fields> fields) {
+
+        //no need to average a single field
+        if (fields.size() == 1)
+            return getValues(history, fields.get(0));
+
+        final double[] values = new double[history.size()];
+
+        for (int i = 0; i < values.length; i++) {
+
+            Period period = history.get(i);
+
+            double sum = 0;
+
+            for (int j = 0; j < fields.size(); j++) {
+                sum += getValue(period, fields.get(j));
+            }
+
+            values[i] = (sum / (float)fields.size());
+        }
+
+        return values;
+    }
+
+    private static double getValue(Period period, Fields field) {
+
+        switch (field) {
+
+            case Open:
+                return period.open;
+
+            case Close:
+                return period.close;
+
+            case Low:
+                return period.low;
+
+            case High:
+                return period.high;
+
+            case Time:
+                return period.time;
+
+            case Volume:
+                return period.volume;
+
+            default:
+                throw new RuntimeException("Field not handled: " + field);
+        }
+    }
+
+    /**
+     * Simple moving average, the value at index i is the average of the values before it (i - periods to i - 1)
+     * @param values Our source values
+     * @param periods The number of periods
+     * @return The averages for index periods to values.length (inclusive)
+     */
+    public static double[] sma(double[] values, int periods) {
+
+        if (values.length < periods)
+            return new double[0];
+
+        final double[] result = new double[values.length - periods + 1];
+
+        for (int i = 0; i < result.length; i++) {
+
+            //the window is added up each time (not a running total) so the result matches the point by point sma
+            double sum = 0;
+
+            for (int x = i; x < i + periods; x++) {
+                sum += values[x];
+            }
+
+            result[i] = sum / (double)periods;
+        }
+
+        return result;
+    }
+
+    /**
+     * Exponential moving average, seeded with the sma of the first window
+     * @param values Our source values
+     * @param periods The number of periods
+     * @return The averages for index periods to values.length - 1
+     */
+    public static double[] ema(double[] values, int periods) {
+
+        if (values.length <= periods)
+            return new double[0];
+
+        final double[] result = new double[values.length - periods];
+
+        //what is our multiplier
+        final float multiplier = ((float)2 / ((float)periods + 1.0f));
+
+        double previous = 0;
+
+        for (int i = 0; i < result.length; i++) {
+
+            final int index = i + periods;
+
+            if (previous != 0) {
+
+                previous = ((values[index] - previous) * multiplier) + previous;
+
+            } else {
+
+                //calculate simple moving average since there is no previous ema
+                double sum = 0;
+
+                for (int x = index + 1 - periods; x <= index; x++) {
+                    sum += values[x];
+                }
+
+                final double sma = sum / (double)periods;
+
+                previous = ((values[index] - sma) * multiplier) + sma;
+            }
+
+            result[i] = previous;
+        }
+
+        return result;
+    }
+
+    /**
+     * Bollinger bands standard deviation, the deviation at index uses the closes before it and the sma of the window
+     * ending at index
+     * @param close Our close values
+     * @param sma The sma of the closes, see {@link #sma(double[], int)}
+     * @param periods The number of periods
+     * @return The standard deviation for index periods to close.length - 1
+     */
+    public static double[] deviation(double[] close, double[] sma, int periods) {
+
+        if (close.length <= periods)
+            return new double[0];
+
+        final double[] result = new double[close.length - periods];
+
+        for (int i = 0; i < result.length; i++) {
+
+            final int index = i + periods;
+
+            //the sma is offset by the periods we couldn't calculate
+            final double average = sma[index - periods + 1];
+
+            double sum = 0;
+
+            for (int x = index - periods; x < index; x++) {
+                final double difference = close[x] - average;
+                sum += difference * difference;
+            }
+
+            result[i] = Math.sqrt(sum / (double)periods);
+        }
+
+        return result;
+    }
+
+    /**
+     * Relative strength index, using the smoothed average gain / loss
+     * @param close Our close values
+     * @param periods The number of periods
+     * @param avgGain Populated with the average gain of each value, must be the length of the result
+     * @param avgLoss Populated with the average loss of each value, must be the length of the result
+     * @return The rsi for index periods to close.length - 1
+     */
+    public static double[] rsi(double[] close, int periods, double[] avgGain, double[] avgLoss) {
+
+        if (close.length <= periods)
+            return new double[0];
+
+        final double[] result = new double[close.length - periods];
+
+        double gain = 0, loss = 0;
+
+        for (int i = 0; i < result.length; i++) {
+
+            final int index = i + periods;
+
+            if (i == 0) {
+
+                //add up our gain and losses
+                double sumGain = 0, sumLoss = 0;
+
+                for (int x = (index + 1) - periods; x <= index; x++) {
+
+                    final double diff = Math.abs(close[x] - close[x - 1]);
+
+                    if (close[x] > close[x - 1]) {
+                        sumGain += diff;
+                    } else {
+                        sumLoss += diff;
+                    }
+                }
+
+                gain = sumGain / (float)periods;
+                loss = sumLoss / (float)periods;
+
+            } else {
+
+                final double diff = Math.abs(close[index] - close[index - 1]);
+                final boolean up = close[index] > close[index - 1];
+
+                //smooth out the value
+                gain = ((gain * (float)(periods - 1) + (up ? diff : 0)) / (float)periods);
+                loss = ((loss * (float)(periods - 1) + (up ? 0 : diff)) / (float)periods);
+            }
+
+            avgGain[i] = gain;
+            avgLoss[i] = loss;
+
+            if (gain <= 0) {
+                result[i] = 0.0d;
+            } else if (loss <= 0) {
+                result[i] = 100.0d;
+            } else {
+                result[i] = 100.0f - (100.0f / (1.0f + (gain / loss)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * On balance volume, starting with the volume of the second period
+     * @param close Our close values
+     * @param volume Our volume values
+     * @return The obv for index 1 to close.length - 1
+     */
+    public static double[] obv(double[] close, double[] volume) {
+
+        if (close.length < 2)
+            return new double[0];
+
+        final double[] result = new double[close.length - 1];
+
+        double total = volume[1];
+
+        for (int i = 1; i < close.length; i++) {
+
+            //positive if the price went up, negative if down
+            if (close[i] > close[i - 1]) {
+                total += volume[i];
+            } else if (close[i] < close[i - 1]) {
+                total -= volume[i];
+            }
+
+            result[i - 1] = total;
+        }
+
+        return result;
+    }
+
+    /**
+     * True range of each period
+     * @param high Our high values
+     * @param low Our low values
+     * @param close Our close values
+     * @return The true range for every index
+     */
+    public static double[] trueRange(double[] high, double[] low, double[] close) {
+
+        final double[] result = new double[high.length];
+
+        for (int i = 0; i < result.length; i++) {
+
+            double value = high[i] - low[i];
+
+            //we want the greatest value
+            if (i > 0) {
+                value = Math.max(value, Math.abs(high[i] - close[i - 1]));
+                value = Math.max(value, Math.abs(low[i] - close[i - 1]));
+            }
+
+            result[i] = value;
+        }
+
+        return result;
+    }
+
+    /**
+     * Average true range, the first value is the average of the first window which is then smoothed with every true range
+     * @param trueRange Our true range values
+     * @param periods The number of periods
+     * @return The average true range, 1 more than the true range values
+     */
+    public static double[] atr(double[] trueRange, int periods) {
+
+        final double[] result = new double[trueRange.length + 1];
+
+        double sum = 0;
+
+        for (int i = 0; i < periods; i++) {
+            sum += trueRange[i];
+        }
+
+        result[0] = (sum / (float)periods);
+
+        for (int i = 0; i < trueRange.length; i++) {
+            result[i + 1] = ((result[i] * (periods - 1)) + trueRange[i]) / (float)periods;
+        }
+
+        return result;
+    }
+
+    /**
+     * Volume weighted moving average, the value at index uses the window ending at index
+     * @param close Our close values
+     * @param volume Our volume values
+     * @param periods The number of periods
+     * @return The vwma for index periods to close.length - 1
+     */
+    public static double[] vwma(double[] close, double[] volume, int periods) {
+
+        if (close.length <= periods)
+            return new double[0];
+
+        final double[] result = new double[close.length - periods];
+
+        for (int i = 0; i < result.length; i++) {
+
+            final int index = i + periods;
+
+            //the window is added up each time, a running total could leave a remainder when the volume is 0
+            double numerator = 0, denominator = 0;
+
+            for (int x = index - periods + 1; x <= index; x++) {
+                numerator += close[x] * volume[x];
+                denominator += volume[x];
+            }
+
+            //don't divide by 0
+            result[i] = (numerator == 0 || denominator == 0) ? 0 : (numerator / denominator);
+        }
+
+        return result;
+    }
+
+    /**
+     * Add the values to our list
+     * @param list The list we are populating
+     * @param values The values to add
+     */
+    public static void addAll(List<Double> list, double[] values) {
+
+        for (int i = 0; i < values.length; i++) {
+            list.add(values[i]);
+        }
+    }
+}
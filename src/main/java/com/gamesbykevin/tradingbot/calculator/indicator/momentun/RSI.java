@@ -2,7 +2,11 @@ package com.gamesbykevin.tradingbot.calculator.indicator.momentun;
 
 import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,6 +22,9 @@ public class RSI extends Indicator {
     //our average gain and loss
     private List<Double> avgGain, avgLoss;
 
+    //where we read our materialized values, null to calculate in memory
+    private IndicatorStore store;
+
     //list of configurable values
     private static final int PERIODS = 14;
 
@@ -55,11 +62,33 @@ public class RSI extends Indicator {
         display(agent, "RSI (" + getPeriods() + "): ", getValueRSI(), write);
     }
 
+    @Override
+    public void attach(IndicatorStore store) {
+        this.store = store;
+    }
+
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
+        //read the whole series from our store if we can
+        if (getValueRSI().isEmpty() && store != null && read(history))
+            return;
+
+        //calculate the whole series at once
+        if (getValueRSI().isEmpty()) {
+
+            final double[] close = IndicatorKernel.getValues(history, Fields.Close);
+            final double[] avgGain = new double[Math.max(0, close.length - getPeriods())];
+            final double[] avgLoss = new double[avgGain.length];
+
+            IndicatorKernel.addAll(getValueRSI(), IndicatorKernel.rsi(close, getPeriods(), avgGain, avgLoss));
+            IndicatorKernel.addAll(getAvgGain(), avgGain);
+            IndicatorKernel.addAll(getAvgLoss(), avgLoss);
+            return;
+        }
+
         //where do we start
-        int start = (getValueRSI().isEmpty() ? 0 : history.size() - newPeriods);
+        int start = history.size() - newPeriods;
 
         //calculate as many periods as we need
         for (int index = start; index < history.size(); index++) {
@@ -146,6 +175,26 @@ public class RSI extends Indicator {
         }
     }
 
+    private boolean read(List<Period> history) {
+
+        final double[] values = new double[history.size()];
+        final double[] avgGain = new double[values.length];
+        final double[] avgLoss = new double[values.length];
+
+        //the store doesn't line up with our history
+        if (store.read(Function.RSI, Fields.Close, getPeriods(), history, values, avgGain, avgLoss) == null)
+            return false;
+
+        //the rsi starts once we can go back far enough
+        for (int i = getPeriods(); i < values.length; i++) {
+            getValueRSI().add(values[i]);
+            getAvgGain().add(avgGain[i]);
+            getAvgLoss().add(avgLoss[i]);
+        }
+
+        return true;
+    }
+
     @Override
     public void cleanup() {
         cleanup(getValueRSI());
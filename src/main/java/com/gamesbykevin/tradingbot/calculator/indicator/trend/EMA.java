@@ -4,6 +4,9 @@ import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
 import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,6 +21,9 @@ public class EMA extends Indicator {
     //list of ema values
     private List<Double> emaList;
 
+    //where we read our materialized values, null to calculate in memory
+    private IndicatorStore store;
+
     //list of configurable values
     public static final int PERIODS = 12;
 
@@ -57,13 +63,38 @@ public class EMA extends Indicator {
         display(agent, "EMA (" + getPeriods() + ") :", getEma(), write);
     }
 
+    @Override
+    public void attach(IndicatorStore store) {
+        this.store = store;
+    }
+
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
+        //read the whole series from our store if we can
+        if (getEma().isEmpty() && store != null && read(history))
+            return;
+
         //calculate ema for short and long periods
         calculateEMA(history, getEma(), newPeriods, getPeriods());
     }
 
+    private boolean read(List<Period> history) {
+
+        final double[] values = new double[history.size()];
+
+        //the store doesn't line up with our history
+        if (store.read(Function.EMA, Fields.Close, getPeriods(), history, values, null, null) == null)
+            return false;
+
+        //the ema starts once we can go back far enough
+        for (int i = getPeriods(); i < values.length; i++) {
+            getEma().add(values[i]);
+        }
+
+        return true;
+    }
+
     private static double calculateEMA(List<Period> history, int current, int periods, double emaPrevious) {
 
         //what is our multiplier
@@ -94,6 +125,12 @@ public class EMA extends Indicator {
 
     public static void calculateEMA(List<Period> history, List<Double> populate, int newPeriods, int periods) {
 
+        //calculate the whole series at once
+        if (populate.isEmpty()) {
+            IndicatorKernel.addAll(populate, IndicatorKernel.ema(IndicatorKernel.getValues(history, Fields.Close), periods));
+            return;
+        }
+
         //where do we start
         int start = populate.isEmpty() ? 0 : history.size() - newPeriods;
 
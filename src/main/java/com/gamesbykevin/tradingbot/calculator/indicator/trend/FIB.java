@@ -90,6 +90,29 @@ public class FIB extends Indicator {
         //no cleanup needed
     }
 
+    @Override
+    public FIB copy() {
+
+        final FIB copy = (FIB)super.copy();
+
+        //each level calculates from its own fib, so the copy needs its own levels
+        copy.levels = null;
+
+        for (Float percentage : getLevels().keySet()) {
+
+            final Level level = getLevels().get(percentage);
+            final Level tmp = copy.getLevel(percentage);
+
+            tmp.percentage = level.percentage;
+            tmp.uptrendRetracement = level.uptrendRetracement;
+            tmp.uptrendExtension = level.uptrendExtension;
+            tmp.downtrendRetracement = level.downtrendRetracement;
+            tmp.downtrendExtension = level.downtrendExtension;
+        }
+
+        return copy;
+    }
+
     private class Level {
 
         public float percentage;
@@ -4,6 +4,7 @@ import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
 import com.gamesbykevin.tradingbot.calculator.indicator.trend.EMA;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -77,6 +78,14 @@ public class MACD extends Indicator {
         getObjLongEMA().displayData(agent, write);
     }
 
+    @Override
+    public void attach(IndicatorStore store) {
+
+        //our signal line is calculated from the macd line, so only the ema of the close can be read
+        getObjShortEMA().attach(store);
+        getObjLongEMA().attach(store);
+    }
+
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
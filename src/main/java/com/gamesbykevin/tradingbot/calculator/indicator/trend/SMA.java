@@ -4,6 +4,9 @@ import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
 import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.*;
 
@@ -18,6 +21,9 @@ public class SMA extends Indicator {
     //the fields we want to calculate
     private final List<Fields> fields;
 
+    //where we read our materialized values, null to calculate in memory
+    private IndicatorStore store;
+
     public SMA(int periods) {
 
         //assume close field default
@@ -76,6 +82,13 @@ public class SMA extends Indicator {
         display(agent, "SMA (" + getPeriods() + "): ", getSma(), write);
     }
 
+    @Override
+    public void attach(IndicatorStore store) {
+
+        //the store only has averages of a single field
+        this.store = (getFields().size() == 1) ? store : null;
+    }
+
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
@@ -83,8 +96,18 @@ public class SMA extends Indicator {
         if (history.isEmpty())
             return;
 
+        //read the whole series from our store if we can
+        if (getSma().isEmpty() && store != null && read(history))
+            return;
+
+        //calculate the whole series at once
+        if (getSma().isEmpty()) {
+            IndicatorKernel.addAll(getSma(), IndicatorKernel.sma(IndicatorKernel.getValues(history, getFields()), getPeriods()));
+            return;
+        }
+
         //where do we start
-        int start = getSma().isEmpty() ? 0 : history.size() - newPeriods;
+        int start = history.size() - newPeriods;
 
         //check all data when calculating
         for (int i = start; i <= history.size(); i++) {
@@ -101,6 +124,22 @@ public class SMA extends Indicator {
         }
     }
 
+    private boolean read(List<Period> history) {
+
+        final double[] values = new double[history.size()];
+
+        //the store doesn't line up with our history
+        if (store.read(Function.SMA, getFields().get(0), getPeriods(), history, values, null, null) == null)
+            return false;
+
+        //the stored value includes the current period, our list starts with the first full window
+        for (int i = getPeriods() - 1; i < values.length; i++) {
+            getSma().add(values[i]);
+        }
+
+        return true;
+    }
+
     public void calculateSMA(List<Double> data, int newPeriods) {
 
         //where do we start
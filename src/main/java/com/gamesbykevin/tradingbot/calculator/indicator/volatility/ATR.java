@@ -2,7 +2,9 @@ package com.gamesbykevin.tradingbot.calculator.indicator.volatility;
 
 import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -58,6 +60,20 @@ public class ATR extends Indicator {
         if (history.size() < getPeriods())
             return;
 
+        //calculate the whole series at once
+        if (getAverageTrueRange().isEmpty() && getTrueRange().isEmpty()) {
+
+            final double[] trueRange = IndicatorKernel.trueRange(
+                IndicatorKernel.getValues(history, Fields.High),
+                IndicatorKernel.getValues(history, Fields.Low),
+                IndicatorKernel.getValues(history, Fields.Close)
+            );
+
+            IndicatorKernel.addAll(getTrueRange(), trueRange);
+            IndicatorKernel.addAll(getAverageTrueRange(), IndicatorKernel.atr(trueRange, getPeriods()));
+            return;
+        }
+
         for (int i = start; i < history.size(); i++) {
 
             //get the current and previous periods
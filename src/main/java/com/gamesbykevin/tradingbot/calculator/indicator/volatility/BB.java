@@ -2,8 +2,11 @@ package com.gamesbykevin.tradingbot.calculator.indicator.volatility;
 
 import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
 import com.gamesbykevin.tradingbot.calculator.indicator.trend.SMA;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -75,9 +78,22 @@ public class BB extends Indicator {
         display(agent, "Width: ", getWidth(), write);
     }
 
+    @Override
+    public void attach(IndicatorStore store) {
+
+        //our middle values can be read, the bands are calculated from them
+        getMiddle().attach(store);
+    }
+
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
+        //calculate the whole series at once
+        if (getWidth().isEmpty() && getMiddle().getSma().isEmpty()) {
+            calculateAll(history);
+            return;
+        }
+
         //calculate our sma values
         getMiddle().calculate(history, newPeriods);
 
@@ -117,6 +133,36 @@ public class BB extends Indicator {
         }
     }
 
+    private void calculateAll(List<Period> history) {
+
+        final double[] close = IndicatorKernel.getValues(history, Fields.Close);
+
+        //calculate our middle values, they are read from our store if it is attached
+        getMiddle().calculate(history, history.size());
+
+        final double[] sma = new double[getMiddle().getSma().size()];
+
+        for (int i = 0; i < sma.length; i++) {
+            sma[i] = getMiddle().getSma().get(i);
+        }
+
+        final double[] deviation = IndicatorKernel.deviation(close, sma, getPeriods());
+
+        for (int i = 0; i < deviation.length; i++) {
+
+            //the sma is offset by the periods we couldn't calculate
+            final double middle = sma[i + 1];
+
+            //calculate our upper and lower values
+            final double upper = middle + (deviation[i] * multiplier);
+            final double lower = middle - (deviation[i] * multiplier);
+
+            getUpper().add(upper);
+            getLower().add(lower);
+            getWidth().add(upper - lower);
+        }
+    }
+
     private double getStandardDeviation(List<Period> history, double sma, int index) {
 
         double sum = 0;
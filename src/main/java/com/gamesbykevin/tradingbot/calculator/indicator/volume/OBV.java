@@ -2,7 +2,9 @@ package com.gamesbykevin.tradingbot.calculator.indicator.volume;
 
 import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
 import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
 
 import java.util.ArrayList;
@@ -39,8 +41,14 @@ public class OBV extends Indicator {
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
+        //calculate the whole series at once
+        if (getVolume().isEmpty()) {
+            IndicatorKernel.addAll(getVolume(), IndicatorKernel.obv(IndicatorKernel.getValues(history, Fields.Close), IndicatorKernel.getValues(history, Fields.Volume)));
+            return;
+        }
+
         //where do we start?
-        int start = getVolume().isEmpty() ? 0 : history.size() - newPeriods;
+        int start = history.size() - newPeriods;
 
         //calculate the obv for each period
         for (int i = start; i < history.size(); i++) {
@@ -2,7 +2,9 @@ package com.gamesbykevin.tradingbot.calculator.indicator.volume;
 
 import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.calculator.indicator.IndicatorKernel;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -40,8 +42,14 @@ public class VWMA extends Indicator {
     @Override
     public void calculate(List<Period> history, int newPeriods) {
 
+        //calculate the whole series at once
+        if (getVWMA().isEmpty()) {
+            IndicatorKernel.addAll(getVWMA(), IndicatorKernel.vwma(IndicatorKernel.getValues(history, Fields.Close), IndicatorKernel.getValues(history, Fields.Volume), getPeriods()));
+            return;
+        }
+
         //where do we start
-        int start = getVWMA().isEmpty() ? 0 : (history.size() - newPeriods);
+        int start = history.size() - newPeriods;
 
         //calculate missing values
         for (int index = start; index < history.size(); index++) {
@@ -0,0 +1,68 @@
+package com.gamesbykevin.tradingbot.calculator.rule;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A compiled rule.<br>
+ * The rule is a tree of method handles taking the calculated series and the index of the period to check. Each rule
+ * gets its own generated class holding the tree as a constant (see {@link RuleLoader}), so the JIT inlines the tree
+ * and evaluating a rule does no parsing, looking anything up or calling through the handles
+ */
+public class Rule {
+
+    /**
+     * Evaluates a compiled rule, implemented by the class generated for each rule
+     */
+    public interface Evaluator {
+
+        /**
+         * Evaluate the rule
+         * @param values The values calculated by the series the rule was compiled with
+         * @param index The period to check
+         * @return true if the rule is met, false otherwise
+         */
+        boolean evaluate(double[][] values, int index);
+    }
+
+    //the rule as it was written
+    private final String expression;
+
+    //the compiled rule
+    private final Evaluator evaluator;
+
+    //how many periods does the rule shift back
+    private final int offset;
+
+    protected Rule(String expression, MethodHandle handle, int offset) {
+        this.expression = expression;
+        this.evaluator = RuleLoader.define(handle);
+        this.offset = offset;
+    }
+
+    /**
+     * Evaluate the rule
+     * @param values The values calculated by the series the rule was compiled with
+     * @param index The period to check
+     * @return true if the rule is met, false otherwise
+     */
+    public boolean evaluate(double[][] values, int index) {
+        return evaluator.evaluate(values, index);
+    }
+
+    public String getExpression() {
+        return this.expression;
+    }
+
+    /**
+     * How many periods back does the rule check with prev(), confirm() and the crossovers
+     * @return The largest number of periods shifted
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public String toString() {
+        return getExpression();
+    }
+}
@@ -0,0 +1,543 @@
+package com.gamesbykevin.tradingbot.calculator.rule;
+
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles declarative rules into method handle trees.<br>
+ * A rule is written with functions, for example:<br>
+ * and(cross_above(ema(close, 12), ema(close, 26)), confirm(gt(rsi(14), 50), 3))<br>
+ * <br>
+ * Series: open, high, low, close, volume, ema([series,] periods), sma([series,] periods), rsi([series,] periods)<br>
+ * Values: numbers, prev(value, periods), add(a, b), sub(a, b), mul(a, b), div(a, b)<br>
+ * Conditions: gt(a, b), lt(a, b), ge(a, b), le(a, b), cross_above(a, b), cross_below(a, b),
+ * and(...), or(...), not(condition), confirm(condition, periods), prev(condition, periods)
+ */
+public class RuleCompiler {
+
+    //the type of every compiled value (double[][] values, int index)
+    private static final MethodType TYPE_VALUE = MethodType.methodType(double.class, double[][].class, int.class);
+
+    //the type of every compiled condition (double[][] values, int index)
+    private static final MethodType TYPE_CONDITION = MethodType.methodType(boolean.class, double[][].class, int.class);
+
+    //the method handles our rules are built from
+    private static final MethodHandle GET, SHIFT, NOT, GT, LT, GE, LE, ADD, SUB, MUL, DIV, TRUE, FALSE;
+
+    static {
+
+        try {
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            MethodType compare = MethodType.methodType(boolean.class, double.class, double.class);
+            MethodType math = MethodType.methodType(double.class, double.class, double.class);
+
+            GET = lookup.findStatic(RuleCompiler.class, "get", MethodType.methodType(double.class, double[][].class, int.class, int.class));
+            SHIFT = lookup.findStatic(RuleCompiler.class, "shift", MethodType.methodType(int.class, int.class, int.class));
+            NOT = lookup.findStatic(RuleCompiler.class, "not", MethodType.methodType(boolean.class, boolean.class));
+            GT = lookup.findStatic(RuleCompiler.class, "gt", compare);
+            LT = lookup.findStatic(RuleCompiler.class, "lt", compare);
+            GE = lookup.findStatic(RuleCompiler.class, "ge", compare);
+            LE = lookup.findStatic(RuleCompiler.class, "le", compare);
+            ADD = lookup.findStatic(RuleCompiler.class, "add", math);
+            SUB = lookup.findStatic(RuleCompiler.class, "sub", math);
+            MUL = lookup.findStatic(RuleCompiler.class, "mul", math);
+            DIV = lookup.findStatic(RuleCompiler.class, "div", math);
+
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+
+        TRUE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, double[][].class, int.class);
+        FALSE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, double[][].class, int.class);
+    }
+
+    private RuleCompiler() {
+        //no instances needed
+    }
+
+    /**
+     * Compile the rule, any series the rule needs are added to the series
+     * @param expression The rule we want to compile
+     * @param series The series the rule will read from
+     * @return The compiled rule
+     */
+    public static Rule compile(String expression, RuleSeries series) {
+
+        if (expression == null || expression.trim().isEmpty())
+            throw new RuntimeException("Rule is empty");
+
+        //parse the rule
+        Parser parser = new Parser(expression);
+        Node node = parser.parse();
+
+        //compile it
+        Compiled compiled = compile(node, series);
+
+        //the rule has to result in a condition
+        if (!compiled.handle.type().equals(TYPE_CONDITION))
+            throw new RuntimeException("Rule needs to be a condition: " + expression);
+
+        return new Rule(expression.trim(), compiled.handle, compiled.offset);
+    }
+
+    private static Compiled compile(Node node, RuleSeries series) {
+
+        //numbers are constant
+        if (node.name == null)
+            return new Compiled(MethodHandles.dropArguments(MethodHandles.constant(double.class, node.value), 0, double[][].class, int.class), 0);
+
+        //is this a series?
+        final int slot = getSlot(node, series);
+
+        if (slot >= 0)
+            return new Compiled(MethodHandles.insertArguments(GET, 2, slot), 0);
+
+        switch (node.name) {
+
+            case "prev":
+                check(node, 2);
+                return shift(compile(node.args.get(0), series), getPeriods(node, 1));
+
+            case "add":
+                return combine(node, series, ADD);
+
+            case "sub":
+                return combine(node, series, SUB);
+
+            case "mul":
+                return combine(node, series, MUL);
+
+            case "div":
+                return combine(node, series, DIV);
+
+            case "gt":
+                return combine(node, series, GT);
+
+            case "lt":
+                return combine(node, series, LT);
+
+            case "ge":
+                return combine(node, series, GE);
+
+            case "le":
+                return combine(node, series, LE);
+
+            case "cross_above":
+            case "cross_below": {
+
+                check(node, 2);
+
+                Compiled a = value(node.args.get(0), series);
+                Compiled b = value(node.args.get(1), series);
+
+                final boolean above = node.name.equals("cross_above");
+
+                //a is now above (below) b, and the previous period it wasn't
+                Compiled now = combine(above ? GT : LT, a, b);
+                Compiled before = combine(above ? LE : GE, shift(a, 1), shift(b, 1));
+
+                return and(now, before);
+            }
+
+            case "and":
+            case "or": {
+
+                if (node.args.size() < 2)
+                    throw new RuntimeException("\"" + node.name + "\" needs at least 2 conditions");
+
+                //build from the last condition so the first is checked first
+                Compiled result = condition(node.args.get(node.args.size() - 1), series);
+
+                for (int i = node.args.size() - 2; i >= 0; i--) {
+
+                    Compiled current = condition(node.args.get(i), series);
+                    result = node.name.equals("and") ? and(current, result) : or(current, result);
+                }
+
+                return result;
+            }
+
+            case "not": {
+
+                check(node, 1);
+
+                Compiled condition = condition(node.args.get(0), series);
+                return new Compiled(MethodHandles.filterReturnValue(condition.handle, NOT), condition.offset);
+            }
+
+            case "confirm": {
+
+                check(node, 2);
+
+                //the condition has to be met for each of the recent periods
+                final Compiled condition = condition(node.args.get(0), series);
+                final int periods = getPeriods(node, 1);
+
+                if (periods < 1)
+                    throw new RuntimeException("\"confirm\" needs at least 1 period");
+
+                Compiled result = shift(condition, periods - 1);
+
+                for (int i = periods - 2; i >= 0; i--) {
+                    result = and(shift(condition, i), result);
+                }
+
+                return result;
+            }
+
+            default:
+                throw new RuntimeException("Rule function not found: " + node.name);
+        }
+    }
+
+    /**
+     * Get the series slot of the node
+     * @return The slot, or -1 if the node is not a series
+     */
+    private static int getSlot(Node node, RuleSeries series) {
+
+        //fields are referenced by name only
+        if (node.args == null) {
+
+            switch (node.name) {
+
+                case "open":
+                    return series.getSlot(Fields.Open);
+
+                case "high":
+                    return series.getSlot(Fields.High);
+
+                case "low":
+                    return series.getSlot(Fields.Low);
+
+                case "close":
+                    return series.getSlot(Fields.Close);
+
+                case "volume":
+                    return series.getSlot(Fields.Volume);
+
+                default:
+                    throw new RuntimeException("Rule series not found: " + node.name);
+            }
+        }
+
+        final Function function;
+
+        switch (node.name) {
+
+            case "ema":
+                function = Function.EMA;
+                break;
+
+            case "sma":
+                function = Function.SMA;
+                break;
+
+            case "rsi":
+                function = Function.RSI;
+                break;
+
+            default:
+                return -1;
+        }
+
+        //the series defaults to the close $
+        if (node.args.size() == 1)
+            return series.getSlot(function, series.getSlot(Fields.Close), getPeriods(node, 0));
+
+        check(node, 2);
+
+        //the source has to be a series as well
+        final int source = (node.args.get(0).name != null) ? getSlot(node.args.get(0), series) : -1;
+
+        if (source < 0)
+            throw new RuntimeException("\"" + node.name + "\" needs to be calculated from a series");
+
+        return series.getSlot(function, source, getPeriods(node, 1));
+    }
+
+    private static Compiled combine(Node node, RuleSeries series, MethodHandle operation) {
+
+        check(node, 2);
+
+        return combine(operation, value(node.args.get(0), series), value(node.args.get(1), series));
+    }
+
+    private static Compiled combine(MethodHandle operation, Compiled a, Compiled b) {
+
+        //(values, index, values, index) -> result
+        MethodHandle handle = MethodHandles.collectArguments(operation, 1, b.handle);
+        handle = MethodHandles.collectArguments(handle, 0, a.handle);
+
+        //pass the same values and index to both
+        handle = MethodHandles.permuteArguments(handle, MethodType.methodType(operation.type().returnType(), double[][].class, int.class), 0, 1, 0, 1);
+
+        return new Compiled(handle, Math.max(a.offset, b.offset));
+    }
+
+    private static Compiled and(Compiled a, Compiled b) {
+
+        //b is only checked if a is true
+        return new Compiled(MethodHandles.guardWithTest(a.handle, b.handle, FALSE), Math.max(a.offset, b.offset));
+    }
+
+    private static Compiled or(Compiled a, Compiled b) {
+
+        //b is only checked if a is false
+        return new Compiled(MethodHandles.guardWithTest(a.handle, TRUE, b.handle), Math.max(a.offset, b.offset));
+    }
+
+    private static Compiled shift(Compiled compiled, int periods) {
+
+        if (periods < 0)
+            throw new RuntimeException("Can't shift forward: " + periods);
+
+        //nothing to shift
+        if (periods == 0)
+            return compiled;
+
+        //check the index the number of periods before
+        MethodHandle handle = MethodHandles.filterArguments(compiled.handle, 1, MethodHandles.insertArguments(SHIFT, 1, periods));
+
+        return new Compiled(handle, compiled.offset + periods);
+    }
+
+    private static Compiled value(Node node, RuleSeries series) {
+
+        Compiled compiled = compile(node, series);
+
+        if (!compiled.handle.type().equals(TYPE_VALUE))
+            throw new RuntimeException("Expected a value: " + node);
+
+        return compiled;
+    }
+
+    private static Compiled condition(Node node, RuleSeries series) {
+
+        Compiled compiled = compile(node, series);
+
+        if (!compiled.handle.type().equals(TYPE_CONDITION))
+            throw new RuntimeException("Expected a condition: " + node);
+
+        return compiled;
+    }
+
+    private static void check(Node node, int count) {
+
+        if (node.args == null || node.args.size() != count)
+            throw new RuntimeException("\"" + node.name + "\" needs " + count + " argument(s)");
+    }
+
+    private static int getPeriods(Node node, int index) {
+
+        Node arg = node.args.get(index);
+
+        //the periods have to be a whole number
+        if (arg.name != null || arg.value != Math.floor(arg.value))
+            throw new RuntimeException("\"" + node.name + "\" periods must be a whole number: " + arg);
+
+        return (int)arg.value;
+    }
+
+    private static double get(double[][] values, int index, int slot) {
+
+        //there is no data before the first period
+        return (index < 0) ? Double.NaN : values[slot][index];
+    }
+
+    private static int shift(int index, int periods) {
+        return index - periods;
+    }
+
+    private static boolean not(boolean value) {
+        return !value;
+    }
+
+    //NaN means we don't have enough data, so all of the comparisons are false
+
+    private static boolean gt(double a, double b) {
+        return a > b;
+    }
+
+    private static boolean lt(double a, double b) {
+        return a < b;
+    }
+
+    private static boolean ge(double a, double b) {
+        return a >= b;
+    }
+
+    private static boolean le(double a, double b) {
+        return a <= b;
+    }
+
+    private static double add(double a, double b) {
+        return a + b;
+    }
+
+    private static double sub(double a, double b) {
+        return a - b;
+    }
+
+    private static double mul(double a, double b) {
+        return a * b;
+    }
+
+    private static double div(double a, double b) {
+        return a / b;
+    }
+
+    /**
+     * A compiled part of our rule
+     */
+    private static class Compiled {
+
+        private final MethodHandle handle;
+
+        //how many periods back the handle reads
+        private final int offset;
+
+        private Compiled(MethodHandle handle, int offset) {
+            this.handle = handle;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A parsed part of our rule, either a number or a name with optional arguments
+     */
+    private static class Node {
+
+        private String name;
+
+        private double value;
+
+        private List<Node> args;
+
+        @Override
+        public String toString() {
+
+            if (name == null)
+                return String.valueOf(value);
+
+            return (args == null) ? name : name + args;
+        }
+    }
+
+    /**
+     * Parses the text of a rule into nodes
+     */
+    private static class Parser {
+
+        private final String text;
+
+        private int position = 0;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Node parse() {
+
+            Node node = parseNode();
+
+            skip();
+
+            //make sure we read everything
+            if (position < text.length())
+                throw error("Unexpected character");
+
+            return node;
+        }
+
+        private Node parseNode() {
+
+            skip();
+
+            if (position >= text.length())
+                throw error("Unexpected end of rule");
+
+            Node node = new Node();
+
+            final char c = text.charAt(position);
+
+            if (Character.isDigit(c) || c == '-' || c == '.') {
+
+                //read the number
+                final int start = position++;
+
+                while (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                    position++;
+                }
+
+                try {
+                    node.value = Double.parseDouble(text.substring(start, position));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number");
+                }
+
+                return node;
+            }
+
+            if (!Character.isLetter(c))
+                throw error("Unexpected character");
+
+            //read the name
+            final int start = position;
+
+            while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                position++;
+            }
+
+            node.name = text.substring(start, position).toLowerCase();
+
+            skip();
+
+            //if there are no arguments we are done
+            if (position >= text.length() || text.charAt(position) != '(')
+                return node;
+
+            position++;
+            node.args = new ArrayList<>();
+
+            while (true) {
+
+                node.args.add(parseNode());
+
+                skip();
+
+                if (position >= text.length())
+                    throw error("Missing \")\"");
+
+                final char next = text.charAt(position++);
+
+                if (next == ')')
+                    break;
+                if (next != ',')
+                    throw error("Expected \",\" or \")\"");
+            }
+
+            return node;
+        }
+
+        private void skip() {
+
+            //skip any whitespace
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private RuntimeException error(String message) {
+            return new RuntimeException(message + " at position " + position + ": " + text);
+        }
+    }
+}
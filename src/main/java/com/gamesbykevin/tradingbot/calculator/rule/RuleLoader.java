@@ -0,0 +1,142 @@
+package com.gamesbykevin.tradingbot.calculator.rule;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a small class for each compiled rule.<br>
+ * The class keeps the method handle tree of the rule in a static final field, which the JIT treats as a constant, so
+ * the whole tree is inlined into the class' evaluate method instead of being called through an object field
+ */
+public class RuleLoader extends ClassLoader {
+
+    //the name of every generated class starts with this
+    private static final String CLASS_NAME = "com/gamesbykevin/tradingbot/calculator/rule/CompiledRule";
+
+    //the type of the handle field
+    private static final String HANDLE_DESC = Type.getDescriptor(MethodHandle.class);
+
+    //our single loader
+    private static RuleLoader LOADER;
+
+    //the handles waiting for their class to be initialized
+    private static final ConcurrentHashMap<Integer, MethodHandle> HANDLES = new ConcurrentHashMap<>();
+
+    //the id of the next class
+    private static final AtomicInteger ID = new AtomicInteger();
+
+    private RuleLoader() {
+        super(RuleLoader.class.getClassLoader());
+    }
+
+    private static synchronized RuleLoader getLoader() {
+
+        //create the loader if it does not exist
+        if (LOADER == null)
+            LOADER = new RuleLoader();
+
+        return LOADER;
+    }
+
+    /**
+     * Create the evaluator of a compiled rule
+     * @param handle The compiled rule (double[][] values, int index) -> boolean
+     * @return The evaluator with the handle bound as a constant
+     */
+    protected static Rule.Evaluator define(MethodHandle handle) {
+
+        final int id = ID.incrementAndGet();
+        final String name = CLASS_NAME + id;
+
+        //the class picks up its handle when initialized
+        HANDLES.put(id, handle);
+
+        try {
+
+            final byte[] bytes = generate(name, id);
+
+            Class<?> type;
+
+            synchronized (getLoader()) {
+                type = getLoader().defineClass(name.replace('/', '.'), bytes, 0, bytes.length);
+            }
+
+            return (Rule.Evaluator)type.newInstance();
+
+        } catch (ReflectiveOperationException e) {
+
+            throw new RuntimeException(e);
+
+        } finally {
+
+            //the class has its handle, or failed to load
+            HANDLES.remove(id);
+        }
+    }
+
+    /**
+     * Get the handle of a generated class, this is only called when the class is initialized
+     * @param id The id of the generated class
+     * @return The compiled rule
+     */
+    public static MethodHandle getHandle(int id) {
+
+        MethodHandle handle = HANDLES.get(id);
+
+        if (handle == null)
+            throw new RuntimeException("Compiled rule not found: " + id);
+
+        return handle;
+    }
+
+    private static byte[] generate(String name, int id) {
+
+        final String evaluator = Type.getInternalName(Rule.Evaluator.class);
+        final String condition = "([[DI)Z";
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null, "java/lang/Object", new String[]{evaluator});
+
+        //private static final MethodHandle HANDLE = RuleLoader.getHandle(id);
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "HANDLE", HANDLE_DESC, null, null).visitEnd();
+
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        method.visitCode();
+        method.visitLdcInsn(id);
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(RuleLoader.class), "getHandle", "(I)" + HANDLE_DESC, false);
+        method.visitFieldInsn(Opcodes.PUTSTATIC, name, "HANDLE", HANDLE_DESC);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        //public constructor
+        method = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        //public boolean evaluate(double[][] values, int index) { return (boolean)HANDLE.invokeExact(values, index); }
+        method = writer.visitMethod(Opcodes.ACC_PUBLIC, "evaluate", condition, null, null);
+        method.visitCode();
+        method.visitFieldInsn(Opcodes.GETSTATIC, name, "HANDLE", HANDLE_DESC);
+        method.visitVarInsn(Opcodes.ALOAD, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(MethodHandle.class), "invokeExact", condition, false);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+}
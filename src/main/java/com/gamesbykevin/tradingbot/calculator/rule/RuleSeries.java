@@ -0,0 +1,316 @@
+package com.gamesbykevin.tradingbot.calculator.rule;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator;
+import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The series our rules read from.<br>
+ * Each field / indicator a rule references is assigned a slot when the rule is compiled, so every rule compiled
+ * against the same series shares the calculated values. The values are calculated into plain arrays
+ * (values[slot][period]) and any period without enough data is NaN
+ */
+public class RuleSeries {
+
+    /**
+     * Functions we can calculate a series with
+     */
+    public enum Function {
+        Field, EMA, SMA, RSI
+    }
+
+    //the definition of each slot
+    private final List<Function> functions;
+    private final List<Integer> sources;
+    private final List<Integer> periods;
+    private final List<String> keys;
+
+    //the order of the fields in our first slots
+    private static final Fields[] FIELDS = {Fields.Open, Fields.High, Fields.Low, Fields.Close, Fields.Volume};
+
+    public RuleSeries() {
+
+        this.functions = new ArrayList<>();
+        this.sources = new ArrayList<>();
+        this.periods = new ArrayList<>();
+        this.keys = new ArrayList<>();
+
+        //the fields are always available
+        for (int i = 0; i < FIELDS.length; i++) {
+            add(Function.Field, -1, 0, FIELDS[i].toString());
+        }
+    }
+
+    private int add(Function function, int source, int periods, String key) {
+
+        this.functions.add(function);
+        this.sources.add(source);
+        this.periods.add(periods);
+        this.keys.add(key);
+
+        //return the new slot
+        return this.keys.size() - 1;
+    }
+
+    /**
+     * Get the slot of a field
+     * @param field The field we want
+     * @return The slot containing the field values
+     */
+    public int getSlot(Fields field) {
+
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i] == field)
+                return i;
+        }
+
+        throw new RuntimeException("Field not supported: " + field);
+    }
+
+    /**
+     * Get the slot of an indicator, it is added if it doesn't exist yet
+     * @param function The indicator
+     * @param source The slot of the series the indicator is calculated from
+     * @param periods The number of periods
+     * @return The slot containing the indicator values
+     */
+    public synchronized int getSlot(Function function, int source, int periods) {
+
+        if (function == Function.Field)
+            throw new RuntimeException("Use the field to get the slot");
+        if (source < 0 || source >= keys.size())
+            throw new RuntimeException("Source slot not defined: " + source);
+
+        //make sure we are retaining enough data
+        if (periods < 1 || periods > Calculator.HISTORICAL_PERIODS_MINIMUM)
+            throw new RuntimeException("Rule (" + function + ") periods must be between 1 and " + Calculator.HISTORICAL_PERIODS_MINIMUM + ": " + periods);
+
+        //our unique key
+        final String key = function + "(" + keys.get(source) + "," + periods + ")";
+
+        //if we already have the series, share it
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).equals(key))
+                return i;
+        }
+
+        return add(function, source, periods, key);
+    }
+
+    /**
+     * How many slots do we have
+     * @return The number of series calculated
+     */
+    public synchronized int getSize() {
+        return keys.size();
+    }
+
+    /**
+     * How many periods back does our longest series depend on
+     * @return The largest number of periods, including the series each indicator is calculated from
+     */
+    public synchronized int getLookback() {
+
+        int result = 0;
+
+        for (int slot = 0; slot < keys.size(); slot++) {
+            result = Math.max(result, getLookback(slot));
+        }
+
+        return result;
+    }
+
+    private int getLookback(int slot) {
+
+        //fields don't look back
+        if (functions.get(slot) == Function.Field)
+            return 0;
+
+        return periods.get(slot) + getLookback(sources.get(slot));
+    }
+
+    /**
+     * Calculate every series from our history
+     * @param history The periods sorted oldest to newest
+     * @param values Arrays to re-use, may be null
+     * @return The calculated values[slot][period]
+     */
+    public double[][] calculate(List<Period> history, double[][] values) {
+        return calculate(history, values, null);
+    }
+
+    /**
+     * Calculate every series from our history, reading the indicators already materialized in our store
+     * @param history The periods sorted oldest to newest
+     * @param values Arrays to re-use, may be null
+     * @param store The indicator store of the product / candle, null to calculate everything
+     * @return The calculated values[slot][period]
+     */
+    public double[][] calculate(List<Period> history, double[][] values, IndicatorStore store) {
+        return calculate(history, values, store, null);
+    }
+
+    /**
+     * Calculate every series from our history, reading the indicators already materialized in our store
+     * @param history The periods sorted oldest to newest
+     * @param values Arrays to re-use, may be null
+     * @param store The indicator store of the product / candle, null to calculate everything
+     * @param states Where we keep the state of each slot so it can be extended later, may be null
+     * @return The calculated values[slot][period]
+     */
+    public double[][] calculate(List<Period> history, double[][] values, IndicatorStore store, SeriesState[] states) {
+
+        final int length = history.size();
+
+        //make sure we have room
+        values = getValues(values, length);
+
+        //copy the fields
+        for (int i = 0; i < length; i++) {
+
+            Period period = history.get(i);
+
+            values[0][i] = period.open;
+            values[1][i] = period.high;
+            values[2][i] = period.low;
+            values[3][i] = period.close;
+            values[4][i] = period.volume;
+        }
+
+        //now calculate the indicators
+        for (int slot = FIELDS.length; slot < values.length; slot++) {
+
+            //read from our store if we can
+            SeriesState state = (store != null) ? calculate(store, history, values, slot) : null;
+
+            if (state == null) {
+                state = new SeriesState(functions.get(slot), periods.get(slot));
+                calculate(state, values[sources.get(slot)], values[slot], 0, length);
+            }
+
+            if (states != null)
+                states[slot] = state;
+        }
+
+        return values;
+    }
+
+    /**
+     * Calculate only the new periods, continuing each series from where the last calculation left off
+     * @param history The periods sorted oldest to newest, the most recent are the new periods
+     * @param newPeriods How many periods were added since the last calculation
+     * @param previous The values of the last calculation, these aren't changed
+     * @param previousLength How many periods the last calculation had
+     * @param states The state of each slot after the last calculation, these are advanced
+     * @return The calculated values[slot][period], or null if the last calculation doesn't line up with our history
+     */
+    public double[][] extend(List<Period> history, int newPeriods, double[][] previous, int previousLength, SeriesState[] states) {
+
+        final int length = history.size();
+
+        //how many periods do we already have
+        final int existing = length - newPeriods;
+
+        if (newPeriods < 1 || existing < 0 || existing > previousLength || previous.length != getSize() || states.length != getSize())
+            return null;
+
+        //the values we already calculated
+        double[][] values = new double[previous.length][length];
+
+        for (int slot = 0; slot < values.length; slot++) {
+            System.arraycopy(previous[slot], previousLength - existing, values[slot], 0, existing);
+        }
+
+        //copy the new fields
+        for (int i = existing; i < length; i++) {
+
+            Period period = history.get(i);
+
+            values[0][i] = period.open;
+            values[1][i] = period.high;
+            values[2][i] = period.low;
+            values[3][i] = period.close;
+            values[4][i] = period.volume;
+        }
+
+        //each indicator is calculated after the series it is calculated from
+        for (int slot = FIELDS.length; slot < values.length; slot++) {
+            calculate(states[slot], values[sources.get(slot)], values[slot], existing, length);
+        }
+
+        return values;
+    }
+
+    /**
+     * Calculate every series from arrays of field values
+     * @param open Open values sorted oldest to newest
+     * @param high High values
+     * @param low Low values
+     * @param close Close values
+     * @param volume Volume values
+     * @param length How many periods to calculate
+     * @param values Arrays to re-use, may be null
+     * @return The calculated values[slot][period]
+     */
+    public double[][] calculate(double[] open, double[] high, double[] low, double[] close, double[] volume, int length, double[][] values) {
+
+        //make sure we have room
+        values = getValues(values, length);
+
+        //copy the fields
+        System.arraycopy(open, 0, values[0], 0, length);
+        System.arraycopy(high, 0, values[1], 0, length);
+        System.arraycopy(low, 0, values[2], 0, length);
+        System.arraycopy(close, 0, values[3], 0, length);
+        System.arraycopy(volume, 0, values[4], 0, length);
+
+        //now calculate the indicators
+        calculateIndicators(values, length);
+
+        return values;
+    }
+
+    private double[][] getValues(double[][] values, int length) {
+
+        final int size = getSize();
+
+        //create new arrays if we can't re-use the existing
+        if (values == null || values.length != size || values[0].length < length) {
+            values = new double[size][length];
+        }
+
+        return values;
+    }
+
+    private void calculateIndicators(double[][] values, int length) {
+
+        for (int slot = FIELDS.length; slot < values.length; slot++) {
+            calculate(new SeriesState(functions.get(slot), periods.get(slot)), values[sources.get(slot)], values[slot], 0, length);
+        }
+    }
+
+    private static void calculate(SeriesState state, double[] source, double[] result, int start, int length) {
+
+        //calculate one period at a time
+        for (int i = start; i < length; i++) {
+            result[i] = state.next(source[i]);
+        }
+    }
+
+    /**
+     * Read the values of the slot from our indicator store, the periods that aren't stored yet are calculated
+     * @return The state after our most recent period, null if the store doesn't line up with our history or isn't materialized yet
+     */
+    private SeriesState calculate(IndicatorStore store, List<Period> history, double[][] values, int slot) {
+
+        //the store only has indicators calculated from a field
+        if (sources.get(slot) >= FIELDS.length)
+            return null;
+
+        return store.read(functions.get(slot), FIELDS[sources.get(slot)], periods.get(slot), history, values[slot], null, null);
+    }
+}
@@ -0,0 +1,225 @@
+package com.gamesbykevin.tradingbot.calculator.rule;
+
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+
+/**
+ * Calculates an indicator one period at a time.<br>
+ * The state can be saved and restored so a series can be extended with new candles without starting over
+ */
+public class SeriesState {
+
+    //what are we calculating
+    private final Function function;
+
+    //how many periods
+    private final int periods;
+
+    //the most recent source values
+    private final double[] window;
+
+    //how many source values have we seen
+    private long seen = 0;
+
+    //running total for the sma
+    private double sum = 0;
+
+    //the most recent value
+    private double value = Double.NaN;
+
+    //the smoothed averages for the rsi
+    private double avgGain = 0, avgLoss = 0;
+
+    public SeriesState(Function function, int periods) {
+
+        if (function == Function.Field)
+            throw new RuntimeException("Fields aren't calculated");
+
+        this.function = function;
+        this.periods = periods;
+
+        //we need the current value plus the number of periods
+        this.window = new double[periods + 1];
+    }
+
+    /**
+     * Restore a previously saved state
+     * @param seen How many source values were seen
+     * @param value The most recent value
+     * @param avgGain The rsi average gain
+     * @param avgLoss The rsi average loss
+     * @param sources The most recent source values sorted oldest to newest, at least the number of periods + 1 (or all that were seen)
+     */
+    public void restore(long seen, double value, double avgGain, double avgLoss, double[] sources) {
+
+        this.seen = seen;
+        this.value = value;
+        this.avgGain = avgGain;
+        this.avgLoss = avgLoss;
+        this.sum = 0;
+
+        //place the sources where they would have been
+        final int count = (int)Math.min(seen, window.length);
+
+        for (int i = 0; i < count; i++) {
+
+            final long index = seen - count + i;
+            final double source = sources[sources.length - count + i];
+
+            window[(int)(index % window.length)] = source;
+
+            //the sma total only includes the number of periods
+            if (index >= seen - periods)
+                sum += source;
+        }
+    }
+
+    /**
+     * Calculate the next value
+     * @param source The next source value, NaN is skipped until the source has values
+     * @return The calculated value, NaN if we don't have enough data yet
+     */
+    public double next(double source) {
+
+        //the source doesn't have a value yet
+        if (Double.isNaN(source))
+            return Double.NaN;
+
+        //the index of the source value
+        final long index = seen;
+
+        window[(int)(index % window.length)] = source;
+        seen++;
+
+        switch (function) {
+
+            case SMA:
+
+                sum += source;
+
+                //remove the value that is no longer part of the average
+                if (index - periods >= 0)
+                    sum -= get(index - periods);
+
+                value = (index + 1 >= periods) ? sum / periods : Double.NaN;
+                break;
+
+            case EMA:
+
+                //what is our multiplier
+                final float multiplier = ((float)2 / ((float)periods + 1.0f));
+
+                if (index < periods) {
+
+                    //skip if we can't go back far enough
+                    value = Double.NaN;
+
+                } else if (index == periods) {
+
+                    //calculate simple moving average since there is no previous ema
+                    double total = 0;
+
+                    for (long i = index - periods + 1; i <= index; i++) {
+                        total += get(i);
+                    }
+
+                    final double sma = total / periods;
+
+                    //use sma to help calculate the first ema value
+                    value = ((source - sma) * multiplier) + sma;
+
+                } else {
+
+                    value = ((source - value) * multiplier) + value;
+                }
+                break;
+
+            case RSI:
+
+                if (index < periods) {
+
+                    //skip if we don't have enough data
+                    value = Double.NaN;
+                    break;
+                }
+
+                if (index == periods) {
+
+                    //add up our gain and losses
+                    double sumGain = 0, sumLoss = 0;
+
+                    for (long i = (index + 1) - periods; i <= index; i++) {
+
+                        final double diff = get(i) - get(i - 1);
+
+                        if (diff > 0) {
+                            sumGain += diff;
+                        } else {
+                            sumLoss -= diff;
+                        }
+                    }
+
+                    //figure out our averages
+                    avgGain = sumGain / (float)periods;
+                    avgLoss = sumLoss / (float)periods;
+
+                } else {
+
+                    final double diff = source - get(index - 1);
+
+                    //figure out our averages, this calculation will smooth out the value
+                    avgGain = ((avgGain * (float)(periods - 1) + (diff > 0 ? diff : 0)) / (float)periods);
+                    avgLoss = ((avgLoss * (float)(periods - 1) + (diff > 0 ? 0 : -diff)) / (float)periods);
+                }
+
+                if (avgGain <= 0) {
+
+                    //if the gain is 0 our rsi will be 0
+                    value = 0.0d;
+
+                } else if (avgLoss <= 0) {
+
+                    //if the loss is 0 our rsi will be 100
+                    value = 100.0d;
+
+                } else {
+
+                    //else calculate the relative strength index
+                    value = 100.0f - (100.0f / (1.0f + (avgGain / avgLoss)));
+                }
+                break;
+
+            default:
+                throw new RuntimeException("Function not defined: " + function);
+        }
+
+        return value;
+    }
+
+    private double get(long index) {
+        return window[(int)(index % window.length)];
+    }
+
+    public Function getFunction() {
+        return this.function;
+    }
+
+    public int getPeriods() {
+        return this.periods;
+    }
+
+    public long getSeen() {
+        return this.seen;
+    }
+
+    public double getValue() {
+        return this.value;
+    }
+
+    public double getAvgGain() {
+        return this.avgGain;
+    }
+
+    public double getAvgLoss() {
+        return this.avgLoss;
+    }
+}
@@ -29,6 +29,9 @@ public class CA extends Strategy {
     private static final float CCI_LOW = -100;
     private static final float CCI_HIGH = 100;
 
+    //is the trend strong enough to buy right away
+    private boolean buyNow = false;
+
     public CA() {
         this(PERIODS_CCI, PERIODS_ADX);
     }
@@ -61,21 +64,10 @@ public class CA extends Strategy {
             double emaSlowCurr = getRecent(objEmaSlow.getEma());
 
             //if things are trending up buy asap, else we buy at the end of the current period
-            if (emaFastCurr > emaSlowCurr && emaFastCurr > emaFastPrev) {
-
-                //we have signal to buy now
-                return true;
+            buyNow = (emaFastCurr > emaSlowCurr && emaFastCurr > emaFastPrev);
 
-            } else {
-
-                //setup the time to trade (if we haven't already)
-                if (!hasSetupTimeTrade())
-                    setupTimeTrade(agent.getCandle());
-
-                //if enough time passed
-                if (hasTimeTrade())
-                    return true;
-            }
+            //we have a signal, the price check will decide when
+            return true;
 
         } else {
 
@@ -87,6 +79,21 @@ public class CA extends Strategy {
         return false;
     }
 
+    @Override
+    protected boolean hasBuyPrice(Agent agent, List<Period> history, double currentPrice) {
+
+        //we have signal to buy now
+        if (buyNow)
+            return true;
+
+        //setup the time to trade (if we haven't already)
+        if (!hasSetupTimeTrade())
+            setupTimeTrade(agent.getCandle());
+
+        //if enough time passed
+        return hasTimeTrade();
+    }
+
     @Override
     public boolean hasSellSignal(Agent agent, List<Period> history, double currentPrice) {
 
@@ -22,6 +22,9 @@ public class CC extends Strategy {
     private static final float SIGNAL_BULLISH_HIGH = 200;
     private static final float SIGNAL_BEARISH = -100;
 
+    //the period index where we set our stop loss
+    private int indexStop = -1;
+
     public CC() {
 
         //call parent
@@ -48,10 +51,7 @@ public class CC extends Strategy {
 
                 //if we found a rating below 0 our stop loss will be here
                 if (objCCI.getCCI().get(index) < 0) {
-
-                    //the hard stop price will be the low of the previous candle that was below 0
-                    createTrade(agent);
-                    agent.getTrade().goShort(agent, history.get(index).low);
+                    indexStop = index;
                     break;
                 }
             }
@@ -63,6 +63,19 @@ public class CC extends Strategy {
         return false;
     }
 
+    @Override
+    protected boolean hasBuyPrice(Agent agent, List<Period> history, double currentPrice) {
+
+        //the hard stop price will be the low of the previous candle that was below 0
+        if (indexStop >= 0) {
+            createTrade(agent);
+            agent.getTrade().goShort(agent, history.get(indexStop).low);
+        }
+
+        //nothing else to confirm
+        return true;
+    }
+
     @Override
     public boolean hasSellSignal(Agent agent, List<Period> history, double currentPrice) {
 
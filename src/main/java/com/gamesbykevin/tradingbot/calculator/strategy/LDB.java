@@ -49,10 +49,6 @@ public class LDB extends Strategy {
             if (getRecent(objMACD.getMacdLine(), 2) < getRecent(objMACD.getSignalLine(), 2) &&
                     getRecent(objMACD.getMacdLine()) > getRecent(objMACD.getSignalLine())) {
 
-                //set the protective stop at the low of the recent candles
-                createTrade(agent);
-                agent.getTrade().setHardStopPrice(getShortLow(history));
-
                 //we have a signal
                 return true;
             }
@@ -62,6 +58,17 @@ public class LDB extends Strategy {
         return false;
     }
 
+    @Override
+    protected boolean hasBuyPrice(Agent agent, List<Period> history, double currentPrice) {
+
+        //set the protective stop at the low of the recent candles
+        createTrade(agent);
+        agent.getTrade().setHardStopPrice(getShortLow(history));
+
+        //nothing else to confirm
+        return true;
+    }
+
     @Override
     public boolean hasSellSignal(Agent agent, List<Period> history, double currentPrice) {
 
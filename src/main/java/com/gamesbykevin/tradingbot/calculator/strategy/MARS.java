@@ -65,6 +65,17 @@ public class MARS extends Strategy {
         }
     }
 
+    @Override
+    public void inherit(Strategy previous) {
+
+        //call parent
+        super.inherit(previous);
+
+        //keep where the support and resistance is
+        this.indexSupport = ((MARS)previous).indexSupport;
+        this.indexResistance = ((MARS)previous).indexResistance;
+    }
+
     @Override
     public boolean hasBuySignal(Agent agent, List<Period> history, double currentPrice) {
 
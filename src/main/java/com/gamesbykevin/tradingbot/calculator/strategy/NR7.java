@@ -37,22 +37,38 @@ public class NR7 extends Strategy {
         INDEX_RSI = addIndicator(new RSI(PERIODS));
     }
 
+    @Override
+    public void inherit(Strategy previous) {
+
+        //call parent
+        super.inherit(previous);
+
+        //keep track of our sell break and candle
+        this.sellBreak = ((NR7)previous).sellBreak;
+        this.candleTime = ((NR7)previous).candleTime;
+    }
+
     @Override
     public boolean hasBuySignal(Agent agent, List<Period> history, double currentPrice) {
 
         //obtain our indicator
-        NR nr = (NR)getIndicator(INDEX_NR);
         RSI rsi = (RSI)getIndicator(INDEX_RSI);
 
         //we want the rsi level to be oversold
-        if (getRecent(rsi.getValueRSI()) <= OVERSOLD) {
-
-            //when the price breaks out above the high, we will buy
-            if (currentPrice > nr.getNarrowRangeCandle().high) {
-                candleTime = 0;
-                sellBreak = nr.getNarrowRangeCandle().low;
-                return true;
-            }
+        return (getRecent(rsi.getValueRSI()) <= OVERSOLD);
+    }
+
+    @Override
+    protected boolean hasBuyPrice(Agent agent, List<Period> history, double currentPrice) {
+
+        //obtain our indicator
+        NR nr = (NR)getIndicator(INDEX_NR);
+
+        //when the price breaks out above the high, we will buy
+        if (currentPrice > nr.getNarrowRangeCandle().high) {
+            candleTime = 0;
+            sellBreak = nr.getNarrowRangeCandle().low;
+            return true;
         }
 
         //no signal yet
@@ -62,6 +78,13 @@ public class NR7 extends Strategy {
     @Override
     public boolean hasSellSignal(Agent agent, List<Period> history, double currentPrice) {
 
+        //we sell based on the price
+        return true;
+    }
+
+    @Override
+    protected boolean hasSellPrice(Agent agent, List<Period> history, double currentPrice) {
+
         //assign the candle time if not set yet
         if (candleTime == 0)
             candleTime = history.get(history.size() - 1).time;
@@ -74,14 +97,7 @@ public class NR7 extends Strategy {
         Trade trade = agent.getTrade();
 
         //confirm the $ is below the sell break $
-        boolean confirm = true;
-
-        //make sure enough $'s are below the sell break to trigger a sell
-        for (int index = trade.getPriceHistory().length - 5; index < trade.getPriceHistory().length; index++) {
-
-            if (trade.getPriceHistory()[index] == 0 || trade.getPriceHistory()[index] > sellBreak)
-                confirm = false;
-        }
+        boolean confirm = trade.getExit().hasConfirmedBelow(sellBreak);
 
         //make sure we confirmed the price
         if (confirm)
@@ -0,0 +1,271 @@
+package com.gamesbykevin.tradingbot.calculator.strategy;
+
+import com.gamesbykevin.tradingbot.agent.Agent;
+import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.rule.Rule;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleCompiler;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries;
+import com.gamesbykevin.tradingbot.calculator.rule.SeriesState;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
+
+/**
+ * Declarative strategy, the buy and sell signals are rules from our property file.<br>
+ * Any number of named rule sets can be compiled, they all share the same series so each indicator is only calculated
+ * once per candle no matter how many rule sets use it. Our agent trades the rule set {@link #RULE_SET}
+ */
+public class RULE extends Strategy {
+
+    /**
+     * Name of the rule set from ruleBuy / ruleSell
+     */
+    public static final String RULE_SET_DEFAULT = "default";
+
+    /**
+     * The rule for our buy signal
+     */
+    public static String RULE_BUY = null;
+
+    /**
+     * The rule for our sell signal
+     */
+    public static String RULE_SELL = null;
+
+    /**
+     * Additional named rule sets {buy, sell}
+     */
+    public static final Map<String, String[]> RULE_SETS = new LinkedHashMap<>();
+
+    /**
+     * The name of the rule set our agent trades
+     */
+    public static String RULE_SET = RULE_SET_DEFAULT;
+
+    //the rules are only compiled once and shared by every instance
+    private static RuleSeries SERIES;
+    private static String[] NAMES;
+    private static Rule[] BUY, SELL;
+
+    //the index of the rule set our agent trades
+    private static int TRADED;
+
+    //the largest number of periods any rule shifts back
+    private static int OFFSET;
+
+    //the values calculated for this candle
+    private double[][] values;
+
+    //how many periods were calculated
+    private int length = 0;
+
+    //the state of each series, so the next candle continues where we left off
+    private SeriesState[] states;
+
+    //our materialized indicators, if available
+    private IndicatorStore store;
+
+    public RULE() {
+
+        //call parent
+        super(Key.RULE);
+
+        //compile our rules
+        compile();
+    }
+
+    private static synchronized void compile() {
+
+        //we only need to compile once
+        if (SERIES != null)
+            return;
+
+        //every rule set we want to compile
+        LinkedHashMap<String, String[]> sets = new LinkedHashMap<>();
+
+        if (RULE_BUY != null || RULE_SELL != null)
+            sets.put(RULE_SET_DEFAULT, new String[]{RULE_BUY, RULE_SELL});
+
+        sets.putAll(RULE_SETS);
+
+        if (sets.isEmpty())
+            throw new RuntimeException("ruleBuy and ruleSell (or ruleSets) need to be in your property file to use " + Key.RULE);
+
+        //the rules share the same series
+        RuleSeries series = new RuleSeries();
+
+        String[] names = new String[sets.size()];
+        Rule[] buy = new Rule[sets.size()];
+        Rule[] sell = new Rule[sets.size()];
+
+        int index = 0, offset = 0, traded = -1;
+
+        for (Map.Entry<String, String[]> entry : sets.entrySet()) {
+
+            if (entry.getValue()[0] == null || entry.getValue()[1] == null)
+                throw new RuntimeException("The rule set " + entry.getKey() + " needs a buy and a sell rule");
+
+            names[index] = entry.getKey();
+            buy[index] = RuleCompiler.compile(entry.getValue()[0], series);
+            sell[index] = RuleCompiler.compile(entry.getValue()[1], series);
+            offset = Math.max(offset, Math.max(buy[index].getOffset(), sell[index].getOffset()));
+
+            if (entry.getKey().equals(RULE_SET))
+                traded = index;
+
+            index++;
+        }
+
+        //if the default rule set isn't in our property file, trade the first one
+        if (traded < 0 && !RULE_SET_DEFAULT.equals(RULE_SET))
+            throw new RuntimeException("The rule set " + RULE_SET + " is not in your property file");
+
+        NAMES = names;
+        BUY = buy;
+        SELL = sell;
+        TRADED = Math.max(0, traded);
+        OFFSET = offset;
+        SERIES = series;
+    }
+
+    @Override
+    public int getPeriodsMax() {
+        return SERIES.getLookback() + OFFSET;
+    }
+
+    @Override
+    public void attach(IndicatorStore store) {
+        super.attach(store);
+        this.store = store;
+    }
+
+    @Override
+    public void calculate(List<Period> history, int newPeriods) {
+
+        double[][] result = null;
+
+        //only calculate the new periods if we can
+        if (newPeriods > 0 && states != null && values != null)
+            result = SERIES.extend(history, newPeriods, values, length, states);
+
+        if (result == null) {
+
+            //calculate every series our rules need, reading what we can from our store
+            this.states = new SeriesState[SERIES.getSize()];
+            result = SERIES.calculate(history, null, store, states);
+        }
+
+        this.values = result;
+        this.length = history.size();
+    }
+
+    /**
+     * Calculate every series our rules need from arrays of field values, the arrays from the previous call are re-used
+     * @param open Open values sorted oldest to newest
+     * @param high High values
+     * @param low Low values
+     * @param close Close values
+     * @param volume Volume values
+     * @param length How many periods to calculate
+     */
+    public void calculate(double[] open, double[] high, double[] low, double[] close, double[] volume, int length) {
+        this.values = SERIES.calculate(open, high, low, close, volume, length, this.values);
+        this.length = length;
+
+        //these values aren't from our history, so they can't be extended
+        this.states = null;
+    }
+
+    @Override
+    public boolean hasBuySignal(Agent agent, List<Period> history, double currentPrice) {
+
+        //no data, no signal
+        if (length < 1)
+            return false;
+
+        return hasBuySignal(length - 1);
+    }
+
+    @Override
+    public boolean hasSellSignal(Agent agent, List<Period> history, double currentPrice) {
+
+        //no data, no signal
+        if (length < 1)
+            return false;
+
+        return hasSellSignal(length - 1);
+    }
+
+    /**
+     * Check the buy rule of the rule set we trade for the specified period
+     * @param index The period calculated
+     * @return true if the buy rule is met, false otherwise
+     */
+    public boolean hasBuySignal(int index) {
+        return hasBuySignal(TRADED, index);
+    }
+
+    /**
+     * Check the sell rule of the rule set we trade for the specified period
+     * @param index The period calculated
+     * @return true if the sell rule is met, false otherwise
+     */
+    public boolean hasSellSignal(int index) {
+        return hasSellSignal(TRADED, index);
+    }
+
+    /**
+     * Check the buy rule of a rule set for the specified period
+     * @param set The index of the rule set
+     * @param index The period calculated
+     * @return true if the buy rule is met, false otherwise
+     */
+    public boolean hasBuySignal(int set, int index) {
+        return BUY[set].evaluate(values, index);
+    }
+
+    /**
+     * Check the sell rule of a rule set for the specified period
+     * @param set The index of the rule set
+     * @param index The period calculated
+     * @return true if the sell rule is met, false otherwise
+     */
+    public boolean hasSellSignal(int set, int index) {
+        return SELL[set].evaluate(values, index);
+    }
+
+    /**
+     * How many rule sets were compiled
+     * @return The number of rule sets
+     */
+    public int getRuleSets() {
+        return NAMES.length;
+    }
+
+    /**
+     * Get the name of a rule set
+     * @param set The index of the rule set
+     * @return The name from our property file
+     */
+    public String getRuleSet(int set) {
+        return NAMES[set];
+    }
+
+    @Override
+    public void displayData(Agent agent, boolean write) {
+
+        //display the rules and whether they are met
+        displayMessage(agent, "Rule set: " + NAMES[TRADED], write);
+        displayMessage(agent, "Buy rule: " + BUY[TRADED] + " = " + (length > 0 && hasBuySignal(length - 1)), write);
+        displayMessage(agent, "Sell rule: " + SELL[TRADED] + " = " + (length > 0 && hasSellSignal(length - 1)), write);
+    }
+
+    @Override
+    public void cleanup() {
+        //the values are only kept for this candle
+    }
+}
@@ -41,6 +41,18 @@ public class SMASR extends Strategy {
         INDEX_SMA_LONG = addIndicator(new SMA(PERIODS_SMA_LONG));
     }
 
+    @Override
+    public void inherit(Strategy previous) {
+
+        //call parent
+        super.inherit(previous);
+
+        //keep our previous decision
+        this.boughtLevel1 = ((SMASR)previous).boughtLevel1;
+        this.boughtLevel2 = ((SMASR)previous).boughtLevel2;
+        this.boughtLevel3 = ((SMASR)previous).boughtLevel3;
+    }
+
     @Override
     public boolean hasBuySignal(Agent agent, List<Period> history, double price) {
 
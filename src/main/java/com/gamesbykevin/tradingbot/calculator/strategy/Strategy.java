@@ -5,6 +5,7 @@ import com.gamesbykevin.tradingbot.calculator.Calculation;
 import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
 import com.gamesbykevin.tradingbot.calculator.Period;
 import com.gamesbykevin.tradingbot.calculator.indicator.Indicator;
+import com.gamesbykevin.tradingbot.util.IndicatorStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -72,6 +73,7 @@ public abstract class Strategy extends Calculation {
         PVE,
         RA,
         REMA,
+        RULE,
         SEMAS,
         SM,
         SMASR,
@@ -92,6 +94,9 @@ public abstract class Strategy extends Calculation {
     //did we setup the time to wait?
     private boolean timeWait = false;
 
+    //result of our candle signals, only checked once since a new instance is created for every candle
+    private Boolean signalBuy = null, signalSell = null;
+
     protected Strategy(Key key) {
         this.key = key;
     }
@@ -137,6 +142,17 @@ public abstract class Strategy extends Calculation {
         return this.key;
     }
 
+    /**
+     * A new instance of this strategy is calculated with every new candle.<br>
+     * Carry forward the state the previous instance saved while checking for signals.
+     * The wait flag is not carried forward since a new candle means we are done waiting
+     * @param previous The instance used before the new candle, of the same strategy
+     */
+    public void inherit(Strategy previous) {
+        this.timeEnd = previous.timeEnd;
+        this.timeWait = previous.timeWait;
+    }
+
     protected int addIndicator(Indicator indicator) {
 
         //add the indicator to the list
@@ -146,6 +162,23 @@ public abstract class Strategy extends Calculation {
         return (getIndicators().size() - 1);
     }
 
+    /**
+     * Get the most periods any of our indicators look back
+     * @return The largest number of periods of all our indicators
+     */
+    public int getPeriodsMax() {
+
+        int result = 0;
+
+        for (int index =  0; index < getIndicators().size(); index++) {
+
+            if (getIndicator(index).getPeriods() > result)
+                result = getIndicator(index).getPeriods();
+        }
+
+        return result;
+    }
+
     protected Indicator getIndicator(int index) {
         return getIndicators().get(index);
     }
@@ -170,6 +203,18 @@ public abstract class Strategy extends Calculation {
         }
     }
 
+    /**
+     * Attach the materialized indicators of the product / candle we are calculating.<br>
+     * Each of our indicators reads what it can from the store, strategies with their own calculations will override this
+     * @param store The indicator store, null if there isn't one
+     */
+    public void attach(IndicatorStore store) {
+
+        for (int index =  0; index < getIndicators().size(); index++) {
+            getIndicator(index).attach(store);
+        }
+    }
+
     public void calculate(List<Period> history, int newPeriods) {
 
         for (int index =  0; index < getIndicators().size(); index++) {
@@ -209,10 +254,64 @@ public abstract class Strategy extends Calculation {
         agent.getTrade().goShort(agent, price);
     }
 
+    /**
+     * Check for a buy signal, the candle signal is only checked once and the price signal is checked every time
+     * @param agent The agent trading
+     * @param history Our historical periods
+     * @param currentPrice The current price
+     * @return true if we have a signal to buy, false otherwise
+     */
+    public boolean checkBuySignal(Agent agent, List<Period> history, double currentPrice) {
+
+        //the candle data won't change, so we only check once
+        if (signalBuy == null)
+            signalBuy = hasBuySignal(agent, history, currentPrice);
+
+        return signalBuy && hasBuyPrice(agent, history, currentPrice);
+    }
+
+    /**
+     * Check for a sell signal, the candle signal is only checked once and the price signal is checked every time
+     * @param agent The agent trading
+     * @param history Our historical periods
+     * @param currentPrice The current price
+     * @return true if we have a signal to sell, false otherwise
+     */
+    public boolean checkSellSignal(Agent agent, List<Period> history, double currentPrice) {
+
+        //the candle data won't change, so we only check once
+        if (signalSell == null)
+            signalSell = hasSellSignal(agent, history, currentPrice);
+
+        return signalSell && hasSellPrice(agent, history, currentPrice);
+    }
+
+    /**
+     * Candle signal to buy, this is only checked once per candle so it should only depend on the history and indicators
+     */
     public abstract boolean hasBuySignal(Agent agent, List<Period> history, double currentPrice);
 
+    /**
+     * Candle signal to sell, this is only checked once per candle so it should only depend on the history and indicators
+     */
     public abstract boolean hasSellSignal(Agent agent, List<Period> history, double currentPrice);
 
+    /**
+     * Price signal to buy, this is checked every time once we have a candle signal to buy
+     * @return true if the price confirms our signal, by default there is nothing to confirm
+     */
+    protected boolean hasBuyPrice(Agent agent, List<Period> history, double currentPrice) {
+        return true;
+    }
+
+    /**
+     * Price signal to sell, this is checked every time once we have a candle signal to sell
+     * @return true if the price confirms our signal, by default there is nothing to confirm
+     */
+    protected boolean hasSellPrice(Agent agent, List<Period> history, double currentPrice) {
+        return true;
+    }
+
     /**
      * Does the strategy need to wait?
      * @return true = we need to wait for new candle data, false = otherwise
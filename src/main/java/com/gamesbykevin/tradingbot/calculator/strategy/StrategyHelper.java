@@ -7,7 +7,15 @@ import java.util.List;
 
 public class StrategyHelper {
 
-    public static synchronized double getValue(List<Period> data, Fields field, int index) {
+    /**
+     * Get the value of the field for the period.<br>
+     * This is called for every recent value our strategies check, so it must not lock
+     * @param data List of periods
+     * @param field The desired field
+     * @param index The index of the period
+     * @return The value of the field
+     */
+    public static double getValue(List<Period> data, Fields field, int index) {
 
         Period period = data.get(index);
 
@@ -0,0 +1,313 @@
+package com.gamesbykevin.tradingbot.feed;
+
+import com.gamesbykevin.tradingbot.product.Ticker;
+import com.gamesbykevin.tradingbot.util.GSon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.gamesbykevin.tradingbot.calculator.Calculator.ENDPOINT_HISTORIC;
+import static com.gamesbykevin.tradingbot.calculator.Calculator.ENDPOINT_TICKER;
+import static com.gamesbykevin.tradingbot.calculator.Period.*;
+import static com.gamesbykevin.tradingbot.util.JSon.getJsonResponse;
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Shares the market data we get from the exchange with every bot process on the host.<br>
+ * The first process to lock the {@link TickJournal} is the feed handler, it polls the exchange and publishes the
+ * ticks and candles it receives. Every other process tails the journal and only polls the exchange itself when the
+ * feed handler doesn't have what it needs, so the number of requests doesn't grow with the number of bots
+ */
+public class MarketFeed implements Runnable {
+
+    /**
+     * Do we share our market data with the other processes on this host
+     */
+    public static boolean MARKET_FEED = false;
+
+    /**
+     * Where is our journal stored
+     */
+    public static final String JOURNAL_FILE = "journal" + File.separator + "market.dat";
+
+    /**
+     * How many records does our journal hold
+     */
+    public static final int JOURNAL_CAPACITY = 65536;
+
+    /**
+     * How old can a tick be (milliseconds) before we poll the exchange ourselves
+     */
+    public static long TICK_STALE = 10000L;
+
+    /**
+     * How many candles do we keep for each product / candle, the same as the exchange returns
+     */
+    public static final int CANDLE_LIMIT = 300;
+
+    //how many times do we check for new records before we start sleeping
+    private static final int SPIN_LIMIT = 10000;
+
+    //how long do we sleep when there are no new records (nanoseconds)
+    private static final long IDLE_PARK = 50000L;
+
+    //our feed for this process
+    private static MarketFeed FEED;
+
+    //our journal
+    private volatile TickJournal journal;
+
+    //the most recent tick of each product
+    private final ConcurrentHashMap<String, Tick> ticks;
+
+    //the most recent candles of each product / candle duration
+    private final ConcurrentHashMap<String, TreeMap<Long, double[]>> candles;
+
+    //the thread tailing our journal
+    private Thread thread;
+
+    private MarketFeed() {
+        this.ticks = new ConcurrentHashMap<>();
+        this.candles = new ConcurrentHashMap<>();
+    }
+
+    private static synchronized MarketFeed getFeed() {
+
+        //create the feed if it does not exist
+        if (FEED == null)
+            FEED = new MarketFeed();
+
+        //open the journal, or try again if the feed handler hasn't created it yet
+        if (FEED.journal == null)
+            FEED.open();
+
+        return FEED;
+    }
+
+    private void open() {
+
+        try {
+
+            //try to become the feed handler first
+            TickJournal tmp = TickJournal.openWriter(new File(JOURNAL_FILE), JOURNAL_CAPACITY);
+
+            if (tmp != null) {
+                displayMessage("Market feed handler: " + tmp.getFile().getPath());
+                this.journal = tmp;
+                return;
+            }
+
+            //another process is the feed handler, tail what it publishes
+            tmp = TickJournal.openReader(new File(JOURNAL_FILE));
+
+            if (tmp == null)
+                return;
+
+            displayMessage("Market feed reader: " + tmp.getFile().getPath());
+            this.journal = tmp;
+
+            this.thread = new Thread(this, "market-feed");
+            this.thread.setDaemon(true);
+            this.thread.start();
+
+        } catch (IOException e) {
+            displayMessage(e, null);
+        }
+    }
+
+    private boolean isWriter() {
+        return (journal != null && journal.isWriter());
+    }
+
+    @Override
+    public void run() {
+
+        final TickJournal.Reader reader = journal.createReader();
+        final TickJournal.Record record = new TickJournal.Record();
+
+        //how many times did we find nothing new
+        int idle = 0;
+
+        while (!journal.isWriter()) {
+
+            if (reader.poll(record)) {
+
+                idle = 0;
+                apply(record);
+
+            } else if (++idle < SPIN_LIMIT) {
+
+                //the next record is usually right behind
+                Thread.yield();
+
+            } else {
+
+                //nothing is happening, don't keep a core busy
+                LockSupport.parkNanos(IDLE_PARK);
+            }
+        }
+    }
+
+    private void apply(TickJournal.Record record) {
+
+        switch (record.type) {
+
+            case TickJournal.TYPE_TICK:
+
+                Tick tick = new Tick();
+                tick.time = record.time;
+                tick.ticker.product_id = record.productId;
+                tick.ticker.price = record.values[0];
+                tick.ticker.best_bid = record.values[1];
+                tick.ticker.best_ask = record.values[2];
+                tick.ticker.volume_24h = record.values[3];
+                ticks.put(record.productId, tick);
+                break;
+
+            case TickJournal.TYPE_CANDLE:
+
+                double[] row = new double[PERIOD_INDEX_VOLUME + 1];
+                row[PERIOD_INDEX_TIME] = record.time;
+                row[PERIOD_INDEX_LOW] = record.values[0];
+                row[PERIOD_INDEX_HIGH] = record.values[1];
+                row[PERIOD_INDEX_OPEN] = record.values[2];
+                row[PERIOD_INDEX_CLOSE] = record.values[3];
+                row[PERIOD_INDEX_VOLUME] = record.values[4];
+
+                TreeMap<Long, double[]> rows = candles.computeIfAbsent(getKey(record.productId, record.duration), key -> new TreeMap<>());
+
+                synchronized (rows) {
+
+                    rows.put(record.time, row);
+
+                    //only keep the most recent candles
+                    while (rows.size() > CANDLE_LIMIT) {
+                        rows.pollFirstEntry();
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Get the latest ticker of the product
+     * @param productId The product
+     * @return The ticker, null if the exchange didn't respond
+     */
+    public static Ticker getTicker(String productId) {
+
+        if (!MARKET_FEED)
+            return GSon.getGson().fromJson(getJsonResponse(String.format(ENDPOINT_TICKER, productId)), Ticker.class);
+
+        MarketFeed feed = getFeed();
+
+        //use what the feed handler published if it is recent
+        if (!feed.isWriter()) {
+
+            Tick tick = feed.ticks.get(productId);
+
+            if (tick != null && System.currentTimeMillis() - tick.time <= TICK_STALE)
+                return tick.ticker;
+
+            //the feed handler may have stopped, see if we can take over
+            feed.promote();
+        }
+
+        Ticker ticker = GSon.getGson().fromJson(getJsonResponse(String.format(ENDPOINT_TICKER, productId)), Ticker.class);
+
+        //share with the other processes
+        if (ticker != null && feed.isWriter())
+            feed.journal.append(TickJournal.TYPE_TICK, productId, 0, System.currentTimeMillis(), ticker.price, ticker.best_bid, ticker.best_ask, ticker.volume_24h);
+
+        return ticker;
+    }
+
+    /**
+     * Get the most recent candles of the product, the same as the exchange returns them
+     * @param productId The product
+     * @param duration The candle duration (seconds)
+     * @return The candles newest to oldest (time, low, high, open, close, volume), null if the exchange didn't respond
+     */
+    public static double[][] getCandles(String productId, long duration) {
+
+        if (!MARKET_FEED)
+            return GSon.getGson().fromJson(getJsonResponse(String.format(ENDPOINT_HISTORIC, productId, duration)), double[][].class);
+
+        MarketFeed feed = getFeed();
+
+        //use what the feed handler published if it has the candle that just started
+        if (!feed.isWriter()) {
+
+            TreeMap<Long, double[]> rows = feed.candles.get(getKey(productId, (int)duration));
+
+            if (rows != null) {
+
+                synchronized (rows) {
+
+                    //the start of the current candle
+                    final long time = ((System.currentTimeMillis() / 1000L) / duration) * duration;
+
+                    if (!rows.isEmpty() && rows.lastKey() >= time)
+                        return rows.descendingMap().values().toArray(new double[rows.size()][]);
+                }
+            }
+        }
+
+        double[][] data = GSon.getGson().fromJson(getJsonResponse(String.format(ENDPOINT_HISTORIC, productId, duration)), double[][].class);
+
+        //share with the other processes
+        if (data != null && feed.isWriter()) {
+
+            //oldest first so the readers receive the newest candle last
+            for (int i = data.length - 1; i >= 0; i--) {
+
+                final double[] row = data[i];
+
+                feed.journal.append(TickJournal.TYPE_CANDLE, productId, (int)duration, (long)row[PERIOD_INDEX_TIME],
+                    row[PERIOD_INDEX_LOW], row[PERIOD_INDEX_HIGH], row[PERIOD_INDEX_OPEN], row[PERIOD_INDEX_CLOSE], row[PERIOD_INDEX_VOLUME]);
+            }
+        }
+
+        return data;
+    }
+
+    private synchronized void promote() {
+
+        if (isWriter())
+            return;
+
+        try {
+
+            TickJournal tmp = TickJournal.openWriter(new File(JOURNAL_FILE), JOURNAL_CAPACITY);
+
+            //the feed handler is still running
+            if (tmp == null)
+                return;
+
+            displayMessage("Market feed handler: " + tmp.getFile().getPath());
+
+            //our reader thread stops once we are the writer
+            this.journal = tmp;
+
+        } catch (IOException e) {
+            displayMessage(e, null);
+        }
+    }
+
+    private static String getKey(String productId, int duration) {
+        return productId + "-" + duration;
+    }
+
+    /**
+     * A ticker and when it was received
+     */
+    private static class Tick {
+
+        private long time;
+
+        private final Ticker ticker = new Ticker();
+    }
+}
@@ -0,0 +1,373 @@
+package com.gamesbykevin.tradingbot.feed;
+
+import com.gamesbykevin.tradingbot.util.MemoryFence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ring of fixed size records in a memory mapped file, written by 1 process and tailed by any number of processes.<br>
+ * Every record has a sequence number, the writer clears the sequence of the slot, writes the record and then sets the
+ * new sequence, so a reader knows the record is complete when the sequence matches the one it expects and hasn't
+ * changed after reading. A reader that falls more than the capacity behind skips ahead to the oldest record still in
+ * the ring.<br>
+ * The sequence is ordered with the record by a {@link MemoryFence}, so the writer and readers have to map the same file
+ * on the same host
+ */
+public class TickJournal {
+
+    /**
+     * The latest price (price, best bid, best ask, volume 24h)
+     */
+    public static final int TYPE_TICK = 1;
+
+    /**
+     * A candle (low, high, open, close, volume)
+     */
+    public static final int TYPE_CANDLE = 2;
+
+    /**
+     * How many characters can the product id have
+     */
+    public static final int PRODUCT_LENGTH = 16;
+
+    /**
+     * How many values does each record have
+     */
+    public static final int VALUES = 6;
+
+    //identifies our file format
+    private static final int MAGIC = 0x544A4E31;
+
+    //the version of our file format
+    private static final int VERSION = 1;
+
+    //header (magic, version, record size, capacity, tail), a full cache line
+    private static final int HEADER_SIZE = 128;
+
+    //record (sequence, type, duration, time, product, values), padded to 2 cache lines so writer and readers don't share
+    private static final int RECORD_SIZE = 128;
+
+    //position of the tail in our header
+    private static final int POSITION_TAIL = 16;
+
+    //position of each field in a record
+    private static final int POSITION_TYPE = 8;
+    private static final int POSITION_DURATION = 12;
+    private static final int POSITION_TIME = 16;
+    private static final int POSITION_PRODUCT = 24;
+    private static final int POSITION_VALUES = POSITION_PRODUCT + PRODUCT_LENGTH;
+
+    //our file
+    private final File file;
+
+    //the mapped file
+    private final MappedByteBuffer buffer;
+
+    //how many records fit in the ring
+    private final int capacity;
+
+    //our lock if we are the writer
+    private final FileLock lock;
+
+    //the sequence of the most recent record written by us
+    private long tail;
+
+    private TickJournal(File file, MappedByteBuffer buffer, int capacity, FileLock lock) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.lock = lock;
+        this.tail = buffer.getLong(POSITION_TAIL);
+    }
+
+    /**
+     * Open the journal as the writer
+     * @param file The journal file
+     * @param capacity How many records fit in the ring, only used if the file is created
+     * @return The journal, or null if another process is already the writer
+     * @throws IOException If the journal can't be opened
+     */
+    public static TickJournal openWriter(File file, int capacity) throws IOException {
+
+        //make sure the directory exists
+        if (file.getParentFile() != null && !file.getParentFile().exists())
+            file.getParentFile().mkdirs();
+
+        FileChannel lockChannel = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw").getChannel();
+
+        FileLock lock;
+
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+
+        //another process is the writer
+        if (lock == null) {
+            lockChannel.close();
+            return null;
+        }
+
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+        //use the existing ring so readers that are already tailing it can continue
+        if (channel.size() >= HEADER_SIZE) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+            if (isValid(buffer, channel.size())) {
+                channel.close();
+                return new TickJournal(file, buffer, buffer.getInt(12), lock);
+            }
+        }
+
+        //new file, write our header
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ((long)capacity * RECORD_SIZE));
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, capacity);
+        buffer.putLong(POSITION_TAIL, 0);
+        MemoryFence.storeFence();
+        buffer.putInt(0, MAGIC);
+        channel.close();
+
+        return new TickJournal(file, buffer, capacity, lock);
+    }
+
+    /**
+     * Open the journal as a reader
+     * @param file The journal file
+     * @return The journal, or null if the writer hasn't created it yet
+     * @throws IOException If the journal can't be opened
+     */
+    public static TickJournal openReader(File file) throws IOException {
+
+        if (!file.exists())
+            return null;
+
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+
+        try {
+
+            //the writer hasn't finished creating the file
+            if (channel.size() < HEADER_SIZE)
+                return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (!isValid(buffer, channel.size()))
+                return null;
+
+            return new TickJournal(file, buffer, buffer.getInt(12), null);
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static boolean isValid(MappedByteBuffer buffer, long size) {
+
+        //the magic is written last, so read it first
+        if (buffer.getInt(0) != MAGIC)
+            return false;
+
+        MemoryFence.loadFence();
+
+        if (buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE)
+            return false;
+
+        //make sure the whole ring is in the file
+        return buffer.getInt(12) > 0 && size >= HEADER_SIZE + ((long)buffer.getInt(12) * RECORD_SIZE);
+    }
+
+    public boolean isWriter() {
+        return (this.lock != null);
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the sequence of the most recent record published
+     * @return The sequence, 0 if nothing was written
+     */
+    public long getTail() {
+        return buffer.getLong(POSITION_TAIL);
+    }
+
+    /**
+     * Add a record to the journal, only the writer can append
+     * @param type The type of record
+     * @param productId The product
+     * @param duration The candle duration (seconds), 0 if not a candle
+     * @param time The time of the record
+     * @param values The values of the record, up to {@link #VALUES}
+     * @return The sequence of the record
+     */
+    public synchronized long append(int type, String productId, int duration, long time, double... values) {
+
+        if (!isWriter())
+            throw new RuntimeException("Only the writer can append to the journal: " + file.getPath());
+
+        final long sequence = tail + 1;
+        final int position = getPosition(sequence);
+
+        //readers will skip the slot until we are done
+        buffer.putLong(position, 0);
+        MemoryFence.storeFence();
+
+        buffer.putInt(position + POSITION_TYPE, type);
+        buffer.putInt(position + POSITION_DURATION, duration);
+        buffer.putLong(position + POSITION_TIME, time);
+
+        //the product id, padded with 0
+        final byte[] product = productId.getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < PRODUCT_LENGTH; i++) {
+            buffer.put(position + POSITION_PRODUCT + i, (i < product.length) ? product[i] : 0);
+        }
+
+        for (int i = 0; i < VALUES; i++) {
+            buffer.putDouble(position + POSITION_VALUES + (i * 8), (i < values.length) ? values[i] : 0);
+        }
+
+        //the record is complete, publish it
+        MemoryFence.storeFence();
+        buffer.putLong(position, sequence);
+        buffer.putLong(POSITION_TAIL, sequence);
+
+        tail = sequence;
+
+        return sequence;
+    }
+
+    private int getPosition(long sequence) {
+        return HEADER_SIZE + (int)((sequence - 1) % capacity) * RECORD_SIZE;
+    }
+
+    /**
+     * Create a reader that starts after the most recent record
+     * @return A new reader, each consumer thread needs its own
+     */
+    public Reader createReader() {
+        return new Reader(getTail() + 1);
+    }
+
+    /**
+     * Tails the journal, a reader can only be used by 1 thread
+     */
+    public class Reader {
+
+        //the sequence of the next record we want
+        private long next;
+
+        //how many records did we miss because we fell behind
+        private long missed = 0;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Read the next record
+         * @param record The record we populate
+         * @return true if a record was read, false if there is nothing new yet
+         */
+        public boolean poll(Record record) {
+
+            while (true) {
+
+                final int position = getPosition(next);
+
+                final long sequence = buffer.getLong(position);
+                MemoryFence.loadFence();
+
+                //the record isn't written yet
+                if (sequence < next)
+                    return false;
+
+                if (sequence == next) {
+
+                    record.sequence = sequence;
+                    record.type = buffer.getInt(position + POSITION_TYPE);
+                    record.duration = buffer.getInt(position + POSITION_DURATION);
+                    record.time = buffer.getLong(position + POSITION_TIME);
+                    record.productId = getProduct(position);
+
+                    for (int i = 0; i < VALUES; i++) {
+                        record.values[i] = buffer.getDouble(position + POSITION_VALUES + (i * 8));
+                    }
+
+                    //make sure the writer didn't replace the record while we were reading it
+                    MemoryFence.loadFence();
+
+                    if (buffer.getLong(position) == sequence) {
+                        next++;
+                        return true;
+                    }
+                }
+
+                //we fell behind and the record was replaced, skip to the oldest record still in the ring
+                final long oldest = Math.max(next + 1, getTail() - capacity + 2);
+                missed += (oldest - next);
+                next = oldest;
+            }
+        }
+
+        /**
+         * How many records did we skip because we fell behind the writer
+         * @return The number of records missed
+         */
+        public long getMissed() {
+            return this.missed;
+        }
+    }
+
+    private String getProduct(int position) {
+
+        int length = 0;
+
+        while (length < PRODUCT_LENGTH && buffer.get(position + POSITION_PRODUCT + length) != 0) {
+            length++;
+        }
+
+        final byte[] product = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            product[i] = buffer.get(position + POSITION_PRODUCT + i);
+        }
+
+        return new String(product, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A record read from the journal, re-used by the reader
+     */
+    public static class Record {
+
+        public long sequence;
+
+        public int type;
+
+        public int duration;
+
+        public long time;
+
+        public String productId;
+
+        public final double[] values = new double[VALUES];
+    }
+}
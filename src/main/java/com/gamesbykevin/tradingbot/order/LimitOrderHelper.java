@@ -5,15 +5,20 @@ import com.coinbase.exchange.api.entity.Product;
 import com.coinbase.exchange.api.orders.Order;
 import com.gamesbykevin.tradingbot.Main;
 import com.gamesbykevin.tradingbot.agent.Agent;
+import com.gamesbykevin.tradingbot.calculator.CorrelationEngine;
 import com.gamesbykevin.tradingbot.util.Email;
+import com.gamesbykevin.tradingbot.util.Notifier;
 
-import java.math.BigDecimal;
+import com.gamesbykevin.tradingbot.util.FixedPoint;
+
+import java.util.concurrent.CompletableFuture;
 
 import static com.gamesbykevin.tradingbot.Main.PAPER_TRADING_FEES;
+import static com.gamesbykevin.tradingbot.calculator.CorrelationEngine.CORRELATION_SIZING;
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.ROUND_DECIMALS_PRICE;
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.ROUND_DECIMALS_QUANTITY;
-import static com.gamesbykevin.tradingbot.agent.AgentHelper.round;
 import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.*;
 
 public class LimitOrderHelper extends BasicOrderHelper {
 
@@ -25,73 +30,74 @@ public class LimitOrderHelper extends BasicOrderHelper {
     /**
      * Assume each trade has a 0.3% transaction fee
      */
-    private static final float FEE_RATE = .003f;
+    public static final float FEE_RATE = .003f;
 
     /**
-     * How many times do we check to see if the order was created before failing
+     * Create a limit order
+     * @param agent The agent placing the order
+     * @param action Are we buying or selling
+     * @param product The product
+     * @param currentPrice The current price
+     * @param aboveSMA Are we above the sma
+     * @return The order once created (null if it wasn't), or null if we don't have enough quantity to place an order
      */
-    private static final int FAILURE_LIMIT = 5;
-
-    //after creating a limit order, how long do we wait before we check if created (in milliseconds)
-    private static final long LIMIT_ORDER_STATUS_DELAY = 250L;
+    public static CompletableFuture<Order> createLimitOrder(Agent agent, Action action, Product product, double currentPrice, boolean aboveSMA) {
 
-    public static synchronized Order createLimitOrder(Agent agent, Action action, Product product, double currentPrice, boolean aboveSMA) {
+        //the smallest price / quantity change the product allows (fixed point units)
+        final long priceIncrement = getIncrement(product.getQuote_increment(), ROUND_DECIMALS_PRICE);
+        final long quantityIncrement = getIncrement(product.getBase_increment(), ROUND_DECIMALS_QUANTITY);
 
         //the price we want to buy/sell
-        BigDecimal price = new BigDecimal(currentPrice);
+        long price = toUnits(currentPrice);
 
         //what is the quantity that we are buying/selling
-        final float size;
+        long quantity;
 
-        //create a penny in case we need to alter the current price
-        BigDecimal penny;
-
-        //if we are treating this as a market order we don't need to adjust the $
-        if (PAPER_TRADING_FEES) {
-            penny = new BigDecimal(0);
-        } else {
-            penny = new BigDecimal(.01);
-        }
+        //create a penny in case we need to alter the current price, if we are treating this as a market order we don't need to adjust the $
+        final long penny = (PAPER_TRADING_FEES) ? 0 : priceIncrement;
 
         switch (action) {
 
             case Buy:
 
                 //subtract a penny so when the price meets or goes below it executes
-                price = price.subtract(penny);
+                price -= penny;
+
+                //buy less if we already hold products that move with this one
+                final double ratio = (CORRELATION_SIZING) ? CorrelationEngine.getSizeRatio(agent.getCandle(), product.getId()) : 1.0d;
 
                 //see how much we can buy based on our risk ratio
                 if (aboveSMA) {
-                    size = (float)((agent.getWallet().getFunds() * TRADE_RISK_RATIO_ABOVE_SMA) / currentPrice);
+                    quantity = toUnits((agent.getWallet().getFunds() * TRADE_RISK_RATIO_ABOVE_SMA * ratio) / currentPrice);
                 } else {
-                    size = (float)((agent.getWallet().getFunds() * TRADE_RISK_RATIO_BELOW_SMA) / currentPrice);
+                    quantity = toUnits((agent.getWallet().getFunds() * TRADE_RISK_RATIO_BELOW_SMA * ratio) / currentPrice);
                 }
+
+                //never buy more than we can afford
+                quantity = roundDown(quantity, quantityIncrement);
                 break;
 
             case Sell:
 
                 //add a penny so when the price meets or exceeds above it executes
-                price = price.add(penny);
+                price += penny;
 
-                //sell all the quantity we have
-                size = agent.getWallet().getQuantity();
+                //sell all the quantity we have, we can't sell a partial increment
+                quantity = roundDown(agent.getWallet().getQuantityUnits(), quantityIncrement);
                 break;
 
             default:
                 throw new RuntimeException("Action not defined: " + action.toString());
         }
 
-        //round few decimals so our numbers aren't
-        price = round(ROUND_DECIMALS_PRICE, price);
-
-        //the quantity we want to purchase
-        BigDecimal quantity = round(ROUND_DECIMALS_QUANTITY, size);
+        //the exchange only accepts prices at the increment of the product
+        price = roundHalfDown(price, priceIncrement);
 
         //make sure we have enough quantity to buy or else we can't continue
-        if (quantity.floatValue() < product.getBase_min_size()) {
+        if (quantity < toUnits(product.getBase_min_size())) {
 
             //create our message
-            final String message = "Not enough quantity: " + quantity.floatValue() + ", min: " + product.getBase_min_size();
+            final String message = "Not enough quantity: " + toDouble(quantity) + ", min: " + product.getBase_min_size();
 
             //write message to log file
             displayMessage(agent, message, true);
@@ -100,7 +106,7 @@ public class LimitOrderHelper extends BasicOrderHelper {
             agent.setStop(true);
 
             //send notification message
-            Email.sendEmail("We stopped trading because we are unable to " + action.getDescription() + " " + product.getId(), message);
+            Email.sendEmail(Notifier.Topic.Stop, "We stopped trading because we are unable to " + action.getDescription() + " " + product.getId(), message);
 
             //no order is created so we return null
             return null;
@@ -119,101 +125,58 @@ public class LimitOrderHelper extends BasicOrderHelper {
         newOrder.setType(LIMIT_ORDER_DESC);
 
         //our price
-        newOrder.setPrice(price);
+        newOrder.setPrice(toBigDecimal(price, getDecimals(priceIncrement)));
 
         //our quantity
-        newOrder.setSize(quantity);
+        newOrder.setSize(toBigDecimal(quantity, getDecimals(quantityIncrement)));
 
         //set to post only to avoid fees
         newOrder.setPost_only(true);
 
         //write order details to log
-        displayMessage(agent, "Creating order (" + product.getId() + "): " + action.getDescription() + " $" + price.doubleValue() + ", Quantity: " + quantity.floatValue(), true);
-
-        //our order object
-        Order order = null;
-
-        //how many attempts to try
-        int attempts = 0;
+        displayMessage(agent, "Creating order (" + product.getId() + "): " + action.getDescription() + " $" + toDouble(price) + ", Quantity: " + toDouble(quantity), true);
 
-        if (Main.PAPER_TRADING) {
+        //live orders are combined with the other agents of this product and sent once every agent is updated
+        if (!Main.PAPER_TRADING && OrderNetting.ORDER_NETTING)
+            return OrderNetting.getNetting(product.getId()).add(agent, product, newOrder, price, quantity, priceIncrement, quantityIncrement);
 
-            //if we are paper trading populate the order object ourselves
-            order = new Order();
-            order.setPrice(price.toString());
-            order.setSize(quantity.toString());
-            order.setFilled_size(quantity.toString());
+        //live orders are created in the background so we don't hold up the other agents
+        if (!Main.PAPER_TRADING)
+            return OrderGateway.getGateway().submit(agent, newOrder);
 
-            //are we applying fees to this order
-            if (PAPER_TRADING_FEES) {
+        //if we are paper trading populate the order object ourselves
+        Order order = new Order();
+        order.setPrice(FixedPoint.toString(price));
+        order.setSize(FixedPoint.toString(quantity));
+        order.setFilled_size(FixedPoint.toString(quantity));
 
-                //fees are a % of the total dollar amount you are investing
-                double fee = (price.doubleValue() * quantity.floatValue()) * FEE_RATE;
-                order.setFill_fees(fee + "");
-
-            } else {
-                order.setFill_fees("0");
-            }
+        //are we applying fees to this order
+        if (PAPER_TRADING_FEES) {
 
-            order.setProduct_id(product.getId());
-            order.setStatus(Status.Done.getDescription());
-            order.setSide(action.getDescription());
-            order.setType(LIMIT_ORDER_DESC);
+            //fees are a % of the total dollar amount you are investing
+            final long fee = Math.round(multiply(price, quantity) * (double)FEE_RATE);
+            order.setFill_fees(FixedPoint.toString(fee));
 
         } else {
-
-            //sometimes creating an order doesn't work so we will try more than once if not successful
-            while (order == null) {
-
-                //keep track of the number of attempts
-                attempts++;
-
-                //notify user we are trying to create the order
-                displayMessage(agent, "Creating order attempt: " + attempts, true);
-
-                try {
-
-                    //create our limit order
-                    order = Main.getOrderService().createOrder(newOrder);
-
-                    //if we got our order, exit loop
-                    if (order != null)
-                        break;
-
-                } catch (Exception e) {
-
-                    //keep track of any errors
-                    displayMessage(e, agent.getWriter());
-                }
-
-                //if we reach our limit, just stop
-                if (attempts >= FAILURE_LIMIT)
-                    break;
-
-                try {
-                    //sleep for a short time
-                    Thread.sleep(LIMIT_ORDER_STATUS_DELAY);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+            order.setFill_fees("0");
         }
 
+        order.setProduct_id(product.getId());
+        order.setStatus(Status.Done.getDescription());
+        order.setSide(action.getDescription());
+        order.setType(LIMIT_ORDER_DESC);
+
         //write order result to log
-        if (order != null) {
-            displayMessage(agent, "Order created status: " + order.getStatus() + ", id: " + order.getId(), true);
-        } else {
-            displayMessage(agent, "Order NOT created", true);
-        }
+        displayMessage(agent, "Order created status: " + order.getStatus() + ", id: " + order.getId(), true);
 
         //return our order
-        return order;
+        return CompletableFuture.completedFuture(order);
     }
 
-    public static synchronized Status updateLimitOrder(final Agent agent, final String orderId) {
+    public static Status updateLimitOrder(final Agent agent, final String orderId) {
 
         //check the current order and let's see if we can tell when it is done
-        Order order = Main.getOrderService().getOrder(orderId);
+        Order order = OrderNetting.getOrder(orderId);
 
         //if the order was not found it must have been cancelled
         if (order == null)
@@ -260,7 +223,7 @@ public class LimitOrderHelper extends BasicOrderHelper {
         return Status.Pending;
     }
 
-    public static synchronized void cancelOrder(Agent agent, String orderId) {
+    public static void cancelOrder(Agent agent, String orderId) {
 
         //don't cancel if we are simulating or paper trading
         if (Main.PAPER_TRADING)
@@ -270,7 +233,7 @@ public class LimitOrderHelper extends BasicOrderHelper {
         displayMessage(agent, "Canceling order: " + orderId, true);
 
         //cancel the order
-        final String result = Main.getOrderService().cancelOrder(orderId);
+        final String result = OrderNetting.cancelOrder(orderId);
 
         //notify we sent the message
         displayMessage(agent, "Cancel order message sent", true);
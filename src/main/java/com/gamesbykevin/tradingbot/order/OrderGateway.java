@@ -0,0 +1,189 @@
+package com.gamesbykevin.tradingbot.order;
+
+import com.coinbase.exchange.api.entity.NewOrderSingle;
+import com.coinbase.exchange.api.orders.Order;
+import com.gamesbykevin.tradingbot.Main;
+import com.gamesbykevin.tradingbot.agent.Agent;
+import com.gamesbykevin.tradingbot.util.LogFile;
+import com.gamesbykevin.tradingbot.util.PropertyUtil;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.gamesbykevin.tradingbot.util.LogFile.getFilenameOrderGateway;
+
+/**
+ * Submits our orders to the exchange in the background so an agent never waits on another agent's order.<br>
+ * Each product has its own thread, so orders of the same product are sent in the order they were submitted while
+ * the other products carry on. Every order has a client order id, if a request fails we look the order up by that id
+ * before trying again so the same order is never placed twice.<br>
+ * The agent's log file belongs to the agent's thread, so our product threads write to our own log file
+ */
+public class OrderGateway {
+
+    /**
+     * How long (milliseconds) can we keep trying to create an order before we give up
+     */
+    public static long ORDER_TIMEOUT = 5000L;
+
+    /**
+     * How many times do we try to create the order before failing
+     */
+    public static final int FAILURE_LIMIT = 5;
+
+    /**
+     * How long (milliseconds) do we wait before we try again
+     */
+    public static final long RETRY_DELAY = 250L;
+
+    //the client order id lets us look up an order we don't have the id of yet
+    private static final String CLIENT_ORDER_PREFIX = "client:";
+
+    //our gateway for this process
+    private static OrderGateway GATEWAY;
+
+    //our log file, shared by the threads of every product
+    private static PrintWriter WRITER;
+
+    //the thread of each product
+    private final HashMap<String, ExecutorService> executors;
+
+    private OrderGateway() {
+        this.executors = new HashMap<>();
+    }
+
+    public static synchronized OrderGateway getGateway() {
+
+        //create the gateway if it does not exist
+        if (GATEWAY == null)
+            GATEWAY = new OrderGateway();
+
+        return GATEWAY;
+    }
+
+    /**
+     * Submit the order, this returns right away
+     * @param agent The agent placing the order
+     * @param order The order we want to create, a client order id is assigned if it doesn't have one
+     * @return The created order once done, null if we weren't able to create it
+     */
+    public CompletableFuture<Order> submit(final Agent agent, final NewOrderSingle order) {
+
+        //identify the order so a retry can't create it twice
+        if (order.getClient_oid() == null)
+            order.setClient_oid(UUID.randomUUID().toString());
+
+        //the time includes waiting for the other orders of this product
+        final long deadline = System.currentTimeMillis() + ORDER_TIMEOUT;
+
+        return CompletableFuture.supplyAsync(() -> create(agent, order, deadline), getExecutor(order.getProduct_id()));
+    }
+
+    private synchronized ExecutorService getExecutor(final String productId) {
+
+        //create the thread for the product if it does not exist
+        if (executors.get(productId) == null) {
+
+            executors.put(productId, Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "order-" + productId);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+
+        return executors.get(productId);
+    }
+
+    private static Order create(Agent agent, NewOrderSingle newOrder, long deadline) {
+
+        //our order object
+        Order order = null;
+
+        //how many attempts to try
+        int attempts = 0;
+
+        //sometimes creating an order doesn't work so we will try more than once if not successful
+        while (order == null) {
+
+            //keep track of the number of attempts
+            attempts++;
+
+            //notify user we are trying to create the order
+            displayMessage(agent, "Creating order attempt: " + attempts + ", client id: " + newOrder.getClient_oid());
+
+            try {
+
+                //create our limit order
+                order = Main.getOrderService().createOrder(newOrder);
+
+                //if we got our order, exit loop
+                if (order != null)
+                    break;
+
+            } catch (Exception e) {
+
+                //keep track of any errors
+                PropertyUtil.displayMessage(e, getWriter());
+            }
+
+            //the exchange may have created the order even though we didn't get a response
+            order = find(agent, newOrder.getClient_oid());
+
+            if (order != null)
+                break;
+
+            //if we reach our limit, or are out of time, just stop
+            if (attempts >= FAILURE_LIMIT || System.currentTimeMillis() + RETRY_DELAY >= deadline)
+                break;
+
+            try {
+                //sleep for a short time, only the orders of this product wait
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                break;
+            }
+        }
+
+        //write order result to log
+        if (order != null) {
+            displayMessage(agent, "Order created status: " + order.getStatus() + ", id: " + order.getId());
+        } else {
+            displayMessage(agent, "Order NOT created");
+        }
+
+        //return our order
+        return order;
+    }
+
+    private static Order find(Agent agent, String clientOrderId) {
+
+        try {
+
+            return Main.getOrderService().getOrder(CLIENT_ORDER_PREFIX + clientOrderId);
+
+        } catch (Exception e) {
+
+            //the order doesn't exist
+            displayMessage(agent, "Order not found, client id: " + clientOrderId);
+            return null;
+        }
+    }
+
+    private static void displayMessage(Agent agent, String message) {
+        PropertyUtil.displayMessage(agent.getProductId() + "-" + agent.getStrategyKey() + " " + message, getWriter());
+    }
+
+    private static synchronized PrintWriter getWriter() {
+
+        //create the log file and place in our root logs directory
+        if (WRITER == null)
+            WRITER = LogFile.getPrintWriter(getFilenameOrderGateway(), LogFile.getLogDirectory());
+
+        return WRITER;
+    }
+}
@@ -0,0 +1,687 @@
+package com.gamesbykevin.tradingbot.order;
+
+import com.coinbase.exchange.api.entity.NewLimitOrderSingle;
+import com.coinbase.exchange.api.entity.Product;
+import com.coinbase.exchange.api.orders.Order;
+import com.gamesbykevin.tradingbot.Main;
+import com.gamesbykevin.tradingbot.agent.Agent;
+import com.gamesbykevin.tradingbot.order.BasicOrderHelper.Action;
+import com.gamesbykevin.tradingbot.order.BasicOrderHelper.Status;
+import com.gamesbykevin.tradingbot.util.FixedPoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.*;
+
+/**
+ * Combines the orders our agents create for the same product during the same price update.<br>
+ * A buy and a sell whose limit prices overlap are crossed between the agents without going to the exchange, and
+ * whatever remains on each side is placed as a single exchange order. Every agent gets its own order back with its
+ * share of the fill (pro rata), so its trade and wallet are updated as if it had traded alone
+ */
+public class OrderNetting {
+
+    /**
+     * Do we combine the orders of our agents before sending them to the exchange (live trading only)
+     */
+    public static boolean ORDER_NETTING = false;
+
+    //the id of each agent's order starts with this so we know it isn't an exchange order
+    private static final String NET_ORDER_PREFIX = "net:";
+
+    //the netting of each product
+    private static HashMap<String, OrderNetting> NETTINGS;
+
+    //the product we are trading
+    private Product product;
+
+    //the orders our agents created since the last flush
+    private final List<Child> intents;
+
+    //the orders of each agent that haven't completed yet
+    private final HashMap<String, Child> children;
+
+    //the exchange orders that haven't completed yet
+    private final List<Parent> parents;
+
+    //how many agent orders, exchange orders and quantity crossed between agents
+    private long countIntents, countOrders, crossed;
+
+    private OrderNetting() {
+        this.intents = new ArrayList<>();
+        this.children = new HashMap<>();
+        this.parents = new ArrayList<>();
+    }
+
+    public static synchronized OrderNetting getNetting(final String productId) {
+
+        //create our map if it does not exist
+        if (NETTINGS == null)
+            NETTINGS = new HashMap<>();
+
+        //create the netting for the product if it does not exist
+        if (NETTINGS.get(productId) == null)
+            NETTINGS.put(productId, new OrderNetting());
+
+        return NETTINGS.get(productId);
+    }
+
+    /**
+     * Add the order of an agent, nothing is sent until we flush
+     * @param agent The agent placing the order
+     * @param product The product
+     * @param order The order the agent would have created
+     * @param price The limit price (fixed point units)
+     * @param quantity The quantity (fixed point units)
+     * @param priceIncrement The smallest price change the product allows
+     * @param quantityIncrement The smallest quantity change the product allows
+     * @return The order of the agent once the exchange order is created, null if it wasn't
+     */
+    public synchronized CompletableFuture<Order> add(Agent agent, Product product, NewLimitOrderSingle order, long price, long quantity, long priceIncrement, long quantityIncrement) {
+
+        this.product = product;
+
+        Child child = new Child(agent, order, price, quantity, priceIncrement, quantityIncrement);
+        intents.add(child);
+        countIntents++;
+
+        return child.future;
+    }
+
+    /**
+     * Cross and send the orders added since the last flush, then check the exchange orders that are still open.<br>
+     * Called once after every agent of the product is updated, so each open exchange order is only checked once
+     */
+    public void flush() {
+
+        //check our open exchange orders first, new ones were just created
+        refresh();
+
+        final List<Child> buys = new ArrayList<>();
+        final List<Child> sells = new ArrayList<>();
+
+        synchronized (this) {
+
+            if (intents.isEmpty())
+                return;
+
+            for (int i = 0; i < intents.size(); i++) {
+
+                Child child = intents.get(i);
+
+                if (child.buying) {
+                    buys.add(child);
+                } else {
+                    sells.add(child);
+                }
+
+                children.put(child.id, child);
+            }
+
+            intents.clear();
+
+            //cross the buys and sells between our agents
+            cross(buys, sells);
+        }
+
+        //whatever is left goes to the exchange as one order per side / price
+        submit(buys);
+        submit(sells);
+    }
+
+    private void cross(final List<Child> buys, final List<Child> sells) {
+
+        //we can only cross if each side has one price and the buy price is at or above the sell price
+        if (buys.isEmpty() || sells.isEmpty() || !hasSinglePrice(buys) || !hasSinglePrice(sells))
+            return;
+
+        final long priceBuy = buys.get(0).price;
+        final long priceSell = sells.get(0).price;
+
+        if (priceBuy < priceSell)
+            return;
+
+        final long quantityBuy = getQuantity(buys);
+        final long quantitySell = getQuantity(sells);
+        final long quantity = Math.min(quantityBuy, quantitySell);
+
+        //the exchange won't accept what remains if it is below the minimum, so don't cross
+        final long remaining = Math.abs(quantityBuy - quantitySell);
+
+        if (remaining > 0 && remaining < toUnits(product.getBase_min_size()))
+            return;
+
+        //both agents get the price in the middle, which is within both limits
+        final long price = roundHalfDown((priceBuy + priceSell) / 2, buys.get(0).priceIncrement);
+
+        //each agent gets its share of the crossed quantity
+        allocate(buys, quantity, price);
+        allocate(sells, quantity, price);
+
+        crossed += quantity;
+    }
+
+    private static void allocate(final List<Child> list, final long quantity, final long price) {
+
+        final long[] weights = new long[list.size()];
+
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = list.get(i).quantity;
+        }
+
+        final long[] shares = allocate(weights, quantity, list.get(0).quantityIncrement, true);
+
+        for (int i = 0; i < shares.length; i++) {
+            list.get(i).internal = shares[i];
+            list.get(i).internalPrice = price;
+        }
+    }
+
+    private void submit(final List<Child> list) {
+
+        while (!list.isEmpty()) {
+
+            //the agents at the same price share one exchange order
+            final long price = list.get(0).price;
+            final Parent parent = new Parent();
+
+            for (Iterator<Child> iterator = list.iterator(); iterator.hasNext(); ) {
+
+                Child child = iterator.next();
+
+                if (child.price != price)
+                    continue;
+
+                iterator.remove();
+
+                //this agent was filled by the other agents
+                if (child.getExternal() <= 0) {
+                    child.future.complete(getView(child));
+                    continue;
+                }
+
+                child.parent = parent;
+                parent.children.add(child);
+                parent.quantity += child.getExternal();
+            }
+
+            if (parent.children.isEmpty())
+                continue;
+
+            final Child first = parent.children.get(0);
+
+            //one order for the total of every agent
+            NewLimitOrderSingle newOrder = new NewLimitOrderSingle();
+            newOrder.setProduct_id(first.request.getProduct_id());
+            newOrder.setSide(first.request.getSide());
+            newOrder.setType(first.request.getType());
+            newOrder.setPost_only(first.request.getPost_only());
+            newOrder.setPrice(first.request.getPrice());
+            newOrder.setSize(toBigDecimal(parent.quantity, getDecimals(first.quantityIncrement)));
+
+            displayMessage(first.agent, "Netting " + parent.children.size() + " order(s) into " + newOrder.getSide() + " $" + newOrder.getPrice() + ", Quantity: " + newOrder.getSize(), true);
+
+            synchronized (this) {
+                parents.add(parent);
+                countOrders++;
+            }
+
+            //let every agent know once the exchange order is created
+            OrderGateway.getGateway().submit(first.agent, newOrder).whenComplete((order, throwable) -> created(parent, order));
+        }
+    }
+
+    private synchronized void created(final Parent parent, final Order order) {
+
+        parent.order = order;
+
+        //the order wasn't created
+        if (order == null)
+            parent.missing = true;
+
+        //the order may have filled right away
+        parent.allocate();
+
+        for (int i = 0; i < parent.children.size(); i++) {
+
+            Child child = parent.children.get(i);
+
+            //the agent still has its crossed quantity even if the exchange order failed
+            if (order == null && child.internal <= 0) {
+                children.remove(child.id);
+                child.future.complete(null);
+            } else {
+                child.future.complete(getView(child));
+            }
+        }
+    }
+
+    private void refresh() {
+
+        final List<Parent> open = new ArrayList<>();
+
+        synchronized (this) {
+
+            for (int i = 0; i < parents.size(); i++) {
+
+                if (parents.get(i).order != null && !parents.get(i).isComplete())
+                    open.add(parents.get(i));
+            }
+        }
+
+        //check each exchange order once for all of its agents
+        for (int i = 0; i < open.size(); i++) {
+
+            final Parent parent = open.get(i);
+
+            Order order;
+
+            try {
+                order = Main.getOrderService().getOrder(parent.order.getId());
+            } catch (Exception e) {
+                displayMessage(e, parent.children.get(0).agent.getWriter());
+                continue;
+            }
+
+            synchronized (this) {
+
+                //if the order was not found it must have been cancelled
+                if (order == null) {
+                    parent.missing = true;
+                } else {
+                    parent.order = order;
+                }
+
+                //give each agent its share of the fill
+                parent.allocate();
+            }
+        }
+
+        synchronized (this) {
+
+            //we no longer need the exchange orders that are complete and read by every agent
+            for (Iterator<Parent> iterator = parents.iterator(); iterator.hasNext(); ) {
+
+                Parent parent = iterator.next();
+
+                if (parent.missing || parent.isComplete()) {
+
+                    boolean read = true;
+
+                    for (int i = 0; i < parent.children.size(); i++) {
+
+                        if (children.containsKey(parent.children.get(i).id))
+                            read = false;
+                    }
+
+                    if (read)
+                        iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Is this one of our combined agent orders, rather than an order on the exchange
+     * @param orderId The id of the order
+     * @return true if the order only exists within our netting, false otherwise
+     */
+    public static boolean isNetOrder(final String orderId) {
+        return orderId.startsWith(NET_ORDER_PREFIX);
+    }
+
+    /**
+     * Get the order, agent orders we combined are built from their exchange order
+     * @param orderId The id of the order
+     * @return The order, null if not found
+     */
+    public static Order getOrder(final String orderId) {
+
+        if (!orderId.startsWith(NET_ORDER_PREFIX))
+            return Main.getOrderService().getOrder(orderId);
+
+        final OrderNetting netting = getNettingByOrder(orderId);
+
+        return (netting == null) ? null : netting.getChildOrder(orderId);
+    }
+
+    /**
+     * Cancel the order, an agent order we combined cancels the whole exchange order.<br>
+     * The agents sharing an exchange order were created together with the same limits, so they cancel together
+     * @param orderId The id of the order
+     * @return The result of the cancel, null if nothing was sent
+     */
+    public static String cancelOrder(final String orderId) {
+
+        if (!orderId.startsWith(NET_ORDER_PREFIX))
+            return Main.getOrderService().cancelOrder(orderId);
+
+        final OrderNetting netting = getNettingByOrder(orderId);
+
+        return (netting == null) ? null : netting.cancelChild(orderId);
+    }
+
+    private static OrderNetting getNettingByOrder(final String orderId) {
+
+        synchronized (OrderNetting.class) {
+
+            if (NETTINGS == null)
+                return null;
+
+            for (OrderNetting netting : NETTINGS.values()) {
+
+                synchronized (netting) {
+                    if (netting.children.containsKey(orderId))
+                        return netting;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized Order getChildOrder(final String orderId) {
+
+        Child child = children.get(orderId);
+
+        if (child == null)
+            return null;
+
+        Order view = getView(child);
+
+        //once complete the agent won't ask again
+        if (isComplete(view))
+            children.remove(orderId);
+
+        return view;
+    }
+
+    private String cancelChild(final String orderId) {
+
+        final Parent parent;
+
+        synchronized (this) {
+
+            Child child = children.get(orderId);
+
+            //only cancel once, and only if there is an exchange order
+            if (child == null || child.parent == null || child.parent.order == null || child.parent.cancel)
+                return null;
+
+            parent = child.parent;
+            parent.cancel = true;
+        }
+
+        return Main.getOrderService().cancelOrder(parent.order.getId());
+    }
+
+    private Order getView(final Child child) {
+
+        final Parent parent = child.parent;
+
+        String status;
+        boolean settled;
+
+        if (parent == null) {
+
+            //crossed entirely between our agents
+            status = Status.Done.getDescription();
+            settled = true;
+
+        } else if (parent.missing || parent.order == null) {
+
+            //the exchange order is gone, the agent keeps what was crossed
+            status = (child.internal > 0) ? Status.Done.getDescription() : Status.Cancelled.getDescription();
+            settled = true;
+
+        } else {
+
+            status = parent.order.getStatus();
+            settled = (parent.order.getSettled() != null && parent.order.getSettled());
+
+            //the agent keeps what was crossed if the exchange order ends early
+            if (child.internal > 0 && (status.equalsIgnoreCase(Status.Cancelled.getDescription()) || status.equalsIgnoreCase(Status.Rejected.getDescription()))) {
+                status = Status.Done.getDescription();
+                settled = true;
+            }
+        }
+
+        final long filled = child.internal + child.externalFilled;
+
+        //the average price of the crossed and exchange quantity
+        long price = child.price;
+
+        if (filled > 0) {
+            final double amount = toDouble(multiply(child.internal, child.internalPrice)) + toDouble(multiply(child.externalFilled, child.externalPrice));
+            price = toUnits(amount / toDouble(filled));
+        }
+
+        Order view = new Order();
+        view.setId(child.id);
+        view.setProduct_id(child.request.getProduct_id());
+        view.setSide(child.request.getSide());
+        view.setType(child.request.getType());
+        view.setPrice(FixedPoint.toString(price));
+        view.setSize(FixedPoint.toString(child.quantity));
+        view.setFilled_size(FixedPoint.toString(filled));
+        view.setFill_fees(FixedPoint.toString(child.fee));
+        view.setStatus(status);
+        view.setSettled(settled);
+        return view;
+    }
+
+    private static boolean isComplete(final Order order) {
+
+        if (order.getStatus().equalsIgnoreCase(Status.Filled.getDescription()) ||
+                order.getStatus().equalsIgnoreCase(Status.Cancelled.getDescription()) ||
+                order.getStatus().equalsIgnoreCase(Status.Rejected.getDescription()))
+            return true;
+
+        return order.getStatus().equalsIgnoreCase(Status.Done.getDescription()) && order.getSettled() != null && order.getSettled();
+    }
+
+    /**
+     * Split the total between the weights, each share is at most its weight when capped
+     * @param weights The weight of each share
+     * @param total The total we are splitting
+     * @param increment Each share is a multiple of the increment
+     * @param capped Can a share be more than its weight
+     * @return The share of each, adding up to the total
+     */
+    protected static long[] allocate(final long[] weights, final long total, final long increment, final boolean capped) {
+
+        final long[] shares = new long[weights.length];
+
+        long sum = 0;
+
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+        }
+
+        if (sum <= 0 || total <= 0)
+            return shares;
+
+        long remaining = total;
+
+        //the share of each rounded down
+        for (int i = 0; i < weights.length; i++) {
+
+            shares[i] = roundDown((long)((double)weights[i] * total / sum), increment);
+
+            if (capped)
+                shares[i] = Math.min(shares[i], weights[i]);
+
+            remaining -= shares[i];
+        }
+
+        //hand out what rounding left over, one increment at a time
+        while (remaining > 0) {
+
+            boolean added = false;
+
+            for (int i = 0; i < shares.length && remaining > 0; i++) {
+
+                final long amount = Math.min(increment, remaining);
+
+                if (weights[i] <= 0 || (capped && shares[i] + amount > weights[i]))
+                    continue;
+
+                shares[i] += amount;
+                remaining -= amount;
+                added = true;
+            }
+
+            //there is no room left
+            if (!added)
+                break;
+        }
+
+        return shares;
+    }
+
+    private static boolean hasSinglePrice(final List<Child> list) {
+
+        for (int i = 1; i < list.size(); i++) {
+            if (list.get(i).price != list.get(0).price)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static long getQuantity(final List<Child> list) {
+
+        long result = 0;
+
+        for (int i = 0; i < list.size(); i++) {
+            result += list.get(i).quantity;
+        }
+
+        return result;
+    }
+
+    /**
+     * Description of our netting across all products
+     * @return How many agent orders we had, how many exchange orders we sent and how much was crossed
+     */
+    public static synchronized String getDesc() {
+
+        long intents = 0, orders = 0;
+        double crossed = 0;
+
+        if (NETTINGS != null) {
+
+            for (OrderNetting netting : NETTINGS.values()) {
+
+                synchronized (netting) {
+                    intents += netting.countIntents;
+                    orders += netting.countOrders;
+                    crossed += toDouble(netting.crossed);
+                }
+            }
+        }
+
+        return "Order netting: agent orders " + intents + ", exchange orders " + orders + ", crossed quantity " + crossed;
+    }
+
+    /**
+     * The order of a single agent
+     */
+    private static class Child {
+
+        private final String id;
+        private final Agent agent;
+        private final NewLimitOrderSingle request;
+        private final boolean buying;
+
+        //the limit price and quantity the agent wants
+        private final long price, quantity;
+
+        //the smallest price / quantity change the product allows
+        private final long priceIncrement, quantityIncrement;
+
+        //the quantity and price crossed with our other agents
+        private long internal, internalPrice;
+
+        //the quantity, price and fee the agent has been given of the exchange order
+        private long externalFilled, externalPrice, fee;
+
+        //the exchange order the rest is part of
+        private Parent parent;
+
+        //the order we return to the agent
+        private final CompletableFuture<Order> future;
+
+        private Child(Agent agent, NewLimitOrderSingle request, long price, long quantity, long priceIncrement, long quantityIncrement) {
+            this.id = NET_ORDER_PREFIX + UUID.randomUUID().toString();
+            this.agent = agent;
+            this.request = request;
+            this.buying = request.getSide().equalsIgnoreCase(Action.Buy.getDescription());
+            this.price = price;
+            this.quantity = quantity;
+            this.priceIncrement = priceIncrement;
+            this.quantityIncrement = quantityIncrement;
+            this.future = new CompletableFuture<>();
+        }
+
+        private long getExternal() {
+            return quantity - internal;
+        }
+    }
+
+    /**
+     * An exchange order shared by our agents
+     */
+    private static class Parent {
+
+        //the agents sharing the order
+        private final List<Child> children = new ArrayList<>();
+
+        //the total quantity of the order
+        private long quantity;
+
+        //the latest state of the exchange order
+        private Order order;
+
+        //is the order gone from the exchange, and have we cancelled it
+        private boolean missing, cancel;
+
+        private boolean isComplete() {
+            return missing || (order != null && OrderNetting.isComplete(order));
+        }
+
+        private void allocate() {
+
+            if (order == null || order.getFilled_size() == null)
+                return;
+
+            final long filled = parse(order.getFilled_size());
+            final long fees = (order.getFill_fees() == null) ? 0 : parse(order.getFill_fees());
+            final long price = (order.getPrice() == null) ? 0 : parse(order.getPrice());
+
+            final long[] weights = new long[children.size()];
+
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = children.get(i).getExternal();
+            }
+
+            //each agent gets its share of the quantity filled
+            final long[] shares = OrderNetting.allocate(weights, filled, children.get(0).quantityIncrement, true);
+
+            //and pays its share of the fee
+            final long[] fee = OrderNetting.allocate(shares, fees, 1, false);
+
+            for (int i = 0; i < shares.length; i++) {
+                children.get(i).externalFilled = shares[i];
+                children.get(i).externalPrice = price;
+                children.get(i).fee = fee[i];
+            }
+        }
+    }
+}
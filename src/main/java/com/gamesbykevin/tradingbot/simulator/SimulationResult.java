@@ -0,0 +1,144 @@
+package com.gamesbykevin.tradingbot.simulator;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * The distribution of returns and drawdowns from our simulated paths
+ */
+public class SimulationResult {
+
+    /**
+     * The percentiles we display
+     */
+    public static final float[] PERCENTILES = {.05f, .25f, .50f, .75f, .95f};
+
+    //what did we simulate
+    private final String description;
+
+    //the return of each path sorted lowest to highest (.10 = 10% gain)
+    private final double[] returns;
+
+    //the max drawdown of each path sorted lowest to highest (.10 = 10% from the peak)
+    private final double[] drawdowns;
+
+    protected SimulationResult(String description, double[] returns, double[] drawdowns) {
+
+        this.description = description;
+        this.returns = returns;
+        this.drawdowns = drawdowns;
+
+        //sort so we can get our percentiles
+        Arrays.sort(this.returns);
+        Arrays.sort(this.drawdowns);
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * How many paths were simulated
+     * @return The number of paths
+     */
+    public int getPaths() {
+        return this.returns.length;
+    }
+
+    /**
+     * Get the return at the percentile
+     * @param percentile The percentile (0.0 - 1.0)
+     * @return The return where the percentage of paths did worse
+     */
+    public double getReturn(float percentile) {
+        return getPercentile(returns, percentile);
+    }
+
+    /**
+     * Get the max drawdown at the percentile
+     * @param percentile The percentile (0.0 - 1.0)
+     * @return The drawdown where the percentage of paths had a smaller drawdown
+     */
+    public double getDrawdown(float percentile) {
+        return getPercentile(drawdowns, percentile);
+    }
+
+    public double getReturnAverage() {
+        return getAverage(returns);
+    }
+
+    public double getDrawdownAverage() {
+        return getAverage(drawdowns);
+    }
+
+    /**
+     * What are the odds we lose money
+     * @return The ratio of paths with a negative return
+     */
+    public double getProbabilityLoss() {
+
+        int count = 0;
+
+        for (int i = 0; i < returns.length; i++) {
+
+            //the returns are sorted so we can stop once we aren't losing
+            if (returns[i] >= 0)
+                break;
+
+            count++;
+        }
+
+        return (returns.length == 0) ? 0 : (double)count / returns.length;
+    }
+
+    /**
+     * Display the distributions
+     * @param writer Where we write our log
+     */
+    public void display(PrintWriter writer) {
+
+        displayMessage("Simulation " + getDescription() + ", paths: " + getPaths(), writer);
+        displayMessage("Return avg: " + getPercent(getReturnAverage()) + ", probability of loss: " + getPercent(getProbabilityLoss()), writer);
+        displayMessage("Drawdown avg: " + getPercent(getDrawdownAverage()), writer);
+
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            displayMessage("P" + (int)(PERCENTILES[i] * 100) + " return: " + getPercent(getReturn(PERCENTILES[i])) + ", drawdown: " + getPercent(getDrawdown(PERCENTILES[i])), writer);
+        }
+    }
+
+    private static String getPercent(double ratio) {
+        return String.format("%.2f%%", ratio * 100);
+    }
+
+    private static double getPercentile(double[] values, float percentile) {
+
+        if (values.length == 0)
+            return 0;
+
+        //nearest rank
+        int index = (int)Math.ceil(percentile * values.length) - 1;
+
+        if (index < 0)
+            index = 0;
+        if (index >= values.length)
+            index = values.length - 1;
+
+        return values[index];
+    }
+
+    private static double getAverage(double[] values) {
+
+        if (values.length == 0)
+            return 0;
+
+        double sum = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+        }
+
+        return sum / values.length;
+    }
+}
@@ -0,0 +1,522 @@
+package com.gamesbykevin.tradingbot.simulator;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.strategy.RULE;
+import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
+import com.gamesbykevin.tradingbot.trade.Trade;
+import com.gamesbykevin.tradingbot.trade.TradeStats;
+import com.gamesbykevin.tradingbot.util.History;
+import com.gamesbykevin.tradingbot.util.LogFile;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.gamesbykevin.tradingbot.order.LimitOrderHelper.FEE_RATE;
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Monte Carlo simulator to see how fragile a strategy is.<br>
+ * Instead of the single path our trades / history took, we simulate thousands of paths by re-sampling:<br>
+ * - The results of our completed trades (in random order, with replacement)<br>
+ * - Blocks of candle returns from our history, replayed with the rule strategy<br>
+ * Each path is seeded on its own so the results are the same regardless of the number of threads
+ */
+public class Simulator {
+
+    /**
+     * How many threads simulate our paths
+     */
+    public static int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default number of consecutive candles we re-sample together, this keeps some of the trend / volatility
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 24;
+
+    /**
+     * What do we simulate instead of trading, null will trade as normal
+     */
+    public static Mode SIMULATE = null;
+
+    /**
+     * How many paths do we simulate
+     */
+    public static int SIMULATE_PATHS = 10000;
+
+    /**
+     * How many candles from our history do we re-sample
+     */
+    public static int SIMULATE_CANDLES = 1000;
+
+    /**
+     * How many consecutive candles do we re-sample together
+     */
+    public static int SIMULATE_BLOCK_SIZE = DEFAULT_BLOCK_SIZE;
+
+    /**
+     * Seed for our random numbers, the same seed gives the same results
+     */
+    public static long SIMULATE_SEED = 1L;
+
+    /**
+     * The log directory of the run whose trade journals we simulate, null will use the most recent
+     */
+    public static String SIMULATE_LOGS = null;
+
+    //the log directories of each run start with this
+    private static final String LOGS_PREFIX = "logs-";
+
+    //spreads out the seed of each path
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    /**
+     * What our simulation re-samples
+     */
+    public enum Mode {
+
+        //the completed trades in the journal of each product / strategy
+        Trades,
+
+        //the candle history of each product, traded with our rule strategy
+        Candles
+    }
+
+    private Simulator() {
+        //no instances needed
+    }
+
+    /**
+     * Simulate each product we trade and display the results, used instead of trading when SIMULATE is set
+     * @param productIds The products we trade
+     * @param keys The strategies we trade
+     * @param candle The candle duration we trade
+     * @param writer Where we write our log
+     */
+    public static void simulate(String[] productIds, Strategy.Key[] keys, Candle candle, PrintWriter writer) {
+
+        //the trade journals are in the log directory of the run that traded
+        final String logDirectory = (SIMULATE == Mode.Trades) ? getLogDirectory() : null;
+
+        for (int i = 0; i < productIds.length; i++) {
+
+            final String productId = productIds[i].trim();
+
+            try {
+
+                if (SIMULATE == Mode.Candles) {
+
+                    //re-sample the history of the product and trade every rule set
+                    List<SimulationResult> results = simulateCandles(productId, candle, SIMULATE_CANDLES, SIMULATE_BLOCK_SIZE, SIMULATE_PATHS, SIMULATE_SEED, writer);
+
+                    for (int j = 0; j < results.size(); j++) {
+                        results.get(j).display(writer);
+                    }
+
+                } else {
+
+                    //re-sample the trades of each strategy
+                    for (int j = 0; j < keys.length; j++) {
+                        displayMessage(productId + " " + keys[j], writer);
+                        simulateJournal(logDirectory, productId, keys[j], candle, SIMULATE_PATHS, SIMULATE_SEED, writer).display(writer);
+                    }
+                }
+
+            } catch (Exception e) {
+
+                //continue with the next product
+                displayMessage(e, writer);
+            }
+        }
+    }
+
+    private static String getLogDirectory() {
+
+        if (SIMULATE_LOGS != null && !SIMULATE_LOGS.trim().isEmpty())
+            return SIMULATE_LOGS.trim();
+
+        //each run has its own time stamped log directory, so the most recent sorts last
+        final File[] directories = new File(".").listFiles(file -> file.isDirectory() && file.getName().startsWith(LOGS_PREFIX) && !file.getName().equals(LogFile.getLogDirectory()));
+
+        if (directories == null || directories.length == 0)
+            throw new RuntimeException("No log directory found with our trade journals");
+
+        Arrays.sort(directories);
+
+        return directories[directories.length - 1].getName();
+    }
+
+    /**
+     * Simulate paths by re-sampling the results of the completed trades still in memory
+     * @param trades The trades of an agent
+     * @param paths How many paths to simulate
+     * @param seed Seed for our random numbers
+     * @return The distribution of our returns and drawdowns
+     */
+    public static SimulationResult simulateTrades(List<Trade> trades, int paths, long seed) {
+
+        //the return of each completed trade
+        List<Double> tmp = new ArrayList<>();
+
+        for (int i = 0; i < trades.size(); i++) {
+
+            Trade trade = trades.get(i);
+
+            //skip trades that aren't complete
+            if (trade.getResult() == null)
+                continue;
+
+            //what did we pay and receive
+            final long bought = trade.getBought();
+            final long sold = trade.getSold();
+
+            if (bought <= 0)
+                continue;
+
+            tmp.add((double)(sold - bought - trade.getFeesUnits()) / bought);
+        }
+
+        final double[] returns = new double[tmp.size()];
+
+        for (int i = 0; i < returns.length; i++) {
+            returns[i] = tmp.get(i);
+        }
+
+        return simulateReturns(returns, paths, seed);
+    }
+
+    /**
+     * Simulate paths by re-sampling the completed trades in the journal of an agent, our agents only keep their most
+     * recent trades in memory
+     * @param logDirectory The log directory of the run that traded
+     * @param productId The product traded
+     * @param key The strategy used
+     * @param candle The candle duration traded
+     * @param paths How many paths to simulate
+     * @param seed Seed for our random numbers
+     * @param writer Where we write our log
+     * @return The distribution of our returns and drawdowns
+     */
+    public static SimulationResult simulateJournal(String logDirectory, String productId, Strategy.Key key, Candle candle, int paths, long seed, PrintWriter writer) {
+
+        final File file = TradeStats.getJournal(logDirectory, productId, key, candle);
+
+        if (!file.exists())
+            throw new RuntimeException("Trade journal not found: " + file);
+
+        final double[] returns = TradeStats.getJournalReturns(file);
+
+        displayMessage("Simulating " + paths + " paths from " + returns.length + " trades in " + file, writer);
+
+        return simulateReturns(returns, paths, seed);
+    }
+
+    /**
+     * Simulate paths by re-sampling the returns of our completed trades
+     * @param returns The return (after fees) of each completed trade, relative to what we paid
+     * @param paths How many paths to simulate
+     * @param seed Seed for our random numbers
+     * @return The distribution of our returns and drawdowns
+     */
+    public static SimulationResult simulateReturns(final double[] returns, int paths, long seed) {
+
+        if (returns.length == 0)
+            throw new RuntimeException("There are no completed trades to simulate");
+
+        return simulate(new String[]{"trades (" + returns.length + ")"}, paths, seed, new Task() {
+
+            @Override
+            public Worker create() {
+
+                return new Worker() {
+
+                    @Override
+                    public void simulate(SplittableRandom random, double[][] result) {
+
+                        double equity = 1, peak = 1, drawdown = 0;
+
+                        //make the same number of trades in random order
+                        for (int i = 0; i < returns.length; i++) {
+
+                            equity *= (1 + returns[random.nextInt(returns.length)]);
+
+                            //track our drawdown from the peak
+                            if (equity > peak)
+                                peak = equity;
+                            if ((peak - equity) / peak > drawdown)
+                                drawdown = (peak - equity) / peak;
+                        }
+
+                        result[0][0] = equity - 1;
+                        result[0][1] = drawdown;
+                    }
+                };
+            }
+        }).get(0);
+    }
+
+    /**
+     * Simulate paths by re-sampling the candle history of a product and trading them with our rule strategy
+     * @param productId The product
+     * @param candle The candle duration, custom candles aren't stored so they can't be simulated
+     * @param count How many candles from our history are re-sampled
+     * @param blockSize How many consecutive candles are re-sampled together
+     * @param paths How many paths to simulate
+     * @param seed Seed for our random numbers
+     * @param writer Where we write our log
+     * @return The distribution of our returns and drawdowns for each rule set
+     */
+    public static List<SimulationResult> simulateCandles(String productId, Candle candle, int count, int blockSize, int paths, long seed, PrintWriter writer) {
+
+        if (candle.dependency != null)
+            throw new RuntimeException("Custom candles are not stored in our history: " + candle.description);
+
+        //load the most recent history
+        List<Period> history = new ArrayList<>();
+        History.loadRecent(history, productId, candle, count, writer);
+
+        displayMessage("Simulating " + paths + " paths from " + history.size() + " candles", writer);
+
+        return simulateCandles(history, blockSize, paths, seed);
+    }
+
+    /**
+     * Simulate paths by re-sampling the candle history and trading them with every rule set of our rule strategy.<br>
+     * The rule sets share the series calculated for each path, so each rule set only adds the cost of its rules
+     * @param history Our historical periods sorted oldest to newest
+     * @param blockSize How many consecutive candles are re-sampled together
+     * @param paths How many paths to simulate
+     * @param seed Seed for our random numbers
+     * @return The distribution of our returns and drawdowns for each rule set
+     */
+    public static List<SimulationResult> simulateCandles(List<Period> history, int blockSize, int paths, long seed) {
+
+        final int length = history.size();
+
+        if (length < 2)
+            throw new RuntimeException("Not enough history to simulate: " + length);
+        if (blockSize < 1 || blockSize >= length)
+            throw new RuntimeException("Block size must be between 1 and " + (length - 1) + ": " + blockSize);
+
+        //the first candle every path starts with
+        final Period first = history.get(0);
+
+        //each candle relative to the previous close, so blocks can be placed anywhere
+        final double[] open = new double[length - 1];
+        final double[] high = new double[length - 1];
+        final double[] low = new double[length - 1];
+        final double[] close = new double[length - 1];
+        final double[] volume = new double[length - 1];
+
+        for (int i = 1; i < length; i++) {
+
+            final double previous = history.get(i - 1).close;
+
+            open[i - 1] = history.get(i).open / previous;
+            high[i - 1] = history.get(i).high / previous;
+            low[i - 1] = history.get(i).low / previous;
+            close[i - 1] = history.get(i).close / previous;
+            volume[i - 1] = history.get(i).volume;
+        }
+
+        //every rule set gets its own result
+        final RULE rules = new RULE();
+        final String[] descriptions = new String[rules.getRuleSets()];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = "candles (" + length + "), block size " + blockSize + ", rule set " + rules.getRuleSet(i);
+        }
+
+        return simulate(descriptions, paths, seed, new Task() {
+
+            @Override
+            public Worker create() {
+
+                //each thread has its own strategy and arrays that are re-used for every path
+                final RULE strategy = new RULE();
+
+                final double[] pathOpen = new double[length];
+                final double[] pathHigh = new double[length];
+                final double[] pathLow = new double[length];
+                final double[] pathClose = new double[length];
+                final double[] pathVolume = new double[length];
+
+                //we can't trade until the strategy is warmed up
+                final int start = Math.min(strategy.getPeriodsMax(), length - 1);
+
+                return new Worker() {
+
+                    @Override
+                    public void simulate(SplittableRandom random, double[][] result) {
+
+                        pathOpen[0] = first.open;
+                        pathHigh[0] = first.high;
+                        pathLow[0] = first.low;
+                        pathClose[0] = first.close;
+                        pathVolume[0] = first.volume;
+
+                        //build our path from random blocks
+                        int index = 1;
+
+                        while (index < length) {
+
+                            int block = random.nextInt(close.length - blockSize + 1);
+
+                            for (int i = 0; i < blockSize && index < length; i++, index++, block++) {
+
+                                final double previous = pathClose[index - 1];
+
+                                pathOpen[index] = open[block] * previous;
+                                pathHigh[index] = high[block] * previous;
+                                pathLow[index] = low[block] * previous;
+                                pathClose[index] = close[block] * previous;
+                                pathVolume[index] = volume[block];
+                            }
+                        }
+
+                        //calculate our rules for the path
+                        strategy.calculate(pathOpen, pathHigh, pathLow, pathClose, pathVolume, length);
+
+                        //trade every rule set on the same path
+                        for (int set = 0; set < result.length; set++) {
+
+                            //we start with 1 and trade all of it
+                            double cash = 1, quantity = 0, peak = 1, drawdown = 0, equity = 1;
+
+                            for (int i = start; i < length; i++) {
+
+                                if (quantity == 0) {
+
+                                    //buy at the close
+                                    if (strategy.hasBuySignal(set, i)) {
+                                        quantity = (cash * (1 - FEE_RATE)) / pathClose[i];
+                                        cash = 0;
+                                    }
+
+                                } else {
+
+                                    //sell at the close
+                                    if (strategy.hasSellSignal(set, i)) {
+                                        cash = (quantity * pathClose[i]) * (1 - FEE_RATE);
+                                        quantity = 0;
+                                    }
+                                }
+
+                                //what are we worth now
+                                equity = (quantity == 0) ? cash : quantity * pathClose[i];
+
+                                //track our drawdown from the peak
+                                if (equity > peak)
+                                    peak = equity;
+                                if ((peak - equity) / peak > drawdown)
+                                    drawdown = (peak - equity) / peak;
+                            }
+
+                            result[set][0] = equity - 1;
+                            result[set][1] = drawdown;
+                        }
+                    }
+                };
+            }
+        });
+    }
+
+    private static List<SimulationResult> simulate(String[] descriptions, final int paths, final long seed, final Task task) {
+
+        if (paths < 1)
+            throw new RuntimeException("We need at least 1 path to simulate: " + paths);
+
+        final double[][] returns = new double[descriptions.length][paths];
+        final double[][] drawdowns = new double[descriptions.length][paths];
+
+        //split the paths between our threads
+        final int threads = Math.max(1, Math.min(THREADS, paths));
+        final int size = (paths + threads - 1) / threads;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+
+            List<Future<Void>> futures = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+
+                final int from = i * size;
+                final int to = Math.min(paths, from + size);
+
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() {
+
+                        Worker worker = task.create();
+
+                        double[][] result = new double[descriptions.length][2];
+
+                        for (int path = from; path < to; path++) {
+
+                            //each path has its own seed
+                            worker.simulate(new SplittableRandom(seed + (path * SEED_INCREMENT)), result);
+
+                            for (int i = 0; i < result.length; i++) {
+                                returns[i][path] = result[i][0];
+                                drawdowns[i][path] = result[i][1];
+                            }
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            //wait for every thread to finish
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).get();
+            }
+
+        } catch (Exception e) {
+
+            throw new RuntimeException(e);
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        List<SimulationResult> results = new ArrayList<>(descriptions.length);
+
+        for (int i = 0; i < descriptions.length; i++) {
+            results.add(new SimulationResult(descriptions[i], returns[i], drawdowns[i]));
+        }
+
+        return results;
+    }
+
+    /**
+     * Creates the worker for each thread
+     */
+    private interface Task {
+        Worker create();
+    }
+
+    /**
+     * Simulates a single path at a time
+     */
+    private interface Worker {
+
+        /**
+         * Simulate a path
+         * @param random Our random numbers for this path
+         * @param result Where we store the [return, max drawdown] of the path for each result
+         */
+        void simulate(SplittableRandom random, double[][] result);
+    }
+}
@@ -0,0 +1,288 @@
+package com.gamesbykevin.tradingbot.trade;
+
+/**
+ * Tracks the recent prices of a trade so every exit check costs the same no matter how many prices we keep.<br>
+ * The prices are kept in a ring buffer, the length of the current decline is counted as prices are added, and the
+ * lowest / highest prices of each window are kept in monotonic queues, so no check has to scan the history
+ */
+public class ExitEngine {
+
+    /**
+     * How far (ratio) below the highest price since we bought do we place our stop, 0 to disable
+     */
+    public static float TRAILING_STOP_RATIO = 0f;
+
+    /**
+     * How many candles do we hold a trade before we sell, 0 to disable
+     */
+    public static int TIME_STOP_CANDLES = 0;
+
+    /**
+     * Each time the price goes this far (ratio) above our buy price we move our stop up to the previous level
+     */
+    public static float[] TAKE_PROFIT_LADDER = new float[0];
+
+    //the recent prices
+    private final double[] prices;
+
+    //how many prices have been added
+    private long count;
+
+    //how many of the latest prices in a row did not increase
+    private int declineRun;
+
+    //the sequence of the latest price that wasn't valid (0 or below)
+    private long invalid;
+
+    //the lowest price of the whole history
+    private final Window low;
+
+    //the lowest price of the most recent prices we confirm an increase with
+    private final Window lowConfirm;
+
+    //the highest price of the most recent prices we confirm a hard stop with
+    private final Window highConfirm;
+
+    //the highest price since we started checking our exits
+    private double high;
+
+    //the candle time we started checking our exits
+    private long timeStart;
+
+    //the next level of our take profit ladder
+    private int rung;
+
+    public ExitEngine(int length, int increaseConfirm, int hardStopConfirm) {
+
+        this.prices = new double[length];
+        this.low = new Window(length, true);
+        this.lowConfirm = new Window(increaseConfirm, true);
+        this.highConfirm = new Window(hardStopConfirm, false);
+
+        //reset our values
+        reset();
+    }
+
+    public void reset() {
+
+        this.count = 0;
+        this.declineRun = 0;
+        this.invalid = 0;
+        this.high = 0;
+        this.timeStart = 0;
+        this.rung = 0;
+
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 0;
+        }
+
+        low.reset();
+        lowConfirm.reset();
+        highConfirm.reset();
+    }
+
+    /**
+     * Add the latest price, nothing is added if it matches the latest price
+     * @param price The current price
+     */
+    public void add(final double price) {
+
+        if (price == getLatest())
+            return;
+
+        //count the prices in a row that didn't increase
+        if (price <= 0) {
+            declineRun = 0;
+        } else if (declineRun > 0 && price <= getLatest()) {
+            declineRun++;
+        } else {
+            declineRun = 1;
+        }
+
+        count++;
+
+        //remember when we last had a price that isn't valid
+        if (price <= 0)
+            invalid = count;
+
+        prices[(int)((count - 1) % prices.length)] = price;
+
+        low.add(count, price);
+        lowConfirm.add(count, price);
+        highConfirm.add(count, price);
+    }
+
+    /**
+     * Get the latest price
+     * @return The latest price, 0 if there isn't one
+     */
+    public double getLatest() {
+        return (count == 0) ? 0 : prices[(int)((count - 1) % prices.length)];
+    }
+
+    /**
+     * Has the price declined for our whole history?
+     * @return true if every price is lower or the same as the previous price
+     */
+    public boolean hasDecline() {
+        return (declineRun >= prices.length);
+    }
+
+    /**
+     * Are the most recent prices all at or above the price
+     * @param price The current price
+     * @return true if the most recent prices are at or above the current price
+     */
+    public boolean hasConfirmedIncrease(final double price) {
+        return isValid(lowConfirm) && lowConfirm.get() >= price;
+    }
+
+    /**
+     * Are the most recent prices all at or below the price
+     * @param price The price
+     * @return true if the most recent prices are at or below the price
+     */
+    public boolean hasConfirmedBelow(final double price) {
+        return isValid(highConfirm) && highConfirm.get() <= price;
+    }
+
+    /**
+     * Get the lowest price in our history
+     * @return The lowest price, 0 if we don't have enough prices yet
+     */
+    public double getLow() {
+        return isValid(low) ? low.get() : 0;
+    }
+
+    private boolean isValid(Window window) {
+
+        //we need enough prices, and all of them have to be valid
+        return (count >= window.length && invalid <= count - window.length);
+    }
+
+    /**
+     * Update the trailing stop and take profit ladder of the trade
+     * @param trade The trade we are checking
+     * @param price The current price
+     * @param time The current candle time (seconds)
+     * @return The price our stop should be at least, 0 if we don't have a stop yet
+     */
+    public double getStop(final Trade trade, final double price, final long time) {
+
+        //track when we started checking our exits
+        if (timeStart == 0)
+            timeStart = time;
+
+        //track the highest price since we bought
+        if (price > high)
+            high = price;
+
+        double stop = 0;
+
+        //our stop follows the highest price
+        if (TRAILING_STOP_RATIO > 0)
+            stop = high - (high * TRAILING_STOP_RATIO);
+
+        final double priceBuy = trade.getPriceBuy();
+
+        //each level reached moves our stop to the previous level, the first level moves it to our buy price
+        while (priceBuy > 0 && rung < TAKE_PROFIT_LADDER.length && high >= priceBuy + (priceBuy * TAKE_PROFIT_LADDER[rung])) {
+            rung++;
+        }
+
+        if (rung > 0)
+            stop = Math.max(stop, (rung == 1) ? priceBuy : priceBuy + (priceBuy * TAKE_PROFIT_LADDER[rung - 2]));
+
+        return stop;
+    }
+
+    /**
+     * Have we held the trade too long
+     * @param trade The trade we are checking
+     * @param time The current candle time (seconds)
+     * @return true if we held the trade for our time stop
+     */
+    public boolean hasTimeStop(final Trade trade, final long time) {
+        return (TIME_STOP_CANDLES > 0 && timeStart > 0 && time - timeStart >= TIME_STOP_CANDLES * trade.getCandle().duration);
+    }
+
+    /**
+     * Get our price history
+     * @return A copy of the prices sorted oldest to newest, 0 where we don't have a price yet
+     */
+    public double[] toArray() {
+
+        final double[] result = new double[prices.length];
+
+        for (int i = 0; i < result.length; i++) {
+
+            //the sequence of the price at this index
+            final long sequence = count - result.length + 1 + i;
+
+            if (sequence > 0)
+                result[i] = prices[(int)((sequence - 1) % prices.length)];
+        }
+
+        return result;
+    }
+
+    /**
+     * The lowest / highest of the most recent prices, each price is added / removed once
+     */
+    private static class Window {
+
+        //how many of the most recent prices do we look at
+        private final int length;
+
+        //do we track the lowest or highest price
+        private final boolean lowest;
+
+        //the sequence and price of each candidate, the front is the lowest / highest
+        private final long[] sequences;
+        private final double[] values;
+
+        //where is the front of our queue and how many candidates are there
+        private int head, size;
+
+        private Window(int length, boolean lowest) {
+            this.length = length;
+            this.lowest = lowest;
+            this.sequences = new long[length];
+            this.values = new double[length];
+        }
+
+        private void reset() {
+            this.head = 0;
+            this.size = 0;
+        }
+
+        private void add(long sequence, double value) {
+
+            //the front has left the window
+            if (size > 0 && sequences[head] <= sequence - length) {
+                head = (head + 1) % length;
+                size--;
+            }
+
+            //a candidate that is worse than the new price will never be the lowest / highest again
+            while (size > 0) {
+
+                final int back = (head + size - 1) % length;
+
+                if (lowest ? values[back] < value : values[back] > value)
+                    break;
+
+                size--;
+            }
+
+            final int index = (head + size) % length;
+            sequences[index] = sequence;
+            values[index] = value;
+            size++;
+        }
+
+        private double get() {
+            return values[head];
+        }
+    }
+}
@@ -2,18 +2,17 @@ package com.gamesbykevin.tradingbot.trade;
 
 import com.coinbase.exchange.api.orders.Order;
 import com.gamesbykevin.tradingbot.agent.Agent;
-import com.gamesbykevin.tradingbot.agent.AgentHelper;
 import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.CorrelationEngine;
 import com.gamesbykevin.tradingbot.order.BasicOrderHelper.Action;
 import com.gamesbykevin.tradingbot.order.BasicOrderHelper.Status;
 import com.gamesbykevin.tradingbot.trade.TradeHelper.ReasonSell;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-
 import static com.gamesbykevin.tradingbot.agent.AgentHelper.CURRENT_PRICE_HISTORY;
-import static com.gamesbykevin.tradingbot.agent.AgentHelper.ROUND_DECIMALS_PRICE;
 import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.multiply;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.parse;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toDouble;
 
 public class Trade {
 
@@ -21,17 +20,17 @@ public class Trade {
     private double priceMin;
     private double priceMax;
 
-    //the $ we bought / sold
-    private Double priceBuy;
-    private Double priceSell;
+    //the $ we bought / sold (fixed point units)
+    private long priceBuy;
+    private long priceSell;
 
-    //the $ fees
-    private Double feeBuy;
-    private Double feeSell;
+    //the $ fees (fixed point units)
+    private long feeBuy;
+    private long feeSell;
 
-    //the quantity bought / sold
-    private Float quantityBuy;
-    private Float quantitySell;
+    //the quantity bought / sold (fixed point units)
+    private long quantityBuy;
+    private long quantitySell;
 
     //which product is this trade for
     private final String productId;
@@ -55,8 +54,8 @@ public class Trade {
     private Order orderBuy;
     private Order orderSell;
 
-    //how much did we win / lose
-    private double amount = 0;
+    //how much did we win / lose (fixed point units)
+    private long amount = 0;
 
     //how many times have we checked an order for it to fill
     private int attempts = 0;
@@ -74,8 +73,8 @@ public class Trade {
     //why did we sell
     private ReasonSell reason;
 
-    //track the recent price history
-    private double[] priceHistory;
+    //track the recent price history and our exits
+    private final ExitEngine exit;
 
     //what is our hard stop amount
     private double hardStopPrice = 0;
@@ -106,8 +105,8 @@ public class Trade {
         //track when this trade first started
         this.start = System.currentTimeMillis();
 
-        //create new array to track recent periods
-        this.priceHistory = new double[CURRENT_PRICE_HISTORY + 1];
+        //track recent prices
+        this.exit = new ExitEngine(CURRENT_PRICE_HISTORY + 1, HARD_STOP_PRICE_INCREASE_CONFIRM, HARD_STOP_PRICE_HISTORY_CONFIRM);
 
         //reset our values
         restart();
@@ -145,14 +144,14 @@ public class Trade {
         }
 
         //get the price, quantity, and fee from the order
-        final double price = getPrice(agent.getOrder());
-        final double fee = getFee(agent.getOrder());
-        final float quantity = getQuantity(agent.getOrder());
+        final long price = (buying) ? priceBuy : priceSell;
+        final long fee = (buying) ? feeBuy : feeSell;
+        final long quantity = (buying) ? quantityBuy : quantitySell;
 
         if (buying) {
 
             //subtract the purchase price from our available funds
-            agent.getWallet().subtractFunds(price * quantity);
+            agent.getWallet().subtractFunds(multiply(price, quantity));
 
             //subtract the fee from our funds as well
             agent.getWallet().subtractFunds(fee);
@@ -160,10 +159,13 @@ public class Trade {
             //add the quantity purchased
             agent.getWallet().addQuantity(quantity);
 
+            //we are now holding the product
+            CorrelationEngine.addHolding(getProductId());
+
         } else {
 
             //add the sold amount to our available funds
-            agent.getWallet().addFunds(price * quantity);
+            agent.getWallet().addFunds(multiply(price, quantity));
 
             //subtract the fee from our funds
             agent.getWallet().subtractFunds(fee);
@@ -171,14 +173,17 @@ public class Trade {
             //subtract the quantity sold
             agent.getWallet().subtractQuantity(quantity);
 
+            //we are no longer holding the product
+            CorrelationEngine.removeHolding(getProductId());
+
             //figure out the total price we bought the stock for
-            final double bought = (getPriceBuy() * getQuantityBuy());
+            final long bought = getBought();
 
             //figure out the total price we sold the stock for
-            final double sold = (getPriceSell() * getQuantitySell());
+            final long sold = getSold();
 
             //what is the total amount of fees paid
-            final double totalFees = (getFeeBuy() + getFeeSell());
+            final long totalFees = getFeesUnits();
 
             //did we win or lose?
             if (bought > sold - totalFees) {
@@ -202,6 +207,9 @@ public class Trade {
 
         //reset the attempts back to 0
         setAttempts(0);
+
+        //update our totals now that the order has filled
+        TradeStats.update(agent, this, buying);
     }
 
     public Order getOrderBuy() {
@@ -214,27 +222,27 @@ public class Trade {
 
     private void setOrderBuy(Order orderBuy) {
         this.orderBuy = orderBuy;
-        feeBuy = new Double(getFee(getOrderBuy()));
-        priceBuy = new Double(getPrice(getOrderBuy()));
-        quantityBuy = new Float(getQuantity(getOrderBuy()));
+        feeBuy = getFee(getOrderBuy());
+        priceBuy = getPrice(getOrderBuy());
+        quantityBuy = getQuantity(getOrderBuy());
     }
 
     private void setOrderSell(Order orderSell) {
         this.orderSell = orderSell;
-        feeSell = new Double(getFee(getOrderSell()));
-        priceSell = new Double(getPrice(getOrderSell()));
-        quantitySell = new Float(getQuantity(getOrderSell()));
+        feeSell = getFee(getOrderSell());
+        priceSell = getPrice(getOrderSell());
+        quantitySell = getQuantity(getOrderSell());
     }
 
     public void setFinish(long finish) {
         this.finish = finish;
     }
 
-    private long getFinish() {
+    public long getFinish() {
         return this.finish;
     }
 
-    private long getStart() {
+    public long getStart() {
         return this.start;
     }
 
@@ -272,21 +280,37 @@ public class Trade {
     }
 
     public double getFeeBuy() {
-        return feeBuy;
+        return toDouble(feeBuy);
     }
 
     public double getFeeSell() {
-        return feeSell;
+        return toDouble(feeSell);
+    }
+
+    public long getFeeBuyUnits() {
+        return this.feeBuy;
+    }
+
+    public long getFeeSellUnits() {
+        return this.feeSell;
     }
 
-    private double getFee(Order order) {
+    /**
+     * Get the total fees of the buy and sell
+     * @return The fees in fixed point units
+     */
+    public long getFeesUnits() {
+        return (feeBuy + feeSell);
+    }
 
-        double fee = 0;
+    private long getFee(Order order) {
+
+        long fee = 0;
 
         try {
 
             //parse the sell fee
-            fee = Double.parseDouble(order.getFill_fees());
+            fee = parse(order.getFill_fees());
 
         } catch (NumberFormatException e) {
 
@@ -299,62 +323,58 @@ public class Trade {
     }
 
     public double getPriceBuy() {
-        return priceBuy;
+        return toDouble(priceBuy);
     }
 
     public double getPriceSell() {
-        return priceSell;
+        return toDouble(priceSell);
     }
 
-    private double getPrice(Order order) {
+    private long getPrice(Order order) {
 
         if (order == null)
             return 0;
 
-        //get the purchase price from the order and parse
-        BigDecimal price = BigDecimal.valueOf(Double.parseDouble(order.getPrice()));
-
-        //let's round the price
-        price.setScale(ROUND_DECIMALS_PRICE, RoundingMode.HALF_DOWN);
-
-        //return the price
-        return price.doubleValue();
+        //the price is already at the increment of the product
+        return parse(order.getPrice());
     }
 
-    public float getQuantityBuy() {
-        return quantityBuy;
+    public double getQuantityBuy() {
+        return toDouble(quantityBuy);
     }
 
-    public float getQuantitySell() {
-        return quantitySell;
+    public double getQuantitySell() {
+        return toDouble(quantitySell);
     }
 
-    private float getQuantity(Order order) {
-
-        //get the order size and the filled size
-        double sizeOrder = Double.parseDouble(order.getSize());
-        double sizeFilled = Double.parseDouble(order.getFilled_size());
-
-        //what is the quantity of the order
-        BigDecimal quantity;
-
-        //if the size of the order doesn't match the amount that was filled
-        if (sizeOrder != sizeFilled) {
+    public long getQuantityBuyUnits() {
+        return this.quantityBuy;
+    }
 
-            //only the filled size was actually used so let's get the quantity correct
-            quantity = BigDecimal.valueOf(sizeFilled);
+    public long getQuantitySellUnits() {
+        return this.quantitySell;
+    }
 
-        } else {
+    /**
+     * Get the total price we bought the stock for, not including fees
+     * @return The $ in fixed point units
+     */
+    public long getBought() {
+        return multiply(priceBuy, quantityBuy);
+    }
 
-            //we will use the order size
-            quantity = BigDecimal.valueOf(sizeOrder);
+    /**
+     * Get the total price we sold the stock for, not including fees
+     * @return The $ in fixed point units
+     */
+    public long getSold() {
+        return multiply(priceSell, quantitySell);
+    }
 
-            //then we will round the quantity
-            quantity.setScale(AgentHelper.ROUND_DECIMALS_QUANTITY, RoundingMode.HALF_DOWN);
-        }
+    private long getQuantity(Order order) {
 
-        //return our quantity
-        return quantity.floatValue();
+        //only the filled size was actually used so let's get the quantity correct
+        return parse(order.getFilled_size());
     }
 
     public int getCountRejectedBuy() {
@@ -414,10 +434,14 @@ public class Trade {
     }
 
     public double getAmount() {
+        return toDouble(this.amount);
+    }
+
+    public long getAmountUnits() {
         return this.amount;
     }
 
-    public void setAmount(double amount) {
+    private void setAmount(long amount) {
         this.amount = amount;
     }
 
@@ -434,52 +458,27 @@ public class Trade {
     }
 
     public double getCurrentPrice() {
-        return getPriceHistory()[getPriceHistory().length - 1];
+        return getExit().getLatest();
     }
 
+    /**
+     * Get our recent prices, only use for display
+     * @return A copy of the prices sorted oldest to newest
+     */
     public double[] getPriceHistory() {
-        return this.priceHistory;
+        return getExit().toArray();
     }
 
     public double getPriceHistoryLow() {
-
-        //our final result
-        double low = 0;
-
-        //search for the lowest price in our history
-        for (int index = 0; index < getPriceHistory().length; index++) {
-
-            //if we haven't found one yet or the current price is lower than previous
-            if (low == 0 || getPriceHistory()[index] < low)
-                low = getPriceHistory()[index];
-
-        }
-
-        //return result
-        return low;
+        return getExit().getLow();
     }
 
-    private void resetPriceHistory() {
-        for (int i = 0; i < getPriceHistory().length; i++) {
-            getPriceHistory()[i] = 0;
-        }
+    public ExitEngine getExit() {
+        return this.exit;
     }
 
     public void updatePriceHistory(double price) {
-
-        //we don't need to add if it matches the latest price
-        if (price == getPriceHistory()[getPriceHistory().length - 1])
-            return;
-
-        //update every period in our array
-        for (int i = 0; i < getPriceHistory().length - 1; i++) {
-
-            //move the value back
-            getPriceHistory()[i] = getPriceHistory()[i + 1];
-        }
-
-        //add the new price to the end
-        getPriceHistory()[getPriceHistory().length - 1] = price;
+        getExit().add(price);
     }
 
     /**
@@ -489,20 +488,7 @@ public class Trade {
      * @return true if the latest prices are above the current price, false otherwise
      */
     public boolean hasConfirmedIncrease(final double price) {
-
-        //look at the most recent historical periods to confirm
-        for (int i = 1; i <= HARD_STOP_PRICE_INCREASE_CONFIRM; i++) {
-
-            //get the latest price from the history
-            double tmp = getPriceHistory()[getPriceHistory().length - i];
-
-            //if this price is greater than our history, return false
-            if (price > tmp || tmp <= 0)
-                return false;
-        }
-
-        //the current price is below our recent history so we have confirmed increase
-        return true;
+        return getExit().hasConfirmedIncrease(price);
     }
 
     /**
@@ -511,24 +497,7 @@ public class Trade {
      * @return true if the latest prices are below the hard stop price, false otherwise
      */
     public boolean hasConfirmedHardStop() {
-
-        //look at the most recent historical periods to confirm
-        for (int i = 1; i <= HARD_STOP_PRICE_HISTORY_CONFIRM; i++) {
-
-            //get the latest price from the history
-            double price = getPriceHistory()[getPriceHistory().length - i];
-
-            //if the historical price is $0 we don't have enough data yet
-            if (price == 0)
-                return false;
-
-            //if the historical price is above the hard stop $ we can't confirm
-            if (price > getHardStopPrice())
-                return false;
-        }
-
-        //all recent prices are below so we return true
-        return true;
+        return getExit().hasConfirmedBelow(getHardStopPrice());
     }
 
     public double getHardStopPrice() {
@@ -559,16 +528,16 @@ public class Trade {
         orderSell = null;
 
         //the $ we bought / sold
-        priceBuy = null;
-        priceSell = null;
+        priceBuy = 0;
+        priceSell = 0;
 
         //the quantity bought / sold
-        quantityBuy = null;
-        quantitySell = null;
+        quantityBuy = 0;
+        quantitySell = 0;
 
         //the $ fees
-        feeBuy = null;
-        feeSell = null;
+        feeBuy = 0;
+        feeSell = 0;
 
         //set default values
         setPriceMin(0);
@@ -579,7 +548,7 @@ public class Trade {
         setHardSellPrice(0);
 
         //reset our $ history
-        resetPriceHistory();
+        getExit().reset();
 
         //reset attempts
         setAttempts(0);
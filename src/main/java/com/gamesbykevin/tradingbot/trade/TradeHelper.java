@@ -5,6 +5,7 @@ import com.gamesbykevin.tradingbot.agent.AgentHelper;
 import com.gamesbykevin.tradingbot.agent.AgentManager;
 import com.gamesbykevin.tradingbot.trade.Trade.Result;
 import com.gamesbykevin.tradingbot.util.LogFile;
+import com.gamesbykevin.tradingbot.util.Notifier;
 
 import java.util.concurrent.TimeUnit;
 
@@ -14,6 +15,7 @@ import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessag
 import static com.gamesbykevin.tradingbot.agent.AgentMessageHelper.getPriceHistoryDesc;
 import static com.gamesbykevin.tradingbot.util.Email.sendEmail;
 import static com.gamesbykevin.tradingbot.util.LogFile.FILE_SEPARATOR;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toDouble;
 
 public class TradeHelper {
 
@@ -29,6 +31,11 @@ public class TradeHelper {
     //character used to tab
     public static final String TAB = "\t";
 
+    /**
+     * How many completed trades does each agent keep in memory for our simulator, older trades are only in our journal
+     */
+    public static int TRADES_LIMIT = 100;
+
     /**
      * The reasons for why we sold
      */
@@ -37,7 +44,8 @@ public class TradeHelper {
         Reason_Strategy("Sold based on strategy logic"),
         Reason_HardStop("We have hit our hard stop"),
         Reason_PriceDecline("Current $ has declined"),
-        Reason_Increase("Current $ has increased above ratio");
+        Reason_Increase("Current $ has increased above ratio"),
+        Reason_TimeStop("We held the trade too long");
 
         private final String description;
 
@@ -147,7 +155,7 @@ public class TradeHelper {
 
         //are we going to notify every transaction?
         if (NOTIFICATION_EVERY_TRANSACTION && subject.length() > 0 && text.length() > 0)
-            sendEmail(subject, text);
+            sendEmail(Notifier.Topic.Transaction, subject, text);
 
     }
 
@@ -156,39 +164,7 @@ public class TradeHelper {
     }
 
     public static long getAverageDuration(Agent agent) {
-
-        //how many transactions
-        int count = 0;
-
-        //total duration
-        long duration = 0;
-
-        //if empty return 0
-        if (agent.getTrades().isEmpty())
-            return 0;
-
-        //check every transaction
-        for (int i = 0; i < agent.getTrades().size(); i++) {
-
-            //get the current trade
-            Trade trade = agent.getTrades().get(i);
-
-            if (trade.getResult() == null)
-                continue;
-
-            //keep track of total transactions
-            count++;
-
-            //add total duration
-            duration += trade.getDuration();
-        }
-
-        //if nothing, return 0
-        if (count == 0)
-            return 0;
-
-        //return the average duration
-        return (duration / count);
+        return agent.getStats().getAverageDuration();
     }
 
     public static void displaySellReasonCount(Agent agent, Result result) {
@@ -199,27 +175,9 @@ public class TradeHelper {
         //check each reason
         for (int i = 0; i < reasons.length; i++) {
 
-            //keep track of the count
-            int count = 0;
-
-            //keep track of the money involved
-            double amount = 0;
-
-            //look at each transaction
-            for (int x = 0; x < agent.getTrades().size(); x++) {
-
-                Trade trade = agent.getTrades().get(x);
-
-                //skip if no match
-                if (trade.getResult() == null || trade.getResult() != result)
-                    continue;
-
-                //if there is a match increase the count
-                if (trade.getReasonSell() == reasons[i]) {
-                    count++;
-                    amount += trade.getAmount();
-                }
-            }
+            //how many trades and money involved
+            final int count = agent.getStats().getCount(result, reasons[i]);
+            final double amount = agent.getStats().getAmount(result, reasons[i]);
 
             //display the count if greater than 0
             if (count > 0)
@@ -233,25 +191,7 @@ public class TradeHelper {
      * @return The total $ amount of the specified result
      */
     public static double getAmount(Agent agent, Result result) {
-
-        double amount = 0;
-
-        //check every transaction
-        for (int i = 0; i < agent.getTrades().size(); i++) {
-
-            //get the current trade
-            Trade trade = agent.getTrades().get(i);
-
-            if (trade.getResult() == null)
-                continue;
-
-            //if there is a match keep track
-            if (trade.getResult() == result)
-                amount += trade.getAmount();
-        }
-
-        //return our result
-        return amount;
+        return agent.getStats().getAmount(result);
     }
 
     /**
@@ -260,25 +200,7 @@ public class TradeHelper {
      * @return The total count of the specified result
      */
     public static int getCount(Agent agent, Result result) {
-
-        int count = 0;
-
-        //check every transaction
-        for (int i = 0; i < agent.getTrades().size(); i++) {
-
-            //get the current trade
-            Trade trade = agent.getTrades().get(i);
-
-            if (trade.getResult() == null)
-                continue;
-
-            //if there is a match keep track
-            if (trade.getResult() == result)
-                count++;
-        }
-
-        //return our result
-        return count;
+        return agent.getStats().getCount(result);
     }
 
     public static String getDescLost(Agent agent) {
@@ -290,21 +212,20 @@ public class TradeHelper {
     }
 
     public static double getTotalFees(Agent agent) {
+        return agent.getStats().getFees();
+    }
 
-        //how many fees have we paid?
-        double fees = 0;
-
-        //total the fees from all of our transactions
-        for (int i = 0; i < agent.getTrades().size(); i++) {
-
-            //get the current trade
-            Trade trade = agent.getTrades().get(i);
+    /**
+     * Get the summary of the strategy across every agent using it
+     * @param agent Our agent
+     * @return Description of the wins / losses of the strategy
+     */
+    public static String getDescStrategy(Agent agent) {
 
-            //add to our total fees
-            fees += (trade.getFeeBuy() + trade.getFeeSell());
-        }
+        final TradeStats stats = TradeStats.getStats(agent.getStrategyKey());
 
-        return fees;
+        return "Strategy " + agent.getStrategyKey() + " wins: " + stats.getCount(Result.Win) + ", lost: " + stats.getCount(Result.Lose) +
+            ", avg $" + round(stats.getProfitMean()) + ", std dev $" + round(Math.sqrt(stats.getProfitVariance()));
     }
 
     public static String getDirectory(String productId) {
@@ -316,6 +237,10 @@ public class TradeHelper {
         //if we have no trades or the most recent trade has been sold, we need to start a new trade
         if (agent.getTrades().isEmpty() || agent.getTrade().getOrderSell() != null) {
 
+            //the completed trades are already in our totals and journal, so we only keep the most recent
+            while (!agent.getTrades().isEmpty() && agent.getTrades().size() >= Math.max(1, TRADES_LIMIT))
+                agent.getTrades().remove(0);
+
             //if there are no trades, create one
             agent.getTrades().add(new Trade(agent.getProductId(), agent.getCandle()));
 
@@ -0,0 +1,304 @@
+package com.gamesbykevin.tradingbot.trade;
+
+import com.gamesbykevin.tradingbot.agent.Agent;
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.strategy.Strategy;
+import com.gamesbykevin.tradingbot.trade.Trade.Result;
+import com.gamesbykevin.tradingbot.trade.TradeHelper.ReasonSell;
+import com.gamesbykevin.tradingbot.util.LogFile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.gamesbykevin.tradingbot.agent.AgentManagerHelper.displayMessage;
+import static com.gamesbykevin.tradingbot.trade.TradeHelper.TRADES_DIR;
+import static com.gamesbykevin.tradingbot.util.LogFile.FILE_SEPARATOR;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toDouble;
+
+/**
+ * Totals of our trades, updated as each order fills so our summaries don't need the trades.<br>
+ * Each completed trade is written to a journal (csv), only the most recent trades are kept in memory
+ */
+public class TradeStats {
+
+    /**
+     * Character used to separate the values in our journal
+     */
+    public static final String DELIMITER = ",";
+
+    /**
+     * The columns of our journal
+     */
+    public static final String JOURNAL_HEADER = "start,finish,candle,priceBuy,quantityBuy,feeBuy,priceSell,quantitySell,feeSell,result,reason,amount";
+
+    //the totals of every strategy across all agents
+    private static HashMap<Strategy.Key, TradeStats> STRATEGY_STATS;
+
+    //how many trades for each result
+    private final int[] counts;
+
+    //the $ won / lost for each result (fixed point units)
+    private final long[] amounts;
+
+    //how many trades and $ for each result / reason we sold
+    private final int[][] reasonCounts;
+    private final long[][] reasonAmounts;
+
+    //the total fees paid (fixed point units)
+    private long fees;
+
+    //the total duration of our completed trades (milliseconds)
+    private long durationTotal;
+
+    //mean and sum of squared differences for duration and profit (Welford)
+    private double durationMean, durationM2;
+    private double profitMean, profitM2;
+
+    //how many trades are complete
+    private int completed;
+
+    public TradeStats() {
+        this.counts = new int[Result.values().length];
+        this.amounts = new long[Result.values().length];
+        this.reasonCounts = new int[Result.values().length][ReasonSell.values().length];
+        this.reasonAmounts = new long[Result.values().length][ReasonSell.values().length];
+    }
+
+    /**
+     * Get the totals of a strategy across every agent using it
+     * @param key The strategy
+     * @return The totals of the strategy
+     */
+    public static synchronized TradeStats getStats(Strategy.Key key) {
+
+        //create our map if it does not exist
+        if (STRATEGY_STATS == null)
+            STRATEGY_STATS = new HashMap<>();
+
+        //create the totals if they don't exist
+        if (STRATEGY_STATS.get(key) == null)
+            STRATEGY_STATS.put(key, new TradeStats());
+
+        return STRATEGY_STATS.get(key);
+    }
+
+    /**
+     * Update the totals of the agent and the strategy once an order of the trade has filled
+     * @param agent The agent that made the trade
+     * @param trade The trade
+     * @param buying Was the order that filled a buy order
+     */
+    public static void update(Agent agent, Trade trade, boolean buying) {
+
+        final TradeStats strategy = getStats(agent.getStrategyKey());
+
+        //track how much we traded
+        agent.getEquity().addTraded(toDouble((buying) ? trade.getBought() : trade.getSold()));
+
+        if (buying) {
+
+            agent.getStats().addFee(trade.getFeeBuyUnits());
+            strategy.addFee(trade.getFeeBuyUnits());
+
+        } else {
+
+            agent.getStats().addFee(trade.getFeeSellUnits());
+            strategy.addFee(trade.getFeeSellUnits());
+            agent.getStats().add(trade);
+            strategy.add(trade);
+
+            //keep a record of the trade since it won't be kept in memory
+            journal(agent, trade);
+        }
+    }
+
+    private synchronized void addFee(long fee) {
+        this.fees += fee;
+    }
+
+    private synchronized void add(Trade trade) {
+
+        final int result = trade.getResult().ordinal();
+
+        counts[result]++;
+        amounts[result] += trade.getAmountUnits();
+
+        //the reason isn't known if the trade was sold outside of our agent
+        if (trade.getReasonSell() != null) {
+            reasonCounts[result][trade.getReasonSell().ordinal()]++;
+            reasonAmounts[result][trade.getReasonSell().ordinal()] += trade.getAmountUnits();
+        }
+
+        completed++;
+
+        //update our mean / variance of the duration
+        final long duration = trade.getDuration();
+        durationTotal += duration;
+
+        double delta = duration - durationMean;
+        durationMean += delta / completed;
+        durationM2 += delta * (duration - durationMean);
+
+        //update our mean / variance of the profit (after fees)
+        final double profit = toDouble(trade.getSold() - trade.getBought() - trade.getFeesUnits());
+
+        delta = profit - profitMean;
+        profitMean += delta / completed;
+        profitM2 += delta * (profit - profitMean);
+    }
+
+    /**
+     * Get the journal of the completed trades
+     * @param logDirectory The log directory of the run that traded
+     * @param productId The product traded
+     * @param key The strategy used
+     * @param candle The candle duration traded
+     * @return The journal file, which may not exist yet
+     */
+    public static File getJournal(String logDirectory, String productId, Strategy.Key key, Candle candle) {
+        return new File(logDirectory + FILE_SEPARATOR + productId + FILE_SEPARATOR + TRADES_DIR, key + "-" + candle.description + ".csv");
+    }
+
+    /**
+     * Read the return (after fees) of each trade in our journal
+     * @param file The journal
+     * @return The return of each completed trade, relative to what we paid
+     */
+    public static double[] getJournalReturns(File file) {
+
+        List<Double> tmp = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                //skip our columns
+                if (line.isEmpty() || line.startsWith(JOURNAL_HEADER.substring(0, JOURNAL_HEADER.indexOf(DELIMITER))))
+                    continue;
+
+                final String[] values = line.split(DELIMITER);
+
+                //what did we pay and receive
+                final double bought = Double.parseDouble(values[3]) * Double.parseDouble(values[4]);
+                final double sold = Double.parseDouble(values[6]) * Double.parseDouble(values[7]);
+                final double fees = Double.parseDouble(values[5]) + Double.parseDouble(values[8]);
+
+                if (bought <= 0)
+                    continue;
+
+                tmp.add((sold - bought - fees) / bought);
+            }
+
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read journal: " + file, e);
+        }
+
+        final double[] returns = new double[tmp.size()];
+
+        for (int i = 0; i < returns.length; i++) {
+            returns[i] = tmp.get(i);
+        }
+
+        return returns;
+    }
+
+    private static void journal(Agent agent, Trade trade) {
+
+        final File file = getJournal(LogFile.getLogDirectory(), agent.getProductId(), agent.getStrategyKey(), agent.getCandle());
+
+        try {
+
+            //make sure the directory exists
+            if (!file.getParentFile().exists())
+                file.getParentFile().mkdirs();
+
+            final boolean exists = file.exists();
+
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+
+                //add our columns to a new journal
+                if (!exists)
+                    writer.println(JOURNAL_HEADER);
+
+                writer.println(
+                    trade.getStart() + DELIMITER + trade.getFinish() + DELIMITER + trade.getCandle().duration + DELIMITER +
+                    trade.getPriceBuy() + DELIMITER + trade.getQuantityBuy() + DELIMITER + trade.getFeeBuy() + DELIMITER +
+                    trade.getPriceSell() + DELIMITER + trade.getQuantitySell() + DELIMITER + trade.getFeeSell() + DELIMITER +
+                    trade.getResult() + DELIMITER + trade.getReasonSell() + DELIMITER + trade.getAmount()
+                );
+            }
+
+        } catch (Exception e) {
+
+            //we still have our totals even if the journal couldn't be written
+            displayMessage(e, agent.getWriter());
+        }
+    }
+
+    public synchronized int getCount(Result result) {
+        return this.counts[result.ordinal()];
+    }
+
+    public synchronized double getAmount(Result result) {
+        return toDouble(this.amounts[result.ordinal()]);
+    }
+
+    public synchronized int getCount(Result result, ReasonSell reason) {
+        return this.reasonCounts[result.ordinal()][reason.ordinal()];
+    }
+
+    public synchronized double getAmount(Result result, ReasonSell reason) {
+        return toDouble(this.reasonAmounts[result.ordinal()][reason.ordinal()]);
+    }
+
+    public synchronized double getFees() {
+        return toDouble(this.fees);
+    }
+
+    public synchronized int getCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * Get the average duration of our completed trades
+     * @return The average duration (milliseconds), 0 if there are no completed trades
+     */
+    public synchronized long getAverageDuration() {
+        return (completed == 0) ? 0 : (durationTotal / completed);
+    }
+
+    /**
+     * Get the standard deviation of the duration of our completed trades
+     * @return The standard deviation (milliseconds)
+     */
+    public synchronized double getDurationDeviation() {
+        return (completed < 2) ? 0 : Math.sqrt(durationM2 / (completed - 1));
+    }
+
+    /**
+     * Get the average profit of our completed trades after fees
+     * @return The average $, negative if we lose on average
+     */
+    public synchronized double getProfitMean() {
+        return this.profitMean;
+    }
+
+    /**
+     * Get the variance of the profit of our completed trades after fees
+     * @return The sample variance
+     */
+    public synchronized double getProfitVariance() {
+        return (completed < 2) ? 0 : (profitM2 / (completed - 1));
+    }
+}
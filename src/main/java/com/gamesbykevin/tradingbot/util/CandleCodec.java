@@ -0,0 +1,471 @@
+package com.gamesbykevin.tradingbot.util;
+
+import com.gamesbykevin.tradingbot.calculator.Period;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compressed encoding for our candle history.<br>
+ * Timestamps are stored as delta-of-delta and the prices / volume are xor'ed against the previous value of the same field
+ * so regular candles and repeating values only cost a few bits each.<br>
+ * Candles are grouped into blocks, each block has a small header so a reader can skip blocks without decoding them
+ */
+public class CandleCodec {
+
+    /**
+     * Identifies a compressed candle file
+     */
+    public static final int MAGIC = 0x434E444C;
+
+    /**
+     * Version of the format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * How many candles are stored per block
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Size of each block header (count, first time, last time, payload length)
+     */
+    public static final int BLOCK_HEADER_SIZE = 4 + 8 + 8 + 4;
+
+    //how many values (low, high, open, close, volume) are stored per candle
+    private static final int FIELDS = 5;
+
+    /**
+     * Write the periods to the stream as compressed blocks
+     * @param output Stream to write to
+     * @param history The periods sorted oldest to newest
+     * @throws IOException If we are unable to write
+     */
+    public static void write(DataOutputStream output, List<Period> history) throws IOException {
+
+        //file header
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+
+        //write each block
+        for (int start = 0; start < history.size(); start += BLOCK_SIZE) {
+            writeBlock(output, history, start, Math.min(history.size(), start + BLOCK_SIZE));
+        }
+
+        output.flush();
+    }
+
+    /**
+     * Find where we need to start decoding so we read (at least) the most recent candles in the file.<br>
+     * Only the block headers are read, the payloads are skipped
+     * @param stream Stream of the compressed file, it will be closed when done
+     * @param count How many of the most recent candles we want
+     * @return Epoch time (seconds) to pass to {@link Decoder#seek(long)}
+     * @throws IOException If we are unable to read
+     */
+    public static long getTimeStart(InputStream stream, int count) throws IOException {
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+
+        try {
+
+            //make sure this is our format
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("Not a supported compressed candle file");
+
+            //the number of candles and first time of each block
+            List<long[]> blocks = new ArrayList<>();
+
+            while (true) {
+
+                final int blockCount;
+
+                try {
+                    blockCount = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                final long timeFirst = input.readLong();
+
+                //we don't need the last time or the payload
+                input.readLong();
+                input.skipBytes(input.readInt());
+
+                blocks.add(new long[]{blockCount, timeFirst});
+            }
+
+            //count backwards from the newest block until we have enough
+            int total = 0;
+
+            for (int index = blocks.size() - 1; index >= 0; index--) {
+
+                total += blocks.get(index)[0];
+
+                if (total >= count)
+                    return blocks.get(index)[1];
+            }
+
+            //we need the whole file
+            return Long.MIN_VALUE;
+
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void writeBlock(DataOutputStream output, List<Period> history, int start, int end) throws IOException {
+
+        BitWriter bits = new BitWriter();
+
+        //previous values so we can calculate the deltas
+        long timePrevious = history.get(start).time;
+        long deltaPrevious = 0;
+
+        //previous values for each field, and the leading / trailing zeros of the previous xor
+        long[] valuePrevious = new long[FIELDS];
+        int[] leadingPrevious = new int[FIELDS];
+        int[] trailingPrevious = new int[FIELDS];
+
+        for (int i = start; i < end; i++) {
+
+            Period period = history.get(i);
+
+            //get the raw bits of each field
+            long[] values = {
+                Double.doubleToRawLongBits(period.low),
+                Double.doubleToRawLongBits(period.high),
+                Double.doubleToRawLongBits(period.open),
+                Double.doubleToRawLongBits(period.close),
+                Double.doubleToRawLongBits(period.volume),
+            };
+
+            if (i == start) {
+
+                //the first time is in the header, the first values are written as is
+                for (int f = 0; f < FIELDS; f++) {
+                    bits.write(values[f], 64);
+                    valuePrevious[f] = values[f];
+                    leadingPrevious[f] = Integer.MAX_VALUE;
+                }
+
+                continue;
+            }
+
+            //candles are regular so the delta of delta is usually 0
+            final long delta = period.time - timePrevious;
+            writeDeltaOfDelta(bits, delta - deltaPrevious);
+            deltaPrevious = delta;
+            timePrevious = period.time;
+
+            //xor each field with the previous value
+            for (int f = 0; f < FIELDS; f++) {
+
+                final long xor = values[f] ^ valuePrevious[f];
+                valuePrevious[f] = values[f];
+
+                //same value only costs 1 bit
+                if (xor == 0) {
+                    bits.write(0, 1);
+                    continue;
+                }
+
+                bits.write(1, 1);
+
+                final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                final int trailing = Long.numberOfTrailingZeros(xor);
+
+                if (leadingPrevious[f] != Integer.MAX_VALUE && leading >= leadingPrevious[f] && trailing >= trailingPrevious[f]) {
+
+                    //the meaningful bits fit in the previous window
+                    bits.write(0, 1);
+                    bits.write(xor >>> trailingPrevious[f], 64 - leadingPrevious[f] - trailingPrevious[f]);
+
+                } else {
+
+                    //store a new window
+                    final int length = 64 - leading - trailing;
+                    bits.write(1, 1);
+                    bits.write(leading, 5);
+                    bits.write(length - 1, 6);
+                    bits.write(xor >>> trailing, length);
+
+                    leadingPrevious[f] = leading;
+                    trailingPrevious[f] = trailing;
+                }
+            }
+        }
+
+        //get the payload
+        final byte[] payload = bits.toByteArray();
+
+        //block header then the payload
+        output.writeInt(end - start);
+        output.writeLong(history.get(start).time);
+        output.writeLong(history.get(end - 1).time);
+        output.writeInt(payload.length);
+        output.write(payload);
+    }
+
+    private static void writeDeltaOfDelta(BitWriter bits, long dod) {
+
+        if (dod == 0) {
+            bits.write(0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            bits.write(0b10, 2);
+            bits.write(dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            bits.write(0b110, 3);
+            bits.write(dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            bits.write(0b1110, 4);
+            bits.write(dod + 2047, 12);
+        } else {
+            bits.write(0b1111, 4);
+            bits.write(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader bits) {
+
+        if (bits.read(1) == 0)
+            return 0;
+        if (bits.read(1) == 0)
+            return bits.read(7) - 63;
+        if (bits.read(1) == 0)
+            return bits.read(9) - 255;
+        if (bits.read(1) == 0)
+            return bits.read(12) - 2047;
+
+        return bits.read(64);
+    }
+
+    /**
+     * Streaming decoder that reads one block at a time
+     */
+    public static class Decoder implements Closeable {
+
+        //where we are reading from
+        private final DataInputStream input;
+
+        //the block we are currently reading
+        private BitReader bits;
+
+        //how many candles are remaining in the current block, and the index within the block
+        private int remaining = 0, index = 0;
+
+        //previous values
+        private long timePrevious, deltaPrevious;
+        private final long[] valuePrevious = new long[FIELDS];
+        private final int[] leadingPrevious = new int[FIELDS];
+        private final int[] trailingPrevious = new int[FIELDS];
+
+        //header of the current block
+        private int blockCount;
+        private long blockTimeFirst, blockTimeLast;
+
+        public Decoder(InputStream input) throws IOException {
+
+            this.input = new DataInputStream(new BufferedInputStream(input));
+
+            //make sure this is our format
+            if (this.input.readInt() != MAGIC)
+                throw new IOException("Not a compressed candle file");
+            if (this.input.readInt() != VERSION)
+                throw new IOException("Compressed candle version not supported");
+        }
+
+        /**
+         * Read the next block header
+         * @return false if there are no more blocks
+         * @throws IOException If we are unable to read
+         */
+        private boolean readHeader() throws IOException {
+
+            try {
+                blockCount = input.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            blockTimeFirst = input.readLong();
+            blockTimeLast = input.readLong();
+            return true;
+        }
+
+        /**
+         * Skip every block that ends before the specified time without decoding it
+         * @param time Epoch time (seconds) we want to start reading from
+         * @throws IOException If we are unable to read
+         */
+        public void seek(long time) throws IOException {
+
+            //finish the block we are currently in
+            if (remaining > 0)
+                return;
+
+            while (readHeader()) {
+
+                final int length = input.readInt();
+
+                //this block contains what we want, so start decoding it
+                if (blockTimeLast >= time) {
+                    startBlock(length);
+                    return;
+                }
+
+                //skip the payload
+                input.skipBytes(length);
+            }
+        }
+
+        private void startBlock(int length) throws IOException {
+
+            final byte[] payload = new byte[length];
+            input.readFully(payload);
+
+            this.bits = new BitReader(payload);
+            this.remaining = blockCount;
+            this.index = 0;
+            this.timePrevious = blockTimeFirst;
+            this.deltaPrevious = 0;
+        }
+
+        /**
+         * Decode the next candle into the provided period
+         * @param period The period to populate
+         * @return false if there are no more candles
+         * @throws IOException If we are unable to read
+         */
+        public boolean next(Period period) throws IOException {
+
+            //load the next block if the current one is done
+            if (remaining == 0) {
+
+                if (!readHeader())
+                    return false;
+
+                startBlock(input.readInt());
+            }
+
+            if (index == 0) {
+
+                //the first candle of a block is stored as is
+                period.time = blockTimeFirst;
+
+                for (int f = 0; f < FIELDS; f++) {
+                    valuePrevious[f] = bits.read(64);
+                    leadingPrevious[f] = 0;
+                    trailingPrevious[f] = 0;
+                }
+
+            } else {
+
+                //restore the time
+                deltaPrevious += readDeltaOfDelta(bits);
+                timePrevious += deltaPrevious;
+                period.time = timePrevious;
+
+                //restore each field
+                for (int f = 0; f < FIELDS; f++) {
+
+                    //same value as before
+                    if (bits.read(1) == 0)
+                        continue;
+
+                    //read the xor window
+                    if (bits.read(1) == 1) {
+                        leadingPrevious[f] = (int)bits.read(5);
+                        final int length = (int)bits.read(6) + 1;
+                        trailingPrevious[f] = 64 - leadingPrevious[f] - length;
+                    }
+
+                    final int length = 64 - leadingPrevious[f] - trailingPrevious[f];
+                    valuePrevious[f] ^= (bits.read(length) << trailingPrevious[f]);
+                }
+            }
+
+            period.low = Double.longBitsToDouble(valuePrevious[0]);
+            period.high = Double.longBitsToDouble(valuePrevious[1]);
+            period.open = Double.longBitsToDouble(valuePrevious[2]);
+            period.close = Double.longBitsToDouble(valuePrevious[3]);
+            period.volume = Double.longBitsToDouble(valuePrevious[4]);
+
+            remaining--;
+            index = (remaining == 0) ? 0 : index + 1;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes individual bits to a byte array
+     */
+    private static class BitWriter {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        //bits waiting to be written
+        private long buffer = 0;
+        private int count = 0;
+
+        private void write(long value, int bits) {
+
+            for (int i = bits - 1; i >= 0; i--) {
+
+                buffer = (buffer << 1) | ((value >>> i) & 1L);
+                count++;
+
+                //write a full byte
+                if (count == 8) {
+                    output.write((int)buffer);
+                    buffer = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        private byte[] toByteArray() {
+
+            //pad the last byte
+            if (count > 0)
+                write(0, 8 - count);
+
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Reads individual bits from a byte array
+     */
+    private static class BitReader {
+
+        private final byte[] data;
+
+        //the position of the next bit
+        private int position = 0;
+
+        private BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        private long read(int bits) {
+
+            long result = 0;
+
+            for (int i = 0; i < bits; i++) {
+                final int bit = (data[position >>> 3] >>> (7 - (position & 7))) & 1;
+                result = (result << 1) | bit;
+                position++;
+            }
+
+            return result;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.gamesbykevin.tradingbot.util;
 
+import com.gamesbykevin.tradingbot.util.Notifier.Topic;
+
 import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.PasswordAuthentication;
 import javax.mail.Session;
 import javax.mail.Transport;
@@ -11,73 +14,120 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Properties;
 
-import static com.gamesbykevin.tradingbot.util.LogFile.FILE_SEPARATOR;
 import static com.gamesbykevin.tradingbot.util.LogFile.getFilenameEmail;
 import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
 
-public class Email implements Runnable {
+/**
+ * Sends our notifications through smtp, one session and connection is kept and reused for every email
+ */
+public class Email implements Notifier.Sender {
 
     public static String EMAIL_NOTIFICATION_ADDRESS = null;
 
     public static String GMAIL_SMTP_USERNAME = null;
     public static String GMAIL_SMTP_PASSWORD = null;
 
-    private final String subject, text;
-
-    private Email(final String subject, final String text) {
-        this.subject = subject;
-        this.text = text;
-    }
+    /**
+     * The smtp server we send through, change to test against a local server
+     */
+    public static String SMTP_HOST = "smtp.gmail.com";
+    public static int SMTP_PORT = 587;
 
     //where we write our log file(s)
     private static PrintWriter WRITER;
 
+    //our mail session and connection, reused for every email
+    private Session session;
+    private Transport transport;
+
+    protected Email() {
+        //only our notifier sends email
+    }
+
     @Override
-    public void run() {
+    public void send(final String subject, final String text) throws MessagingException {
+
+        Message message = new MimeMessage(getSession());
+        message.setFrom(new InternetAddress(GMAIL_SMTP_USERNAME));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(EMAIL_NOTIFICATION_ADDRESS));
+        message.setSubject(subject);
+        message.setText(text);
+
+        //we are now sending
+        displayMessage("Sending email....", getWriter());
+
+        //display email information
+        displayMessage("From: " + GMAIL_SMTP_USERNAME, getWriter());
+        displayMessage("To: " + EMAIL_NOTIFICATION_ADDRESS, getWriter());
+
+        if (subject != null)
+            displayMessage("Subject: " + subject, getWriter());
+
+        if (text != null)
+            displayMessage("Message: " + text, getWriter());
 
         try {
 
+            //connect if we haven't yet or the server closed our connection
+            if (!getTransport().isConnected())
+                getTransport().connect();
+
+            //send the email
+            getTransport().sendMessage(message, message.getAllRecipients());
+
+        } catch (MessagingException e) {
+
+            //start with a new connection next time
+            close();
+            throw e;
+        }
+
+        //display we are good
+        displayMessage("Sent email successfully....", getWriter());
+    }
+
+    private Session getSession() {
+
+        if (this.session == null) {
+
             Properties props = new Properties();
-            props.put("mail.smtp.auth", "true");
+            props.put("mail.smtp.auth", String.valueOf(GMAIL_SMTP_USERNAME != null));
             props.put("mail.smtp.starttls.enable", "true");
-            props.put("mail.smtp.host", "smtp.gmail.com");
-            props.put("mail.smtp.port", "587");
+            props.put("mail.smtp.host", SMTP_HOST);
+            props.put("mail.smtp.port", String.valueOf(SMTP_PORT));
 
-            Session session = Session.getInstance(props, new javax.mail.Authenticator() {
+            this.session = Session.getInstance(props, new javax.mail.Authenticator() {
                 protected PasswordAuthentication getPasswordAuthentication() {
                     return new PasswordAuthentication(GMAIL_SMTP_USERNAME, GMAIL_SMTP_PASSWORD);
                 }
             });
+        }
 
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(GMAIL_SMTP_USERNAME));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(EMAIL_NOTIFICATION_ADDRESS));
-            message.setSubject(subject);
-            message.setText(text);
+        return this.session;
+    }
 
-            //we are now sending
-            displayMessage("Sending email....", getWriter());
+    private Transport getTransport() throws MessagingException {
 
-            //display email information
-            displayMessage("From: " + GMAIL_SMTP_USERNAME, getWriter());
-            displayMessage("To: " + EMAIL_NOTIFICATION_ADDRESS, getWriter());
+        if (this.transport == null)
+            this.transport = getSession().getTransport("smtp");
 
-            if (subject != null)
-                displayMessage("Subject: " + subject, getWriter());
+        return this.transport;
+    }
 
-            if (text != null)
-                displayMessage("Message: " + text, getWriter());
+    private void close() {
 
-            //send the email
-            Transport.send(message);
+        try {
 
-            //display we are good
-            displayMessage("Sent email successfully....", getWriter());
+            if (this.transport != null)
+                this.transport.close();
 
-        } catch (Exception e) {
+        } catch (MessagingException e) {
 
-            //print and write error to log
+            //we are replacing the connection anyway
             displayMessage(e, getWriter());
+
+        } finally {
+            this.transport = null;
         }
     }
 
@@ -91,20 +141,18 @@ public class Email implements Runnable {
         return true;
     }
 
-    public static synchronized void sendEmail(final String subject, final String text) {
+    public static void sendEmail(final String subject, final String text) {
+        sendEmail(Topic.General, subject, text);
+    }
+
+    public static void sendEmail(final Topic topic, final String subject, final String text) {
 
         //don't send email if email address doesn't exist
         if (!hasContactAddress())
             return;
 
-        //create our email object
-        Email email = new Email(subject, text);
-
-        //we will send the email on a separate thread
-        Thread thread = new Thread(email);
-
-        //start sending the email on a separate thread
-        thread.start();
+        //our notifier will send the email on its own thread
+        Notifier.getNotifier().offer(topic, subject, text);
     }
 
     public static String getTextDateDesc() {
@@ -123,4 +171,4 @@ public class Email implements Runnable {
 
         return WRITER;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,216 @@
+package com.gamesbykevin.tradingbot.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Prices, quantities, funds and fees stored as a whole number of units, each unit being 10^-8 of the currency.<br>
+ * 10^-8 is the smallest increment of any currency on the exchange, so every amount we receive is stored exactly and
+ * adding / subtracting amounts never drifts. Amounts are rounded to the increment of the product when we create an
+ * order and are only converted to a {@link BigDecimal} when sent to the exchange
+ */
+public final class FixedPoint {
+
+    /**
+     * How many decimals does a unit represent
+     */
+    public static final int DECIMALS = 8;
+
+    /**
+     * How many units are in 1
+     */
+    public static final long SCALE = 100_000_000L;
+
+    private FixedPoint() {
+        //no instances
+    }
+
+    /**
+     * Convert the value to units
+     * @param value The value
+     * @return The nearest number of units
+     */
+    public static long toUnits(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    /**
+     * Convert the units to a value
+     * @param units The number of units
+     * @return The value, only use for display and ratios
+     */
+    public static double toDouble(long units) {
+        return (double)units / SCALE;
+    }
+
+    /**
+     * Convert the units to send to the exchange
+     * @param units The number of units
+     * @param decimals How many decimals the exchange expects
+     * @return The value
+     */
+    public static BigDecimal toBigDecimal(long units, int decimals) {
+        return BigDecimal.valueOf(units, DECIMALS).setScale(decimals, RoundingMode.HALF_DOWN);
+    }
+
+    /**
+     * Convert the units to text the same way the exchange formats them
+     * @param units The number of units
+     * @return The value as text
+     */
+    public static String toString(long units) {
+        return BigDecimal.valueOf(units, DECIMALS).toPlainString();
+    }
+
+    /**
+     * Parse a decimal number received from the exchange without creating any objects
+     * @param text The number (e.g. "-123.45678901"), digits past our decimals are rounded half up
+     * @return The number of units
+     * @throws NumberFormatException If the text is not a decimal number
+     */
+    public static long parse(String text) {
+
+        if (text == null || text.isEmpty())
+            throw new NumberFormatException("Unable to parse: " + text);
+
+        int index = 0;
+
+        //is the number negative
+        final boolean negative = (text.charAt(0) == '-');
+
+        if (negative || text.charAt(0) == '+')
+            index++;
+
+        long whole = 0;
+        long fraction = 0;
+        int decimals = 0;
+        int digits = 0;
+        boolean point = false;
+        boolean roundUp = false;
+
+        for (; index < text.length(); index++) {
+
+            final char c = text.charAt(index);
+
+            if (c == '.' && !point) {
+                point = true;
+                continue;
+            }
+
+            if (c < '0' || c > '9')
+                throw new NumberFormatException("Unable to parse: " + text);
+
+            digits++;
+
+            if (!point) {
+
+                whole = Math.addExact(Math.multiplyExact(whole, 10), c - '0');
+
+            } else if (decimals < DECIMALS) {
+
+                fraction = (fraction * 10) + (c - '0');
+                decimals++;
+
+            } else if (decimals == DECIMALS) {
+
+                //the first digit we drop decides the rounding
+                roundUp = (c >= '5');
+                decimals++;
+            }
+        }
+
+        if (digits == 0)
+            throw new NumberFormatException("Unable to parse: " + text);
+
+        //pad the fraction to our decimals
+        for (; decimals < DECIMALS; decimals++) {
+            fraction *= 10;
+        }
+
+        long units = Math.addExact(Math.multiplyExact(whole, SCALE), fraction + (roundUp ? 1 : 0));
+
+        return (negative) ? -units : units;
+    }
+
+    /**
+     * Multiply 2 amounts (e.g. price * quantity) without overflowing on the intermediate result
+     * @param a The first amount in units, not negative
+     * @param b The second amount in units, not negative
+     * @return The result in units, rounded half up
+     */
+    public static long multiply(long a, long b) {
+
+        //split both amounts into whole and fraction so no part overflows
+        final long aWhole = a / SCALE, aFraction = a % SCALE;
+        final long bWhole = b / SCALE, bFraction = b % SCALE;
+
+        return Math.addExact(
+            Math.addExact(Math.multiplyExact(Math.multiplyExact(aWhole, bWhole), SCALE), Math.multiplyExact(aWhole, bFraction)),
+            Math.addExact(Math.multiplyExact(aFraction, bWhole), ((aFraction * bFraction) + (SCALE / 2)) / SCALE)
+        );
+    }
+
+    /**
+     * Get the increment in units
+     * @param increment The increment (e.g. 0.01)
+     * @param decimals The decimals to use if the increment isn't known
+     * @return The increment in units, at least 1
+     */
+    public static long getIncrement(Double increment, int decimals) {
+
+        long units = (increment == null || increment <= 0) ? pow10(DECIMALS - decimals) : toUnits(increment);
+
+        return Math.max(1, units);
+    }
+
+    /**
+     * How many decimals does the increment have
+     * @param increment The increment in units
+     * @return The number of decimals the exchange expects
+     */
+    public static int getDecimals(long increment) {
+
+        int decimals = DECIMALS;
+
+        while (decimals > 0 && increment % 10 == 0) {
+            increment /= 10;
+            decimals--;
+        }
+
+        return decimals;
+    }
+
+    /**
+     * Round the amount down to a multiple of the increment
+     * @param units The amount in units, not negative
+     * @param increment The increment in units
+     * @return The rounded amount
+     */
+    public static long roundDown(long units, long increment) {
+        return units - (units % increment);
+    }
+
+    /**
+     * Round the amount to the nearest multiple of the increment, half way is rounded down
+     * @param units The amount in units, not negative
+     * @param increment The increment in units
+     * @return The rounded amount
+     */
+    public static long roundHalfDown(long units, long increment) {
+
+        final long remainder = units % increment;
+
+        return (remainder * 2 > increment) ? units - remainder + increment : units - remainder;
+    }
+
+    private static long pow10(int exponent) {
+
+        long result = 1;
+
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+
+        return result;
+    }
+}
@@ -4,13 +4,15 @@ import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
 import com.gamesbykevin.tradingbot.calculator.Period;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.gamesbykevin.tradingbot.calculator.CalculatorHelper.addHistory;
 import static com.gamesbykevin.tradingbot.calculator.CalculatorHelper.sortHistory;
 import static com.gamesbykevin.tradingbot.calculator.Period.*;
 import static com.gamesbykevin.tradingbot.util.LogFile.FILE_SEPARATOR;
-import static com.gamesbykevin.tradingbot.util.LogFile.getPrintWriter;
 import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
 
 /**
@@ -26,17 +28,22 @@ public class History {
     /**
      * The name of the file will start with this
      */
-    private static String FILENAME_DESC = "candles_";
+    protected static final String FILENAME_DESC = "candles_";
 
     /**
      * What is the filename extension
      */
-    private static String FILENAME_EXT = ".txt";
+    protected static final String FILENAME_EXT = ".txt";
+
+    /**
+     * Filename extension of full segments that have been compressed
+     */
+    protected static final String FILENAME_EXT_COMPRESSED = ".bin";
 
     /**
      * Character separating each piece of data in the history
      */
-    private static final String DELIMITER = ",";
+    protected static final String DELIMITER = ",";
 
     /**
      * Display updates when loading files
@@ -48,23 +55,50 @@ public class History {
      */
     public static final int FILE_LINE_LIMIT = 10000;
 
-    private static synchronized String getFileName(File directory, boolean existing) {
+    //our writers for each product / candle directory
+    private static HashMap<String, HistoryWriter> WRITERS;
 
-        final int length = (directory.listFiles() != null) ? directory.listFiles().length : 0;
+    //notified after new candles are appended
+    private static final CopyOnWriteArrayList<HistoryListener> LISTENERS = new CopyOnWriteArrayList<>();
 
-        //if looking for the existing file name
-        if (existing) {
+    /**
+     * Be notified every time new candles are appended to our stored history
+     * @param listener The listener, it is only added once
+     */
+    public static void subscribe(HistoryListener listener) {
+        LISTENERS.addIfAbsent(listener);
+    }
 
-            if (length == 0) {
-                return FILENAME_DESC + "1" + FILENAME_EXT;
-            } else if (length == 1) {
-                return directory.listFiles()[0].getName();
-            } else {
-                return FILENAME_DESC + length + FILENAME_EXT;
-            }
-        } else {
-            return FILENAME_DESC + (length + 1) + FILENAME_EXT;
-        }
+    /**
+     * Is this file one of our candle segments?
+     * @param file The file to check
+     * @return true if the file name matches our segment naming, false otherwise
+     */
+    protected static boolean isSegment(File file) {
+        return file.getName().startsWith(FILENAME_DESC) && (file.getName().endsWith(FILENAME_EXT) || file.getName().endsWith(FILENAME_EXT_COMPRESSED));
+    }
+
+    /**
+     * Get the writer for the product / candle, the writer is created if it does not exist
+     * @param productId The product
+     * @param candle The candle duration
+     * @return Writer that will append to our history
+     * @throws IOException If we are unable to open the history segment
+     */
+    protected static synchronized HistoryWriter getWriter(String productId, Candle candle) throws IOException {
+
+        //create our map if it does not exist
+        if (WRITERS == null)
+            WRITERS = new HashMap<>();
+
+        //directory path
+        final String directoryPath = getDirectory(productId, candle);
+
+        //create the writer if it does not exist
+        if (WRITERS.get(directoryPath) == null)
+            WRITERS.put(directoryPath, new HistoryWriter(directoryPath));
+
+        return WRITERS.get(directoryPath);
     }
 
     public static synchronized void load(List<Period> history, String productId, Candle candle, PrintWriter writer, boolean archive) {
@@ -89,27 +123,53 @@ public class History {
         //how big is our history
         final int size = history.size();
 
+        //the history another process is sharing
+        final List<Period> shared = archive ? null : getShared(productId, (candle.dependency == null) ? candle : candle.dependency);
+
+        //do we need to sort what we loaded
+        boolean sort = true;
+
         //if we are archiving files we only need to look at the recent file
         if (archive) {
 
-            //get the filename of the recent file
-            String filename = getFileName(directory, true);
+            try {
 
-            //search every file in the directory
-            for (File file : directory.listFiles()) {
+                //the manifest tells us which segment is active without listing the directory
+                File file = new File(directory, FILENAME_DESC + HistoryWriter.getSegment(directory) + FILENAME_EXT);
 
-                //if the file names match load this 1 file, or if there is only 1 file existing
-                if (file.getName().equalsIgnoreCase(filename) || directory.listFiles().length == 1) {
+                //load the 1 file if it exists
+                if (file.exists())
                     loadFile(file, history, productId, candle);
-                    break;
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+        } else if (shared != null) {
+
+            //the shared candles are already sorted and unique
+            if (history.isEmpty()) {
+
+                history.addAll(shared);
+                sort = false;
+
+            } else {
+
+                for (int i = 0; i < shared.size(); i++) {
+                    Period period = shared.get(i);
+                    addHistory(history, period.time, period.low, period.high, period.open, period.close, period.volume);
                 }
             }
 
         } else {
 
-            //we will load from every file in the directory
+            //we will load from every segment in the directory
             for (File file : directory.listFiles()) {
 
+                //skip the manifest and anything else that isn't a segment
+                if (!isSegment(file))
+                    continue;
+
                 //load the current file
                 loadFile(file, history, productId, candle);
             }
@@ -118,14 +178,17 @@ public class History {
         //mark null
         directory = null;
 
-        //notify user
-        displayMessage("Sorting records...");
+        if (sort) {
 
-        //now let's make sure everything is sorted in order
-        sortHistory(history);
+            //notify user
+            displayMessage("Sorting records...");
 
-        //notify user
-        displayMessage("Sorting done");
+            //now let's make sure everything is sorted in order
+            sortHistory(history);
+
+            //notify user
+            displayMessage("Sorting done");
+        }
 
         //any records loaded
         final int change = history.size() - size;
@@ -137,10 +200,222 @@ public class History {
         displayMessage("Done loading history: " + getDirectory(productId, candle), writer);
     }
 
+    /**
+     * Load only the most recent candles, reading backwards from the newest segment until we have enough.<br>
+     * Use {@link #load(List, String, Candle, PrintWriter, boolean)} when the full history is needed (e.g. back testing)
+     * @param history List to populate with the periods sorted oldest to newest
+     * @param productId The product
+     * @param candle The candle duration
+     * @param count How many candles we need, for a custom candle this is the number of custom candles
+     * @param writer Where we write our log
+     */
+    public static synchronized void loadRecent(List<Period> history, String productId, Candle candle, int count, PrintWriter writer) {
+
+        //the directory where our history is stored
+        File directory;
+
+        //how many stored candles do we need
+        final int required;
+
+        //custom candles are created from the dependency candle, so we need more of them
+        if (candle.dependency == null) {
+            directory = new File(getDirectory(productId, candle));
+            required = count;
+        } else {
+            directory = new File(getDirectory(productId, candle.dependency));
+            required = count * (int)(candle.duration / candle.dependency.duration);
+        }
+
+        //if the directory does not exist, there is nothing to load
+        if (!directory.exists())
+            return;
+
+        //start loading history
+        displayMessage("Loading recent history (" + required + "): " + getDirectory(productId, candle), writer);
+
+        //the history another process is sharing
+        final List<Period> shared = getShared(productId, (candle.dependency == null) ? candle : candle.dependency);
+
+        if (shared != null) {
+
+            //only copy the periods we need
+            history.addAll(shared.subList(Math.max(0, shared.size() - required), shared.size()));
+
+            //display records loaded
+            displayMessage(history.size() + " records loaded (shared)", writer);
+            return;
+        }
+
+        //the periods of each segment we read, newest segment first
+        List<List<Period>> segments = new ArrayList<>();
+
+        //how many periods have we read
+        int total = 0;
+
+        try {
+
+            //start at the active segment and work backwards
+            for (int segment = HistoryWriter.getSegment(directory); segment >= 1 && total < required; segment--) {
+
+                List<Period> periods = loadSegment(directory, segment, required - total);
+                segments.add(periods);
+                total += periods.size();
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        //combine the segments oldest to newest
+        List<Period> recent = new ArrayList<>(total);
+
+        //are the periods in order
+        boolean ordered = true;
+
+        for (int index = segments.size() - 1; index >= 0; index--) {
+
+            for (Period period : segments.get(index)) {
+
+                if (!recent.isEmpty()) {
+
+                    final long time = recent.get(recent.size() - 1).time;
+
+                    //skip duplicates
+                    if (period.time == time)
+                        continue;
+
+                    //we will need to sort
+                    if (period.time < time)
+                        ordered = false;
+                }
+
+                recent.add(period);
+            }
+        }
+
+        //the segments are written in order, so this should only happen with old data
+        if (!ordered) {
+
+            recent.sort((period1, period2) -> Long.compare(period1.time, period2.time));
+
+            //remove any duplicates now that we are sorted
+            List<Period> unique = new ArrayList<>(recent.size());
+
+            for (Period period : recent) {
+                if (unique.isEmpty() || unique.get(unique.size() - 1).time != period.time)
+                    unique.add(period);
+            }
+
+            recent = unique;
+        }
+
+        //only keep the periods we need
+        history.addAll(recent.subList(Math.max(0, recent.size() - required), recent.size()));
+
+        //display records loaded
+        displayMessage(history.size() + " records loaded", writer);
+
+        //we are done loading history
+        displayMessage("Done loading recent history: " + getDirectory(productId, candle), writer);
+    }
+
+    /**
+     * Get the history shared by the process that is writing it, so we don't have to decode our own copy
+     * @param productId The product
+     * @param candle The candle duration, this has to be a stored candle
+     * @return Read only list of every stored period sorted oldest to newest, or null if nothing current is shared
+     */
+    protected static List<Period> getShared(String productId, Candle candle) {
+
+        SharedHistory shared = SharedHistory.getShared(productId, candle);
+
+        if (shared == null)
+            return null;
+
+        SharedHistory.View view = shared.getView();
+
+        try {
+
+            //if the writer stopped the shared history could be missing candles stored since
+            if (view.isEmpty() || view.getTimeEnd() < HistoryWriter.getTime(new File(getDirectory(productId, candle))))
+                return null;
+
+        } catch (IOException e) {
+            return null;
+        }
+
+        return view;
+    }
+
+    /**
+     * Read the most recent periods of a single segment
+     * @param directory The history directory
+     * @param segment The segment number
+     * @param count How many of the most recent periods we need
+     * @return List of periods sorted oldest to newest, empty if the segment does not exist
+     * @throws IOException If we are unable to read the segment
+     */
+    private static List<Period> loadSegment(File directory, int segment, int count) throws IOException {
+
+        List<Period> periods = new ArrayList<>();
+
+        File compressed = new File(directory, FILENAME_DESC + segment + FILENAME_EXT_COMPRESSED);
+        File text = new File(directory, FILENAME_DESC + segment + FILENAME_EXT);
+
+        if (compressed.exists()) {
+
+            //find the first block we need so we can skip the older ones without decoding them
+            final long time = CandleCodec.getTimeStart(new FileInputStream(compressed), count);
+
+            CandleCodec.Decoder decoder = new CandleCodec.Decoder(new FileInputStream(compressed));
+            decoder.seek(time);
+
+            Period period = new Period();
+
+            while (decoder.next(period)) {
+                periods.add(period);
+                period = new Period();
+            }
+
+            decoder.close();
+
+        } else if (text.exists()) {
+
+            BufferedReader reader = new BufferedReader(new FileReader(text));
+
+            while (true) {
+
+                final String line = reader.readLine();
+
+                if (line == null)
+                    break;
+
+                if (line.trim().isEmpty())
+                    continue;
+
+                periods.add(parse(line));
+            }
+
+            reader.close();
+        }
+
+        //only return what was asked for
+        if (periods.size() > count)
+            return new ArrayList<>(periods.subList(periods.size() - count, periods.size()));
+
+        return periods;
+    }
+
     private static synchronized void loadFile(File file, List<Period> history, String productId, Candle candle) {
 
         try {
 
+            //compressed segments are decoded straight from the stream
+            if (file.getName().endsWith(FILENAME_EXT_COMPRESSED)) {
+                loadFileCompressed(file, history, productId, candle);
+                return;
+            }
+
             //start reading the file
             BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
 
@@ -159,20 +434,11 @@ public class History {
                 if (line == null)
                     break;
 
-                //the line is a json string we can convert to array
-                String[] tmpData = line.split(DELIMITER);
+                //convert the line to a period
+                Period period = parse(line);
 
                 //add period to our history
-                addHistory(history,
-                    Long.parseLong(tmpData[PERIOD_INDEX_TIME]),
-                    Double.parseDouble(tmpData[PERIOD_INDEX_LOW]),
-                    Double.parseDouble(tmpData[PERIOD_INDEX_HIGH]),
-                    Double.parseDouble(tmpData[PERIOD_INDEX_OPEN]),
-                    Double.parseDouble(tmpData[PERIOD_INDEX_CLOSE]),
-                    Double.parseDouble(tmpData[PERIOD_INDEX_VOLUME])
-                );
-
-                tmpData = null;
+                addHistory(history, period.time, period.low, period.high, period.open, period.close, period.volume);
 
                 //add to our count
                 count++;
@@ -189,35 +455,71 @@ public class History {
         }
     }
 
-    protected static synchronized boolean write(List<Period> history, String productId, Candle duration) {
+    private static void loadFileCompressed(File file, List<Period> history, String productId, Candle candle) throws IOException {
 
-        try {
+        CandleCodec.Decoder decoder = new CandleCodec.Decoder(new FileInputStream(file));
 
-            //directory path
-            String directoryPath = getDirectory(productId, duration);
+        int count = 0;
 
-            //the directory where we will save our candle data
-            File directory = new File(directoryPath);
+        //period we decode into, re-used for every candle
+        Period period = new Period();
 
-            if (history.size() < FILE_LINE_LIMIT) {
+        while (decoder.next(period)) {
 
-                //write data to existing file
-                writeFile(getFileName(directory, true), directoryPath, history);
+            if (count % NOTIFY_LIMIT == 0)
+                displayMessage(file.getName() + " - " + productId + " " + candle.description + " count: " + count);
 
-            } else {
+            //add period to our history
+            addHistory(history, period.time, period.low, period.high, period.open, period.close, period.volume);
 
-                //continue until we separate the data into smaller files
-                while (history.size() > 0) {
+            //add to our count
+            count++;
+        }
 
-                    //write the next # of lines to a new text file
-                    writeFile(getFileName(directory, false), directoryPath, history);
-                }
+        decoder.close();
+    }
 
-            }
+    /**
+     * Convert a line of text from a segment to a period
+     * @param line The line of text (time,low,high,open,close,volume)
+     * @return The period
+     */
+    protected static Period parse(String line) {
+
+        //split the line into the separate values
+        String[] tmpData = line.split(DELIMITER);
+
+        Period period = new Period();
+        period.time = Long.parseLong(tmpData[PERIOD_INDEX_TIME]);
+        period.low = Double.parseDouble(tmpData[PERIOD_INDEX_LOW]);
+        period.high = Double.parseDouble(tmpData[PERIOD_INDEX_HIGH]);
+        period.open = Double.parseDouble(tmpData[PERIOD_INDEX_OPEN]);
+        period.close = Double.parseDouble(tmpData[PERIOD_INDEX_CLOSE]);
+        period.volume = Double.parseDouble(tmpData[PERIOD_INDEX_VOLUME]);
+        return period;
+    }
+
+    /**
+     * Append any new completed candles to our history, our listeners are notified once the candles are stored
+     * @param history The list of periods sorted oldest to newest
+     * @param productId The product
+     * @param duration The candle duration
+     * @return The number of candles written, or -1 if we weren't successful
+     */
+    protected static int write(List<Period> history, String productId, Candle duration) {
+
+        //the candle that is still in progress will change, so we only store candles that have ended
+        final long timeLimit = (System.currentTimeMillis() / 1000L) - duration.duration;
+
+        //the number of candles written
+        final int count;
 
+        try {
 
-            //we have success
-            return true;
+            //append only the new candles
+            synchronized (History.class) {
+                count = getWriter(productId, duration).append(history, timeLimit + 1);
+            }
 
         } catch (Exception e) {
 
@@ -225,56 +527,27 @@ public class History {
             e.printStackTrace();
 
             //we weren't successful
-            return false;
+            return -1;
         }
-    }
-
-    private static void writeFile(String filename, String directory, List<Period> history) {
-
-        //create our print writer
-        PrintWriter pw = getPrintWriter(filename, directory);
 
-        for (int i = 0; i < FILE_LINE_LIMIT; i++) {
+        //the candles are stored, now let everyone else know
+        for (HistoryListener listener : LISTENERS) {
 
-            //if we exceed the size of the file, exit
-            if (i >= history.size())
-                break;
+            try {
 
-            //get the current period
-            Period period = history.get(i);
+                listener.appended(productId, duration, history, timeLimit + 1, count);
 
-            //write data to file
-            pw.println(
-                period.time + DELIMITER +
-                period.low + DELIMITER +
-                period.high + DELIMITER +
-                period.open + DELIMITER +
-                period.close + DELIMITER +
-                period.volume
-            );
-        }
-
-        //remove records written to a file
-        for (int i = 0; i < FILE_LINE_LIMIT; i++) {
-
-            //if nothing left to remove, exit loop
-            if (history.isEmpty())
-                break;
+            } catch (Exception e) {
 
-            //remove the first line
-            history.remove(0);
+                //the candles are still stored, so we don't want to stop the other listeners
+                e.printStackTrace();
+            }
         }
-        //write all remaining bytes
-        pw.flush();
-
-        //close the file
-        pw.close();
 
-        //flag null for garbage collection
-        pw = null;
+        return count;
     }
 
-    private static String getDirectory(String productId, Candle duration) {
+    protected static String getDirectory(String productId, Candle duration) {
         return (DIRECTORY + FILE_SEPARATOR + productId + FILE_SEPARATOR + duration.description);
     }
 }
\ No newline at end of file
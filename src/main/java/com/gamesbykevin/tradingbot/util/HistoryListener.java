@@ -0,0 +1,24 @@
+package com.gamesbykevin.tradingbot.util;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.Period;
+
+import java.util.List;
+
+/**
+ * Anyone that wants to know when new candles are appended to our stored history.<br>
+ * Subscribe with {@link History#subscribe(HistoryListener)}, the listeners are notified after the candles are stored
+ */
+public interface HistoryListener {
+
+    /**
+     * The new completed candles have been appended to our stored history
+     * @param productId The product
+     * @param candle The candle duration
+     * @param history The periods sorted oldest to newest
+     * @param timeLimit Periods with a time at or above this aren't complete and weren't stored
+     * @param count The number of candles appended, this can be 0
+     * @throws Exception If we weren't able to handle the new candles, the candles are still stored
+     */
+    void appended(String productId, Candle candle, List<Period> history, long timeLimit, int count) throws Exception;
+}
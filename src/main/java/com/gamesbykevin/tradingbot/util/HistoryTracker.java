@@ -2,16 +2,15 @@ package com.gamesbykevin.tradingbot.util;
 
 import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
 import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.feed.MarketFeed;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
 import static com.gamesbykevin.tradingbot.Main.getProductsAllUsd;
-import static com.gamesbykevin.tradingbot.calculator.Calculator.ENDPOINT_HISTORIC;
 import static com.gamesbykevin.tradingbot.calculator.CalculatorHelper.sortHistory;
 import static com.gamesbykevin.tradingbot.calculator.CalculatorHelper.updateHistory;
-import static com.gamesbykevin.tradingbot.util.JSon.getJsonResponse;
 import static com.gamesbykevin.tradingbot.util.LogFile.getFilenameHistoryTracker;
 import static com.gamesbykevin.tradingbot.util.PropertyUtil.DEBUG;
 import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
@@ -51,6 +50,9 @@ public class HistoryTracker implements Runnable {
             if (getProductsAllUsd() == null || getProductsAllUsd().isEmpty())
                 throw new RuntimeException("There are no usd products to track...");
 
+            //we are storing the history, so share it with the other bots on this host
+            History.subscribe(SharedHistory.LISTENER);
+
             //create new thread and start it
             this.thread = new Thread(this);
             this.thread.start();
@@ -90,26 +92,11 @@ public class HistoryTracker implements Runnable {
                             //our history object
                             List<Period> history = new ArrayList<>();
 
-                            //load the contents from the text file into our array list
-                            History.load(history, productId, candle, null, true);
-
-                            //get the current size to check for changes
-                            int size = history.size();
-
                             //display message
-                            displayMessage("Checking history: " + productId + ", " + candle.description + ", Size: " + history.size());
-
-                            //format our endpoint
-                            String endpoint = String.format(ENDPOINT_HISTORIC, productId, candle.duration);
-
-                            //display endpoint
-                            displayMessage("Endpoint: " + endpoint);
-
-                            //make historic candle call and get json response
-                            String json = getJsonResponse(endpoint);
+                            displayMessage("Checking history: " + productId + ", " + candle.description);
 
-                            //convert json text to multi array
-                            double[][] data = GSon.getGson().fromJson(json, double[][].class);
+                            //get the recent candles, from the market feed if another process already requested them
+                            double[][] data = MarketFeed.getCandles(productId, candle.duration);
 
                             //make sure we have data before we update and sort
                             if (data != null && data.length > 0) {
@@ -117,15 +104,14 @@ public class HistoryTracker implements Runnable {
                                 sortHistory(history);
                             }
 
-                            //if the history changed, write it to local storage
-                            if (history.size() != size) {
+                            //append only the candles we don't have yet to local storage
+                            final int count = History.write(history, productId, candle);
 
-                                displayMessage("Writing history: " + productId + ", " + candle.description + ", Size: " + history.size(), getWriter());
-                                boolean result = History.write(history, productId, candle);
+                            //if new candles were written commit the change
+                            if (count > 0) {
 
-                                //if writing the file was successful commit the change
-                                if (result)
-                                    commitChanges();
+                                displayMessage("Wrote history: " + productId + ", " + candle.description + ", New: " + count, getWriter());
+                                commitChanges();
                             }
 
                             history.clear();
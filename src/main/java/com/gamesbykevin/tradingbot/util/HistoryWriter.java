@@ -0,0 +1,504 @@
+package com.gamesbykevin.tradingbot.util;
+
+import com.gamesbykevin.tradingbot.calculator.Period;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static com.gamesbykevin.tradingbot.util.History.DELIMITER;
+import static com.gamesbykevin.tradingbot.util.History.FILENAME_DESC;
+import static com.gamesbykevin.tradingbot.util.History.FILENAME_EXT;
+import static com.gamesbykevin.tradingbot.util.History.FILENAME_EXT_COMPRESSED;
+import static com.gamesbykevin.tradingbot.util.History.FILE_LINE_LIMIT;
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Append only writer for the candle history of a single product / candle.<br>
+ * Candles are appended to fixed size segments (candles_#.txt) and a small manifest tracks the active segment
+ * so we never have to list the directory or rewrite data that is already stored.<br>
+ * Once a segment is full it is compacted into a compressed segment (candles_#.bin)
+ */
+public class HistoryWriter {
+
+    /**
+     * Name of the manifest file in each history directory
+     */
+    public static final String MANIFEST_FILENAME = "manifest.properties";
+
+    /**
+     * How many candles can we append before we force the data to disk
+     */
+    public static final int SYNC_BATCH = 250;
+
+    //keys used in the manifest file
+    private static final String KEY_SEGMENT = "segment";
+    private static final String KEY_LINES = "lines";
+    private static final String KEY_BYTES = "bytes";
+    private static final String KEY_TIME = "time";
+
+    //the directory containing our segments
+    private final File directory;
+
+    //the segment we are currently appending to
+    private int segment;
+
+    //how many lines are in the current segment
+    private int lines;
+
+    //how many bytes are in the current segment
+    private long bytes;
+
+    //the time of the most recent candle written
+    private long time;
+
+    //how many candles were written since the last sync
+    private int unsynced = 0;
+
+    //stream of the current segment
+    private FileOutputStream stream;
+
+    protected HistoryWriter(String directoryPath) throws IOException {
+
+        //the directory where we will save our candle data
+        this.directory = new File(directoryPath);
+
+        //make sure the directory exists
+        if (!this.directory.exists())
+            this.directory.mkdirs();
+
+        //restore where we left off
+        if (getManifest().exists()) {
+            readManifest();
+        } else {
+            recoverManifest();
+        }
+
+        //compact any full segments that are still plain text
+        for (int i = 1; i < segment; i++) {
+            compact(i);
+        }
+
+        //open the current segment for appending
+        openSegment();
+    }
+
+    /**
+     * Append the periods to our history, only periods newer than the most recent candle are written
+     * @param history The list of periods sorted oldest to newest
+     * @param timeLimit Periods with a time at or above this will be skipped
+     * @return The number of periods appended
+     * @throws IOException If we are unable to write to the segment
+     */
+    public synchronized int append(List<Period> history, long timeLimit) throws IOException {
+
+        //how many candles did we append
+        int count = 0;
+
+        for (int i = 0; i < history.size(); i++) {
+
+            //get the current period
+            Period period = history.get(i);
+
+            //we already have this candle, or it isn't complete yet
+            if (period.time <= getTime() || period.time >= timeLimit)
+                continue;
+
+            //if the segment is full we roll over to the next one
+            if (lines >= FILE_LINE_LIMIT)
+                rollOver();
+
+            //convert the period to a line of text
+            final byte[] line = (
+                period.time + DELIMITER +
+                period.low + DELIMITER +
+                period.high + DELIMITER +
+                period.open + DELIMITER +
+                period.close + DELIMITER +
+                period.volume + "\n"
+            ).getBytes(StandardCharsets.UTF_8);
+
+            //append the line to the segment
+            stream.write(line);
+
+            //keep track of our progress
+            bytes += line.length;
+            lines++;
+            time = period.time;
+            unsynced++;
+            count++;
+
+            //force the data to disk in batches
+            if (unsynced >= SYNC_BATCH)
+                sync();
+        }
+
+        //make sure anything we wrote is durable before we return
+        if (unsynced > 0)
+            sync();
+
+        //return the number of candles written
+        return count;
+    }
+
+    /**
+     * Force the appended data to disk and record our position in the manifest
+     * @throws IOException If the sync fails
+     */
+    public synchronized void sync() throws IOException {
+
+        //force the segment to disk
+        stream.getFD().sync();
+
+        //now that the data is durable update our manifest
+        writeManifest();
+
+        //nothing pending any more
+        unsynced = 0;
+    }
+
+    /**
+     * Close the current segment
+     */
+    public synchronized void close() {
+
+        try {
+
+            //make sure everything is written
+            if (unsynced > 0)
+                sync();
+
+            stream.close();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the time of the most recent candle written
+     * @return Epoch time (seconds) of the most recent candle, 0 if nothing is written
+     */
+    public synchronized long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Get the segment number we are appending to
+     * @return The active segment number starting at 1
+     */
+    public synchronized int getSegment() {
+        return this.segment;
+    }
+
+    /**
+     * Read the active segment number for a history directory without opening it for writing
+     * @param directory The history directory
+     * @return The active segment number starting at 1
+     * @throws IOException If the manifest can't be read
+     */
+    public static int getSegment(File directory) throws IOException {
+
+        File manifest = new File(directory, MANIFEST_FILENAME);
+
+        //if there is no manifest yet the segments are numbered in order
+        if (!manifest.exists()) {
+
+            int segment = 1;
+
+            while (hasSegment(directory, segment + 1)) {
+                segment++;
+            }
+
+            return segment;
+        }
+
+        Properties properties = new Properties();
+
+        InputStream input = new FileInputStream(manifest);
+        properties.load(input);
+        input.close();
+
+        return Integer.parseInt(properties.getProperty(KEY_SEGMENT));
+    }
+
+    /**
+     * Read the time of the most recent candle for a history directory without opening it for writing
+     * @param directory The history directory
+     * @return Epoch time (seconds) of the most recent candle, 0 if there is no manifest
+     * @throws IOException If the manifest can't be read
+     */
+    public static long getTime(File directory) throws IOException {
+
+        File manifest = new File(directory, MANIFEST_FILENAME);
+
+        if (!manifest.exists())
+            return 0;
+
+        Properties properties = new Properties();
+
+        InputStream input = new FileInputStream(manifest);
+        properties.load(input);
+        input.close();
+
+        return Long.parseLong(properties.getProperty(KEY_TIME));
+    }
+
+    private void rollOver() throws IOException {
+
+        //make sure the full segment is durable and close it
+        stream.getFD().sync();
+        stream.close();
+
+        //move to the next segment
+        segment++;
+        lines = 0;
+        bytes = 0;
+        unsynced = 0;
+
+        //the manifest is swapped atomically so the switch to the new segment is all or nothing
+        writeManifest();
+
+        //start appending to the new segment
+        openSegment();
+
+        //the previous segment won't change any more, so we can compress it
+        compact(segment - 1);
+    }
+
+    /**
+     * Convert a full text segment into a compressed segment
+     * @param segment The segment number
+     * @throws IOException If we are unable to compress the segment
+     */
+    private void compact(int segment) throws IOException {
+
+        File text = getSegmentFile(segment);
+        File compressed = getSegmentFileCompressed(segment);
+
+        //nothing to compact
+        if (!text.exists())
+            return;
+
+        //if the compressed file exists the text file was left behind, so we can remove it
+        if (compressed.exists()) {
+            text.delete();
+            return;
+        }
+
+        displayMessage("Compressing history: " + text.getPath());
+
+        //read the candles from the text segment
+        List<Period> history = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(text));
+
+        while (true) {
+
+            final String line = reader.readLine();
+
+            if (line == null)
+                break;
+
+            if (line.trim().isEmpty())
+                continue;
+
+            history.add(History.parse(line));
+        }
+
+        reader.close();
+
+        //write to a temp file first
+        File tmp = new File(directory, compressed.getName() + ".tmp");
+        FileOutputStream output = new FileOutputStream(tmp);
+        CandleCodec.write(new DataOutputStream(new BufferedOutputStream(output)), history);
+        output.getFD().sync();
+        output.close();
+
+        //swap it into place then remove the text segment
+        Files.move(tmp.toPath(), compressed.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        text.delete();
+    }
+
+    private void openSegment() throws IOException {
+
+        //get the segment file
+        File file = getSegmentFile(segment);
+
+        //if the segment has data that never made it into the manifest, discard it (the tracker will fetch it again)
+        if (file.exists() && file.length() > bytes) {
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(bytes);
+            raf.close();
+        }
+
+        //open the segment in append mode
+        this.stream = new FileOutputStream(file, true);
+    }
+
+    protected File getSegmentFile(int segment) {
+        return new File(directory, FILENAME_DESC + segment + FILENAME_EXT);
+    }
+
+    protected File getSegmentFileCompressed(int segment) {
+        return new File(directory, FILENAME_DESC + segment + FILENAME_EXT_COMPRESSED);
+    }
+
+    private static boolean hasSegment(File directory, int segment) {
+        return new File(directory, FILENAME_DESC + segment + FILENAME_EXT).exists() ||
+                new File(directory, FILENAME_DESC + segment + FILENAME_EXT_COMPRESSED).exists();
+    }
+
+    private File getManifest() {
+        return new File(directory, MANIFEST_FILENAME);
+    }
+
+    private void readManifest() throws IOException {
+
+        Properties properties = new Properties();
+
+        InputStream input = new FileInputStream(getManifest());
+        properties.load(input);
+        input.close();
+
+        //restore our position
+        this.segment = Integer.parseInt(properties.getProperty(KEY_SEGMENT));
+        this.lines = Integer.parseInt(properties.getProperty(KEY_LINES));
+        this.bytes = Long.parseLong(properties.getProperty(KEY_BYTES));
+        this.time = Long.parseLong(properties.getProperty(KEY_TIME));
+    }
+
+    private void writeManifest() throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty(KEY_SEGMENT, String.valueOf(segment));
+        properties.setProperty(KEY_LINES, String.valueOf(lines));
+        properties.setProperty(KEY_BYTES, String.valueOf(bytes));
+        properties.setProperty(KEY_TIME, String.valueOf(time));
+
+        //write to a temp file first
+        File tmp = new File(directory, MANIFEST_FILENAME + ".tmp");
+        FileOutputStream output = new FileOutputStream(tmp);
+        properties.store(output, null);
+        output.getFD().sync();
+        output.close();
+
+        //then swap it into place
+        Files.move(tmp.toPath(), getManifest().toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Build the manifest from the existing segments, this only happens once per directory
+     */
+    private void recoverManifest() throws IOException {
+
+        displayMessage("Creating history manifest: " + directory.getPath());
+
+        //find the most recent segment
+        this.segment = 1;
+
+        while (hasSegment(directory, segment + 1)) {
+            segment++;
+        }
+
+        //start with an empty segment
+        this.lines = 0;
+        this.bytes = 0;
+        this.time = 0;
+
+        //read the latest segment to see where we left off
+        File file = getSegmentFile(segment);
+
+        if (file.exists()) {
+
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+
+            while (true) {
+
+                final String line = reader.readLine();
+
+                if (line == null)
+                    break;
+
+                //skip empty lines
+                if (line.trim().isEmpty())
+                    continue;
+
+                //the time is the first value of every line
+                final long tmp = Long.parseLong(line.substring(0, line.indexOf(DELIMITER)));
+
+                //track the most recent time
+                if (tmp > time)
+                    time = tmp;
+
+                lines++;
+            }
+
+            reader.close();
+
+            //all existing bytes are valid
+            bytes = file.length();
+        }
+
+        //the earlier segments may contain newer candles if the files were not written in order
+        for (int i = 1; i < segment; i++) {
+
+            final long tmp = getSegmentFile(i).exists() ? getTimeMax(getSegmentFile(i)) : getTimeMaxCompressed(getSegmentFileCompressed(i));
+
+            if (tmp > time)
+                time = tmp;
+        }
+
+        //save our manifest
+        writeManifest();
+    }
+
+    private static long getTimeMaxCompressed(File file) throws IOException {
+
+        long result = 0;
+
+        //the candles are decoded straight from the stream
+        CandleCodec.Decoder decoder = new CandleCodec.Decoder(new FileInputStream(file));
+        Period period = new Period();
+
+        while (decoder.next(period)) {
+            if (period.time > result)
+                result = period.time;
+        }
+
+        decoder.close();
+
+        return result;
+    }
+
+    private static long getTimeMax(File file) throws IOException {
+
+        long result = 0;
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        while (true) {
+
+            final String line = reader.readLine();
+
+            if (line == null)
+                break;
+
+            if (line.trim().isEmpty())
+                continue;
+
+            final long tmp = Long.parseLong(line.substring(0, line.indexOf(DELIMITER)));
+
+            if (tmp > result)
+                result = tmp;
+        }
+
+        reader.close();
+
+        return result;
+    }
+}
@@ -0,0 +1,433 @@
+package com.gamesbykevin.tradingbot.util;
+
+import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+import com.gamesbykevin.tradingbot.calculator.rule.SeriesState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A single indicator series materialized on disk.<br>
+ * Each candle is stored as a fixed size record (time, source, value, avg gain, avg loss) so the file can be memory
+ * mapped and read without parsing, and the state of the last record is enough to keep extending the series.<br>
+ * The series is only appended to, readers get a {@link View} that won't change while they use it.<br>
+ * Only the process holding the lock of the {@link IndicatorStore} writes the series, every other process opens it read
+ * only and picks up the new records when they {@link #refresh()}
+ */
+public class IndicatorSeries {
+
+    //identifies our file format
+    private static final int MAGIC = 0x49445331;
+
+    //the version of our file format
+    private static final int VERSION = 1;
+
+    //header (magic, version, function, field, periods, unused, count)
+    private static final int HEADER_SIZE = 32;
+
+    //record (time, source, value, avg gain, avg loss)
+    private static final int RECORD_SIZE = 40;
+
+    //position of the count in our header
+    private static final int POSITION_COUNT = 24;
+
+    //what are we calculating
+    private final Function function;
+
+    //the field we are calculating from
+    private final Fields field;
+
+    //how many periods
+    private final int periods;
+
+    //our file
+    private final FileChannel channel;
+
+    //are we the writer of this series
+    private final boolean write;
+
+    //used to calculate the next value, only the writer has one
+    private SeriesState state;
+
+    //what the readers currently see
+    private volatile View view;
+
+    protected IndicatorSeries(File file, Function function, Fields field, int periods, boolean write) throws IOException {
+
+        this.function = function;
+        this.field = field;
+        this.periods = periods;
+        this.write = write;
+
+        //only the writer creates the file
+        this.channel = new RandomAccessFile(file, write ? "rw" : "r").getChannel();
+
+        if (write && getMagic() == 0) {
+
+            //new file, write our header without the magic until everything else is written
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0);
+            header.putInt(VERSION);
+            header.putInt(function.ordinal());
+            header.putInt(field.ordinal());
+            header.putInt(periods);
+            header.putInt(0);
+            header.putLong(0);
+            header.flip();
+
+            channel.write(header, 0);
+            channel.force(true);
+
+            //now the readers can open our file
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            magic.putInt(MAGIC);
+            magic.flip();
+
+            channel.write(magic, 0);
+            channel.force(true);
+        }
+
+        //the writer hasn't finished creating the file
+        if (getMagic() == 0) {
+            channel.close();
+            throw new IOException("Indicator series isn't created yet: " + file.getPath());
+        }
+
+        //read our header
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new RuntimeException("Indicator series not supported: " + file.getPath());
+        }
+
+        if (header.getInt() != function.ordinal() || header.getInt() != field.ordinal() || header.getInt() != periods) {
+            channel.close();
+            throw new RuntimeException("Indicator series doesn't match: " + file.getPath());
+        }
+
+        header.getInt();
+
+        //only the records in the count are valid, anything after was never committed
+        final long count = header.getLong();
+
+        map((int)count);
+
+        //restore where we left off
+        if (write)
+            this.state = getView().getState((int)count - 1);
+    }
+
+    private int getMagic() throws IOException {
+
+        //the file is empty or the header isn't complete
+        if (channel.size() < HEADER_SIZE)
+            return 0;
+
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        channel.read(magic, 0);
+        magic.flip();
+
+        return magic.getInt();
+    }
+
+    /**
+     * Pick up the records the writer has committed since we last looked, the view never goes backwards
+     * @throws IOException If we are unable to read the series
+     */
+    protected synchronized void refresh() throws IOException {
+
+        //the writer already has everything
+        if (write)
+            return;
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, POSITION_COUNT);
+        header.flip();
+
+        final long count = header.getLong();
+
+        //let us see the new records
+        if (count > getView().size())
+            map((int)count);
+    }
+
+    /**
+     * Append the new candles to our series
+     * @param history The periods sorted oldest to newest
+     * @param timeLimit Periods with a time at or above this are skipped
+     * @return The number of periods appended, or -1 if the history doesn't line up with our series
+     * @throws IOException If we are unable to write to the series
+     */
+    protected synchronized int extend(List<Period> history, long timeLimit) throws IOException {
+
+        //only the writer can extend the series
+        if (!write)
+            throw new RuntimeException("Indicator series is read only");
+
+        final View current = getView();
+
+        //the most recent time stored
+        final long time = current.getTimeEnd();
+
+        //where do the new periods start
+        int start = 0;
+
+        if (current.size() > 0) {
+
+            //the new periods have to continue from our last period
+            start = -1;
+
+            for (int i = history.size() - 1; i >= 0; i--) {
+
+                if (history.get(i).time == time) {
+                    start = i + 1;
+                    break;
+                }
+
+                //there is a gap between our series and the history
+                if (history.get(i).time < time)
+                    break;
+            }
+
+            if (start < 0)
+                return (history.isEmpty() || history.get(history.size() - 1).time <= time) ? 0 : -1;
+        }
+
+        //write the records
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 256);
+        long position = HEADER_SIZE + ((long)current.size() * RECORD_SIZE);
+        int count = 0;
+
+        for (int i = start; i < history.size(); i++) {
+
+            Period period = history.get(i);
+
+            //the candle isn't complete yet
+            if (period.time >= timeLimit)
+                break;
+
+            final double source = getSource(period, field);
+            final double value = state.next(source);
+
+            buffer.putLong(period.time);
+            buffer.putDouble(source);
+            buffer.putDouble(value);
+            buffer.putDouble(state.getAvgGain());
+            buffer.putDouble(state.getAvgLoss());
+            count++;
+
+            //write when full
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                position += write(buffer, position);
+                buffer.clear();
+            }
+        }
+
+        if (count == 0)
+            return 0;
+
+        buffer.flip();
+        write(buffer, position);
+
+        //make sure the records are durable before we update the count
+        channel.force(false);
+
+        final int size = current.size() + count;
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putLong(size);
+        header.flip();
+        channel.write(header, POSITION_COUNT);
+        channel.force(false);
+
+        //let the readers see the new records
+        map(size);
+
+        return count;
+    }
+
+    private long write(ByteBuffer buffer, long position) throws IOException {
+
+        long written = 0;
+
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+
+        return written;
+    }
+
+    private void map(int count) throws IOException {
+        this.view = new View(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + ((long)count * RECORD_SIZE)), count, function, periods);
+    }
+
+    /**
+     * Get the value of the field we calculate from
+     * @param period The period
+     * @param field The field
+     * @return The source value
+     */
+    protected static double getSource(Period period, Fields field) {
+
+        switch (field) {
+
+            case Open:
+                return period.open;
+
+            case High:
+                return period.high;
+
+            case Low:
+                return period.low;
+
+            case Close:
+                return period.close;
+
+            case Volume:
+                return period.volume;
+
+            default:
+                throw new RuntimeException("Field not supported: " + field);
+        }
+    }
+
+    /**
+     * Get what is currently stored, the view won't change once returned
+     * @return The stored records
+     */
+    public View getView() {
+        return this.view;
+    }
+
+    /**
+     * Are we the writer of this series
+     * @return true if we can extend the series, false if we only read it
+     */
+    public boolean isWriter() {
+        return this.write;
+    }
+
+    protected void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Read only view of the stored records
+     */
+    public static class View {
+
+        private final MappedByteBuffer buffer;
+
+        private final int count;
+
+        private final Function function;
+
+        private final int periods;
+
+        private View(MappedByteBuffer buffer, int count, Function function, int periods) {
+            this.buffer = buffer;
+            this.count = count;
+            this.function = function;
+            this.periods = periods;
+        }
+
+        public int size() {
+            return this.count;
+        }
+
+        public long getTime(int index) {
+            return buffer.getLong(getPosition(index));
+        }
+
+        public double getSource(int index) {
+            return buffer.getDouble(getPosition(index) + 8);
+        }
+
+        public double getValue(int index) {
+            return buffer.getDouble(getPosition(index) + 16);
+        }
+
+        public double getAvgGain(int index) {
+            return buffer.getDouble(getPosition(index) + 24);
+        }
+
+        public double getAvgLoss(int index) {
+            return buffer.getDouble(getPosition(index) + 32);
+        }
+
+        /**
+         * Get the time of the most recent record
+         * @return Epoch time (seconds), 0 if nothing is stored
+         */
+        public long getTimeEnd() {
+            return (count == 0) ? 0 : getTime(count - 1);
+        }
+
+        /**
+         * Find the record with the time
+         * @param time Epoch time (seconds)
+         * @return The index of the record, -1 if not found
+         */
+        public int indexOf(long time) {
+
+            int low = 0, high = count - 1;
+
+            while (low <= high) {
+
+                final int middle = (low + high) >>> 1;
+                final long tmp = getTime(middle);
+
+                if (tmp < time) {
+                    low = middle + 1;
+                } else if (tmp > time) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Get the state after the record, so we can keep calculating from there
+         * @param index The index of the record, -1 for the state before any records
+         * @return A new state
+         */
+        public SeriesState getState(int index) {
+
+            SeriesState state = new SeriesState(function, periods);
+
+            //nothing to restore
+            if (index < 0)
+                return state;
+
+            //the recent sources
+            final int start = Math.max(0, index - periods);
+            final double[] sources = new double[index - start + 1];
+
+            for (int i = start; i <= index; i++) {
+                sources[i - start] = getSource(i);
+            }
+
+            state.restore(index + 1, getValue(index), getAvgGain(index), getAvgLoss(index), sources);
+
+            return state;
+        }
+
+        private static int getPosition(int index) {
+            return HEADER_SIZE + (index * RECORD_SIZE);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.gamesbykevin.tradingbot.util;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.Period;
+import com.gamesbykevin.tradingbot.calculator.Period.Fields;
+import com.gamesbykevin.tradingbot.calculator.rule.RuleSeries.Function;
+import com.gamesbykevin.tradingbot.calculator.rule.SeriesState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Indicators materialized over the full history of a product / candle.<br>
+ * Each series (indicator, field, periods) is calculated once from the stored history and then extended as new
+ * candles are written, so warming up, back testing and sweeps can read the values instead of calculating them again.<br>
+ * Only stored candles have an indicator store, custom candles are created from their dependency in memory.<br>
+ * Like the {@link SharedHistory} only 1 process writes the series (whoever holds the lock), every other process opens
+ * the series the writer created read only, and calculates in memory whatever isn't materialized yet
+ */
+public class IndicatorStore {
+
+    /**
+     * Name of the directory containing our series, inside the history directory
+     */
+    public static final String DIRECTORY = "indicators";
+
+    //file extension of our series
+    private static final String FILENAME_EXT = ".dat";
+
+    //only the process holding a lock on this file can write
+    private static final String FILENAME_LOCK = "indicators.lock";
+
+    //our stores for each product / candle directory
+    private static HashMap<String, IndicatorStore> STORES;
+
+    //extends the stores when new candles are stored
+    private static final HistoryListener LISTENER = (productId, candle, history, timeLimit, count) -> {
+
+        //extend the materialized indicators if anyone is using them
+        IndicatorStore store = findStore(productId, candle);
+
+        if (count > 0 && store != null)
+            store.extend(history, timeLimit);
+    };
+
+    //what product / candle are we storing
+    private final String productId;
+    private final Candle candle;
+
+    //where are the series stored
+    private final File directory;
+
+    //the series that are open
+    private final HashMap<String, IndicatorSeries> series;
+
+    //our lock if we are the writer
+    private FileLock lock;
+
+    private IndicatorStore(String productId, Candle candle, File directory) {
+
+        this.productId = productId;
+        this.candle = candle;
+        this.directory = directory;
+        this.series = new HashMap<>();
+    }
+
+    /**
+     * Get the indicator store for the product / candle, the store is created if it does not exist
+     * @param productId The product
+     * @param candle The candle duration
+     * @return The indicator store, or null if the candle isn't stored (custom candle)
+     */
+    public static synchronized IndicatorStore getStore(String productId, Candle candle) {
+
+        //custom candles aren't stored
+        if (candle.dependency != null)
+            return null;
+
+        //create our map if it does not exist
+        if (STORES == null) {
+            STORES = new HashMap<>();
+
+            //keep our stores up to date as candles are stored
+            History.subscribe(LISTENER);
+        }
+
+        final String key = productId + "-" + candle.description;
+
+        //create the store if it does not exist
+        if (STORES.get(key) == null)
+            STORES.put(key, new IndicatorStore(productId, candle, new File(History.getDirectory(productId, candle), DIRECTORY)));
+
+        return STORES.get(key);
+    }
+
+    /**
+     * Get the indicator store only if it was already created
+     * @param productId The product
+     * @param candle The candle duration
+     * @return The indicator store, or null if nobody is using one
+     */
+    protected static synchronized IndicatorStore findStore(String productId, Candle candle) {
+        return (STORES == null) ? null : STORES.get(productId + "-" + candle.description);
+    }
+
+    /**
+     * Get the series, it is materialized from our stored history the first time it is used
+     * @param function The indicator
+     * @param field The field the indicator is calculated from
+     * @param periods The number of periods
+     * @return The stored series, or null if another process is the writer and hasn't created it yet
+     */
+    public IndicatorSeries getSeries(Function function, Fields field, int periods) {
+
+        final String key = function + "_" + field + "_" + periods;
+
+        IndicatorSeries result;
+
+        synchronized (this) {
+
+            //make sure the directory exists
+            if (!directory.exists())
+                directory.mkdirs();
+
+            final boolean write = isWriter();
+
+            result = series.get(key);
+
+            if (result != null) {
+
+                try {
+
+                    //pick up what the writer has added since
+                    result.refresh();
+
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+
+                return result;
+            }
+
+            final File file = new File(directory, key + FILENAME_EXT);
+
+            //only the writer can create the series
+            if (!write && !file.exists())
+                return null;
+
+            try {
+                result = new IndicatorSeries(file, function, field, periods, write);
+            } catch (IOException e) {
+
+                //the writer hasn't finished creating the series
+                if (!write)
+                    return null;
+
+                throw new RuntimeException(e);
+            }
+
+            series.put(key, result);
+        }
+
+        //catch up with our stored history, this is outside our lock since it locks the history
+        if (result.isWriter())
+            catchUp(result);
+
+        return result;
+    }
+
+    /**
+     * Read the values of a series for our history, the periods that aren't stored yet are calculated
+     * @param function The indicator
+     * @param field The field the indicator is calculated from
+     * @param periods The number of periods
+     * @param history The periods sorted oldest to newest
+     * @param values Populated with the value of each period, at least the size of the history
+     * @param avgGain Populated with the rsi average gain of each period, may be null
+     * @param avgLoss Populated with the rsi average loss of each period, may be null
+     * @return The state after our most recent period, or null if the store doesn't line up with our history
+     */
+    public SeriesState read(Function function, Fields field, int periods, List<Period> history, double[] values, double[] avgGain, double[] avgLoss) {
+
+        IndicatorSeries series = getSeries(function, field, periods);
+
+        //the series isn't materialized yet
+        if (series == null)
+            return null;
+
+        IndicatorSeries.View view = series.getView();
+
+        //find the most recent period that is stored
+        int last = history.size() - 1;
+        int record = -1;
+
+        while (last >= 0) {
+
+            record = view.indexOf(history.get(last).time);
+
+            if (record >= 0)
+                break;
+
+            last--;
+        }
+
+        //nothing is stored
+        if (last < 0)
+            return null;
+
+        //copy the stored values, the candles have to line up with our history
+        for (int i = last; i >= 0; i--) {
+
+            final int index = record - (last - i);
+
+            if (index < 0 || view.getTime(index) != history.get(i).time)
+                return null;
+
+            values[i] = view.getValue(index);
+
+            if (avgGain != null)
+                avgGain[i] = view.getAvgGain(index);
+            if (avgLoss != null)
+                avgLoss[i] = view.getAvgLoss(index);
+        }
+
+        //calculate the rest from where the store left off
+        SeriesState state = view.getState(record);
+
+        for (int i = last + 1; i < history.size(); i++) {
+
+            values[i] = state.next(IndicatorSeries.getSource(history.get(i), field));
+
+            if (avgGain != null)
+                avgGain[i] = state.getAvgGain();
+            if (avgLoss != null)
+                avgLoss[i] = state.getAvgLoss();
+        }
+
+        return state;
+    }
+
+    /**
+     * Extend every open series with the candles just written to our history
+     * @param history The periods sorted oldest to newest
+     * @param timeLimit Periods with a time at or above this are skipped
+     */
+    protected void extend(List<Period> history, long timeLimit) {
+
+        List<IndicatorSeries> list;
+
+        synchronized (this) {
+            list = new ArrayList<>(series.values());
+        }
+
+        for (int i = 0; i < list.size(); i++) {
+
+            try {
+
+                //another process is the writer, pick up what they wrote
+                if (!list.get(i).isWriter()) {
+                    list.get(i).refresh();
+                    continue;
+                }
+
+                //if the history doesn't line up with the series we read from our stored history
+                if (list.get(i).extend(history, timeLimit) < 0)
+                    catchUp(list.get(i));
+
+            } catch (IOException e) {
+                displayMessage(e, null);
+            }
+        }
+    }
+
+    /**
+     * Check if we are the writer, if not we try to become the writer since the other process may have stopped
+     * @return true if we hold the lock, false otherwise
+     */
+    private synchronized boolean isWriter() {
+
+        //we are already the writer
+        if (lock != null)
+            return true;
+
+        try {
+
+            FileChannel lockChannel = new RandomAccessFile(new File(directory, FILENAME_LOCK), "rw").getChannel();
+
+            try {
+                this.lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                this.lock = null;
+            }
+
+            //another process is the writer
+            if (this.lock == null) {
+                lockChannel.close();
+                return false;
+            }
+
+        } catch (IOException e) {
+            displayMessage(e, null);
+            return false;
+        }
+
+        //we are now the writer, the series we only read are opened again so we can write to them
+        for (IndicatorSeries tmp : series.values()) {
+
+            try {
+                tmp.close();
+            } catch (IOException e) {
+                displayMessage(e, null);
+            }
+        }
+
+        series.clear();
+
+        return true;
+    }
+
+    private void catchUp(IndicatorSeries series) {
+
+        try {
+
+            //if the series has the most recent candle written there is nothing to catch up on
+            if (series.getView().getTimeEnd() >= History.getWriter(productId, candle).getTime())
+                return;
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        //the stored history has everything we need, read it from another process if it is shared
+        List<Period> history = History.getShared(productId, candle);
+
+        if (history == null) {
+            history = new ArrayList<>();
+            History.load(history, productId, candle, null, false);
+        }
+
+        try {
+
+            final int count = series.extend(history, Long.MAX_VALUE);
+
+            if (count > 0)
+                displayMessage("Materialized " + count + " indicator values: " + directory.getPath());
+            if (count < 0)
+                displayMessage("Indicator series doesn't line up with our history: " + directory.getPath());
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -32,6 +32,18 @@ public class LogFile {
         return "gdax_json.log";
     }
 
+    public static String getFilenameReconcile() {
+        return "reconcile.log";
+    }
+
+    public static String getFilenameOrderGateway() {
+        return "order_gateway.log";
+    }
+
+    public static String getFilenameSimulator() {
+        return "simulator.log";
+    }
+
     public static final String FILE_SEPARATOR = System.getProperty("file.separator");
 
     public static String getLogDirectory() {
@@ -0,0 +1,37 @@
+package com.gamesbykevin.tradingbot.util;
+
+/**
+ * Orders our reads / writes of memory mapped files that are shared with other processes.<br>
+ * The mapped buffer is plain memory to the jvm, so we write / read a volatile field around it. Writes to the buffer
+ * before the volatile write can't be moved after it (StoreStore) and reads of the buffer after the volatile read can't be
+ * moved before it (LoadLoad), the jvm places the cpu fences for us. This assumes every process maps the same file on the
+ * same host, so they all share the same physical pages and the cpu keeps them coherent. It does nothing for network
+ * file systems
+ */
+public class MemoryFence {
+
+    //written / read only for the ordering, the value itself is never used
+    private static volatile int FENCE = 0;
+
+    private MemoryFence() {
+        //we don't need to create this
+    }
+
+    /**
+     * Writes before the fence can't be moved after writes following the fence.<br>
+     * Call this after writing a record and before publishing its sequence / count
+     */
+    public static void storeFence() {
+        FENCE = 0;
+    }
+
+    /**
+     * Reads before the fence can't be moved after reads following the fence.<br>
+     * Call this after reading a sequence / count and before reading the record
+     */
+    public static void loadFence() {
+
+        //the read is kept by the jvm since the field is volatile
+        final int fence = FENCE;
+    }
+}
@@ -0,0 +1,330 @@
+package com.gamesbykevin.tradingbot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.gamesbykevin.tradingbot.trade.TradeHelper.NEW_LINE;
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Sends our notifications from a single thread.<br>
+ * Messages wait in a bounded queue so a burst can never create more threads or connections, anything that doesn't
+ * fit is dropped. Each topic sends at most one message per delay, the messages that arrive in between are combined
+ * into a digest and duplicates are ignored. A digest keeps a limited number of messages, the rest are only counted
+ */
+public class Notifier implements Runnable {
+
+    /**
+     * How many messages can wait to be sent
+     */
+    public static int NOTIFICATION_QUEUE = 256;
+
+    /**
+     * How long (milliseconds) do we wait between messages of the same topic, 0 to send every message
+     */
+    public static long NOTIFICATION_TOPIC_DELAY = 60000L;
+
+    /**
+     * How many messages can each topic keep for its next digest
+     */
+    public static int NOTIFICATION_DIGEST_LIMIT = 20;
+
+    //how long do we wait for a message when no digest is waiting
+    private static final long IDLE_DELAY = 1000L;
+
+    /**
+     * What the message is about, each topic is limited separately
+     */
+    public enum Topic {
+        General, Status, Sma, Transaction, Stop, Reconcile
+    }
+
+    /**
+     * Where our messages are delivered
+     */
+    public interface Sender {
+        void send(String subject, String text) throws Exception;
+    }
+
+    //our notifier for this process
+    private static Notifier NOTIFIER;
+
+    //the messages waiting to be sent
+    private final BlockingQueue<Notification> queue;
+
+    //how we deliver our messages
+    private final Sender sender;
+
+    //how long do we wait between messages of the same topic
+    private final long delay;
+
+    //when did we last send each topic and what was it
+    private final long[] sentTimes;
+    private final String[] sentKeys;
+
+    //the messages of each topic waiting for the next digest
+    private final List<List<Notification>> digests;
+
+    //how many messages can each digest keep
+    private final int digestLimit;
+
+    //how many messages didn't fit in each digest
+    private final int[] overflows;
+
+    //how many messages were queued, dropped (queue or digest full), ignored (duplicate), combined into a digest, sent and failed
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong digested = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    //our thread sending the messages
+    private Thread thread;
+
+    public Notifier(Sender sender, int capacity, long delay, int digestLimit) {
+
+        this.sender = sender;
+        this.delay = delay;
+        this.digestLimit = Math.max(1, digestLimit);
+        this.overflows = new int[Topic.values().length];
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sentTimes = new long[Topic.values().length];
+        this.sentKeys = new String[Topic.values().length];
+        this.digests = new ArrayList<>();
+
+        for (int i = 0; i < Topic.values().length; i++) {
+            this.digests.add(new ArrayList<>());
+        }
+    }
+
+    public static synchronized Notifier getNotifier() {
+
+        //create the notifier if it does not exist
+        if (NOTIFIER == null) {
+            NOTIFIER = new Notifier(new Email(), NOTIFICATION_QUEUE, NOTIFICATION_TOPIC_DELAY, NOTIFICATION_DIGEST_LIMIT);
+            NOTIFIER.start();
+        }
+
+        return NOTIFIER;
+    }
+
+    /**
+     * Start sending the messages in our queue
+     */
+    public synchronized void start() {
+
+        if (thread != null)
+            return;
+
+        thread = new Thread(this, "notifier");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Add a message to our queue, this never waits
+     * @param topic What the message is about
+     * @param subject The subject
+     * @param text The message
+     * @return true if the message was queued, false if the queue is full
+     */
+    public boolean offer(final Topic topic, final String subject, final String text) {
+
+        if (!queue.offer(new Notification(topic, subject, text))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        queued.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public void run() {
+
+        while (true) {
+
+            try {
+
+                //wait for a message, or until the next digest can be sent
+                Notification notification = queue.poll(getWait(System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+                if (notification != null)
+                    handle(notification, System.currentTimeMillis());
+
+                //send every digest that is due
+                flush(System.currentTimeMillis());
+
+            } catch (InterruptedException e) {
+
+                //we are done
+                return;
+
+            } catch (Exception e) {
+
+                //don't let one message stop our notifications
+                displayMessage(e, Email.getWriter());
+            }
+        }
+    }
+
+    private long getWait(final long time) {
+
+        long result = IDLE_DELAY;
+
+        for (int i = 0; i < digests.size(); i++) {
+
+            if (!digests.get(i).isEmpty())
+                result = Math.min(result, Math.max(1, sentTimes[i] + delay - time));
+        }
+
+        return result;
+    }
+
+    private void handle(final Notification notification, final long time) {
+
+        final int index = notification.topic.ordinal();
+        final List<Notification> digest = digests.get(index);
+
+        //ignore the message if we just sent it or it is already waiting
+        if (time - sentTimes[index] < delay && notification.key.equals(sentKeys[index])) {
+            duplicates.incrementAndGet();
+            return;
+        }
+
+        for (int i = 0; i < digest.size(); i++) {
+
+            if (digest.get(i).key.equals(notification.key)) {
+                duplicates.incrementAndGet();
+                return;
+            }
+        }
+
+        //send now if the topic isn't waiting, otherwise it goes in the next digest
+        if (digest.isEmpty() && time - sentTimes[index] >= delay) {
+            deliver(index, notification.subject, notification.text, notification.key, time);
+        } else if (digest.size() < digestLimit) {
+            digest.add(notification);
+        } else {
+
+            //the digest is full, we only count the message
+            overflows[index]++;
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void flush(final long time) {
+
+        for (int i = 0; i < digests.size(); i++) {
+
+            final List<Notification> digest = digests.get(i);
+
+            //nothing waiting or not enough time has passed
+            if (digest.isEmpty() || time - sentTimes[i] < delay)
+                continue;
+
+            if (digest.size() == 1 && overflows[i] == 0) {
+
+                deliver(i, digest.get(0).subject, digest.get(0).text, digest.get(0).key, time);
+
+            } else {
+
+                StringBuilder text = new StringBuilder();
+
+                //combine every message into one
+                for (int j = 0; j < digest.size(); j++) {
+                    text.append(digest.get(j).subject).append(NEW_LINE).append(digest.get(j).text).append(NEW_LINE).append(NEW_LINE);
+                }
+
+                //the messages that didn't fit
+                if (overflows[i] > 0)
+                    text.append("(+").append(overflows[i]).append(" more)").append(NEW_LINE);
+
+                digested.addAndGet(digest.size());
+                deliver(i, digest.get(0).subject + " (+" + (digest.size() - 1 + overflows[i]) + " more)", text.toString(), null, time);
+            }
+
+            digest.clear();
+            overflows[i] = 0;
+        }
+    }
+
+    private void deliver(final int index, final String subject, final String text, final String key, final long time) {
+
+        sentTimes[index] = time;
+        sentKeys[index] = key;
+
+        try {
+
+            sender.send(subject, text);
+            sent.incrementAndGet();
+
+        } catch (Exception e) {
+
+            failed.incrementAndGet();
+            displayMessage(e, Email.getWriter());
+        }
+    }
+
+    /**
+     * How many messages are waiting to be sent
+     * @return The size of our queue
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getDigested() {
+        return digested.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Description of our notifications
+     * @return How many messages were queued, sent, combined, ignored, dropped and failed
+     */
+    public String getDesc() {
+        return "Notifications: queued " + getQueued() + ", pending " + getPending() + ", sent " + getSent() + ", digested " + getDigested() +
+                ", duplicates " + getDuplicates() + ", dropped " + getDropped() + ", failed " + getFailed();
+    }
+
+    private static class Notification {
+
+        private final Topic topic;
+        private final String subject, text;
+
+        //used to find duplicates
+        private final String key;
+
+        private Notification(Topic topic, String subject, String text) {
+            this.topic = topic;
+            this.subject = (subject == null) ? "" : subject;
+            this.text = (text == null) ? "" : text;
+            this.key = this.subject + NEW_LINE + this.text;
+        }
+    }
+}
@@ -1,13 +1,24 @@
 package com.gamesbykevin.tradingbot.util;
 
+import com.coinbase.exchange.api.exchange.GdaxExchangeImpl;
 import com.gamesbykevin.tradingbot.Main;
 import com.gamesbykevin.tradingbot.agent.Agent;
 import com.gamesbykevin.tradingbot.agent.AgentHelper;
 import com.gamesbykevin.tradingbot.agent.AgentManager;
+import com.gamesbykevin.tradingbot.agent.AgentManagerHelper;
+import com.gamesbykevin.tradingbot.agent.EquityCurve;
 import com.gamesbykevin.tradingbot.calculator.*;
 import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.strategy.RULE;
+import com.gamesbykevin.tradingbot.feed.MarketFeed;
 import com.gamesbykevin.tradingbot.order.BasicOrderHelper;
+import com.gamesbykevin.tradingbot.order.OrderGateway;
+import com.gamesbykevin.tradingbot.order.OrderNetting;
+import com.gamesbykevin.tradingbot.simulator.Simulator;
+import com.gamesbykevin.tradingbot.trade.ExitEngine;
 import com.gamesbykevin.tradingbot.trade.Trade;
+import com.gamesbykevin.tradingbot.trade.TradeHelper;
+import com.gamesbykevin.tradingbot.wallet.ReconcileService;
 import com.gamesbykevin.tradingbot.wallet.Wallet;
 
 import java.io.FileInputStream;
@@ -99,6 +110,15 @@ public class PropertyUtil {
         Email.GMAIL_SMTP_USERNAME = getProperties().getProperty("gmailUsername");
         Email.GMAIL_SMTP_PASSWORD = getProperties().getProperty("gmailPassword");
 
+        //the smtp server we send through, a local server can be used for testing (optional)
+        Email.SMTP_HOST = getProperties().getProperty("smtpHost", Email.SMTP_HOST);
+        Email.SMTP_PORT = Integer.parseInt(getProperties().getProperty("smtpPort", String.valueOf(Email.SMTP_PORT)));
+
+        //how many notifications can wait, how long (seconds) between notifications of the same topic, and how many each digest keeps (optional)
+        Notifier.NOTIFICATION_QUEUE = Integer.parseInt(getProperties().getProperty("notificationQueue", String.valueOf(Notifier.NOTIFICATION_QUEUE)));
+        Notifier.NOTIFICATION_TOPIC_DELAY = Long.parseLong(getProperties().getProperty("notificationTopicDelay", String.valueOf(Notifier.NOTIFICATION_TOPIC_DELAY / 1000L))) * 1000L;
+        Notifier.NOTIFICATION_DIGEST_LIMIT = Integer.parseInt(getProperties().getProperty("notificationDigestLimit", String.valueOf(Notifier.NOTIFICATION_DIGEST_LIMIT)));
+
         //our starting total funds
         Main.FUNDS = Double.parseDouble(getProperties().getProperty("funds"));
 
@@ -182,6 +202,31 @@ public class PropertyUtil {
         if (AgentHelper.CURRENT_PRICE_HISTORY < Trade.HARD_STOP_PRICE_HISTORY_CONFIRM)
             throw new RuntimeException("The length of price history (" + AgentHelper.CURRENT_PRICE_HISTORY + ") is shorter than the hard stop confirm (" + Trade.HARD_STOP_PRICE_HISTORY_CONFIRM + ")");
 
+        //how far below the highest price do we trail our stop (optional)
+        ExitEngine.TRAILING_STOP_RATIO = Float.parseFloat(getProperties().getProperty("trailingStopRatio", String.valueOf(ExitEngine.TRAILING_STOP_RATIO)));
+
+        //how many candles do we hold a trade before selling (optional)
+        ExitEngine.TIME_STOP_CANDLES = Integer.parseInt(getProperties().getProperty("timeStopCandles", String.valueOf(ExitEngine.TIME_STOP_CANDLES)));
+
+        //the levels (ratio above our buy price) where we move our stop up (optional)
+        final String ladder = getProperties().getProperty("takeProfitLadder", "").trim();
+
+        if (!ladder.isEmpty()) {
+
+            final String[] levels = ladder.split(DELIMITER);
+
+            ExitEngine.TAKE_PROFIT_LADDER = new float[levels.length];
+
+            for (int i = 0; i < levels.length; i++) {
+
+                ExitEngine.TAKE_PROFIT_LADDER[i] = Float.parseFloat(levels[i].trim());
+
+                //each level has to be higher than the previous
+                if (ExitEngine.TAKE_PROFIT_LADDER[i] <= 0 || (i > 0 && ExitEngine.TAKE_PROFIT_LADDER[i] <= ExitEngine.TAKE_PROFIT_LADDER[i - 1]))
+                    throw new RuntimeException("Each take profit level has to be above 0 and higher than the previous: " + ladder);
+            }
+        }
+
         //get the duration of our trading candle
         int tmp = Integer.parseInt(getProperties().getProperty("tradingCandle"));
 
@@ -217,6 +262,85 @@ public class PropertyUtil {
 
         //# of periods to calculate our sma
         Calculator.PERIODS_SMA = Integer.parseInt(getProperties().getProperty("periodsSMA"));
+
+        //how long do we wait after a candle closes before requesting it (optional, in milliseconds)
+        CandleScheduler.SETTLE_DELAY = Long.parseLong(getProperties().getProperty("candleSettleDelay", String.valueOf(CandleScheduler.SETTLE_DELAY)));
+
+        //how many threads calculate our strategies when a candle closes (optional, default is the number of processors)
+        CandleScheduler.COMPUTE_THREADS = Integer.parseInt(getProperties().getProperty("candleComputeThreads", String.valueOf(CandleScheduler.COMPUTE_THREADS)));
+
+        //how many threads update our agents (optional, default is the number of processors)
+        AgentManagerHelper.AGENT_THREADS = Integer.parseInt(getProperties().getProperty("agentThreads", String.valueOf(AgentManagerHelper.AGENT_THREADS)));
+
+        //the rules for our declarative strategy (optional, only needed when trading the RULE strategy)
+        RULE.RULE_BUY = getProperties().getProperty("ruleBuy");
+        RULE.RULE_SELL = getProperties().getProperty("ruleSell");
+
+        //more named rule sets, each needs a ruleBuy.<name> and ruleSell.<name> (optional)
+        final String ruleSets = getProperties().getProperty("ruleSets");
+
+        if (ruleSets != null) {
+
+            for (String name : ruleSets.split(",")) {
+
+                if (name.trim().isEmpty())
+                    continue;
+
+                RULE.RULE_SETS.put(name.trim(), new String[]{getProperties().getProperty("ruleBuy." + name.trim()), getProperties().getProperty("ruleSell." + name.trim())});
+            }
+        }
+
+        //the rule set our agent trades (optional, the default is ruleBuy / ruleSell)
+        RULE.RULE_SET = getProperties().getProperty("ruleSet", RULE.RULE_SET);
+
+        //how many candles are in our correlation window, and do we size our buys with it (optional)
+        CorrelationEngine.WINDOW = Integer.parseInt(getProperties().getProperty("correlationWindow", String.valueOf(CorrelationEngine.WINDOW)));
+        CorrelationEngine.CORRELATION_SIZING = Boolean.parseBoolean(getProperties().getProperty("correlationSizing", String.valueOf(CorrelationEngine.CORRELATION_SIZING)));
+
+        //do we share our history with the other bots on this host (optional)
+        SharedHistory.SHARED_HISTORY = Boolean.parseBoolean(getProperties().getProperty("sharedHistory", String.valueOf(SharedHistory.SHARED_HISTORY)));
+
+        //how many candles of equity does each agent keep (optional)
+        EquityCurve.EQUITY_SAMPLES = Integer.parseInt(getProperties().getProperty("equitySamples", String.valueOf(EquityCurve.EQUITY_SAMPLES)));
+
+        //how long can we keep trying to create an order (optional)
+        OrderGateway.ORDER_TIMEOUT = Long.parseLong(getProperties().getProperty("orderTimeout", String.valueOf(OrderGateway.ORDER_TIMEOUT)));
+
+        //how long can a rest request take and do we log each response (optional)
+        GdaxExchangeImpl.REST_TIMEOUT = Integer.parseInt(getProperties().getProperty("restTimeout", String.valueOf(GdaxExchangeImpl.REST_TIMEOUT)));
+        GdaxExchangeImpl.LOG_RESPONSES = Boolean.parseBoolean(getProperties().getProperty("logResponses", String.valueOf(GdaxExchangeImpl.LOG_RESPONSES)));
+
+        //do we combine the orders of our agents trading the same product (optional)
+        OrderNetting.ORDER_NETTING = Boolean.parseBoolean(getProperties().getProperty("orderNetting", String.valueOf(OrderNetting.ORDER_NETTING)));
+
+        //do we simulate (trades / candles) instead of trading, and how (optional)
+        final String simulate = getProperties().getProperty("simulate", "").trim();
+
+        for (Simulator.Mode mode : Simulator.Mode.values()) {
+            if (mode.toString().equalsIgnoreCase(simulate))
+                Simulator.SIMULATE = mode;
+        }
+
+        if (!simulate.isEmpty() && Simulator.SIMULATE == null)
+            throw new RuntimeException("We couldn't find a simulation matching: " + simulate);
+
+        Simulator.SIMULATE_PATHS = Integer.parseInt(getProperties().getProperty("simulatePaths", String.valueOf(Simulator.SIMULATE_PATHS)));
+        Simulator.SIMULATE_CANDLES = Integer.parseInt(getProperties().getProperty("simulateCandles", String.valueOf(Simulator.SIMULATE_CANDLES)));
+        Simulator.SIMULATE_BLOCK_SIZE = Integer.parseInt(getProperties().getProperty("simulateBlockSize", String.valueOf(Simulator.SIMULATE_BLOCK_SIZE)));
+        Simulator.SIMULATE_SEED = Long.parseLong(getProperties().getProperty("simulateSeed", String.valueOf(Simulator.SIMULATE_SEED)));
+        Simulator.SIMULATE_LOGS = getProperties().getProperty("simulateLogs", Simulator.SIMULATE_LOGS);
+        Simulator.THREADS = Integer.parseInt(getProperties().getProperty("simulateThreads", String.valueOf(Simulator.THREADS)));
+
+        //how many completed trades does each agent keep in memory (optional)
+        TradeHelper.TRADES_LIMIT = Integer.parseInt(getProperties().getProperty("tradesLimit", String.valueOf(TradeHelper.TRADES_LIMIT)));
+
+        //how often (seconds) do we reconcile our wallets with the exchange, how many pages per run, and how much drift do we allow (optional)
+        ReconcileService.RECONCILE_DELAY = Long.parseLong(getProperties().getProperty("reconcileDelay", String.valueOf(ReconcileService.RECONCILE_DELAY / 1000L))) * 1000L;
+        ReconcileService.RECONCILE_PAGES = Integer.parseInt(getProperties().getProperty("reconcilePages", String.valueOf(ReconcileService.RECONCILE_PAGES)));
+        ReconcileService.RECONCILE_TOLERANCE = Double.parseDouble(getProperties().getProperty("reconcileTolerance", String.valueOf(ReconcileService.RECONCILE_TOLERANCE)));
+
+        //do we share the ticks / candles from the exchange with the other bots on this host (optional)
+        MarketFeed.MARKET_FEED = Boolean.parseBoolean(getProperties().getProperty("marketFeed", String.valueOf(MarketFeed.MARKET_FEED)));
     }
 
     public static synchronized void displayMessage(final String message) {
@@ -0,0 +1,467 @@
+package com.gamesbykevin.tradingbot.util;
+
+import com.gamesbykevin.tradingbot.calculator.Calculator.Candle;
+import com.gamesbykevin.tradingbot.calculator.Period;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * The candle history of a product / candle in a memory mapped file shared by every bot process on the host.<br>
+ * Only 1 process writes to the file (whoever holds the lock, normally the one running the {@link HistoryTracker}),
+ * every other process maps the same pages read only, so the history isn't decoded and kept in memory by each process.<br>
+ * The writer appends the candles first and then publishes the new count in the header, readers get a {@link View} of
+ * the candles up to the count they saw without any locking. The {@link MemoryFence} orders the candles before the count,
+ * the file is never forced to disk on append since it is rebuilt from the stored history whenever it falls behind
+ */
+public class SharedHistory {
+
+    /**
+     * Do we share our history with the other processes on this host
+     */
+    public static boolean SHARED_HISTORY = true;
+
+    /**
+     * Name of the shared file in each history directory
+     */
+    public static final String FILENAME = "shared.dat";
+
+    //only the process holding a lock on this file can write
+    private static final String FILENAME_LOCK = "shared.lock";
+
+    //how many candles do we add to the file each time it is full
+    private static final int GROWTH = 8192;
+
+    //identifies our file format
+    private static final int MAGIC = 0x53484931;
+
+    //the version of our file format
+    private static final int VERSION = 1;
+
+    //header (magic, version, record size, unused, count, unused)
+    private static final int HEADER_SIZE = 32;
+
+    //record (time, low, high, open, close, volume)
+    private static final int RECORD_SIZE = 48;
+
+    //position of the count in our header
+    private static final int POSITION_COUNT = 16;
+
+    //our shared histories for each product / candle directory
+    private static HashMap<String, SharedHistory> SHARED;
+
+    /**
+     * Shares the candles with the other bots on this host as they are stored, subscribe this in the process storing
+     * the history
+     */
+    protected static final HistoryListener LISTENER = SharedHistory::share;
+
+    //the directory of the history
+    private final File directory;
+
+    //our file
+    private FileChannel channel;
+
+    //our lock if we are the writer
+    private FileLock lock;
+
+    //the file currently mapped
+    private volatile MappedByteBuffer buffer;
+
+    //how many candles fit in our mapped file
+    private int capacity;
+
+    //what the readers currently see
+    private volatile View view;
+
+    private SharedHistory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the shared history to read from
+     * @param productId The product
+     * @param candle The candle duration
+     * @return The shared history, or null if we aren't sharing or nobody has written it yet
+     */
+    public static synchronized SharedHistory getShared(String productId, Candle candle) {
+
+        //custom candles aren't stored
+        if (!SHARED_HISTORY || candle.dependency != null)
+            return null;
+
+        SharedHistory shared = get(productId, candle);
+
+        try {
+
+            //open the file if it was created by the writer
+            if (shared.buffer == null && new File(shared.directory, FILENAME).exists())
+                shared.open(false);
+
+        } catch (IOException e) {
+            displayMessage(e, null);
+        }
+
+        return (shared.buffer == null) ? null : shared;
+    }
+
+    /**
+     * Get the shared history to write to
+     * @param productId The product
+     * @param candle The candle duration
+     * @return The shared history, or null if we aren't sharing or another process is already writing it
+     */
+    protected static synchronized SharedHistory getWriter(String productId, Candle candle) {
+
+        //custom candles aren't stored
+        if (!SHARED_HISTORY || candle.dependency != null)
+            return null;
+
+        SharedHistory shared = get(productId, candle);
+
+        try {
+
+            //try to become the writer, another process may have stopped since we last checked
+            if (shared.lock == null)
+                shared.open(true);
+
+        } catch (IOException e) {
+            displayMessage(e, null);
+        }
+
+        return (shared.lock == null) ? null : shared;
+    }
+
+    private static void share(String productId, Candle candle, List<Period> history, long timeLimit, int count) throws IOException {
+
+        SharedHistory shared = getWriter(productId, candle);
+
+        //we aren't sharing, or another process is the writer
+        if (shared == null)
+            return;
+
+        //we already share everything that is stored
+        if (shared.getView().getTimeEnd() >= History.getWriter(productId, candle).getTime())
+            return;
+
+        //if nothing is shared yet, or the candles don't line up, share everything we have stored
+        if (shared.getView().isEmpty() || shared.extend(history, timeLimit) < 0) {
+
+            List<Period> stored = new ArrayList<>();
+            History.load(stored, productId, candle, null, false);
+            shared.extend(stored, Long.MAX_VALUE);
+        }
+    }
+
+    private static SharedHistory get(String productId, Candle candle) {
+
+        //create our map if it does not exist
+        if (SHARED == null)
+            SHARED = new HashMap<>();
+
+        final String key = History.getDirectory(productId, candle);
+
+        //create the shared history if it does not exist
+        if (SHARED.get(key) == null)
+            SHARED.put(key, new SharedHistory(new File(key)));
+
+        return SHARED.get(key);
+    }
+
+    private synchronized void open(boolean write) throws IOException {
+
+        if (write) {
+
+            //make sure the directory exists
+            if (!directory.exists())
+                directory.mkdirs();
+
+            FileChannel lockChannel = new RandomAccessFile(new File(directory, FILENAME_LOCK), "rw").getChannel();
+
+            try {
+                this.lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                this.lock = null;
+            }
+
+            //another process is the writer
+            if (this.lock == null) {
+                lockChannel.close();
+                return;
+            }
+
+            //we are now the writer, re-open the file so we can write to it
+            if (this.channel != null)
+                this.channel.close();
+
+            this.channel = new RandomAccessFile(new File(directory, FILENAME), "rw").getChannel();
+
+            //new file, write our header
+            if (channel.size() < HEADER_SIZE) {
+
+                map(GROWTH);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, RECORD_SIZE);
+                buffer.putLong(POSITION_COUNT, 0);
+                MemoryFence.storeFence();
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+
+            } else {
+
+                map((int)((channel.size() - HEADER_SIZE) / RECORD_SIZE));
+            }
+
+            if (!isValid()) {
+                release();
+                throw new RuntimeException("Shared history not supported: " + directory.getPath());
+            }
+
+        } else {
+
+            this.channel = new RandomAccessFile(new File(directory, FILENAME), "r").getChannel();
+
+            //the writer hasn't finished creating the file
+            if (channel.size() < HEADER_SIZE) {
+                release();
+                return;
+            }
+
+            map((int)((channel.size() - HEADER_SIZE) / RECORD_SIZE));
+
+            //the writer hasn't finished creating the file, or it isn't our format
+            if (!isValid()) {
+                release();
+                return;
+            }
+        }
+
+        this.view = null;
+    }
+
+    private boolean isValid() {
+
+        //the magic is written last, so read it first
+        if (buffer.getInt(0) != MAGIC)
+            return false;
+
+        MemoryFence.loadFence();
+
+        return buffer.getInt(4) == VERSION && buffer.getInt(8) == RECORD_SIZE;
+    }
+
+    private void release() throws IOException {
+
+        if (lock != null) {
+            lock.channel().close();
+            lock = null;
+        }
+
+        channel.close();
+        channel = null;
+        buffer = null;
+    }
+
+    private void map(int capacity) throws IOException {
+
+        //readers can only map what the writer has already added to the file
+        final FileChannel.MapMode mode = (lock == null) ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+
+        this.buffer = channel.map(mode, 0, HEADER_SIZE + ((long)capacity * RECORD_SIZE));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the candles that are currently published, the view won't change once returned
+     * @return The shared candles sorted oldest to newest
+     */
+    public View getView() {
+
+        //the count the writer published
+        final int count = (int)buffer.getLong(POSITION_COUNT);
+
+        //the candles are read after the count, so we see every candle the count includes
+        MemoryFence.loadFence();
+
+        View current = this.view;
+
+        if (current != null && current.size() == count)
+            return current;
+
+        synchronized (this) {
+
+            try {
+
+                //the writer made the file bigger
+                if (count > capacity)
+                    map((int)((channel.size() - HEADER_SIZE) / RECORD_SIZE));
+
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            current = new View(buffer, count);
+            this.view = current;
+        }
+
+        return current;
+    }
+
+    /**
+     * Append the new candles to our shared history
+     * @param history The periods sorted oldest to newest
+     * @param timeLimit Periods with a time at or above this are skipped
+     * @return The number of periods appended, or -1 if the history doesn't line up with what is shared
+     * @throws IOException If we are unable to write to the shared history
+     */
+    protected synchronized int extend(List<Period> history, long timeLimit) throws IOException {
+
+        if (lock == null)
+            throw new RuntimeException("Only the writer can extend the shared history: " + directory.getPath());
+
+        final View current = getView();
+
+        //the most recent time stored
+        final long time = current.getTimeEnd();
+
+        //where do the new periods start
+        int start = 0;
+
+        if (current.size() > 0) {
+
+            //the new periods have to continue from our last period
+            start = -1;
+
+            for (int i = history.size() - 1; i >= 0; i--) {
+
+                if (history.get(i).time == time) {
+                    start = i + 1;
+                    break;
+                }
+
+                //there is a gap between what is shared and the history
+                if (history.get(i).time < time)
+                    break;
+            }
+
+            if (start < 0)
+                return (history.isEmpty() || history.get(history.size() - 1).time <= time) ? 0 : -1;
+        }
+
+        int count = current.size();
+        long timePrevious = time;
+
+        for (int i = start; i < history.size(); i++) {
+
+            Period period = history.get(i);
+
+            //the candle isn't complete yet
+            if (period.time >= timeLimit)
+                break;
+
+            //only newer candles are added so the shared history stays sorted
+            if (period.time <= timePrevious)
+                continue;
+
+            //make the file bigger when full
+            if (count >= capacity)
+                map(capacity + GROWTH);
+
+            final int position = HEADER_SIZE + (count * RECORD_SIZE);
+
+            buffer.putLong(position, period.time);
+            buffer.putDouble(position + 8, period.low);
+            buffer.putDouble(position + 16, period.high);
+            buffer.putDouble(position + 24, period.open);
+            buffer.putDouble(position + 32, period.close);
+            buffer.putDouble(position + 40, period.volume);
+
+            timePrevious = period.time;
+            count++;
+        }
+
+        final int added = count - current.size();
+
+        if (added == 0)
+            return 0;
+
+        //the candles have to be written before the readers see the new count
+        MemoryFence.storeFence();
+        buffer.putLong(POSITION_COUNT, count);
+
+        return added;
+    }
+
+    /**
+     * Read only view of the shared candles.<br>
+     * Each period is read from the shared file when requested, so treat them as copies
+     */
+    public static class View extends AbstractList<Period> implements RandomAccess {
+
+        private final MappedByteBuffer buffer;
+
+        private final int count;
+
+        private View(MappedByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        @Override
+        public int size() {
+            return this.count;
+        }
+
+        @Override
+        public Period get(int index) {
+
+            Period period = new Period();
+            get(index, period);
+            return period;
+        }
+
+        /**
+         * Read the candle into an existing period
+         * @param index The index of the candle
+         * @param period The period we populate
+         */
+        public void get(int index, Period period) {
+
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+
+            final int position = HEADER_SIZE + (index * RECORD_SIZE);
+
+            period.time = buffer.getLong(position);
+            period.low = buffer.getDouble(position + 8);
+            period.high = buffer.getDouble(position + 16);
+            period.open = buffer.getDouble(position + 24);
+            period.close = buffer.getDouble(position + 32);
+            period.volume = buffer.getDouble(position + 40);
+        }
+
+        public long getTime(int index) {
+            return buffer.getLong(HEADER_SIZE + (index * RECORD_SIZE));
+        }
+
+        /**
+         * Get the time of the most recent candle
+         * @return Epoch time (seconds), 0 if nothing is shared
+         */
+        public long getTimeEnd() {
+            return (count == 0) ? 0 : getTime(count - 1);
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package com.gamesbykevin.tradingbot.wallet;
+
+import com.coinbase.exchange.api.accounts.Account;
+import com.coinbase.exchange.api.accounts.AccountHistory;
+import com.coinbase.exchange.api.accounts.AccountService;
+import com.coinbase.exchange.api.entity.Fill;
+import com.coinbase.exchange.api.entity.Product;
+import com.coinbase.exchange.api.orders.OrderService;
+import com.gamesbykevin.tradingbot.agent.Agent;
+import com.gamesbykevin.tradingbot.agent.AgentManager;
+import com.gamesbykevin.tradingbot.order.OrderNetting;
+import com.gamesbykevin.tradingbot.util.Email;
+import com.gamesbykevin.tradingbot.util.LogFile;
+import com.gamesbykevin.tradingbot.util.Notifier.Topic;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.gamesbykevin.tradingbot.util.FixedPoint.parse;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toDouble;
+import static com.gamesbykevin.tradingbot.util.LogFile.getFilenameReconcile;
+import static com.gamesbykevin.tradingbot.util.PropertyUtil.displayMessage;
+
+/**
+ * Checks our agent wallets against the exchange while we trade with real money.<br>
+ * We remember the newest fill of each product and the newest ledger entry of each account, and each run only asks the
+ * exchange for what is newer, so the cost of a run doesn't grow with how long we have been trading.<br>
+ * The fills of each order are compared to what the agent booked, a different fee is corrected in the agent's wallet,
+ * and the balance of each account is compared to the total of our wallets to detect any drift
+ */
+public class ReconcileService implements Runnable {
+
+    /**
+     * How long (milliseconds) do we wait between each run, 0 will not reconcile
+     */
+    public static long RECONCILE_DELAY = 300000L;
+
+    /**
+     * The most pages of fills / ledger entries we request for each product / account in a run, the rest waits for the next run
+     */
+    public static int RECONCILE_PAGES = 10;
+
+    /**
+     * How much (ratio) can an account balance differ from our wallets before we report drift
+     */
+    public static double RECONCILE_TOLERANCE = 0.01;
+
+    //how many fills / ledger entries do we request at once (the most the exchange allows)
+    private static final int PAGE_LIMIT = 100;
+
+    //the most orders we keep waiting for their fills / booking
+    private static final int BOOKING_LIMIT = 1000;
+
+    //we only want entries newer than our cursor
+    private static final String BEFORE = "before";
+
+    //how many runs in a row does an account need to drift before we report it
+    private static final int DRIFT_RUNS = 2;
+
+    //our service for this process
+    private static ReconcileService SERVICE;
+
+    //where we write our log file
+    private static PrintWriter WRITER;
+
+    //the newest fill (trade id) of each product and newest ledger entry of each account we have seen
+    private final HashMap<String, Integer> fillCursors;
+    private final HashMap<String, Integer> ledgerCursors;
+
+    //the account of each currency we trade
+    private final HashMap<String, String> accounts;
+
+    //the latest balance of each currency, and how it differed from our wallets when we started
+    private final HashMap<String, Long> balances;
+    private final HashMap<String, Long> offsets;
+
+    //how many runs in a row each currency has drifted, and by how much
+    private final HashMap<String, Integer> driftRuns;
+    private final HashMap<String, Long> drifts;
+
+    //the orders our agents booked and the fills we have seen, by order id
+    private final Bookings bookings;
+
+    //the $ each agent's wallet needs to be corrected by, applied by the agent on its own thread
+    private final ConcurrentHashMap<Agent, Long> adjustments;
+
+    //the services we request from
+    private OrderService orderService;
+    private AccountService accountService;
+
+    //the products we trade
+    private Map<String, AgentManager> managers;
+
+    //runs our reconciliation on its own thread
+    private ScheduledExecutorService executor;
+
+    //how many runs, requests, fills, ledger entries, matched orders, fee corrections ($ units) and drifts
+    private long runs, requests, fills, entries, matched, corrected, drifted;
+
+    private ReconcileService() {
+        this.fillCursors = new HashMap<>();
+        this.ledgerCursors = new HashMap<>();
+        this.accounts = new HashMap<>();
+        this.balances = new HashMap<>();
+        this.offsets = new HashMap<>();
+        this.driftRuns = new HashMap<>();
+        this.drifts = new HashMap<>();
+        this.adjustments = new ConcurrentHashMap<>();
+        this.bookings = new Bookings();
+    }
+
+    public static synchronized ReconcileService getService() {
+
+        //create the service if it does not exist
+        if (SERVICE == null)
+            SERVICE = new ReconcileService();
+
+        return SERVICE;
+    }
+
+    /**
+     * Start reconciling on a low priority thread, if not already started
+     * @param orderService Where we get our fills
+     * @param accountService Where we get our accounts and ledger entries
+     * @param managers The agent managers of each product we trade
+     */
+    public synchronized void start(OrderService orderService, AccountService accountService, Map<String, AgentManager> managers) {
+
+        //don't start if disabled or already started
+        if (RECONCILE_DELAY <= 0 || this.executor != null)
+            return;
+
+        this.orderService = orderService;
+        this.accountService = accountService;
+        this.managers = managers;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reconcile");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        //the first run records where we are starting from
+        this.executor.scheduleWithFixedDelay(this, 0, RECONCILE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record the quantity and fee the agent applied to its wallet when the order filled
+     * @param agent The agent of the order
+     * @param orderId The id of the order
+     * @param quantity The quantity booked (fixed point units)
+     * @param fee The fee booked (fixed point units)
+     */
+    public synchronized void book(Agent agent, String orderId, long quantity, long fee) {
+
+        //our combined orders aren't on the exchange, they are only covered by the account balance
+        if (OrderNetting.isNetOrder(orderId))
+            return;
+
+        Booking booking = getBooking(orderId);
+        booking.agent = agent;
+        booking.quantity = quantity;
+        booking.fee = fee;
+
+        //the fills may already be here
+        check(orderId, booking);
+    }
+
+    /**
+     * Apply any correction we found to the agent's wallet, called from the agent's own thread
+     * @param agent The agent we are updating
+     */
+    public void apply(Agent agent) {
+
+        //nothing to do if we aren't reconciling
+        if (adjustments.isEmpty())
+            return;
+
+        final Long funds = adjustments.remove(agent);
+
+        if (funds == null)
+            return;
+
+        if (funds > 0) {
+            agent.getWallet().addFunds(funds);
+        } else {
+            agent.getWallet().subtractFunds(-funds);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        try {
+
+            runs++;
+
+            //we need to know our accounts first
+            if (accounts.isEmpty())
+                loadAccounts();
+
+            //check the new fills of each product
+            for (String productId : managers.keySet()) {
+                reconcileFills(productId);
+            }
+
+            //check the new ledger entries of each account
+            for (String currency : accounts.keySet()) {
+                reconcileLedger(currency);
+            }
+
+            //now compare the balances to our wallets
+            checkDrift();
+
+        } catch (Exception e) {
+
+            //try again next run
+            e.printStackTrace();
+            displayMessage(e, getWriter());
+        }
+    }
+
+    private void loadAccounts() {
+
+        final List<Account> tmp = accountService.getAccounts();
+        requests++;
+
+        //check each account
+        for (int i = 0; i < tmp.size(); i++) {
+
+            final String currency = tmp.get(i).getCurrency();
+
+            //we only need the accounts of the currencies we trade
+            for (AgentManager manager : managers.values()) {
+
+                final Product product = manager.getProduct();
+
+                if (currency.equalsIgnoreCase(product.getBase_currency()) || currency.equalsIgnoreCase(product.getQuote_currency())) {
+                    accounts.put(currency.toUpperCase(), tmp.get(i).getId());
+                    break;
+                }
+            }
+        }
+
+        displayMessage("Reconciling accounts " + accounts.keySet(), getWriter());
+    }
+
+    private void reconcileFills(String productId) {
+
+        Integer cursor = fillCursors.get(productId);
+
+        //the first time we only need the most recent fill to start from
+        if (cursor == null) {
+
+            final List<Fill> tmp = orderService.getPagedFills(productId, BEFORE, null, 1);
+            requests++;
+
+            fillCursors.put(productId, tmp.isEmpty() ? 0 : tmp.get(0).getTrade_id());
+            return;
+        }
+
+        for (int page = 0; page < RECONCILE_PAGES; page++) {
+
+            //get the fills newer than our cursor
+            final List<Fill> tmp = orderService.getPagedFills(productId, BEFORE, cursor, PAGE_LIMIT);
+            requests++;
+
+            for (int i = 0; i < tmp.size(); i++) {
+
+                final Fill fill = tmp.get(i);
+
+                //move our cursor to the newest fill
+                if (fill.getTrade_id() > cursor)
+                    cursor = fill.getTrade_id();
+
+                add(fill);
+            }
+
+            //remember where we are
+            fillCursors.put(productId, cursor);
+
+            //if the page wasn't full there is nothing newer
+            if (tmp.size() < PAGE_LIMIT)
+                break;
+        }
+    }
+
+    private void reconcileLedger(String currency) {
+
+        final String accountId = accounts.get(currency);
+
+        Integer cursor = ledgerCursors.get(accountId);
+
+        //the first time we only need the most recent entry for the balance to start from
+        if (cursor == null) {
+
+            final List<AccountHistory> tmp = accountService.getLatestAccountHistory(accountId, 1);
+            requests++;
+
+            ledgerCursors.put(accountId, tmp.isEmpty() ? 0 : tmp.get(0).getId());
+            balances.put(currency, tmp.isEmpty() ? 0 : getUnits(tmp.get(0).getBalance()));
+            return;
+        }
+
+        for (int page = 0; page < RECONCILE_PAGES; page++) {
+
+            //get the ledger entries newer than our cursor
+            final List<AccountHistory> tmp = accountService.getPagedAccountHistory(accountId, BEFORE, cursor, PAGE_LIMIT);
+            requests++;
+
+            for (int i = 0; i < tmp.size(); i++) {
+
+                entries++;
+
+                //the newest entry has our current balance
+                if (tmp.get(i).getId() > cursor) {
+                    cursor = tmp.get(i).getId();
+                    balances.put(currency, getUnits(tmp.get(i).getBalance()));
+                }
+            }
+
+            //remember where we are
+            ledgerCursors.put(accountId, cursor);
+
+            //if the page wasn't full there is nothing newer
+            if (tmp.size() < PAGE_LIMIT)
+                break;
+        }
+    }
+
+    private synchronized void add(Fill fill) {
+
+        fills++;
+
+        final Booking booking = getBooking(fill.getOrder_id());
+        booking.filledQuantity += getUnits(fill.getSize());
+        booking.filledFee += getUnits(fill.getFee());
+
+        //the agent may already have booked the order
+        check(fill.getOrder_id(), booking);
+    }
+
+    private void check(String orderId, Booking booking) {
+
+        //wait for the agent to book the order, and for all the fills
+        if (booking.agent == null || booking.filledQuantity < booking.quantity)
+            return;
+
+        //we are done with the order
+        bookings.remove(orderId);
+
+        //more was filled than the agent booked, that isn't something we can correct
+        if (booking.filledQuantity > booking.quantity) {
+
+            drifted++;
+
+            final String subject = "Fill drift " + booking.agent.getProductId() + "-" + booking.agent.getStrategyKey();
+            final String text = "Order " + orderId + " booked " + toDouble(booking.quantity) + ", filled " + toDouble(booking.filledQuantity);
+
+            displayMessage(subject + ": " + text, getWriter());
+            Email.sendEmail(Topic.Reconcile, subject, text);
+            return;
+        }
+
+        matched++;
+
+        //correct the wallet if the fee charged is different
+        final long difference = booking.fee - booking.filledFee;
+
+        if (difference != 0) {
+
+            corrected += Math.abs(difference);
+            adjustments.merge(booking.agent, difference, Long::sum);
+
+            displayMessage("Order " + orderId + " booked fee $" + toDouble(booking.fee) + ", charged $" + toDouble(booking.filledFee) + ", correcting wallet " + booking.agent.getProductId() + "-" + booking.agent.getStrategyKey(), getWriter());
+        }
+    }
+
+    private synchronized void checkDrift() {
+
+        //the total of our wallets for each currency
+        final HashMap<String, Long> totals = new HashMap<>();
+
+        for (AgentManager manager : managers.values()) {
+
+            final Product product = manager.getProduct();
+
+            for (int i = 0; i < manager.getAgents().size(); i++) {
+
+                final Wallet wallet = manager.getAgents().get(i).getWallet();
+
+                totals.merge(product.getBase_currency().toUpperCase(), wallet.getQuantityUnits(), Long::sum);
+                totals.merge(product.getQuote_currency().toUpperCase(), wallet.getFundsUnits(), Long::sum);
+            }
+        }
+
+        for (String currency : balances.keySet()) {
+
+            final long balance = balances.get(currency);
+            final long total = totals.getOrDefault(currency, 0L);
+
+            //our wallets don't hold the whole account, so we start from the difference when we first checked
+            if (!offsets.containsKey(currency)) {
+                offsets.put(currency, balance - total);
+                continue;
+            }
+
+            final long expected = total + offsets.get(currency);
+            final long drift = balance - expected;
+            drifts.put(currency, drift);
+
+            //within our tolerance
+            if (Math.abs(drift) <= RECONCILE_TOLERANCE * Math.max(Math.abs(balance), Math.abs(expected))) {
+                driftRuns.remove(currency);
+                continue;
+            }
+
+            //a fill our agents haven't seen yet looks like drift, so it has to last more than one run
+            final int count = driftRuns.merge(currency, 1, Integer::sum);
+
+            displayMessage("Drift " + currency + " balance " + toDouble(balance) + ", expected " + toDouble(expected) + " (" + count + " runs)", getWriter());
+
+            if (count == DRIFT_RUNS) {
+
+                drifted++;
+
+                Email.sendEmail(Topic.Reconcile, "Account drift " + currency, "Balance " + toDouble(balance) + ", our wallets expect " + toDouble(expected));
+            }
+        }
+    }
+
+    private Booking getBooking(String orderId) {
+
+        Booking booking = bookings.get(orderId);
+
+        if (booking == null) {
+            booking = new Booking();
+            bookings.put(orderId, booking);
+        }
+
+        return booking;
+    }
+
+    private static long getUnits(BigDecimal value) {
+        return (value == null) ? 0 : parse(value.toPlainString());
+    }
+
+    /**
+     * Get the summary of our reconciliation
+     * @return The number of runs, requests, fills, ledger entries, matched orders, fees corrected and drift
+     */
+    public synchronized String getDesc() {
+
+        String desc = "Reconcile: runs " + runs + ", requests " + requests + ", fills " + fills + ", ledger " + entries;
+        desc += ", matched " + matched + ", fees corrected $" + toDouble(corrected) + ", drifted " + drifted;
+
+        for (String currency : drifts.keySet()) {
+            desc += ", " + currency + " " + toDouble(drifts.get(currency));
+        }
+
+        return desc;
+    }
+
+    private static synchronized PrintWriter getWriter() {
+
+        //create the log file and place in our root logs directory
+        if (WRITER == null)
+            WRITER = LogFile.getPrintWriter(getFilenameReconcile(), LogFile.getLogDirectory());
+
+        return WRITER;
+    }
+
+    /**
+     * What the agent booked for an order and what the exchange filled
+     */
+    private static class Booking {
+
+        //the agent of the order, null until booked
+        private Agent agent;
+
+        //what the agent booked (fixed point units)
+        private long quantity, fee;
+
+        //what the exchange filled (fixed point units)
+        private long filledQuantity, filledFee;
+    }
+
+    /**
+     * Our bookings by order id, the oldest are forgotten when we have too many
+     */
+    private static class Bookings extends LinkedHashMap<String, Booking> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Booking> eldest) {
+
+            //orders we never match are forgotten
+            return size() > BOOKING_LIMIT;
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package com.gamesbykevin.tradingbot.wallet;
 
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toDouble;
+import static com.gamesbykevin.tradingbot.util.FixedPoint.toUnits;
+
+/**
+ * Our funds and quantity are stored in fixed point units (see {@link com.gamesbykevin.tradingbot.util.FixedPoint})
+ */
 public class Wallet {
 
     /**
@@ -8,64 +14,76 @@ public class Wallet {
     public static float STOP_TRADING_RATIO;
 
     //money we have to invest
-    private double funds = 0;
+    private long funds = 0;
 
     //quantity of stock we bought
-    private float quantity = 0;
+    private long quantity = 0;
 
     //how many funds did we start with before our next trade
-    private double fundsBeforeTrade;
+    private long fundsBeforeTrade;
 
     //how many funds did we start with overall
-    private final double initialFunds;
+    private final long initialFunds;
 
     public Wallet(double funds) {
-        setFunds(funds);
-        setFundsBeforeTrade(funds);
-        this.initialFunds = funds;
+        setFunds(toUnits(funds));
+        setFundsBeforeTrade(toUnits(funds));
+        this.initialFunds = toUnits(funds);
     }
 
     public double getInitialFunds() {
-        return this.initialFunds;
+        return toDouble(this.initialFunds);
     }
 
     public double getFundsBeforeTrade() {
+        return toDouble(this.fundsBeforeTrade);
+    }
+
+    public long getFundsBeforeTradeUnits() {
         return this.fundsBeforeTrade;
     }
 
-    public void setFundsBeforeTrade(double fundsBeforeTrade) {
+    public void setFundsBeforeTrade(long fundsBeforeTrade) {
         this.fundsBeforeTrade = fundsBeforeTrade;
     }
 
-    public void addFunds(double funds) {
-        setFunds(getFunds() + funds);
+    public void addFunds(long funds) {
+        setFunds(getFundsUnits() + funds);
     }
 
-    public void subtractFunds(double funds) {
-        setFunds(getFunds() - funds);
+    public void subtractFunds(long funds) {
+        setFunds(getFundsUnits() - funds);
     }
 
-    private void setFunds(double funds) {
+    private void setFunds(long funds) {
         this.funds = funds;
     }
 
     public double getFunds() {
+        return toDouble(this.funds);
+    }
+
+    public long getFundsUnits() {
         return this.funds;
     }
 
-    public void addQuantity(float quantity) {
-        setQuantity(getQuantity() + quantity);
+    public void addQuantity(long quantity) {
+        setQuantity(getQuantityUnits() + quantity);
     }
 
-    public void subtractQuantity(float quantity) {
-        setQuantity(getQuantity() - quantity);
+    public void subtractQuantity(long quantity) {
+        setQuantity(getQuantityUnits() - quantity);
     }
 
-    private void setQuantity(float quantity) {
+    private void setQuantity(long quantity) {
         this.quantity = quantity;
     }
 
-    public float getQuantity() {
+    public double getQuantity() {
+        return toDouble(this.quantity);
+    }
+
+    public long getQuantityUnits() {
         return this.quantity;
     }
-}
\ No newline at end of file
+}